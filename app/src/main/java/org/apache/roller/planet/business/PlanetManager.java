@@ -180,6 +180,27 @@ public interface PlanetManager extends Manager {
                            int offset, 
                            int len) throws RollerException;
 
+    
+    /**
+     * Get Entries for a Group in reverse chronological order, starting after
+     * a given entry.  Unlike offset paging this doesn't get slower for later
+     * pages.
+     *
+     * @param group Restrict to entries from one group.
+     * @param after Last entry of the previous page, or null for the first page.
+     * @param len Maximum number of results to return (for paging)
+     */
+    List<SubscriptionEntry> getEntries(PlanetGroup group,
+                           SubscriptionEntry after,
+                           int len) throws RollerException;
+    
+    
+    /**
+     * Update the group timelines with the entries of a subscription, after
+     * they have been replaced and flushed.
+     */
+    void refreshTimeline(Subscription sub) throws RollerException;
+
     /**
      * Add new PlanetGroup and add it to an existing planet.
      */
@@ -0,0 +1,325 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.planet.business;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.roller.planet.pojos.SubscriptionEntry;
+
+
+/**
+ * In memory index of the newest entries of each subscription, used to build
+ * group aggregations without sorting all entries of a group in the database.
+ *
+ * For each subscription the ids and publication times of its newest
+ * entries, up to entriesPerSubscription, are kept sorted newest first.  A
+ * page of a group is built by merging the lists of the group's
+ * subscriptions, either skipping an offset or starting after a cursor.
+ * When a page reaches past the entries indexed for a subscription which has
+ * more of them, the merge gives up and the caller must go to the database.
+ *
+ * Lists are replaced when a subscription's entries are saved, dropped when
+ * they're changed otherwise and expire after a timeout, so that changes made
+ * by other cluster members are picked up eventually.  Lists read from the
+ * database are only dropped when their own subscription changed while they
+ * were read.
+ */
+public class PlanetTimeline {
+    
+    // newest first, entries published at the same time by descending id
+    private static final Comparator<EntryRef> NEWEST_FIRST =
+            Comparator.comparingLong((EntryRef ref) -> ref.pubTime).reversed()
+                    .thenComparing(Comparator.comparing((EntryRef ref) -> ref.id).reversed());
+    
+    private final int entriesPerSubscription;
+    private final long timeout;
+    
+    private final Map<String, Timeline> timelines = new ConcurrentHashMap<>();
+    
+    // bumped on every change, so that loads racing with a change are dropped
+    private final AtomicLong generation = new AtomicLong();
+    
+    // generation of the last change of each subscription, and of everything
+    private final Map<String, Long> changed = new ConcurrentHashMap<>();
+    private volatile long cleared = 0;
+    
+    
+    /**
+     * @param entriesPerSubscription Number of entries indexed per subscription.
+     * @param timeout Milliseconds after which a subscription is reloaded.
+     */
+    public PlanetTimeline(int entriesPerSubscription, long timeout) {
+        this.entriesPerSubscription = entriesPerSubscription;
+        this.timeout = timeout;
+    }
+    
+    
+    public int getEntriesPerSubscription() {
+        return entriesPerSubscription;
+    }
+    
+    
+    /**
+     * Current generation, to be passed to {@link #load} by callers which
+     * read entries from the database.
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+    
+    
+    /**
+     * Whether the entries of a subscription are indexed and current.
+     */
+    public boolean contains(String subscriptionId) {
+        Timeline timeline = timelines.get(subscriptionId);
+        return timeline != null && System.currentTimeMillis() - timeline.loaded < timeout;
+    }
+    
+    
+    /**
+     * Index all entries of a subscription, replacing what was known about it.
+     */
+    public void update(String subscriptionId, Collection<SubscriptionEntry> entries) {
+        List<EntryRef> refs = new ArrayList<>(entries.size());
+        for (SubscriptionEntry entry : entries) {
+            refs.add(new EntryRef(entry.getId(), entry.getPubTime()));
+        }
+        changed.put(subscriptionId, generation.incrementAndGet());
+        timelines.put(subscriptionId, new Timeline(refs, entriesPerSubscription));
+    }
+    
+    
+    /**
+     * Index the newest entries of a subscription as read from the database.
+     * The ids and publication times must come newest first, and there may
+     * be more than entriesPerSubscription of them to tell that the
+     * subscription has more entries than indexed.
+     *
+     * @param since Generation from before the entries were read; if the
+     *        subscription changed since then the entries are ignored.
+     */
+    public void load(String subscriptionId, List<String> ids, List<Date> pubTimes, long since) {
+        List<EntryRef> refs = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            refs.add(new EntryRef(ids.get(i), pubTimes.get(i)));
+        }
+        Timeline timeline = new Timeline(refs, entriesPerSubscription);
+        // changes are recorded before their timeline is dropped, so this
+        // can't put back a timeline which a change has just dropped
+        timelines.compute(subscriptionId,
+                (id, current) -> changedSince(id, since) ? current : timeline);
+    }
+    
+    
+    private boolean changedSince(String subscriptionId, long since) {
+        return cleared > since || changed.getOrDefault(subscriptionId, 0L) > since;
+    }
+    
+    
+    /**
+     * Forget the entries of a subscription, they will be read again.
+     */
+    public void invalidate(String subscriptionId) {
+        changed.put(subscriptionId, generation.incrementAndGet());
+        timelines.remove(subscriptionId);
+    }
+    
+    
+    /**
+     * Forget everything.
+     */
+    public void clear() {
+        cleared = generation.incrementAndGet();
+        timelines.clear();
+        changed.clear();
+    }
+    
+    
+    /**
+     * Merge the entries of some subscriptions, newest first.
+     *
+     * @param subscriptionIds Subscriptions to merge, which should all be
+     *        indexed; missing ones make the merge fail.
+     * @param after Return entries older than this cursor, or null.
+     * @param startDate Only entries published after this date, or null.
+     * @param endDate Only entries published before this date, or null.
+     * @param offset Number of entries to skip.
+     * @param len Number of entries to return.
+     * @return Ids of the entries, or null if the index can't answer.
+     */
+    public List<String> merge(Collection<String> subscriptionIds, Cursor after,
+            Date startDate, Date endDate, int offset, int len) {
+        
+        long start = startDate != null ? startDate.getTime() : Long.MIN_VALUE;
+        EntryRef first = after != null ? new EntryRef(after.id, after.pubTime) : null;
+        
+        // position each subscription at its first entry in range
+        PriorityQueue<Head> heads = new PriorityQueue<>(Math.max(1, subscriptionIds.size()),
+                (a, b) -> NEWEST_FIRST.compare(a.current(), b.current()));
+        for (String subscriptionId : subscriptionIds) {
+            Timeline timeline = timelines.get(subscriptionId);
+            if (timeline == null) {
+                return null;
+            }
+            int pos = 0;
+            if (first != null) {
+                pos = timeline.indexAfter(first);
+            }
+            if (endDate != null) {
+                pos = Math.max(pos, timeline.indexBefore(endDate.getTime()));
+            }
+            Head head = new Head(timeline, pos);
+            if (pos < timeline.refs.length) {
+                heads.add(head);
+            } else if (timeline.truncated && !head.olderThan(start)) {
+                // everything in range is beyond what we have indexed
+                return null;
+            }
+        }
+        
+        List<String> ids = new ArrayList<>(len);
+        int skipped = 0;
+        while (ids.size() < len && !heads.isEmpty()) {
+            Head head = heads.poll();
+            EntryRef ref = head.current();
+            if (ref.pubTime <= start) {
+                break;
+            }
+            if (skipped < offset) {
+                skipped++;
+            } else {
+                ids.add(ref.id);
+            }
+            head.pos++;
+            if (head.pos < head.timeline.refs.length) {
+                heads.add(head);
+            } else if (head.timeline.truncated && !head.olderThan(start)
+                    && ids.size() < len) {
+                // the next entries of this subscription aren't indexed
+                return null;
+            }
+        }
+        return ids;
+    }
+    
+    
+    /**
+     * Position in a timeline, entries come strictly after it.
+     */
+    public static final class Cursor {
+        
+        private final String id;
+        private final long pubTime;
+        
+        public Cursor(String id, Date pubTime) {
+            this.id = id;
+            this.pubTime = pubTime != null ? pubTime.getTime() : Long.MIN_VALUE;
+        }
+        
+        public static Cursor after(SubscriptionEntry entry) {
+            return new Cursor(entry.getId(), entry.getPubTime());
+        }
+    }
+    
+    
+    private static final class EntryRef {
+        
+        private final String id;
+        private final long pubTime;
+        
+        EntryRef(String id, Date pubTime) {
+            this(id, pubTime != null ? pubTime.getTime() : Long.MIN_VALUE);
+        }
+        
+        EntryRef(String id, long pubTime) {
+            this.id = id;
+            this.pubTime = pubTime;
+        }
+    }
+    
+    
+    private static final class Timeline {
+        
+        private final EntryRef[] refs;
+        
+        // whether the subscription has more entries than indexed
+        private final boolean truncated;
+        
+        private final long loaded = System.currentTimeMillis();
+        
+        Timeline(List<EntryRef> entries, int max) {
+            EntryRef[] sorted = entries.toArray(new EntryRef[0]);
+            Arrays.sort(sorted, NEWEST_FIRST);
+            this.truncated = sorted.length > max;
+            this.refs = truncated ? Arrays.copyOf(sorted, max) : sorted;
+        }
+        
+        // index of the first entry which comes after the given one
+        int indexAfter(EntryRef ref) {
+            int idx = Arrays.binarySearch(refs, ref, NEWEST_FIRST);
+            return idx >= 0 ? idx + 1 : -idx - 1;
+        }
+        
+        // index of the first entry published before the given time
+        int indexBefore(long time) {
+            int low = 0;
+            int high = refs.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (refs[mid].pubTime >= time) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+    
+    
+    private static final class Head {
+        
+        private final Timeline timeline;
+        private int pos;
+        
+        Head(Timeline timeline, int pos) {
+            this.timeline = timeline;
+            this.pos = pos;
+        }
+        
+        EntryRef current() {
+            return timeline.refs[pos];
+        }
+        
+        // whether the entries after the indexed ones are all older than time
+        boolean olderThan(long time) {
+            return timeline.refs.length > 0 && timeline.refs[timeline.refs.length - 1].pubTime <= time;
+        }
+    }
+    
+}
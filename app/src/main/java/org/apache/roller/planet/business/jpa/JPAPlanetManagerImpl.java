@@ -20,9 +20,12 @@ package org.apache.roller.planet.business.jpa;
 
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import jakarta.persistence.NoResultException;
 import jakarta.persistence.Query;
 import jakarta.persistence.TypedQuery;
@@ -32,6 +35,7 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.roller.RollerException;
 
 import org.apache.roller.planet.business.PlanetManager;
+import org.apache.roller.planet.business.PlanetTimeline;
 import org.apache.roller.planet.pojos.Planet;
 import org.apache.roller.planet.pojos.SubscriptionEntry;
 import org.apache.roller.planet.pojos.PlanetGroup;
@@ -40,10 +44,15 @@ import org.apache.roller.planet.business.AbstractManagerImpl;
 import org.apache.roller.util.RollerConstants;
 import org.apache.roller.weblogger.WebloggerException;
 import org.apache.roller.weblogger.business.jpa.JPAPersistenceStrategy;
+import org.apache.roller.weblogger.config.WebloggerConfig;
 
 /**
  * Manages Planet Roller objects and entry aggregations in a database.
  *
+ * Group aggregations are built from a PlanetTimeline of the newest entries
+ * of each subscription when possible, only pages reaching further back are
+ * sorted by the database.
+ *
  * @author Dave Johnson
  */
 @com.google.inject.Singleton
@@ -53,12 +62,27 @@ public class JPAPlanetManagerImpl extends AbstractManagerImpl implements PlanetM
     
     /** The strategy for this manager. */
     private final JPAPersistenceStrategy strategy;
+    
+    /** Newest entries of each subscription, for building group aggregations. */
+    private final PlanetTimeline timeline;
+    
+    /** Number of subscriptions whose timelines are read with one query. */
+    private static final int TIMELINE_BATCH_SIZE = 100;
 
     @com.google.inject.Inject  
     protected JPAPlanetManagerImpl(JPAPersistenceStrategy strategy) {
         log.debug("Instantiating JPA Planet Manager");
         
         this.strategy = strategy;
+        
+        // by default timelines last until subscriptions are refreshed again
+        long timeout = WebloggerConfig.getIntProperty("tasks.RefreshRollerPlanetTask.interval", 60)
+                * (long) RollerConstants.MIN_IN_MS;
+        if (WebloggerConfig.getProperty("planet.timeline.timeout") != null) {
+            timeout = WebloggerConfig.getIntProperty("planet.timeline.timeout") * (long) RollerConstants.SEC_IN_MS;
+        }
+        this.timeline = new PlanetTimeline(
+                WebloggerConfig.getIntProperty("planet.timeline.entriesPerSubscription", 100), timeout);
     }
     
     
@@ -70,6 +94,7 @@ public class JPAPlanetManagerImpl extends AbstractManagerImpl implements PlanetM
     @Override
     public void saveEntry(SubscriptionEntry entry) throws RollerException {
         strategy.store(entry);
+        invalidateTimeline(entry.getSubscription());
     }
     
     @Override
@@ -78,6 +103,7 @@ public class JPAPlanetManagerImpl extends AbstractManagerImpl implements PlanetM
         Subscription existing = getSubscription(sub.getFeedURL());
         if (existing == null || (existing.getId().equals(sub.getId()))) {
             strategy.store(sub);
+            invalidateTimeline(sub);
         } else {
             throw new WebloggerException("ERROR: duplicate feed URLs not allowed");
         }
@@ -86,6 +112,7 @@ public class JPAPlanetManagerImpl extends AbstractManagerImpl implements PlanetM
     @Override
     public void deleteEntry(SubscriptionEntry entry) throws RollerException {
         strategy.remove(entry);
+        invalidateTimeline(entry.getSubscription());
     }
     
     @Override
@@ -101,6 +128,7 @@ public class JPAPlanetManagerImpl extends AbstractManagerImpl implements PlanetM
     public void deleteSubscription(Subscription sub)
     throws RollerException {
         strategy.remove(sub);
+        invalidateTimeline(sub);
     }
     
     @Override
@@ -260,6 +288,18 @@ public class JPAPlanetManagerImpl extends AbstractManagerImpl implements PlanetM
         }
         // make sure and clear the other side of the association
         sub.getEntries().clear();
+        invalidateTimeline(sub);
+    }
+    
+    @Override
+    public void refreshTimeline(Subscription sub) throws RollerException {
+        loadTimelines(Collections.singletonList(sub.getId()));
+    }
+    
+    private void invalidateTimeline(Subscription sub) {
+        if (sub != null) {
+            timeline.invalidate(sub.getId());
+        }
     }
     
     @Override
@@ -303,6 +343,14 @@ public class JPAPlanetManagerImpl extends AbstractManagerImpl implements PlanetM
             throw new WebloggerException("group cannot be null or empty");
         }
         
+        if (len != -1) {
+            List<SubscriptionEntry> entries = getEntriesFromTimeline(
+                    group, null, startDate, endDate, Math.max(offset, 0), len);
+            if (entries != null) {
+                return entries;
+            }
+        }
+        
         List<SubscriptionEntry> ret;
         try {
             long startTime = System.currentTimeMillis();
@@ -322,9 +370,9 @@ public class JPAPlanetManagerImpl extends AbstractManagerImpl implements PlanetM
             }
             if (endDate != null) {
                 params.add(size++, new Timestamp(endDate.getTime()));
-                sb.append(" AND e.pubTime < :?").append(size);
+                sb.append(" AND e.pubTime < ?").append(size);
             }
-            sb.append(" ORDER BY e.pubTime DESC");
+            sb.append(" ORDER BY e.pubTime DESC, e.id DESC");
             
             TypedQuery<SubscriptionEntry> query = strategy.getDynamicQuery(sb.toString(), SubscriptionEntry.class);
             for (int i=0; i<params.size(); i++) {
@@ -351,6 +399,114 @@ public class JPAPlanetManagerImpl extends AbstractManagerImpl implements PlanetM
         return ret;
     }
 
+    @Override
+    public List<SubscriptionEntry> getEntries(PlanetGroup group, SubscriptionEntry after, int len)
+            throws RollerException {
+        
+        if (group == null) {
+            throw new WebloggerException("group cannot be null or empty");
+        }
+        if (after == null) {
+            return getEntries(group, null, null, 0, len);
+        }
+        
+        List<SubscriptionEntry> entries = getEntriesFromTimeline(
+                group, PlanetTimeline.Cursor.after(after), null, null, 0, len);
+        if (entries != null) {
+            return entries;
+        }
+        
+        TypedQuery<SubscriptionEntry> q = strategy.getNamedQuery(
+                "SubscriptionEntry.getByGroup&BeforeOrderByPubTimeDesc", SubscriptionEntry.class);
+        q.setParameter(1, group);
+        q.setParameter(2, after.getPubTime());
+        q.setParameter(3, after.getId());
+        if (len != -1) {
+            q.setMaxResults(len);
+        }
+        return q.getResultList();
+    }
+    
+    /**
+     * Build a page of a group aggregation by merging the newest entries of
+     * the group's subscriptions.
+     *
+     * @return The entries, or null if the page has to come from the database.
+     */
+    private List<SubscriptionEntry> getEntriesFromTimeline(PlanetGroup group,
+            PlanetTimeline.Cursor after, Date startDate, Date endDate, int offset, int len)
+            throws RollerException {
+        
+        TypedQuery<String> subQuery = strategy.getNamedQuery("Subscription.getIdsByGroup", String.class);
+        subQuery.setParameter(1, group);
+        List<String> subIds = subQuery.getResultList();
+        List<String> missing = new ArrayList<>();
+        for (String subId : subIds) {
+            if (!timeline.contains(subId)) {
+                missing.add(subId);
+            }
+        }
+        for (int i = 0; i < missing.size(); i += TIMELINE_BATCH_SIZE) {
+            loadTimelines(missing.subList(i, Math.min(missing.size(), i + TIMELINE_BATCH_SIZE)));
+        }
+        
+        List<String> ids = timeline.merge(subIds, after, startDate, endDate, offset, len);
+        if (ids == null) {
+            log.debug("Aggregation of group " + group.getHandle() + " reaches past the timeline");
+            return null;
+        }
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        
+        TypedQuery<SubscriptionEntry> q = strategy.getNamedQuery(
+                "SubscriptionEntry.getByIds", SubscriptionEntry.class);
+        q.setParameter(1, ids);
+        Map<String, SubscriptionEntry> byId = new HashMap<>();
+        for (SubscriptionEntry entry : q.getResultList()) {
+            byId.put(entry.getId(), entry);
+        }
+        
+        List<SubscriptionEntry> entries = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            SubscriptionEntry entry = byId.get(id);
+            if (entry == null) {
+                // changed behind our back, probably by another cluster member
+                timeline.clear();
+                return null;
+            }
+            entries.add(entry);
+        }
+        return entries;
+    }
+    
+    /**
+     * Read the newest entries of some subscriptions into the timeline, with
+     * one query for all of them.
+     */
+    private void loadTimelines(List<String> subIds) throws RollerException {
+        long generation = timeline.getGeneration();
+        TypedQuery<Object[]> q = strategy.getNamedQuery(
+                "SubscriptionEntry.getNewestBySubscriptionIds", Object[].class);
+        q.setParameter(1, subIds);
+        // one more than we keep of each, to know whether there are more
+        q.setParameter(2, (long) timeline.getEntriesPerSubscription());
+        
+        Map<String, List<String>> ids = new HashMap<>();
+        Map<String, List<Date>> pubTimes = new HashMap<>();
+        for (String subId : subIds) {
+            ids.put(subId, new ArrayList<>());
+            pubTimes.put(subId, new ArrayList<>());
+        }
+        for (Object[] row : q.getResultList()) {
+            ids.get((String) row[0]).add((String) row[1]);
+            pubTimes.get((String) row[0]).add((Date) row[2]);
+        }
+        for (String subId : subIds) {
+            timeline.load(subId, ids.get(subId), pubTimes.get(subId), generation);
+        }
+    }
+
     @Override
     public void saveNewPlanetGroup(Planet planet, PlanetGroup planetGroup) throws WebloggerException {
 
@@ -110,6 +110,9 @@ public class SingleThreadedFeedUpdater implements FeedUpdater {
                 // save and flush
                 pmgr.saveSubscription(sub);
                 WebloggerFactory.getWeblogger().flush();
+                
+                // and let group aggregations see the new entries
+                pmgr.refreshTimeline(sub);
 
                 log.debug("Added entries");
                 entries += newEntries.size();
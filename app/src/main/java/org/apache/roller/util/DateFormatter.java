@@ -0,0 +1,782 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.util;
+
+import java.io.IOException;
+import java.text.DecimalFormatSymbols;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Thread safe date format for one SimpleDateFormat pattern, locale and time
+ * zone.  Instances are immutable and cached, so get them from
+ * {@link #getInstance(String, Locale, TimeZone)} rather than keeping them.
+ *
+ * Patterns made of numbers, and of US English names, are written straight
+ * into an Appendable without allocating.  Other patterns use a
+ * DateTimeFormatter, except where java.time would format them differently
+ * than SimpleDateFormat does (eras, week fields, locales with their own
+ * calendar or digits, and dates before 1900), which are still formatted by
+ * a shared SimpleDateFormat.  Parsing is lenient, the same as
+ * SimpleDateFormat.
+ */
+public final class DateFormatter {
+
+    // compiled patterns are cached by locale and pattern, and dropped
+    // all together if templates use more patterns than this
+    private static final int MAX_PATTERNS = 500;
+
+    // a day into 1900, before which TimeZone has no local mean time and
+    // SimpleDateFormat ends up in the Julian calendar, unlike java.time
+    private static final long YEAR_1900 = -2208902400000L;
+
+    // a day before 10000-01-01, after which yyyy gets a sign in java.time
+    private static final long YEAR_10000 = 253402214400000L;
+
+    private static final long MILLIS_IN_DAY = 86400000L;
+
+    private static final int[] DAYS_BEFORE_MONTH = {
+        0, 31, 59, 90, 120, 151, 181, 212, 243, 273, 304, 334 };
+
+    private static final String[] MONTHS = {
+        "January", "February", "March", "April", "May", "June", "July",
+        "August", "September", "October", "November", "December" };
+
+    private static final String[] SHORT_MONTHS = {
+        "Jan", "Feb", "Mar", "Apr", "May", "Jun",
+        "Jul", "Aug", "Sep", "Oct", "Nov", "Dec" };
+
+    private static final String[] DAYS = {
+        "Sunday", "Monday", "Tuesday", "Wednesday", "Thursday", "Friday", "Saturday" };
+
+    private static final String[] SHORT_DAYS = {
+        "Sun", "Mon", "Tue", "Wed", "Thu", "Fri", "Sat" };
+
+    private static final ConcurrentMap<Locale, ConcurrentMap<String, Compiled>> patterns =
+            new ConcurrentHashMap<>();
+    private static final AtomicInteger patternCount = new AtomicInteger();
+
+    // http://www.w3.org/Protocols/rfc822/Overview.html#z28
+    // Using Locale.US to fix ROL-725 and ROL-628
+    private static final Compiled RFC_822 =
+            Compiled.compile("EEE, d MMM yyyy HH:mm:ss Z", Locale.US);
+
+    // like yyyy-MM-dd'T'HH:mm:ssZ, with a colon in the offset
+    private static final Compiled ISO_8601 = Compiled.iso8601();
+
+    private final Compiled compiled;
+    private final TimeZone zone;
+    private final DateTimeFormatter formatter;
+    private final SimpleDateFormat legacy;
+
+
+    private DateFormatter(Compiled compiled, TimeZone zone) {
+        this.compiled = compiled;
+        this.zone = (TimeZone) zone.clone();
+        this.formatter = (compiled.formatter != null)
+                ? compiled.formatter.withZone(zone.toZoneId()) : null;
+        if (compiled.legacy) {
+            legacy = new SimpleDateFormat(compiled.pattern, compiled.locale);
+            legacy.setTimeZone(this.zone);
+        } else {
+            legacy = null;
+        }
+    }
+
+
+    /**
+     * Get the format for a SimpleDateFormat pattern.
+     *
+     * @param locale locale for names and calendar, or null for the default
+     * @param zone time zone, or null for the default
+     * @throws IllegalArgumentException if the pattern is invalid
+     */
+    public static DateFormatter getInstance(String pattern, Locale locale, TimeZone zone) {
+
+        if (locale == null) {
+            locale = Locale.getDefault(Locale.Category.FORMAT);
+        }
+
+        ConcurrentMap<String, Compiled> localePatterns = patterns.get(locale);
+        if (localePatterns == null) {
+            localePatterns = patterns.computeIfAbsent(locale, k -> new ConcurrentHashMap<>());
+        }
+
+        Compiled compiled = localePatterns.get(pattern);
+        if (compiled == null) {
+            if (patternCount.incrementAndGet() > MAX_PATTERNS) {
+                patterns.clear();
+                patternCount.set(1);
+            }
+            compiled = Compiled.compile(pattern, locale);
+            Compiled existing = localePatterns.putIfAbsent(pattern, compiled);
+            if (existing != null) {
+                compiled = existing;
+            }
+        }
+
+        return compiled.forZone(zone);
+    }
+
+
+    /**
+     * Get the RFC 822 format used by feeds, EEE, d MMM yyyy HH:mm:ss Z in US
+     * English.
+     */
+    public static DateFormatter getRfc822(TimeZone zone) {
+        return RFC_822.forZone(zone);
+    }
+
+
+    /**
+     * Get the ISO 8601 format, yyyy-MM-dd'T'HH:mm:ss followed by the offset
+     * as +HH:MM, which is +00:00 rather than Z for UTC.
+     */
+    public static DateFormatter getIso8601(TimeZone zone) {
+        return ISO_8601.forZone(zone);
+    }
+
+
+    public String getPattern() {
+        return compiled.pattern;
+    }
+
+
+    public Locale getLocale() {
+        return compiled.locale;
+    }
+
+
+    public TimeZone getTimeZone() {
+        return (TimeZone) zone.clone();
+    }
+
+
+    /**
+     * Format a date, or return an empty string if the date is null.
+     */
+    public String format(Date date) {
+        if (date == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(compiled.length);
+        try {
+            formatTo(date.getTime(), sb);
+        } catch (IOException e) {
+            // StringBuilder doesn't throw
+            throw new IllegalStateException(e);
+        }
+        return sb.toString();
+    }
+
+
+    /**
+     * Write a formatted date, nothing is written if the date is null.
+     */
+    public void formatTo(Date date, Appendable out) throws IOException {
+        if (date != null) {
+            formatTo(date.getTime(), out);
+        }
+    }
+
+
+    /**
+     * Write a formatted date given in milliseconds since the epoch.
+     */
+    public void formatTo(long millis, Appendable out) throws IOException {
+
+        if (compiled.fast && printFast(millis, out)) {
+            return;
+        }
+
+        if (legacy != null && (formatter == null
+                || millis < YEAR_1900 || millis >= YEAR_10000)) {
+            String text;
+            synchronized (legacy) {
+                text = legacy.format(new Date(millis));
+            }
+            out.append(text);
+            return;
+        }
+
+        formatter.formatTo(Instant.ofEpochMilli(millis), out);
+    }
+
+
+    /**
+     * Parse a date from the start of the value, leniently as SimpleDateFormat
+     * does.
+     *
+     * @throws ParseException if the start of the value doesn't match
+     */
+    public Date parse(String value) throws ParseException {
+
+        if (compiled.fastParse) {
+            Date date = parseFast(value);
+            if (date != null) {
+                return date;
+            }
+        }
+
+        if (legacy != null) {
+            synchronized (legacy) {
+                return legacy.parse(value);
+            }
+        }
+
+        try {
+            return Date.from(formatter.parse(value, Instant::from));
+        } catch (DateTimeParseException e) {
+            throw new ParseException(e.getMessage(), e.getErrorIndex());
+        }
+    }
+
+
+    /**
+     * Print numbers and English names without allocating, returns false
+     * without printing anything for dates SimpleDateFormat handles
+     * differently.
+     */
+    private boolean printFast(long millis, Appendable out) throws IOException {
+
+        if (millis < YEAR_1900) {
+            return false;
+        }
+
+        int offset = zone.getOffset(millis);
+        long local = millis + offset;
+        long epochDay = Math.floorDiv(local, MILLIS_IN_DAY);
+        int millisOfDay = (int) Math.floorMod(local, MILLIS_IN_DAY);
+
+        // civil date from the day count, March based so leap days come last
+        long shifted = epochDay + 719468;
+        long era = Math.floorDiv(shifted, 146097);
+        int dayOfEra = (int) (shifted - era * 146097);
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfMarchYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int marchMonth = (5 * dayOfMarchYear + 2) / 153;
+        int day = dayOfMarchYear - (153 * marchMonth + 2) / 5 + 1;
+        int month = marchMonth < 10 ? marchMonth + 3 : marchMonth - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        if (year > 9999) {
+            return false;
+        }
+
+        int hour = millisOfDay / 3600000;
+        int dayOfWeek = Math.floorMod(epochDay + 4, 7);
+        boolean leap = (year % 4 == 0) && (year % 100 != 0 || year % 400 == 0);
+        int dayOfYear = DAYS_BEFORE_MONTH[month - 1] + day + (leap && month > 2 ? 1 : 0);
+
+        for (Token token : compiled.tokens) {
+            int count = token.count;
+            switch (token.letter) {
+                case 0:
+                    out.append(token.literal);
+                    break;
+                case 'y':
+                    if (count == 2) {
+                        appendNumber(out, year % 100, 2);
+                    } else {
+                        appendNumber(out, year, count);
+                    }
+                    break;
+                case 'M':
+                case 'L':
+                    if (count >= 4) {
+                        out.append(MONTHS[month - 1]);
+                    } else if (count == 3) {
+                        out.append(SHORT_MONTHS[month - 1]);
+                    } else {
+                        appendNumber(out, month, count);
+                    }
+                    break;
+                case 'd':
+                    appendNumber(out, day, count);
+                    break;
+                case 'D':
+                    appendNumber(out, dayOfYear, count);
+                    break;
+                case 'E':
+                    out.append(count >= 4 ? DAYS[dayOfWeek] : SHORT_DAYS[dayOfWeek]);
+                    break;
+                case 'a':
+                    out.append(hour < 12 ? "AM" : "PM");
+                    break;
+                case 'H':
+                    appendNumber(out, hour, count);
+                    break;
+                case 'k':
+                    appendNumber(out, hour == 0 ? 24 : hour, count);
+                    break;
+                case 'K':
+                    appendNumber(out, hour % 12, count);
+                    break;
+                case 'h':
+                    appendNumber(out, hour % 12 == 0 ? 12 : hour % 12, count);
+                    break;
+                case 'm':
+                    appendNumber(out, millisOfDay / 60000 % 60, count);
+                    break;
+                case 's':
+                    appendNumber(out, millisOfDay / 1000 % 60, count);
+                    break;
+                case 'S':
+                    appendNumber(out, millisOfDay % 1000, count);
+                    break;
+                case 'Z':
+                    appendOffset(out, offset, 4, false);
+                    break;
+                case 'X':
+                    if (offset / 60000 == 0) {
+                        out.append('Z');
+                    } else {
+                        appendOffset(out, offset, count == 1 ? 2 : 4, count == 3);
+                    }
+                    break;
+                case 'x':
+                    appendOffset(out, offset, 4, true);
+                    break;
+                default:
+                    throw new IllegalStateException("no fast path for " + token.letter);
+            }
+        }
+        return true;
+    }
+
+
+    // zero padded, the same as SimpleDateFormat pads numbers to the pattern
+    private static void appendNumber(Appendable out, long value, int width) throws IOException {
+        long divisor = 1;
+        int digits = 1;
+        while (value / divisor >= 10) {
+            divisor *= 10;
+            digits++;
+        }
+        for (int i = digits; i < width; i++) {
+            out.append('0');
+        }
+        for (; divisor > 0; divisor /= 10) {
+            out.append((char) ('0' + value / divisor % 10));
+        }
+    }
+
+
+    // +HH, +HHMM or +HH:MM, seconds are left out as SimpleDateFormat does
+    private static void appendOffset(Appendable out, int offset, int digits, boolean colon)
+            throws IOException {
+        int minutes = offset / 60000;
+        if (minutes < 0) {
+            out.append('-');
+            minutes = -minutes;
+        } else {
+            out.append('+');
+        }
+        appendNumber(out, minutes / 60, 2);
+        if (digits == 4) {
+            if (colon) {
+                out.append(':');
+            }
+            appendNumber(out, minutes % 60, 2);
+        }
+    }
+
+
+    /**
+     * Parse numbers, returns null for dates SimpleDateFormat handles
+     * differently.
+     */
+    private Date parseFast(String value) throws ParseException {
+
+        int year = 1970;
+        int month = 1;
+        int day = 1;
+        int hour = 0;
+        int minute = 0;
+        int second = 0;
+        int millis = 0;
+
+        Token[] tokens = compiled.tokens;
+        int pos = 0;
+        for (int i = 0; i < tokens.length; i++) {
+            Token token = tokens[i];
+            if (token.letter == 0) {
+                if (!value.startsWith(token.literal, pos)) {
+                    throw new ParseException("Unparseable date: \"" + value + "\"", pos);
+                }
+                pos += token.literal.length();
+                continue;
+            }
+
+            // numbers next to each other take the width of their pattern
+            int end = value.length();
+            if (i + 1 < tokens.length && tokens[i + 1].letter != 0) {
+                end = Math.min(end, pos + token.count);
+            }
+            int start = pos;
+            int number = 0;
+            while (pos < end && pos - start < 9 && Character.isDigit(value.charAt(pos))) {
+                number = number * 10 + Character.digit(value.charAt(pos), 10);
+                pos++;
+            }
+            if (pos == start) {
+                throw new ParseException("Unparseable date: \"" + value + "\"", pos);
+            }
+
+            switch (token.letter) {
+                case 'y':
+                    year = number;
+                    break;
+                case 'M':
+                    month = number;
+                    break;
+                case 'd':
+                    day = number;
+                    break;
+                case 'H':
+                    hour = number;
+                    break;
+                case 'm':
+                    minute = number;
+                    break;
+                case 's':
+                    second = number;
+                    break;
+                case 'S':
+                    millis = number;
+                    break;
+                default:
+                    throw new IllegalStateException("no fast path for " + token.letter);
+            }
+        }
+
+        if (year <= 1900) {
+            return null;
+        }
+
+        try {
+            // out of range fields roll over, as they do in a lenient Calendar
+            LocalDateTime time = LocalDate.of(year, 1, 1)
+                    .plusMonths(month - 1L).plusDays(day - 1L).atStartOfDay()
+                    .plusHours(hour).plusMinutes(minute).plusSeconds(second)
+                    .plusNanos(millis * 1000000L);
+            ZoneId zoneId = zone.toZoneId();
+            return Date.from(ZonedDateTime.ofLocal(time, zoneId, null)
+                    .withLaterOffsetAtOverlap().toInstant());
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+
+
+    /**
+     * A pattern compiled for one locale, with its formats for each time zone.
+     */
+    private static final class Compiled {
+
+        private final String pattern;
+        private final Locale locale;
+        private final Token[] tokens;
+        private final int length;
+        private final boolean fast;
+        private final boolean fastParse;
+        private final DateTimeFormatter formatter;
+        private final boolean legacy;
+        private final ConcurrentMap<String, DateFormatter> zones = new ConcurrentHashMap<>();
+
+
+        private Compiled(String pattern, Locale locale, Token[] tokens, boolean fast,
+                boolean fastParse, DateTimeFormatter formatter, boolean legacy) {
+            this.pattern = pattern;
+            this.locale = locale;
+            this.tokens = tokens;
+            this.fast = fast;
+            this.fastParse = fastParse;
+            this.formatter = formatter;
+            this.legacy = legacy;
+            this.length = Math.max(16, pattern.length() + 16);
+        }
+
+
+        static Compiled compile(String pattern, Locale locale) {
+
+            // throws for the same patterns SimpleDateFormat does
+            new SimpleDateFormat(pattern, locale);
+
+            Token[] tokens = tokenize(pattern);
+
+            // java.time and the fast path only know Gregorian dates in ASCII digits
+            boolean plain = "gregory".equals(Calendar.getInstance(locale).getCalendarType())
+                    && DecimalFormatSymbols.getInstance(locale).getZeroDigit() == '0';
+            boolean english = Locale.US.equals(locale) || Locale.ENGLISH.equals(locale);
+
+            boolean fast = plain;
+            boolean fastParse = plain;
+            for (Token token : tokens) {
+                fast &= token.isFast(english);
+                fastParse &= token.isFastParse();
+            }
+
+            DateTimeFormatter formatter = null;
+            if (plain && !fast) {
+                String converted = toDateTimePattern(tokens);
+                if (converted != null) {
+                    formatter = DateTimeFormatter.ofPattern(converted, locale);
+                }
+            }
+
+            return new Compiled(pattern, locale, tokens, fast, fastParse, formatter, true);
+        }
+
+
+        static Compiled iso8601() {
+            String pattern = "yyyy-MM-dd'T'HH:mm:ssxxx";
+            List<Token> tokens = new ArrayList<>(List.of(tokenize("yyyy-MM-dd'T'HH:mm:ss")));
+            tokens.add(new Token('x', 3, null));
+            return new Compiled(pattern, Locale.US, tokens.toArray(new Token[0]), true, false,
+                    DateTimeFormatter.ofPattern(pattern, Locale.US), false);
+        }
+
+
+        DateFormatter forZone(TimeZone zone) {
+            if (zone == null) {
+                zone = TimeZone.getDefault();
+            }
+            DateFormatter formatter = zones.get(zone.getID());
+            if (formatter == null) {
+                TimeZone tz = zone;
+                formatter = zones.computeIfAbsent(zone.getID(), k -> new DateFormatter(this, tz));
+            }
+            return formatter;
+        }
+    }
+
+
+    /**
+     * Split a SimpleDateFormat pattern into fields and literal text.
+     */
+    private static Token[] tokenize(String pattern) {
+
+        List<Token> tokens = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < pattern.length()) {
+            char c = pattern.charAt(i);
+            if (c == '\'') {
+                if (i + 1 < pattern.length() && pattern.charAt(i + 1) == '\'') {
+                    literal.append('\'');
+                    i += 2;
+                    continue;
+                }
+                // quoted text, where '' is a quote
+                i++;
+                while (i < pattern.length()) {
+                    if (pattern.charAt(i) == '\'') {
+                        if (i + 1 < pattern.length() && pattern.charAt(i + 1) == '\'') {
+                            literal.append('\'');
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    literal.append(pattern.charAt(i++));
+                }
+                i++;
+            } else if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+                if (literal.length() > 0) {
+                    tokens.add(new Token((char) 0, 0, literal.toString()));
+                    literal.setLength(0);
+                }
+                int start = i;
+                while (i < pattern.length() && pattern.charAt(i) == c) {
+                    i++;
+                }
+                tokens.add(new Token(c, i - start, null));
+            } else {
+                literal.append(c);
+                i++;
+            }
+        }
+        if (literal.length() > 0) {
+            tokens.add(new Token((char) 0, 0, literal.toString()));
+        }
+        return tokens.toArray(new Token[0]);
+    }
+
+
+    /**
+     * Convert to a DateTimeFormatter pattern which formats the same, or
+     * return null if java.time has no equivalent.
+     */
+    private static String toDateTimePattern(Token[] tokens) {
+
+        int fields = 0;
+        for (Token token : tokens) {
+            if (token.letter != 0) {
+                fields++;
+            }
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (Token token : tokens) {
+            char letter = token.letter;
+            int count = token.count;
+            int max;
+            switch (letter) {
+                case 0:
+                    sb.append('\'').append(token.literal.replace("'", "''")).append('\'');
+                    continue;
+                case 'y':
+                    max = 19;
+                    break;
+                case 'M':
+                    // on its own SimpleDateFormat uses the standalone month name
+                    if (fields == 1 && count >= 3) {
+                        letter = 'L';
+                    }
+                    max = 4;
+                    break;
+                case 'L':
+                case 'E':
+                case 'z':
+                    max = 4;
+                    break;
+                case 'D':
+                case 'Z':
+                case 'X':
+                    max = 3;
+                    break;
+                case 'd':
+                case 'H':
+                case 'k':
+                case 'K':
+                case 'h':
+                case 'm':
+                case 's':
+                    max = 2;
+                    break;
+                case 'a':
+                    max = 1;
+                    break;
+                case 'S':
+                    // milliseconds, rather than a fraction of the second
+                    if (count != 3) {
+                        return null;
+                    }
+                    max = 3;
+                    break;
+                default:
+                    // week fields, and letters java.time reads differently
+                    return null;
+            }
+            if (count > max) {
+                return null;
+            }
+            for (int i = 0; i < count; i++) {
+                sb.append(letter);
+            }
+        }
+        return sb.toString();
+    }
+
+
+    /**
+     * A field of a pattern, or literal text when the letter is 0.
+     */
+    private static final class Token {
+
+        private final char letter;
+        private final int count;
+        private final String literal;
+
+
+        Token(char letter, int count, String literal) {
+            this.letter = letter;
+            this.count = count;
+            this.literal = literal;
+        }
+
+
+        boolean isFast(boolean english) {
+            switch (letter) {
+                case 0:
+                case 'y':
+                case 'd':
+                case 'D':
+                case 'H':
+                case 'k':
+                case 'K':
+                case 'h':
+                case 'm':
+                case 's':
+                case 'S':
+                case 'Z':
+                case 'X':
+                    return true;
+                case 'M':
+                    return count <= 2 || english;
+                case 'L':
+                    return count <= 2;
+                case 'E':
+                case 'a':
+                    return english;
+                default:
+                    return false;
+            }
+        }
+
+
+        boolean isFastParse() {
+            switch (letter) {
+                case 0:
+                case 'd':
+                case 'H':
+                case 'm':
+                case 's':
+                case 'S':
+                    return true;
+                case 'y':
+                    // two digit years are read relative to the current century
+                    return count != 2;
+                case 'M':
+                    return count <= 2;
+                default:
+                    return false;
+            }
+        }
+    }
+
+}
@@ -19,7 +19,6 @@
 package org.apache.roller.util;
 
 import java.text.ParseException;
-import java.text.ParsePosition;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
@@ -31,6 +30,10 @@ import org.apache.commons.lang3.StringUtils;
 /**
  * General purpose date utilities.
  *
+ * The String returning methods use cached formats from {@link DateFormatter}
+ * in the default locale and time zone, the SimpleDateFormat returning ones
+ * create a new format on each call.
+ *
  * TODO: all date handling functions need to be aware of locale and timezone.
  */
 public abstract class DateUtil {
@@ -44,8 +47,8 @@ public abstract class DateUtil {
     
     private static final String FORMAT_FRIENDLY_TIMESTAMP = "dd.MM.yyyy HH:mm:ss";
     
-    private static final String FORMAT_6CHARS = "yyyyMM";
-    private static final String FORMAT_8CHARS = "yyyyMMdd";
+    public static final String FORMAT_6CHARS = "yyyyMM";
+    public static final String FORMAT_8CHARS = "yyyyMMdd";
     
     private static final String FORMAT_ISO_8601 = "yyyy-MM-dd'T'HH:mm:ssZ";
     private static final String FORMAT_ISO_8601_DAY = "yyyy-MM-dd";
@@ -314,6 +317,19 @@ public abstract class DateUtil {
     }
     
     
+    /**
+     * Returns a Date parsed from the passed-in string using the pattern in the
+     * default locale and time zone.  Returns null if the string is null or
+     * empty.  The string must match the pattern.
+     **/
+    public static Date parse(String aValue, String pattern) throws ParseException {
+        if (StringUtils.isEmpty(aValue)) {
+            return null;
+        }
+        return getFormatter(pattern, TimeZone.getDefault()).parse(aValue);
+    }
+    
+    
     /**
      * Returns true if endDate is after startDate or if startDate equals endDate
      * or if they are the same date.  Returns false if either value is null.
@@ -378,6 +394,12 @@ public abstract class DateUtil {
     }
     
     
+    // cached format for a pattern in the default locale
+    private static DateFormatter getFormatter(String pattern, TimeZone tz) {
+        return DateFormatter.getInstance(pattern, null, tz);
+    }
+    
+    
     // returns full timestamp format
     public static SimpleDateFormat defaultTimestampFormat() {
         return new SimpleDateFormat(FORMAT_DEFAULT_TIMESTAMP);
@@ -424,18 +446,18 @@ public abstract class DateUtil {
     
     // convenience method
     public static String defaultDate(Date date) {
-        return format(date, defaultDateFormat());
+        return minimalDate(date);
     }
     
     
     // convenience method using minimal date format
     public static String minimalDate(Date date) {
-        return format(date, DateUtil.minimalDateFormat());
+        return getFormatter(FORMAT_DEFAULT_DATE_MINIMAL, null).format(date);
     }
     
     
     public static String fullDate(Date date) {
-        return format(date, DateUtil.fullDateFormat());
+        return getFormatter(FORMAT_DEFAULT_DATE, null).format(date);
     }
     
     
@@ -443,78 +465,71 @@ public abstract class DateUtil {
      * Format the date using the "friendly" date format.
      */
     public static String friendlyDate(Date date, boolean minimalFormat) {
-        return format(date, friendlyDateFormat(minimalFormat));
+        return minimalFormat ? minimalDate(date) : fullDate(date);
     }
     
     
     // convenience method
     public static String friendlyDate(Date date) {
-        return format(date, friendlyDateFormat(true));
+        return minimalDate(date);
     }
     
     
     // convenience method
     public static String defaultTimestamp(Date date) {
-        return format(date, defaultTimestampFormat());
+        return getFormatter(FORMAT_DEFAULT_TIMESTAMP, null).format(date);
     }
     
     
     // convenience method returns long friendly formatted timestamp
     public static String friendlyTimestamp(Date date) {
-        return format(date, friendlyTimestampFormat());
+        return getFormatter(FORMAT_FRIENDLY_TIMESTAMP, null).format(date);
     }
     
     
     // convenience method returns 8 char day stamp YYYYMMDD
     public static String format8chars(Date date) {
-        return format(date, get8charDateFormat());
+        return format8chars(date, null);
     }
 
     // convenience method returns 8 char day stamp YYYYMMDD using time zone
     public static String format8chars(Date date, TimeZone tz) {
-        SimpleDateFormat formatter = get8charDateFormat();
-        formatter.setTimeZone(tz);
-        return format(date, formatter);
+        return getFormatter(FORMAT_8CHARS, tz).format(date);
+    }
+
+    // 8 char day stamp YYYYMMDD in the calendar of the locale
+    public static String format8chars(Date date, TimeZone tz, Locale locale) {
+        return DateFormatter.getInstance(FORMAT_8CHARS, locale, tz).format(date);
     }
 
     // convenience method returns 6 char month stamp YYYYMM
     public static String format6chars(Date date) {
-        return format(date, get6charDateFormat());
+        return format6chars(date, null);
     }
 
     // convenience method returns 6 char month stamp YYYYMM using time zone
     public static String format6chars(Date date, TimeZone tz) {
-        SimpleDateFormat formatter = get6charDateFormat();
-        formatter.setTimeZone(tz);
-        return format(date, formatter);
+        return getFormatter(FORMAT_6CHARS, tz).format(date);
+    }
+
+    // 6 char month stamp YYYYMM in the calendar of the locale
+    public static String format6chars(Date date, TimeZone tz, Locale locale) {
+        return DateFormatter.getInstance(FORMAT_6CHARS, locale, tz).format(date);
     }
 
     // convenience method returns long friendly formatted timestamp
     public static String formatIso8601Day(Date date) {
-        return format(date, getIso8601DayDateFormat());
+        return getFormatter(FORMAT_ISO_8601_DAY, null).format(date);
     }
     
     
     public static String formatRfc822(Date date) {
-        return format(date, getRfc822DateFormat());
+        return DateFormatter.getRfc822(null).format(date);
     }
     
     
-    // This is a hack, but it seems to work
     public static String formatIso8601(Date date) {
-        if (date == null) {
-            return "";
-        }
-        
-        // Add a colon 2 chars before the end of the string
-        // to make it a valid ISO-8601 date.
-        
-        String str = format(date, getIso8601DateFormat());
-        StringBuilder sb = new StringBuilder();
-        sb.append( str.substring(0,str.length()-2) );
-        sb.append( ":" );
-        sb.append( str.substring(str.length()-2) );
-        return sb.toString();
+        return DateFormatter.getIso8601(null).format(date);
     }
     
     
@@ -529,34 +544,27 @@ public abstract class DateUtil {
     public static Date parseWeblogURLDateString(String dateString, TimeZone tz, Locale locale) {
         
         Date ret = new Date();
-        SimpleDateFormat char8DateFormat = DateUtil.get8charDateFormat();
-        SimpleDateFormat char6DateFormat = DateUtil.get6charDateFormat();
+        String pattern = null;
         
         if (dateString != null
                 && dateString.length()==8
                 && StringUtils.isNumeric(dateString) ) {
-            ParsePosition pos = new ParsePosition(0);
-            ret = char8DateFormat.parse(dateString, pos);
-            
-            // make sure the requested date is not in the future
-            Date today = null;
-            Calendar todayCal = Calendar.getInstance();
-            todayCal = Calendar.getInstance(tz, locale);
-            todayCal.setTime(new Date());
-            today = todayCal.getTime();
-            if(ret.after(today)) {
-                ret = today;
-            }
-            
+            pattern = FORMAT_8CHARS;
         } else if(dateString != null
                 && dateString.length()==6
                 && StringUtils.isNumeric(dateString)) {
-            ParsePosition pos = new ParsePosition(0);
-            ret = char6DateFormat.parse(dateString, pos);
+            pattern = FORMAT_6CHARS;
+        }
+        
+        if (pattern != null) {
+            try {
+                ret = getFormatter(pattern, TimeZone.getDefault()).parse(dateString);
+            } catch (ParseException e) {
+                return ret;
+            }
             
             // make sure the requested date is not in the future
-            Calendar todayCal = Calendar.getInstance();
-            todayCal = Calendar.getInstance(tz, locale);
+            Calendar todayCal = Calendar.getInstance(tz, locale);
             todayCal.setTime(new Date());
             Date today = todayCal.getTime();
             if(ret.after(today)) {
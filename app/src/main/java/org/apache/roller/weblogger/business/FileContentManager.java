@@ -59,6 +59,50 @@ public interface FileContentManager {
             InputStream is)
             throws FileNotFoundException, FilePathException, FileIOException;
 
+    /**
+     * Save content of unknown length streamed from a client to weblog's
+     * uploads area.
+     * 
+     * The content goes straight to its final location.  Whether uploads are
+     * enabled and the file type is allowed are checked first, and the file
+     * size limit and the weblog's quota as content is read, so that an
+     * upload which is too large is abandoned as soon as it's known to be.
+     * 
+     * @param weblog The weblog we are working on.
+     * @param fileId file identifier from database.
+     * @param fileName name of the file, to check its type.
+     * @param contentType content type of the file.
+     * @param is InputStream to read the file from.
+     * @param messages output parameter for adding messages.
+     * @return What was saved, or null if the file can't be saved.
+     *
+     * @throws FileNotFoundException If path to save location does not exist.
+     * @throws FilePathException If path is invalid, is not a directory, or can't be read.
+     * @throws FileIOException If there is an unexpected error during the save.
+     */
+    StoredFileContent saveFileContent(Weblog weblog,
+            String fileId,
+            String fileName,
+            String contentType,
+            InputStream is,
+            RollerMessages messages)
+            throws FileNotFoundException, FilePathException, FileIOException;
+
+    /**
+     * Make a file's content the same as that of another file of the weblog,
+     * sharing storage between them where the file system allows.
+     * 
+     * @param weblog The weblog we are working on.
+     * @param fileId file identifier of the file to save.
+     * @param sourceId file identifier of the file to take the content of.
+     *
+     * @throws FileNotFoundException If the source file does not exist.
+     * @throws FilePathException If path is invalid, or can't be read.
+     * @throws FileIOException If there is an unexpected error during the save.
+     */
+    void shareFileContent(Weblog weblog, String fileId, String sourceId)
+            throws FileNotFoundException, FilePathException, FileIOException;
+
     /**
      * Delete file content from weblog's uploads area.
      * 
@@ -25,7 +25,13 @@ import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.stream.Stream;
 
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -34,6 +40,7 @@ import org.apache.roller.weblogger.config.WebloggerConfig;
 import org.apache.roller.weblogger.config.WebloggerRuntimeConfig;
 import org.apache.roller.weblogger.pojos.FileContent;
 import org.apache.roller.weblogger.pojos.Weblog;
+import org.apache.roller.weblogger.util.ImageHeaders;
 import org.apache.roller.weblogger.util.RollerMessages;
 
 /**
@@ -108,18 +115,161 @@ public class FileContentManagerImpl implements FileContentManager {
         // make sure uploads area exists for this weblog
         File dirPath = this.getRealFile(weblog, null);
 
-        // create File that we are about to save
+        // create File that we are about to save, replacing rather than
+        // overwriting it as its storage may be shared with other files
         Path saveFile = Path.of(dirPath.getAbsolutePath(), fileId);
 
-        try (OutputStream os = Files.newOutputStream(saveFile)) {
-            is.transferTo(os);
+        Path tempFile = null;
+        try {
+            tempFile = Files.createTempFile(dirPath.toPath(), fileId, ".upload");
+            try (OutputStream os = Files.newOutputStream(tempFile)) {
+                is.transferTo(os);
+            }
+            Files.move(tempFile, saveFile, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            tempFile = null;
             log.debug("The file has been written to ["+saveFile+"]");
         } catch (IOException e) {
             throw new FileIOException("ERROR uploading file", e);
+        } finally {
+            deleteQuietly(tempFile);
         }
 
     }
 
+    /**
+     * @see org.apache.roller.weblogger.business.FileContentManager#saveFileContent(Weblog,
+     *      String, String, String, java.io.InputStream, RollerMessages)
+     */
+    @Override
+    public StoredFileContent saveFileContent(Weblog weblog, String fileId,
+            String fileName, String contentType, InputStream is,
+            RollerMessages messages)
+            throws FileNotFoundException, FilePathException, FileIOException {
+
+        checkFileName(fileId);
+
+        // checks which don't depend on the size of the file
+        if (!WebloggerRuntimeConfig.getBooleanProperty("uploads.enabled")) {
+            messages.addError("error.upload.disabled");
+            return null;
+        }
+        if (!isAllowedType(fileName, contentType)) {
+            String[] args = { fileName, contentType };
+            messages.addError("error.upload.forbiddenFile", args);
+            return null;
+        }
+
+        // make sure uploads area exists for this weblog
+        File dirPath = this.getRealFile(weblog, null);
+
+        BigDecimal maxFileMB = new BigDecimal(
+                WebloggerRuntimeConfig.getProperty("uploads.file.maxsize"));
+        BigDecimal maxDirMB = new BigDecimal(
+                WebloggerRuntimeConfig.getProperty("uploads.dir.maxsize"));
+        long maxFileBytes = (long) (RollerConstants.ONE_MB_IN_BYTES * maxFileMB.doubleValue());
+        long quotaBytes = (long) (RollerConstants.ONE_MB_IN_BYTES * maxDirMB.doubleValue())
+                - getDirSize(dirPath, true);
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] header = new byte[ImageHeaders.HEADER_BYTES];
+        int headerLength = 0;
+        long length = 0;
+
+        // write next to the file, so that it's only renamed once complete
+        Path saveFile = Path.of(dirPath.getAbsolutePath(), fileId);
+        Path tempFile = null;
+        try {
+            tempFile = Files.createTempFile(dirPath.toPath(), fileId, ".upload");
+            try (OutputStream os = Files.newOutputStream(tempFile)) {
+                byte[] buffer = new byte[RollerConstants.EIGHT_KB_IN_BYTES * 8];
+                int n;
+                while ((n = is.read(buffer)) != -1) {
+                    length += n;
+                    if (length > maxFileBytes) {
+                        String[] args = { fileName, maxFileMB.toString() };
+                        messages.addError("error.upload.filemax", args);
+                        return null;
+                    }
+                    if (length > quotaBytes) {
+                        messages.addError("error.upload.dirmax", maxDirMB.toString());
+                        return null;
+                    }
+                    digest.update(buffer, 0, n);
+                    if (headerLength < header.length) {
+                        int count = Math.min(n, header.length - headerLength);
+                        System.arraycopy(buffer, 0, header, headerLength, count);
+                        headerLength += count;
+                    }
+                    os.write(buffer, 0, n);
+                }
+            }
+            Files.move(tempFile, saveFile, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            tempFile = null;
+            log.debug("The file has been written to [" + saveFile + "]");
+        } catch (IOException e) {
+            throw new FileIOException("ERROR uploading file", e);
+        } finally {
+            deleteQuietly(tempFile);
+        }
+
+        int[] dimensions = null;
+        if (contentType.startsWith("image/")) {
+            dimensions = ImageHeaders.getDimensions(header, headerLength);
+        }
+        return new StoredFileContent(length, Hex.encodeHexString(digest.digest()),
+                dimensions != null ? dimensions[0] : -1,
+                dimensions != null ? dimensions[1] : -1);
+    }
+
+    /**
+     * @see org.apache.roller.weblogger.business.FileContentManager#shareFileContent(Weblog,
+     *      String, String)
+     */
+    @Override
+    public void shareFileContent(Weblog weblog, String fileId, String sourceId)
+            throws FileNotFoundException, FilePathException, FileIOException {
+
+        checkFileName(fileId);
+        Path source = this.getRealFile(weblog, sourceId).toPath();
+        Path saveFile = source.resolveSibling(fileId);
+
+        Path tempFile = null;
+        try {
+            tempFile = Files.createTempFile(source.getParent(), fileId, ".upload");
+            Files.delete(tempFile);
+            try {
+                Files.createLink(tempFile, source);
+            } catch (IOException | UnsupportedOperationException e) {
+                log.debug("Can't link to [" + source + "], copying it", e);
+                Files.copy(source, tempFile);
+            }
+            Files.move(tempFile, saveFile, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            tempFile = null;
+        } catch (IOException e) {
+            throw new FileIOException("ERROR sharing file [" + sourceId + "]", e);
+        } finally {
+            deleteQuietly(tempFile);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file != null) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("Unable to delete [" + file + "]", e);
+            }
+        }
+    }
+
     /**
      * @see org.apache.roller.weblogger.business.FileContentManager#deleteFile(Weblog,
      *      String)
@@ -141,7 +291,25 @@ public class FileContentManagerImpl implements FileContentManager {
      */
     @Override
     public void deleteAllFiles(Weblog weblog) throws FileIOException {
-        // TODO: Implement
+
+        String handle = weblog.getHandle();
+        if (StringUtils.isBlank(handle) || handle.contains("..")) {
+            throw new FileIOException("Invalid weblog handle [" + handle + "]");
+        }
+
+        Path weblogDir = Path.of(this.storageDir, handle);
+        if (!Files.exists(weblogDir)) {
+            return;
+        }
+
+        // delete children before their parents
+        try (Stream<Path> paths = Files.walk(weblogDir)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        } catch (IOException ex) {
+            throw new FileIOException("Error deleting uploads of weblog [" + handle + "]", ex);
+        }
     }
 
     /**
@@ -222,6 +390,20 @@ public class FileContentManagerImpl implements FileContentManager {
         }
 
         // fourth check, is upload type allowed?
+        if (!isAllowedType(fileName, contentType)) {
+            String[] args = { fileName, contentType };
+            messages.addError("error.upload.forbiddenFile", args);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Return true if the configured allowed and forbidden types let a file
+     * be uploaded.
+     */
+    private boolean isAllowedType(String fileName, String contentType) {
         String allows = WebloggerRuntimeConfig
                 .getProperty("uploads.types.allowed");
         String forbids = WebloggerRuntimeConfig
@@ -230,13 +412,7 @@ public class FileContentManagerImpl implements FileContentManager {
                 StringUtils.deleteWhitespace(allows), ",");
         String[] forbidFiles = StringUtils.split(
                 StringUtils.deleteWhitespace(forbids), ",");
-        if (!checkFileType(allowFiles, forbidFiles, fileName, contentType)) {
-            String[] args = { fileName, contentType };
-            messages.addError("error.upload.forbiddenFile", args);
-            return false;
-        }
-
-        return true;
+        return checkFileType(allowFiles, forbidFiles, fileName, contentType);
     }
 
     /**
@@ -18,9 +18,19 @@
 
 package org.apache.roller.weblogger.business;
 
-import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.roller.util.RollerConstants;
@@ -35,8 +45,12 @@ import org.apache.roller.weblogger.pojos.Weblog;
  * Queue's up incoming hit counts so that they can be recorded to the db in
  * an asynchronous manner at give intervals.
  *
- * We also start up a single thread which runs continously to take the queued
- * hit counts, tally them, and record them into the db.
+ * Hits are tallied as they come in, into one bucket per minute holding a
+ * counter per weblog handle, so memory use depends on the number of weblogs
+ * visited rather than the number of hits.
+ *
+ * We also start up a single thread which runs continously to take the
+ * completed minute buckets and record them into the db.
  *
  * TODO: we may want to make this an interface that is pluggable if there is
  *   some indication that users want to override this implementation.
@@ -47,8 +61,18 @@ public final class HitCountQueue {
     
     private static HitCountQueue instance = null;
     
+    // bounds on the number of pages tracked for page hits
+    private static final int MAX_WEBLOGS = 10000;
+    private static final int MAX_PAGES_PER_WEBLOG = 200;
+    
     private WorkerThread worker = null;
-    private List<String> queue = null;
+    
+    // hits by the start of the minute they happened in, then weblog handle
+    private final NavigableMap<Long, Map<String, AtomicInteger>> minuteHits =
+            new ConcurrentSkipListMap<>();
+    
+    // recent hits on individual pages, by weblog handle and then page path
+    private final Map<String, Map<String, AtomicLong>> pageHits = new ConcurrentHashMap<>();
     
     
     static {
@@ -68,9 +92,6 @@ public final class HitCountQueue {
             log.warn("Invalid sleep time ["+sleep+"], using default");
         }
         
-        // create the hits queue
-        this.queue = Collections.synchronizedList(new ArrayList<String>());
-        
         // start up a worker to process the hits at intervals
         HitCountProcessingJob job = new HitCountProcessingJob();
         worker = new ContinuousWorkerThread("HitCountQueueProcessor", job, sleepTime);
@@ -85,24 +106,108 @@ public final class HitCountQueue {
     
     public void processHit(Weblog weblog) {
         
-        // if the weblog isn't null then just drop its handle in the queue
-        // each entry in the queue is a weblog handle and indicates a single hit
+        // if the weblog isn't null then count the hit in the current minute
         if(weblog != null) {
-            this.queue.add(weblog.getHandle());
+            processHit(weblog.getHandle());
         }
     }
     
     
-    public List<String> getHits() {
-        return new ArrayList<>(this.queue);
+    /**
+     * Count a hit on the weblog with the given handle in the current minute.
+     */
+    public void processHit(String weblogHandle) {
+        
+        long minute = System.currentTimeMillis() / RollerConstants.MIN_IN_MS * RollerConstants.MIN_IN_MS;
+        minuteHits.computeIfAbsent(minute, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(weblogHandle, k -> new AtomicInteger())
+                .incrementAndGet();
     }
     
     
     /**
-     * Reset the queued hits.
+     * Record a hit on a single page of a weblog.  These counts are only kept
+     * in memory and decay over time, see {@link #decayPageHits()}.
      */
-    public synchronized void resetHits() {
-        this.queue = Collections.synchronizedList(new ArrayList<String>());
+    public void processPageHit(String weblogHandle, String path) {
+        
+        if(weblogHandle == null || path == null) {
+            return;
+        }
+        
+        Map<String, AtomicLong> pages = pageHits.get(weblogHandle);
+        if(pages == null) {
+            if(pageHits.size() >= MAX_WEBLOGS) {
+                return;
+            }
+            pages = pageHits.computeIfAbsent(weblogHandle, k -> new ConcurrentHashMap<>());
+        }
+        
+        AtomicLong count = pages.get(path);
+        if(count == null) {
+            if(pages.size() >= MAX_PAGES_PER_WEBLOG) {
+                return;
+            }
+            count = pages.computeIfAbsent(path, k -> new AtomicLong());
+        }
+        count.incrementAndGet();
+    }
+    
+    
+    /**
+     * The most visited pages of a weblog, most visited first.
+     */
+    public List<String> getHotPages(String weblogHandle, int max) {
+        
+        Map<String, AtomicLong> pages = pageHits.get(weblogHandle);
+        if(pages == null) {
+            return Collections.emptyList();
+        }
+        
+        return pages.entrySet().stream()
+                .sorted(Comparator.comparingLong(
+                        (Map.Entry<String, AtomicLong> e) -> e.getValue().get()).reversed())
+                .limit(max)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+    
+    
+    /**
+     * Halve all page hit counts and forget pages which are no longer being
+     * visited, so that the hottest pages reflect recent traffic.
+     */
+    public void decayPageHits() {
+        
+        for (Iterator<Map<String, AtomicLong>> weblogs = pageHits.values().iterator(); weblogs.hasNext();) {
+            Map<String, AtomicLong> pages = weblogs.next();
+            pages.values().removeIf(count -> count.updateAndGet(c -> c / 2) == 0);
+            if(pages.isEmpty()) {
+                weblogs.remove();
+            }
+        }
+    }
+    
+    
+    /**
+     * Remove and return the minute buckets which started before the given
+     * time, keyed by the start of the minute and then by weblog handle.
+     * Buckets of minutes still in progress should be left alone, hits may
+     * still be counted in them.
+     */
+    public Map<Long, Map<String, Integer>> drainHits(long before) {
+        
+        Map<Long, Map<String, Integer>> drained = new TreeMap<>();
+        NavigableMap<Long, Map<String, AtomicInteger>> done = minuteHits.headMap(before, false);
+        for (Iterator<Map.Entry<Long, Map<String, AtomicInteger>>> it = done.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<Long, Map<String, AtomicInteger>> bucket = it.next();
+            it.remove();
+            
+            Map<String, Integer> counts = new HashMap<>();
+            bucket.getValue().forEach((handle, count) -> counts.put(handle, count.get()));
+            drained.put(bucket.getKey(), counts);
+        }
+        return drained;
     }
     
     
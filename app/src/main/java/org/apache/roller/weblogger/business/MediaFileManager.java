@@ -52,6 +52,16 @@ public interface MediaFileManager {
     void createMediaFile(Weblog weblog, MediaFile mediaFile,
             RollerMessages errors) throws WebloggerException;
 
+    /**
+     * Create a media file from content of unknown length, read from the
+     * media file's input stream straight into storage.  Length, content hash
+     * and, for images, dimensions are set from the content, and content
+     * identical to that of another media file of the weblog shares storage
+     * and thumbnail with it.
+     */
+    void createMediaFileFromStream(Weblog weblog, MediaFile mediaFile,
+            RollerMessages errors) throws WebloggerException;
+
     /**
      * Create theme media file.
      * Same as createMediaFile() except no checks are done for uploads disabled, etc.
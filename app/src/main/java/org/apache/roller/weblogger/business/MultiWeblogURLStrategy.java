@@ -21,6 +21,7 @@ package org.apache.roller.weblogger.business;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.roller.weblogger.config.WebloggerConfig;
 import org.apache.roller.weblogger.config.WebloggerRuntimeConfig;
@@ -33,9 +34,36 @@ import org.apache.roller.weblogger.util.URLUtilities;
  */
 public class MultiWeblogURLStrategy extends AbstractURLStrategy {
     
+    // upper bound on the number of weblogs with memoized url prefixes
+    private static final int MAX_CACHED_WEBLOGS = 5000;
+    
+    // weblog handle -> (absolute flag + locale) -> url prefix
+    private static final Map<String, Map<String, String>> weblogURLPrefixes =
+            new ConcurrentHashMap<>();
+    
+    
     public MultiWeblogURLStrategy() {}
     
     
+    /**
+     * Forget all memoized weblog url prefixes.  Called whenever the site
+     * context urls or the runtime config properties change.
+     */
+    public static void clearWeblogURLCache() {
+        weblogURLPrefixes.clear();
+    }
+    
+    
+    /**
+     * Forget the memoized url prefixes of a single weblog.
+     */
+    public static void invalidateWeblogURLCache(Weblog weblog) {
+        if (weblog != null && weblog.getHandle() != null) {
+            weblogURLPrefixes.remove(weblog.getHandle());
+        }
+    }
+    
+    
     /**
      * @inheritDoc
      */
@@ -47,32 +75,57 @@ public class MultiWeblogURLStrategy extends AbstractURLStrategy {
     
     /**
      * Get root url for a given weblog.  Optionally for a certain locale.
+     *
+     * The result only depends on the weblog handle, the locale and the site
+     * context urls, so it is memoized per weblog until the config changes.
      */
     @Override
     public String getWeblogURL(Weblog weblog,
                                             String locale,
                                             boolean absolute) {
 
-        StringBuilder url = new StringBuilder();
+        String handle = weblog.getHandle();
+        String key = absolute ? (locale != null ? "a:" + locale : "a")
+                              : (locale != null ? "r:" + locale : "r");
+        
+        Map<String, String> prefixes = weblogURLPrefixes.get(handle);
+        if (prefixes != null) {
+            String prefix = prefixes.get(key);
+            if (prefix != null) {
+                return prefix;
+            }
+        }
+
+        String contextURL;
         if (absolute) {
-            String weblogAbsoluteURL =
-                WebloggerConfig.getProperty("weblog.absoluteurl." + weblog.getHandle());
-            if (weblogAbsoluteURL != null) {
-                url.append(weblogAbsoluteURL);
-            } else {
-                url.append(WebloggerRuntimeConfig.getAbsoluteContextURL());
+            contextURL = WebloggerConfig.getProperty("weblog.absoluteurl." + handle);
+            if (contextURL == null) {
+                contextURL = WebloggerRuntimeConfig.getAbsoluteContextURL();
             }
         } else {
-            url.append(WebloggerRuntimeConfig.getRelativeContextURL());
+            contextURL = WebloggerRuntimeConfig.getRelativeContextURL();
         }
 
-        url.append('/').append(weblog.getHandle()).append('/');
-
+        StringBuilder url = new StringBuilder(URL_BUFFER_SIZE);
+        url.append(contextURL).append('/').append(handle).append('/');
         if (locale != null) {
             url.append(locale).append('/');
         }
+        String prefix = url.toString();
+        
+        // context urls are not known until the first request comes in, 
+        // don't remember a prefix built without one
+        if (contextURL != null) {
+            if (prefixes == null) {
+                if (weblogURLPrefixes.size() >= MAX_CACHED_WEBLOGS) {
+                    weblogURLPrefixes.clear();
+                }
+                prefixes = weblogURLPrefixes.computeIfAbsent(handle, k -> new ConcurrentHashMap<>());
+            }
+            prefixes.put(key, prefix);
+        }
 
-        return url.toString();
+        return prefix;
     }
     
     
@@ -89,13 +142,14 @@ public class MultiWeblogURLStrategy extends AbstractURLStrategy {
             return null;
         }
         
-        StringBuilder url = new StringBuilder();
-        
-        url.append(getWeblogURL(weblog, locale, absolute));
-        url.append("entry/").append(URLUtilities.encode(entryAnchor));
-        
-    return url.toString();
-}
+        return getWeblogEntryURL(getWeblogURL(weblog, locale, absolute), URLUtilities.encode(entryAnchor));
+    }
+    
+    
+    private static String getWeblogEntryURL(String weblogURL, String encodedAnchor) {
+        return new StringBuilder(weblogURL.length() + 6 + encodedAnchor.length())
+                .append(weblogURL).append("entry/").append(encodedAnchor).toString();
+    }
     
     
     /**
@@ -0,0 +1,512 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.business;
+
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.weblogger.WebloggerException;
+import org.apache.roller.weblogger.pojos.StatCount;
+
+
+/**
+ * Site wide statistics shown on the front page and the directory pages: the
+ * number of weblogs, enabled users, published entries and approved
+ * comments, weblogs and users by first letter, and the hot and most
+ * commented weblogs lists.
+ *
+ * Everything is kept in one immutable {@link Snapshot}.  It's computed from
+ * the database on first use and by the leased SiteStatisticsTask, and in
+ * between the counts are adjusted as weblogs, users, entries and comments
+ * are stored and removed.  The managers report those changes as they happen
+ * and the adjustments are held per thread until the transaction commits, so
+ * that rolled back changes are never counted.  Changes made by other cluster
+ * members are only picked up by the next refresh.
+ *
+ * The hot and most commented lists depend on a time window, so they are
+ * only ever recomputed.  Each list asked for is remembered and recomputed
+ * on every refresh.
+ */
+public final class SiteStatistics {
+    
+    private static final Log log = LogFactory.getLog(SiteStatistics.class);
+    
+    private static final SiteStatistics instance = new SiteStatistics();
+    
+    // bound on the number of distinct hot and most commented lists kept
+    private static final int MAX_LISTS = 32;
+    
+    // attempts at a first refresh racing with commits
+    private static final int REFRESH_ATTEMPTS = 3;
+    
+    /**
+     * Things which are counted.
+     */
+    public enum Kind { WEBLOG, USER, ENTRY, COMMENT }
+    
+    /**
+     * How a single object contributes to the statistics.  Weblogs and users
+     * which exist are counted by letter, counted objects add to the count of
+     * their kind.
+     */
+    public enum State { ABSENT, PRESENT, COUNTED }
+    
+    /**
+     * Reads the committed state of an object from the database.
+     */
+    @FunctionalInterface
+    public interface StateLoader {
+        State load() throws WebloggerException;
+    }
+    
+    private volatile Snapshot snapshot = null;
+    
+    // number of commits which changed the counts, guarded by this
+    private long commits = 0;
+    
+    // changes of the transaction running on each thread
+    private final ThreadLocal<Pending> pending = new ThreadLocal<>();
+    
+    
+    // non-instantiable because we are a singleton
+    private SiteStatistics() {}
+    
+    
+    public static SiteStatistics getInstance() {
+        return instance;
+    }
+    
+    
+    /**
+     * The current statistics, computed first if needed.
+     */
+    public Snapshot getSnapshot() throws WebloggerException {
+        Snapshot current = snapshot;
+        if (current == null) {
+            refresh();
+            current = snapshot;
+        }
+        return current;
+    }
+    
+    
+    /**
+     * Hot weblogs of the last sinceDays days, which are computed now the
+     * first time they are asked for and then on every refresh.
+     */
+    public List<StatCount> getHotWeblogs(int sinceDays, int length) throws WebloggerException {
+        return getList(ListType.HOT, sinceDays, length);
+    }
+    
+    
+    /**
+     * Most commented weblogs of the last sinceDays days, which are computed
+     * now the first time they are asked for and then on every refresh.
+     */
+    public List<StatCount> getMostCommentedWeblogs(int sinceDays, int length) throws WebloggerException {
+        return getList(ListType.MOST_COMMENTED, sinceDays, length);
+    }
+    
+    
+    private List<StatCount> getList(ListType type, int sinceDays, int length)
+            throws WebloggerException {
+        
+        String key = type.key(sinceDays, length);
+        List<StatCount> list = getSnapshot().lists.get(key);
+        if (list != null) {
+            return list;
+        }
+        
+        list = Collections.unmodifiableList(type.compute(sinceDays, length));
+        synchronized (this) {
+            if (snapshot.lists.size() < MAX_LISTS) {
+                Map<String, List<StatCount>> lists = new HashMap<>(snapshot.lists);
+                lists.put(key, list);
+                snapshot = snapshot.withLists(lists);
+            }
+        }
+        return list;
+    }
+    
+    
+    /**
+     * Recompute everything from the database.
+     *
+     * Counts read while other transactions commit may or may not include
+     * their changes, so they are only installed if nothing was committed
+     * meanwhile.  Otherwise the counts kept so far are left alone and only
+     * the lists are replaced.
+     */
+    public void refresh() throws WebloggerException {
+        
+        Weblogger roller = WebloggerFactory.getWeblogger();
+        
+        for (int attempt = 1; attempt <= REFRESH_ATTEMPTS; attempt++) {
+            long since;
+            Map<String, List<StatCount>> keys;
+            synchronized (this) {
+                since = commits;
+                keys = snapshot != null ? snapshot.lists : Collections.emptyMap();
+            }
+            
+            long[] weblogLetters = toCounts(roller.getWeblogManager().getWeblogHandleLetterMap());
+            long[] userLetters = toCounts(roller.getUserManager().getUserNameLetterMap());
+            long weblogs = roller.getWeblogManager().getWeblogCount();
+            long users = roller.getUserManager().getUserCount();
+            long entries = roller.getWeblogEntryManager().getEntryCount();
+            long comments = roller.getWeblogEntryManager().getCommentCount();
+            
+            Map<String, List<StatCount>> lists = new HashMap<>();
+            for (String key : keys.keySet()) {
+                lists.put(key, Collections.unmodifiableList(ListType.computeKey(key)));
+            }
+            
+            synchronized (this) {
+                // keep lists asked for during the refresh
+                if (snapshot != null) {
+                    for (Map.Entry<String, List<StatCount>> entry : snapshot.lists.entrySet()) {
+                        lists.putIfAbsent(entry.getKey(), entry.getValue());
+                    }
+                }
+                if (commits == since) {
+                    snapshot = new Snapshot(weblogs, users, entries, comments,
+                            weblogLetters, userLetters, lists, new Date());
+                    return;
+                }
+                if (snapshot != null) {
+                    log.debug("Counts changed during refresh, keeping incremental counts");
+                    snapshot = snapshot.withLists(lists);
+                    return;
+                }
+            }
+        }
+        throw new WebloggerException("Unable to compute site statistics, too many concurrent changes");
+    }
+    
+    
+    /**
+     * Record that an object is being stored.
+     *
+     * @param kind What the object is.
+     * @param id Id of the object.
+     * @param name Weblog handle or user name, for the letter counts.
+     * @param state How the object counts once stored.
+     * @param committed Reads how the object counts in the database, called
+     *        the first time the object is seen in a transaction.
+     */
+    public void stored(Kind kind, String id, String name, State state, StateLoader committed)
+            throws WebloggerException {
+        
+        Pending changes = pending.get();
+        if (changes == null) {
+            changes = new Pending();
+            pending.set(changes);
+        }
+        
+        Map<String, State> states = changes.states.get(kind);
+        State before = states.get(id);
+        if (before == null) {
+            before = committed.load();
+        }
+        if (before != state) {
+            changes.add(kind, name, before, -1);
+            changes.add(kind, name, state, 1);
+        }
+        states.put(id, state);
+    }
+    
+    
+    /**
+     * Record that an object is being removed.
+     */
+    public void removed(Kind kind, String id, String name, StateLoader committed)
+            throws WebloggerException {
+        stored(kind, id, name, State.ABSENT, committed);
+    }
+    
+    
+    /**
+     * Record that counted objects of a kind are being removed in bulk,
+     * without going through {@link #removed}.
+     */
+    public void removedCounted(Kind kind, long count) {
+        Pending changes = pending.get();
+        if (changes == null) {
+            changes = new Pending();
+            pending.set(changes);
+        }
+        changes.counts[kind.ordinal()] -= count;
+        changes.changed = true;
+    }
+    
+    
+    /**
+     * Apply the changes of the current thread's transaction, which has
+     * just been committed.
+     */
+    public void commit() {
+        Pending changes = pending.get();
+        if (changes == null) {
+            return;
+        }
+        pending.remove();
+        if (!changes.changed) {
+            return;
+        }
+        synchronized (this) {
+            commits++;
+            if (snapshot != null) {
+                snapshot = snapshot.plus(changes);
+            }
+        }
+    }
+    
+    
+    /**
+     * Forget the changes of the current thread's transaction, which has
+     * been rolled back.
+     */
+    public void discard() {
+        pending.remove();
+    }
+    
+    
+    /**
+     * Letter map in the form returned by the managers, with 26 entries for
+     * the letters A to Z.
+     */
+    public static Map<String, Long> toLetterMap(long[] counts) {
+        Map<String, Long> map = new TreeMap<>();
+        for (int i = 0; i < 26; i++) {
+            map.put(String.valueOf((char) ('A' + i)), counts[i]);
+        }
+        return Collections.unmodifiableMap(map);
+    }
+    
+    
+    /**
+     * Letter map from rows of first letter and count, as returned by a
+     * query grouping by the upper cased first letter.
+     */
+    public static Map<String, Long> toLetterMap(List<?> rows) {
+        long[] counts = new long[26];
+        for (Object obj : rows) {
+            Object[] row = (Object[]) obj;
+            int letter = letterIndex((String) row[0]);
+            if (letter >= 0) {
+                counts[letter] += ((Number) row[1]).longValue();
+            }
+        }
+        return toLetterMap(counts);
+    }
+    
+    
+    // position of the first letter of a name in A to Z, or -1
+    private static int letterIndex(String name) {
+        if (name == null || name.isEmpty()) {
+            return -1;
+        }
+        char c = Character.toUpperCase(name.charAt(0));
+        return c >= 'A' && c <= 'Z' ? c - 'A' : -1;
+    }
+    
+    
+    private static long[] toCounts(Map<String, Long> letterMap) {
+        long[] counts = new long[26];
+        for (Map.Entry<String, Long> entry : letterMap.entrySet()) {
+            int letter = letterIndex(entry.getKey());
+            if (letter >= 0) {
+                counts[letter] = entry.getValue();
+            }
+        }
+        return counts;
+    }
+    
+    
+    /**
+     * Site statistics at one point in time.
+     */
+    public static final class Snapshot {
+        
+        private final long weblogCount;
+        private final long userCount;
+        private final long entryCount;
+        private final long commentCount;
+        private final long[] weblogLetters;
+        private final long[] userLetters;
+        private final Map<String, Long> weblogLetterMap;
+        private final Map<String, Long> userLetterMap;
+        private final Map<String, List<StatCount>> lists;
+        private final Date refreshed;
+        
+        private Snapshot(long weblogCount, long userCount, long entryCount, long commentCount,
+                long[] weblogLetters, long[] userLetters, Map<String, List<StatCount>> lists,
+                Date refreshed) {
+            this.weblogCount = weblogCount;
+            this.userCount = userCount;
+            this.entryCount = entryCount;
+            this.commentCount = commentCount;
+            this.weblogLetters = weblogLetters;
+            this.userLetters = userLetters;
+            this.weblogLetterMap = toLetterMap(weblogLetters);
+            this.userLetterMap = toLetterMap(userLetters);
+            this.lists = Collections.unmodifiableMap(lists);
+            this.refreshed = refreshed;
+        }
+        
+        private Snapshot withLists(Map<String, List<StatCount>> newLists) {
+            return new Snapshot(weblogCount, userCount, entryCount, commentCount,
+                    weblogLetters, userLetters, newLists, refreshed);
+        }
+        
+        private Snapshot plus(Pending changes) {
+            long[] weblogLettersNow = weblogLetters.clone();
+            long[] userLettersNow = userLetters.clone();
+            for (int i = 0; i < 26; i++) {
+                weblogLettersNow[i] += changes.weblogLetters[i];
+                userLettersNow[i] += changes.userLetters[i];
+            }
+            long[] counts = changes.counts;
+            return new Snapshot(
+                    weblogCount + counts[Kind.WEBLOG.ordinal()],
+                    userCount + counts[Kind.USER.ordinal()],
+                    entryCount + counts[Kind.ENTRY.ordinal()],
+                    commentCount + counts[Kind.COMMENT.ordinal()],
+                    weblogLettersNow, userLettersNow, lists, refreshed);
+        }
+        
+        /** Number of weblogs. */
+        public long getWeblogCount() {
+            return weblogCount;
+        }
+        
+        /** Number of enabled users. */
+        public long getUserCount() {
+            return userCount;
+        }
+        
+        /** Number of published entries. */
+        public long getEntryCount() {
+            return entryCount;
+        }
+        
+        /** Number of approved comments. */
+        public long getCommentCount() {
+            return commentCount;
+        }
+        
+        /** Number of weblogs by first letter of their handle, A to Z. */
+        public Map<String, Long> getWeblogHandleLetterMap() {
+            return weblogLetterMap;
+        }
+        
+        /** Number of users by first letter of their user name, A to Z. */
+        public Map<String, Long> getUserNameLetterMap() {
+            return userLetterMap;
+        }
+        
+        /** When the counts were last computed from the database. */
+        public Date getRefreshed() {
+            return refreshed;
+        }
+    }
+    
+    
+    // changes made by one transaction
+    private static final class Pending {
+        
+        private final long[] counts = new long[Kind.values().length];
+        private final long[] weblogLetters = new long[26];
+        private final long[] userLetters = new long[26];
+        private boolean changed = false;
+        
+        // how objects seen in this transaction count now, by kind and id
+        private final Map<Kind, Map<String, State>> states = new EnumMap<>(Kind.class);
+        
+        Pending() {
+            for (Kind kind : Kind.values()) {
+                states.put(kind, new HashMap<>());
+            }
+        }
+        
+        void add(Kind kind, String name, State state, int sign) {
+            if (state == State.COUNTED) {
+                counts[kind.ordinal()] += sign;
+                changed = true;
+            }
+            if (state != State.ABSENT) {
+                int letter = letterIndex(name);
+                if (letter >= 0 && kind == Kind.WEBLOG) {
+                    weblogLetters[letter] += sign;
+                    changed = true;
+                } else if (letter >= 0 && kind == Kind.USER) {
+                    userLetters[letter] += sign;
+                    changed = true;
+                }
+            }
+        }
+    }
+    
+    
+    // the hot and most commented lists, keyed by type, days and length
+    private enum ListType {
+        
+        HOT {
+            @Override
+            List<StatCount> compute(int sinceDays, int length) throws WebloggerException {
+                return WebloggerFactory.getWeblogger().getWeblogEntryManager().getHotWeblogs(
+                        startDate(sinceDays), new Date(), 0, length);
+            }
+        },
+        
+        MOST_COMMENTED {
+            @Override
+            List<StatCount> compute(int sinceDays, int length) throws WebloggerException {
+                return WebloggerFactory.getWeblogger().getWeblogManager().getMostCommentedWeblogs(
+                        startDate(sinceDays), new Date(), 0, length);
+            }
+        };
+        
+        abstract List<StatCount> compute(int sinceDays, int length) throws WebloggerException;
+        
+        String key(int sinceDays, int length) {
+            return name() + ":" + sinceDays + ":" + length;
+        }
+        
+        static List<StatCount> computeKey(String key) throws WebloggerException {
+            String[] parts = key.split(":");
+            return valueOf(parts[0]).compute(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+        }
+        
+        private static Date startDate(int sinceDays) {
+            Calendar cal = Calendar.getInstance();
+            cal.add(Calendar.DATE, -1 * sinceDays);
+            return cal.getTime();
+        }
+    }
+    
+}
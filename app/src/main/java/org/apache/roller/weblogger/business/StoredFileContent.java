@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.business;
+
+
+/**
+ * What was learned about content streamed into a weblog's uploads area by
+ * {@link FileContentManager#saveFileContent(org.apache.roller.weblogger.pojos.Weblog,
+ * String, String, String, java.io.InputStream, org.apache.roller.weblogger.util.RollerMessages)}.
+ */
+public final class StoredFileContent {
+    
+    private final long length;
+    private final String contentHash;
+    private final int width;
+    private final int height;
+    
+    
+    public StoredFileContent(long length, String contentHash, int width, int height) {
+        this.length = length;
+        this.contentHash = contentHash;
+        this.width = width;
+        this.height = height;
+    }
+    
+    
+    /** Number of bytes saved. */
+    public long getLength() {
+        return length;
+    }
+    
+    
+    /** Hex encoded SHA-256 of the content. */
+    public String getContentHash() {
+        return contentHash;
+    }
+    
+    
+    /** Width of an image, from its header, or -1 if not known. */
+    public int getWidth() {
+        return width;
+    }
+    
+    
+    /** Height of an image, from its header, or -1 if not known. */
+    public int getHeight() {
+        return height;
+    }
+    
+}
@@ -54,6 +54,20 @@ public interface WeblogEntryManager {
      */
     WeblogEntry getWeblogEntry(String id) throws WebloggerException;
     
+    /**
+     * Get weblog entries by id with a single query.
+     * @param ids ids of the entries to load
+     * @return entries in the order of the given ids, unknown ids are skipped
+     */
+    List<WeblogEntry> getWeblogEntriesById(List<String> ids) throws WebloggerException;
+    
+    /**
+     * Get the ids of all entries of a weblog, whatever their status.
+     * @param weblog weblog of the entries
+     * @return ids of the entries, in no particular order
+     */
+    List<String> getWeblogEntryIds(Weblog weblog) throws WebloggerException;
+    
     /** 
      * Get weblog entry by anchor. 
      */
@@ -197,6 +211,13 @@ public interface WeblogEntryManager {
      * @return list of comments fitting search criteria
      */
     List<WeblogEntryComment> getComments(CommentSearchCriteria csc) throws WebloggerException;
+    
+    /**
+     * Get the comments of some entries with a single query, whatever their status.
+     * @param entryIds ids of the entries
+     * @return comments of the entries, in no particular order
+     */
+    List<WeblogEntryComment> getCommentsByEntryIds(List<String> entryIds) throws WebloggerException;
 
     /**
      * Deletes comments that match paramters.
@@ -374,6 +395,51 @@ public interface WeblogEntryManager {
     void resetHitCount(Weblog weblog) throws WebloggerException;
 
     
+    /**
+     * Add hits to the hourly rollup of a weblog, creating the rollup if it
+     * doesn't exist yet.
+     *
+     * @param weblog The weblog which was hit.
+     * @param hour The start of the hour in which the hits happened.
+     * @param amount How many hits to add.
+     * @throws WebloggerException If there was a problem with the backend.
+     */
+    void incrementHourlyHitCount(Weblog weblog, Date hour, int amount)
+        throws WebloggerException;
+    
+    
+    /**
+     * Get the weblogs with the most hits during a period of time, as computed
+     * from the hourly and daily hit rollups.
+     *
+     * Weblogs which are not active or enabled are not included.  Periods
+     * which have been downsampled to daily rollups are counted as a whole
+     * when their day starts within the given range.
+     *
+     * @param startDate Start of the period, inclusive.
+     * @param endDate End of the period, exclusive, or null for now.
+     * @param offset What index in the results to begin from.
+     * @param length The number of results to return.
+     * @return The list of StatCount objects ranked by hits, descending.
+     * @throws WebloggerException If there was a problem with the backend.
+     */
+    List<StatCount> getHotWeblogs(Date startDate, Date endDate, int offset, int length)
+        throws WebloggerException;
+    
+    
+    /**
+     * Downsample old hit rollups.  Hourly rollups of days before hourlyCutoff
+     * are merged into one daily rollup per weblog and day, and daily rollups
+     * before dailyCutoff are removed.
+     *
+     * @param hourlyCutoff Keep hourly rollups from this time on.
+     * @param dailyCutoff Keep daily rollups from this time on.
+     * @throws WebloggerException If there was a problem with the backend.
+     */
+    void rollupHitCounts(Date hourlyCutoff, Date dailyCutoff)
+        throws WebloggerException;
+
+    
     /**
      * Get site-wide comment count 
      */
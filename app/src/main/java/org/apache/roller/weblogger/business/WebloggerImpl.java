@@ -421,6 +421,9 @@ public abstract class WebloggerImpl implements Weblogger {
             if (threadManager != null) {
                 threadManager.shutdown();
             }
+            if (themeManager != null) {
+                themeManager.shutdown();
+            }
         } catch(Exception e) {
             log.error("Error calling Roller.shutdown()", e);
         }
@@ -37,6 +37,9 @@ import java.util.Properties;
 import java.util.Set;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import jakarta.persistence.NoResultException;
 import jakarta.persistence.TypedQuery;
 
@@ -47,6 +50,7 @@ import org.apache.roller.weblogger.WebloggerException;
 import org.apache.roller.weblogger.business.FileContentManager;
 import org.apache.roller.weblogger.business.FileIOException;
 import org.apache.roller.weblogger.business.MediaFileManager;
+import org.apache.roller.weblogger.business.StoredFileContent;
 import org.apache.roller.weblogger.business.WeblogManager;
 import org.apache.roller.weblogger.business.Weblogger;
 import org.apache.roller.weblogger.business.WebloggerFactory;
@@ -227,6 +231,89 @@ public class JPAMediaFileManagerImpl implements MediaFileManager {
         }
     }
 
+    @Override
+    public void createMediaFileFromStream(Weblog weblog, MediaFile mediaFile,
+            RollerMessages errors) throws WebloggerException {
+
+        // content is saved first, as it's only then that we know its length
+        FileContentManager cmgr = WebloggerFactory.getWeblogger()
+                .getFileContentManager();
+        StoredFileContent content = cmgr.saveFileContent(weblog,
+                mediaFile.getId(), mediaFile.getName(),
+                mediaFile.getContentType(), mediaFile.getInputStream(), errors);
+        if (content == null) {
+            return;
+        }
+        mediaFile.setLength(content.getLength());
+        mediaFile.setContentHash(content.getContentHash());
+        mediaFile.setWidth(content.getWidth());
+        mediaFile.setHeight(content.getHeight());
+
+        boolean thumbnailShared = false;
+        try {
+            MediaFile original = getMediaFileByContentHash(weblog,
+                    content.getContentHash());
+            if (original != null) {
+                thumbnailShared = shareContent(mediaFile, original);
+            }
+
+            strategy.store(mediaFile);
+
+            // Refresh associated parent for changes
+            roller.flush();
+            strategy.refresh(mediaFile.getDirectory());
+
+            // update weblog last modified date. date updated by saveWeblog()
+            roller.getWeblogManager().saveWeblog(weblog);
+
+        } catch (WebloggerException e) {
+            cmgr.deleteFile(weblog, mediaFile.getId());
+            throw e;
+        }
+
+        if (mediaFile.isImageFile() && !thumbnailShared) {
+            updateThumbnail(mediaFile);
+        }
+    }
+
+    /**
+     * Share the content and thumbnail of a media file with an identical one.
+     *
+     * @return True if the thumbnail was shared.
+     */
+    private boolean shareContent(MediaFile mediaFile, MediaFile original) {
+        FileContentManager cmgr = WebloggerFactory.getWeblogger()
+                .getFileContentManager();
+        try {
+            cmgr.shareFileContent(mediaFile.getWeblog(), mediaFile.getId(),
+                    original.getId());
+            if (mediaFile.getWidth() <= 0 || mediaFile.getHeight() <= 0) {
+                mediaFile.setWidth(original.getWidth());
+                mediaFile.setHeight(original.getHeight());
+            }
+            if (mediaFile.isImageFile()) {
+                cmgr.shareFileContent(mediaFile.getWeblog(),
+                        mediaFile.getId() + "_sm", original.getId() + "_sm");
+                return true;
+            }
+        } catch (WebloggerException e) {
+            // keep our own copy
+            log.debug("ERROR sharing content of media file " + original.getId(), e);
+        }
+        return false;
+    }
+
+    private MediaFile getMediaFileByContentHash(Weblog weblog, String contentHash)
+            throws WebloggerException {
+        TypedQuery<MediaFile> q = this.strategy
+                .getNamedQuery("MediaFile.getByWeblogAndContentHash", MediaFile.class);
+        q.setParameter(1, weblog);
+        q.setParameter(2, contentHash);
+        q.setMaxResults(1);
+        List<MediaFile> files = q.getResultList();
+        return files.isEmpty() ? null : files.get(0);
+    }
+
     @Override
     public void createThemeMediaFile(Weblog weblog, MediaFile mediaFile,
                                 RollerMessages errors) throws WebloggerException {
@@ -257,11 +344,33 @@ public class JPAMediaFileManagerImpl implements MediaFileManager {
                     mediaFile.getId());
             BufferedImage img;
 
-            img = ImageIO.read(fc.getInputStream());
+            try (ImageInputStream iis = fc.getImageInputStream()) {
+                Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+                if (!readers.hasNext()) {
+                    log.debug("No image reader for media file " + mediaFile.getId());
+                    return;
+                }
+                ImageReader reader = readers.next();
+                try {
+                    reader.setInput(iis, true, true);
+
+                    // determine and save width and height, unless known from upload
+                    if (mediaFile.getWidth() <= 0 || mediaFile.getHeight() <= 0) {
+                        mediaFile.setWidth(reader.getWidth(0));
+                        mediaFile.setHeight(reader.getHeight(0));
+                    }
 
-            // determine and save width and height
-            mediaFile.setWidth(img.getWidth());
-            mediaFile.setHeight(img.getHeight());
+                    // decode only about twice the pixels the thumbnail needs
+                    int step = Math.max(1, Math.min(
+                            mediaFile.getWidth() / Math.max(1, mediaFile.getThumbnailWidth()),
+                            mediaFile.getHeight() / Math.max(1, mediaFile.getThumbnailHeight())) / 2);
+                    ImageReadParam param = reader.getDefaultReadParam();
+                    param.setSourceSubsampling(step, step, 0, 0);
+                    img = reader.read(0, param);
+                } finally {
+                    reader.dispose();
+                }
+            }
             strategy.store(mediaFile);
 
             int newWidth = mediaFile.getThumbnailWidth();
@@ -20,11 +20,14 @@ package org.apache.roller.weblogger.business.jpa;
 
 import java.util.Collection;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.roller.weblogger.WebloggerException;
 import org.apache.roller.weblogger.config.WebloggerConfig;
+import org.apache.roller.weblogger.util.RenderProfiler;
 import jakarta.persistence.EntityManagerFactory;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.FlushModeType;
@@ -57,6 +60,11 @@ public class JPAPersistenceStrategy {
      */
     private EntityManagerFactory emf = null;
     
+    /**
+     * Told about the outcome of each thread's transactions.
+     */
+    private final List<TransactionListener> transactionListeners = new CopyOnWriteArrayList<>();
+    
             
     /**
      * Construct by finding JPA EntityManagerFactory.
@@ -134,17 +142,24 @@ public class JPAPersistenceStrategy {
             EntityManager em = getEntityManager(true);
             em.getTransaction().commit();
         } catch (PersistenceException pe) {
+            for (TransactionListener listener : transactionListeners) {
+                listener.afterRollback();
+            }
             throw new WebloggerException(pe);
         }
+        for (TransactionListener listener : transactionListeners) {
+            listener.afterCommit();
+        }
     }
     
     /**
      * Release database session, rolls back any uncommitted changes.
      */
     public void release() {
-        EntityManager em = null;
+        // a thread which never used a persistence session has nothing to
+        // release, so don't open one just to close it again
+        EntityManager em = threadLocalEntityManager.get();
         try {
-            em = getEntityManager(false);
             if (isTransactionActive(em)) {
                 em.getTransaction().rollback();
             }
@@ -159,9 +174,20 @@ public class JPAPersistenceStrategy {
                 }
             }
             threadLocalEntityManager.remove();
+            for (TransactionListener listener : transactionListeners) {
+                listener.afterRollback();
+            }
         }
     }
     
+    /**
+     * Register a listener to be told when the current thread's transaction
+     * commits or is rolled back.
+     */
+    public void addTransactionListener(TransactionListener listener) {
+        transactionListeners.add(listener);
+    }
+    
     /**
      * Store object using an existing transaction.
      * @param obj the object to persist
@@ -220,7 +246,16 @@ public class JPAPersistenceStrategy {
      */
     public Object load(Class<?> clazz, String id) throws WebloggerException {
         EntityManager em = getEntityManager(false);
-        return em.find(clazz, id);
+        RenderProfiler profile = RenderProfiler.current();
+        if (profile == null) {
+            return em.find(clazz, id);
+        }
+        long start = System.nanoTime();
+        try {
+            return em.find(clazz, id);
+        } finally {
+            profile.recordQuery(System.nanoTime() - start);
+        }
     }
     
     /**
@@ -271,7 +306,7 @@ public class JPAPersistenceStrategy {
         // For performance, never flush/commit prior to running queries.
         // Roller code assumes this behavior
         q.setFlushMode(FlushModeType.COMMIT);
-        return q;
+        return profiled(q);
     }
 
     /**
@@ -288,7 +323,7 @@ public class JPAPersistenceStrategy {
         // For performance, never flush/commit prior to running queries.
         // Roller code assumes this behavior
         q.setFlushMode(FlushModeType.COMMIT);
-        return q;
+        return profiled(q);
     }
 
     /**
@@ -302,7 +337,7 @@ public class JPAPersistenceStrategy {
     public <T> TypedQuery<T> getNamedQueryCommitFirst(String queryName, Class<T> resultClass)
             throws WebloggerException {
         EntityManager em = getEntityManager(true);
-        return em.createNamedQuery(queryName, resultClass);
+        return profiled(em.createNamedQuery(queryName, resultClass));
     }
 
     /**
@@ -317,7 +352,7 @@ public class JPAPersistenceStrategy {
         // For performance, never flush/commit prior to running queries.
         // Roller code assumes this behavior
         q.setFlushMode(FlushModeType.COMMIT);
-        return q;
+        return profiled(q);
     }
 
     /**
@@ -334,7 +369,7 @@ public class JPAPersistenceStrategy {
         // For performance, never flush/commit prior to running queries.
         // Roller code assumes this behavior
         q.setFlushMode(FlushModeType.COMMIT);
-        return q;
+        return profiled(q);
     }
 
     /**
@@ -346,9 +381,55 @@ public class JPAPersistenceStrategy {
     public Query getNamedUpdate(String queryName)
     throws WebloggerException {
         EntityManager em = getEntityManager(true);
-        return em.createNamedQuery(queryName);
+        return profiled(em.createNamedQuery(queryName));
+    }
+    
+    /**
+     * When the current request is being profiled, wrap a query so that
+     * running it is counted against the profile.
+     */
+    private static Query profiled(Query q) {
+        return RenderProfiler.current() != null ? RenderProfiler.profileQuery(q, Query.class) : q;
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static <T> TypedQuery<T> profiled(TypedQuery<T> q) {
+        return RenderProfiler.current() != null
+                ? RenderProfiler.profileQuery(q, TypedQuery.class) : q;
+    }
+
+    /**
+     * Drop an object from the shared cache, so that it's read from the
+     * database next time.
+     */
+    public void evict(Class<?> clazz, String id) {
+        if (emf != null && id != null) {
+            emf.getCache().evict(clazz, id);
+        }
+    }
+    
+    /**
+     * Drop all objects of a class from the shared cache.
+     */
+    public void evict(Class<?> clazz) {
+        if (emf != null) {
+            emf.getCache().evict(clazz);
+        }
     }
 
+    /**
+     * Keeps state derived from the database in step with a thread's
+     * transactions.  Called on the thread which ran the transaction.
+     */
+    public interface TransactionListener {
+        
+        /** The transaction has been committed. */
+        void afterCommit();
+        
+        /** The transaction has been rolled back or abandoned. */
+        void afterRollback();
+    }
+    
     public void shutdown() {
         if (emf != null) {
             emf.close();
@@ -23,16 +23,19 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import org.apache.roller.weblogger.WebloggerException;
+import org.apache.roller.weblogger.business.SiteStatistics;
 import org.apache.roller.weblogger.business.UserManager;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.Set;
 import jakarta.persistence.NoResultException;
+import jakarta.persistence.Query;
 import jakarta.persistence.TypedQuery;
 import org.apache.roller.weblogger.config.WebloggerConfig;
 import org.apache.roller.weblogger.pojos.GlobalPermission;
@@ -52,6 +55,10 @@ public class JPAUserManagerImpl implements UserManager {
     // cached mapping of userNames -> userIds
     private final Map<String, String> userNameToIdMap = Collections.synchronizedMap(new HashMap<>());
     
+    // permissions and roles of users, resolved at most once per request
+    private final ThreadLocal<RequestPermissions> requestPermissions =
+            ThreadLocal.withInitial(RequestPermissions::new);
+    
 
     @com.google.inject.Inject
     protected JPAUserManagerImpl(JPAPersistenceStrategy strat) {
@@ -61,13 +68,17 @@ public class JPAUserManagerImpl implements UserManager {
 
 
     @Override
-    public void release() {}
+    public void release() {
+        requestPermissions.remove();
+    }
     
     
     //--------------------------------------------------------------- user CRUD
  
     @Override
     public void saveUser(User user) throws WebloggerException {
+        SiteStatistics.getInstance().stored(SiteStatistics.Kind.USER, user.getId(),
+                user.getUserName(), getStatisticsState(user), () -> getCommittedState(user));
         this.strategy.store(user);
     }
 
@@ -81,13 +92,35 @@ public class JPAUserManagerImpl implements UserManager {
         for (WeblogPermission perm : perms) {
             this.strategy.remove(perm);
         }
+        SiteStatistics.getInstance().removed(SiteStatistics.Kind.USER, user.getId(),
+                userName, () -> getCommittedState(user));
         this.strategy.remove(user);
+        permissionsChanged(user);
 
         // remove entry from cache mapping
         this.userNameToIdMap.remove(userName);
     }
 
     
+    // how a user counts in the site statistics
+    private static SiteStatistics.State getStatisticsState(User user) {
+        return Boolean.TRUE.equals(user.getEnabled())
+                ? SiteStatistics.State.COUNTED : SiteStatistics.State.PRESENT;
+    }
+    
+    // how a user counts in the site statistics as committed to the database
+    private SiteStatistics.State getCommittedState(User user) throws WebloggerException {
+        TypedQuery<Boolean> query = strategy.getNamedQuery("User.getEnabledById", Boolean.class);
+        query.setParameter(1, user.getId());
+        List<Boolean> enabled = query.getResultList();
+        if (enabled.isEmpty()) {
+            return SiteStatistics.State.ABSENT;
+        }
+        return Boolean.TRUE.equals(enabled.get(0))
+                ? SiteStatistics.State.COUNTED : SiteStatistics.State.PRESENT;
+    }
+
+    
     @Override
     public void addUser(User newUser) throws WebloggerException {
 
@@ -113,6 +146,8 @@ public class JPAUserManagerImpl implements UserManager {
             throw new WebloggerException("error.add.user.userNameInUse");
         }
 
+        SiteStatistics.getInstance().stored(SiteStatistics.Kind.USER, newUser.getId(),
+                newUser.getUserName(), getStatisticsState(newUser), () -> SiteStatistics.State.ABSENT);
         this.strategy.store(newUser);
 
         grantRole("editor", newUser);
@@ -292,18 +327,9 @@ public class JPAUserManagerImpl implements UserManager {
     
     @Override
     public Map<String, Long> getUserNameLetterMap() throws WebloggerException {
-        String lc = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
-        Map<String, Long> results = new TreeMap<>();
-        TypedQuery<Long> query = strategy.getNamedQuery(
-                "User.getCountByUserNameLike", Long.class);
-        for (int i=0; i<26; i++) {
-            char currentChar = lc.charAt(i);
-            query.setParameter(1, currentChar + "%");
-            List<Long> row = query.getResultList();
-            Long count = row.get(0);
-            results.put(String.valueOf(currentChar), count);
-        }
-        return results;
+        // one query grouping by first letter rather than one per letter
+        Query query = strategy.getNamedQuery("User.getCountGroupByUserNameLetter");
+        return SiteStatistics.toLetterMap(query.getResultList());
     }
 
     
@@ -359,7 +385,8 @@ public class JPAUserManagerImpl implements UserManager {
             // if user has specified permission in weblog return true
             WeblogPermission permToCheck = (WeblogPermission)perm;
             try {
-                RollerPermission existingPerm = getWeblogPermission(permToCheck.getWeblog(), user);
+                RollerPermission existingPerm =
+                        resolvePermissions(user).weblogPermissions.get(permToCheck.getObjectId());
                 if (existingPerm != null && existingPerm.implies(perm)) {
                     return true;
                 }
@@ -368,6 +395,7 @@ public class JPAUserManagerImpl implements UserManager {
         }
 
         // if Blog Server admin would still have weblog permission above
+        // (roles come from resolvePermissions() via getRoles())
         GlobalPermission globalPerm = new GlobalPermission(user);
         if (globalPerm.implies(perm)) {
             return true;
@@ -428,6 +456,7 @@ public class JPAUserManagerImpl implements UserManager {
             WeblogPermission perm = new WeblogPermission(weblog, user, actions);
             this.strategy.store(perm);
         }
+        permissionsChanged(user);
     }
 
     
@@ -454,6 +483,7 @@ public class JPAUserManagerImpl implements UserManager {
             perm.setPending(true);
             this.strategy.store(perm);
         }
+        permissionsChanged(user);
     }
 
     
@@ -475,6 +505,7 @@ public class JPAUserManagerImpl implements UserManager {
         // set pending to false
         existingPerm.setPending(false);
         this.strategy.store(existingPerm);
+        permissionsChanged(user);
     }
 
     
@@ -494,6 +525,7 @@ public class JPAUserManagerImpl implements UserManager {
         }
         // remove permission
         this.strategy.remove(existingPerm);
+        permissionsChanged(user);
     }
 
     
@@ -522,6 +554,7 @@ public class JPAUserManagerImpl implements UserManager {
             // otherwise save it
             this.strategy.store(oldperm);
         }
+        permissionsChanged(user);
     }
 
     
@@ -573,15 +606,7 @@ public class JPAUserManagerImpl implements UserManager {
      */
     @Override
     public boolean hasRole(String roleName, User user) throws WebloggerException {
-        TypedQuery<UserRole> q = strategy.getNamedQuery("UserRole.getByUserNameAndRole", UserRole.class);
-        q.setParameter(1, user.getUserName());
-        q.setParameter(2, roleName);
-        try {
-            q.getSingleResult();
-        } catch (NoResultException e) {
-            return false;
-        }
-        return true;
+        return resolvePermissions(user).roles.contains(roleName);
     }
 
     
@@ -590,16 +615,7 @@ public class JPAUserManagerImpl implements UserManager {
      */
     @Override
     public List<String> getRoles(User user) throws WebloggerException {
-        TypedQuery<UserRole> q = strategy.getNamedQuery("UserRole.getByUserName", UserRole.class);
-        q.setParameter(1, user.getUserName());
-        List<UserRole> roles = q.getResultList();
-        List<String> roleNames = new ArrayList<>();
-        if (roles != null) {
-            for (UserRole userRole : roles) {
-                roleNames.add(userRole.getRole());
-            }
-        }
-        return roleNames;
+        return new ArrayList<>(resolvePermissions(user).roles);
     }
 
     /**
@@ -610,6 +626,7 @@ public class JPAUserManagerImpl implements UserManager {
         if (!hasRole(roleName, user)) {
             UserRole role = new UserRole(user.getUserName(), roleName);
             this.strategy.store(role);
+            permissionsChanged(user);
         }
     }
 
@@ -622,9 +639,73 @@ public class JPAUserManagerImpl implements UserManager {
         try {
             UserRole role = q.getSingleResult();
             this.strategy.remove(role);
+            permissionsChanged(user);
 
         } catch (NoResultException e) {
             throw new WebloggerException("ERROR: removing role", e);
         }
     }
+    
+    
+    /**
+     * Get the weblog permissions and roles of a user, reading them with one
+     * query each the first time they're needed in a request.
+     */
+    private ResolvedPermissions resolvePermissions(User user) throws WebloggerException {
+        RequestPermissions perms = requestPermissions.get();
+        String userName = user.getUserName();
+        ResolvedPermissions resolved = perms.resolved.get(userName);
+        if (resolved == null) {
+            resolved = new ResolvedPermissions(getWeblogPermissions(user), getUserRoles(userName));
+            // changes made in this request may not be visible to queries
+            // until they're flushed, so don't hold on to what we read
+            if (!perms.changed.contains(userName)) {
+                perms.resolved.put(userName, resolved);
+            }
+        }
+        return resolved;
+    }
+    
+    private List<String> getUserRoles(String userName) throws WebloggerException {
+        TypedQuery<UserRole> q = strategy.getNamedQuery("UserRole.getByUserName", UserRole.class);
+        q.setParameter(1, userName);
+        List<UserRole> roles = q.getResultList();
+        List<String> roleNames = new ArrayList<>();
+        if (roles != null) {
+            for (UserRole userRole : roles) {
+                roleNames.add(userRole.getRole());
+            }
+        }
+        return roleNames;
+    }
+    
+    private void permissionsChanged(User user) {
+        RequestPermissions perms = requestPermissions.get();
+        perms.resolved.remove(user.getUserName());
+        perms.changed.add(user.getUserName());
+    }
+    
+    
+    private static final class RequestPermissions {
+        
+        private final Map<String, ResolvedPermissions> resolved = new HashMap<>();
+        
+        // users whose permissions were changed during the request
+        private final Set<String> changed = new HashSet<>();
+    }
+    
+    private static final class ResolvedPermissions {
+        
+        // non-pending permissions by weblog handle
+        private final Map<String, WeblogPermission> weblogPermissions = new HashMap<>();
+        
+        private final List<String> roles;
+        
+        ResolvedPermissions(List<WeblogPermission> perms, List<String> roles) {
+            for (WeblogPermission perm : perms) {
+                weblogPermissions.put(perm.getObjectId(), perm);
+            }
+            this.roles = roles;
+        }
+    }
 }
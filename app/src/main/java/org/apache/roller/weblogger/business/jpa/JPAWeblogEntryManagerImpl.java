@@ -19,8 +19,8 @@
 package org.apache.roller.weblogger.business.jpa;
 
 import java.util.*;
-import java.text.SimpleDateFormat;
 import java.sql.Timestamp;
+import java.util.function.Consumer;
 import jakarta.persistence.NoResultException;
 import jakarta.persistence.Query;
 import jakarta.persistence.TypedQuery;
@@ -31,12 +31,15 @@ import org.apache.commons.logging.LogFactory;
 
 import org.apache.roller.util.RollerConstants;
 import org.apache.roller.weblogger.WebloggerException;
+import org.apache.roller.weblogger.business.SiteStatistics;
 import org.apache.roller.weblogger.business.Weblogger;
+import org.apache.roller.weblogger.business.search.IndexManager;
 import org.apache.roller.weblogger.pojos.CommentSearchCriteria;
 import org.apache.roller.weblogger.pojos.WeblogEntryComment;
 import org.apache.roller.weblogger.pojos.WeblogEntryComment.ApprovalStatus;
 import org.apache.roller.weblogger.pojos.WeblogEntrySearchCriteria;
 import org.apache.roller.weblogger.pojos.WeblogHitCount;
+import org.apache.roller.weblogger.pojos.WeblogHitRollup;
 import org.apache.roller.weblogger.pojos.StatCount;
 import org.apache.roller.weblogger.pojos.TagStat;
 import org.apache.roller.weblogger.pojos.TagStatComparator;
@@ -49,6 +52,7 @@ import org.apache.roller.weblogger.pojos.WeblogEntryTag;
 import org.apache.roller.weblogger.pojos.Weblog;
 import org.apache.roller.weblogger.pojos.WeblogEntryAttribute;
 import org.apache.roller.weblogger.pojos.StatCountCountComparator;
+import org.apache.roller.util.DateFormatter;
 import org.apache.roller.util.DateUtil;
 import org.apache.roller.weblogger.business.WeblogEntryManager;
 
@@ -70,6 +74,10 @@ public class JPAWeblogEntryManagerImpl implements WeblogEntryManager {
     // cached mapping of entryAnchors -> entryIds
     private final Map<String, String> entryAnchorToIdMap = Collections.synchronizedMap(new HashMap<String, String>());
     
+    // editor index changes of the transaction running on each thread, which
+    // are applied once it commits so the index never holds rolled back rows
+    private final ThreadLocal<List<Consumer<IndexManager>>> pendingIndexUpdates = new ThreadLocal<>();
+    
     private static final Comparator<TagStat> TAG_STAT_NAME_COMPARATOR = new TagStatComparator();
     
     private static final Comparator<TagStat> TAG_STAT_COUNT_REVERSE_COMPARATOR =
@@ -79,11 +87,56 @@ public class JPAWeblogEntryManagerImpl implements WeblogEntryManager {
             Collections.reverseOrder(StatCountCountComparator.getInstance());
     
     
+    // EclipseLink batch fetch hints, see setBatchFetch()
+    private static final String BATCH_HINT = "eclipselink.batch";
+    private static final String BATCH_TYPE_HINT = "eclipselink.batch.type";
+    
+    
     @com.google.inject.Inject
     protected JPAWeblogEntryManagerImpl(Weblogger roller, JPAPersistenceStrategy strategy) {
         LOG.debug("Instantiating JPA Weblog Manager");
         this.roller = roller;
         this.strategy = strategy;
+        
+        strategy.addTransactionListener(new JPAPersistenceStrategy.TransactionListener() {
+            @Override
+            public void afterCommit() {
+                applyIndexUpdates();
+            }
+            
+            @Override
+            public void afterRollback() {
+                pendingIndexUpdates.remove();
+            }
+        });
+    }
+    
+    
+    // queue a change of the editor index until the transaction commits
+    private void queueIndexUpdate(Consumer<IndexManager> update) {
+        List<Consumer<IndexManager>> updates = pendingIndexUpdates.get();
+        if (updates == null) {
+            updates = new ArrayList<>();
+            pendingIndexUpdates.set(updates);
+        }
+        updates.add(update);
+    }
+    
+    
+    private void applyIndexUpdates() {
+        List<Consumer<IndexManager>> updates = pendingIndexUpdates.get();
+        if (updates == null) {
+            return;
+        }
+        pendingIndexUpdates.remove();
+        IndexManager indexManager = roller.getIndexManager();
+        for (Consumer<IndexManager> update : updates) {
+            try {
+                update.accept(indexManager);
+            } catch (RuntimeException e) {
+                LOG.error("Error updating editor index", e);
+            }
+        }
     }
     
     /**
@@ -157,7 +210,10 @@ public class JPAWeblogEntryManagerImpl implements WeblogEntryManager {
      */
     @Override
     public void saveComment(WeblogEntryComment comment) throws WebloggerException {
+        SiteStatistics.getInstance().stored(SiteStatistics.Kind.COMMENT, comment.getId(), null,
+                getStatisticsState(comment), () -> getCommittedState(comment));
         this.strategy.store(comment);
+        queueIndexUpdate(index -> index.saveEditorIndexComment(comment));
         
         // update weblog last modified date.  date updated by saveWebsite()
         roller.getWeblogManager().saveWeblog(comment.getWeblogEntry().getWebsite());
@@ -168,7 +224,10 @@ public class JPAWeblogEntryManagerImpl implements WeblogEntryManager {
      */
     @Override
     public void removeComment(WeblogEntryComment comment) throws WebloggerException {
+        SiteStatistics.getInstance().removed(SiteStatistics.Kind.COMMENT, comment.getId(), null,
+                () -> getCommittedState(comment));
         this.strategy.remove(comment);
+        queueIndexUpdate(index -> index.removeEditorIndexComment(comment));
         
         // update weblog last modified date.  date updated by saveWebsite()
         roller.getWeblogManager().saveWeblog(comment.getWeblogEntry().getWebsite());
@@ -238,7 +297,10 @@ public class JPAWeblogEntryManagerImpl implements WeblogEntryManager {
         // Store value object (creates new or updates existing)
         entry.setUpdateTime(new Timestamp(new Date().getTime()));
         
+        SiteStatistics.getInstance().stored(SiteStatistics.Kind.ENTRY, entry.getId(), null,
+                getStatisticsState(entry), () -> getCommittedState(entry));
         this.strategy.store(entry);
+        queueIndexUpdate(index -> index.saveEditorIndexEntry(entry));
         
         // update weblog last modified date.  date updated by saveWebsite()
         if(entry.isPublished()) {
@@ -262,8 +324,11 @@ public class JPAWeblogEntryManagerImpl implements WeblogEntryManager {
         csc.setEntry(entry);
 
         // remove comments
+        SiteStatistics stats = SiteStatistics.getInstance();
         List<WeblogEntryComment> comments = getComments(csc);
         for (WeblogEntryComment comment : comments) {
+            stats.removed(SiteStatistics.Kind.COMMENT, comment.getId(), null,
+                    () -> getCommittedState(comment));
             this.strategy.remove(comment);
         }
         
@@ -284,7 +349,10 @@ public class JPAWeblogEntryManagerImpl implements WeblogEntryManager {
         }
 
         // remove entry
+        stats.removed(SiteStatistics.Kind.ENTRY, entry.getId(), null,
+                () -> getCommittedState(entry));
         this.strategy.remove(entry);
+        queueIndexUpdate(index -> index.removeEditorIndexEntry(entry));
         
         // update weblog last modified date.  date updated by saveWebsite()
         if (entry.isPublished()) {
@@ -295,6 +363,43 @@ public class JPAWeblogEntryManagerImpl implements WeblogEntryManager {
         this.entryAnchorToIdMap.remove(entry.getWebsite().getHandle()+":"+entry.getAnchor());
     }
     
+    // how an entry counts in the site statistics
+    private static SiteStatistics.State getStatisticsState(WeblogEntry entry) {
+        return PubStatus.PUBLISHED.equals(entry.getStatus())
+                ? SiteStatistics.State.COUNTED : SiteStatistics.State.PRESENT;
+    }
+    
+    // how an entry counts in the site statistics as committed to the database
+    private SiteStatistics.State getCommittedState(WeblogEntry entry) throws WebloggerException {
+        TypedQuery<PubStatus> query = strategy.getNamedQuery("WeblogEntry.getStatusById", PubStatus.class);
+        query.setParameter(1, entry.getId());
+        List<PubStatus> status = query.getResultList();
+        if (status.isEmpty()) {
+            return SiteStatistics.State.ABSENT;
+        }
+        return PubStatus.PUBLISHED.equals(status.get(0))
+                ? SiteStatistics.State.COUNTED : SiteStatistics.State.PRESENT;
+    }
+    
+    // how a comment counts in the site statistics
+    private static SiteStatistics.State getStatisticsState(WeblogEntryComment comment) {
+        return ApprovalStatus.APPROVED.equals(comment.getStatus())
+                ? SiteStatistics.State.COUNTED : SiteStatistics.State.PRESENT;
+    }
+    
+    // how a comment counts in the site statistics as committed to the database
+    private SiteStatistics.State getCommittedState(WeblogEntryComment comment) throws WebloggerException {
+        TypedQuery<ApprovalStatus> query = strategy.getNamedQuery(
+                "WeblogEntryComment.getStatusById", ApprovalStatus.class);
+        query.setParameter(1, comment.getId());
+        List<ApprovalStatus> status = query.getResultList();
+        if (status.isEmpty()) {
+            return SiteStatistics.State.ABSENT;
+        }
+        return ApprovalStatus.APPROVED.equals(status.get(0))
+                ? SiteStatistics.State.COUNTED : SiteStatistics.State.PRESENT;
+    }
+    
     private List<WeblogEntry> getNextPrevEntries(WeblogEntry current, String catName,
             String locale, int maxEntries, boolean next)
             throws WebloggerException {
@@ -445,11 +550,22 @@ public class JPAWeblogEntryManagerImpl implements WeblogEntryManager {
         }
         
         if (StringUtils.isNotEmpty(wesc.getText())) {
-            params.add(size++, '%' + wesc.getText() + '%');
-            queryString.append(" AND ( e.text LIKE ?").append(size);
-            queryString.append("    OR e.summary LIKE ?").append(size);
-            queryString.append("    OR e.title LIKE ?").append(size);
-            queryString.append(") ");
+            // resolve matching ids from the editor index when it can answer,
+            // the leading wildcard LIKE scans the whole table
+            List<String> ids = roller.getIndexManager().searchEditorIndexEntries(
+                    wesc.getWeblog(), wesc.getText());
+            if (ids == null) {
+                params.add(size++, '%' + wesc.getText() + '%');
+                queryString.append(" AND ( e.text LIKE ?").append(size);
+                queryString.append("    OR e.summary LIKE ?").append(size);
+                queryString.append("    OR e.title LIKE ?").append(size);
+                queryString.append(") ");
+            } else if (ids.isEmpty()) {
+                return new ArrayList<>();
+            } else {
+                params.add(size++, ids);
+                queryString.append(" AND e.id IN ?").append(size);
+            }
         }
 
         if (wesc.getSortBy() != null && wesc.getSortBy().equals(WeblogEntrySearchCriteria.SortBy.UPDATE_TIME)) {
@@ -469,6 +585,7 @@ public class JPAWeblogEntryManagerImpl implements WeblogEntryManager {
         for (int i=0; i<params.size(); i++) {
             query.setParameter(i+1, params.get(i));
         }
+        setBatchFetch(query);
         
         setFirstMax( query, wesc.getOffset(), wesc.getMaxResults() );
         return query.getResultList();
@@ -623,6 +740,20 @@ public class JPAWeblogEntryManagerImpl implements WeblogEntryManager {
         return entryCount > 0;
     }
     
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public List<WeblogEntryComment> getCommentsByEntryIds(List<String> entryIds) throws WebloggerException {
+        if (entryIds == null || entryIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        TypedQuery<WeblogEntryComment> q = strategy.getNamedQuery(
+                "WeblogEntryComment.getByEntryIds", WeblogEntryComment.class);
+        q.setParameter(1, entryIds);
+        return q.getResultList();
+    }
+    
     /**
      * @inheritDoc
      */
@@ -644,8 +775,17 @@ public class JPAWeblogEntryManagerImpl implements WeblogEntryManager {
         }
         
         if (csc.getSearchText() != null) {
-            params.add(size++, "%" + csc.getSearchText().toUpperCase() + "%");
-            appendConjuctionToWhereclause(whereClause, "upper(c.content) LIKE ?").append(size);
+            List<String> ids = roller.getIndexManager().searchEditorIndexComments(
+                    csc.getWeblog(), csc.getEntry(), csc.getSearchText(), csc.getStatus());
+            if (ids == null) {
+                params.add(size++, "%" + csc.getSearchText().toUpperCase() + "%");
+                appendConjuctionToWhereclause(whereClause, "upper(c.content) LIKE ?").append(size);
+            } else if (ids.isEmpty()) {
+                return new ArrayList<>();
+            } else {
+                params.add(size++, ids);
+                appendConjuctionToWhereclause(whereClause, "c.id IN ?").append(size);
+            }
         }
         
         if (csc.getStartDate() != null) {
@@ -763,6 +903,54 @@ public class JPAWeblogEntryManagerImpl implements WeblogEntryManager {
         return (WeblogEntry)strategy.load(WeblogEntry.class, id);
     }
     
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public List<WeblogEntry> getWeblogEntriesById(List<String> ids) throws WebloggerException {
+        if (ids == null || ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        TypedQuery<WeblogEntry> q = strategy.getNamedQuery("WeblogEntry.getByIds", WeblogEntry.class);
+        q.setParameter(1, ids);
+        
+        Map<String, WeblogEntry> byId = new HashMap<>();
+        for (WeblogEntry entry : q.getResultList()) {
+            byId.put(entry.getId(), entry);
+        }
+        List<WeblogEntry> results = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            WeblogEntry entry = byId.get(id);
+            if (entry != null) {
+                results.add(entry);
+            }
+        }
+        return results;
+    }
+    
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public List<String> getWeblogEntryIds(Weblog weblog) throws WebloggerException {
+        TypedQuery<String> q = strategy.getNamedQuery("WeblogEntry.getIdsByWebsite", String.class);
+        q.setParameter(1, weblog);
+        return q.getResultList();
+    }
+    
+    /**
+     * Entry pages go on to read the category, tags and attributes of every
+     * entry they show.  Have those loaded for all entries of the query at
+     * once, with one IN query per relationship on first access, instead of
+     * one query per entry.  Providers other than EclipseLink ignore the hints.
+     */
+    private static void setBatchFetch(TypedQuery<WeblogEntry> query) {
+        query.setHint(BATCH_HINT, "e.category");
+        query.setHint(BATCH_HINT, "e.tags");
+        query.setHint(BATCH_HINT, "e.entryAttributes");
+        query.setHint(BATCH_TYPE_HINT, "IN");
+    }
+    
     /**
      * @inheritDoc
      */
@@ -795,12 +983,12 @@ public class JPAWeblogEntryManagerImpl implements WeblogEntryManager {
         List<WeblogEntry> entries = getWeblogEntries(wesc);
 
         Calendar cal = Calendar.getInstance();
-        SimpleDateFormat formatter = DateUtil.get8charDateFormat();
+        TimeZone tz = null;
         if (wesc.getWeblog() != null) {
-            TimeZone tz = wesc.getWeblog().getTimeZoneInstance();
+            tz = wesc.getWeblog().getTimeZoneInstance();
             cal.setTimeZone(tz);
-            formatter.setTimeZone(tz);
         }
+        DateFormatter formatter = DateFormatter.getInstance(DateUtil.FORMAT_8CHARS, null, tz);
 
         for (WeblogEntry entry : entries) {
             Date sDate = DateUtil.getNoonOfDay(entry.getPubTime(), cal);
@@ -1328,6 +1516,123 @@ public class JPAWeblogEntryManagerImpl implements WeblogEntryManager {
 
     }
     
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public void incrementHourlyHitCount(Weblog weblog, Date hour, int amount)
+    throws WebloggerException {
+        
+        if(weblog == null) {
+            throw new WebloggerException("Website cannot be NULL.");
+        }
+        
+        if(amount > 0) {
+            addToHitRollup(weblog, WeblogHitRollup.HOURLY, DateUtil.getStartOfHour(hour), amount);
+        }
+    }
+    
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public List<StatCount> getHotWeblogs(Date startDate, Date endDate, int offset, int length)
+    throws WebloggerException {
+        
+        if (endDate == null) {
+            endDate = new Date();
+        }
+        
+        Query query = strategy.getNamedQuery(
+                "WeblogHitRollup.getHitsSumByPeriodStartLessThan&PeriodStartGreaterOrEqualOrderByHitsSumDesc");
+        query.setParameter(1, new Timestamp(endDate.getTime()));
+        query.setParameter(2, new Timestamp(startDate.getTime()));
+        setFirstMax( query, offset, length );
+        
+        List<?> queryResults = query.getResultList();
+        List<StatCount> results = new ArrayList<>();
+        for (Object obj : queryResults) {
+            Object[] row = (Object[]) obj;
+            StatCount sc = new StatCount(
+                    (String)row[1],                     // weblog id
+                    (String)row[2],                     // weblog handle
+                    (String)row[3],                     // weblog name
+                    "statCount.weblogHits",             // stat type
+                    ((Number)row[0]).longValue());      // # hits
+            sc.setWeblogHandle((String)row[2]);
+            results.add(sc);
+        }
+        return results;
+    }
+    
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public void rollupHitCounts(Date hourlyCutoff, Date dailyCutoff)
+    throws WebloggerException {
+        
+        // only whole days are downsampled
+        Timestamp hourlyBefore = new Timestamp(DateUtil.getStartOfDay(hourlyCutoff).getTime());
+        
+        TypedQuery<WeblogHitRollup> q = strategy.getNamedQuery(
+                "WeblogHitRollup.getByGranularity&PeriodStartLessThanOrderByWeblog&PeriodStart",
+                WeblogHitRollup.class);
+        q.setParameter(1, WeblogHitRollup.HOURLY);
+        q.setParameter(2, hourlyBefore);
+        
+        // sum up the hours of each day, rows come ordered by weblog and time
+        Weblog weblog = null;
+        Date day = null;
+        int hits = 0;
+        for (WeblogHitRollup hour : q.getResultList()) {
+            Date hourDay = DateUtil.getStartOfDay(hour.getPeriodStart());
+            if (!hour.getWeblog().equals(weblog) || !hourDay.equals(day)) {
+                if (weblog != null) {
+                    addToHitRollup(weblog, WeblogHitRollup.DAILY, day, hits);
+                }
+                weblog = hour.getWeblog();
+                day = hourDay;
+                hits = 0;
+            }
+            hits += hour.getHits();
+        }
+        if (weblog != null) {
+            addToHitRollup(weblog, WeblogHitRollup.DAILY, day, hits);
+        }
+        
+        Query removeHours = strategy.getNamedUpdate(
+                "WeblogHitRollup.removeByGranularity&PeriodStartLessThan");
+        removeHours.setParameter(1, WeblogHitRollup.HOURLY);
+        removeHours.setParameter(2, hourlyBefore);
+        removeHours.executeUpdate();
+        
+        Query removeDays = strategy.getNamedUpdate(
+                "WeblogHitRollup.removeByGranularity&PeriodStartLessThan");
+        removeDays.setParameter(1, WeblogHitRollup.DAILY);
+        removeDays.setParameter(2, new Timestamp(dailyCutoff.getTime()));
+        removeDays.executeUpdate();
+    }
+    
+    private void addToHitRollup(Weblog weblog, int granularity, Date periodStart, int amount)
+    throws WebloggerException {
+        
+        TypedQuery<WeblogHitRollup> q = strategy.getNamedQuery(
+                "WeblogHitRollup.getByWeblog&Granularity&PeriodStart", WeblogHitRollup.class);
+        q.setParameter(1, weblog);
+        q.setParameter(2, granularity);
+        q.setParameter(3, new Timestamp(periodStart.getTime()));
+        
+        WeblogHitRollup rollup;
+        try {
+            rollup = q.getSingleResult();
+            rollup.setHits(rollup.getHits() + amount);
+        } catch (NoResultException e) {
+            rollup = new WeblogHitRollup(weblog, granularity, periodStart, amount);
+        }
+        strategy.store(rollup);
+    }
+    
     /**
      * @inheritDoc
      */
@@ -37,17 +37,16 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
 
-import org.apache.roller.weblogger.business.MediaFileManager;
+import org.apache.roller.weblogger.business.FileContentManager;
+import org.apache.roller.weblogger.business.MultiWeblogURLStrategy;
+import org.apache.roller.weblogger.business.SiteStatistics;
 import org.apache.roller.weblogger.business.UserManager;
 import org.apache.roller.weblogger.business.WeblogEntryManager;
 import org.apache.roller.weblogger.business.WeblogManager;
 import org.apache.roller.weblogger.business.Weblogger;
-import org.apache.roller.weblogger.business.WebloggerFactory;
 import org.apache.roller.weblogger.pojos.AutoPing;
 import org.apache.roller.weblogger.pojos.CustomTemplateRendition;
-import org.apache.roller.weblogger.pojos.PingQueueEntry;
 import org.apache.roller.weblogger.pojos.PingTarget;
 import org.apache.roller.weblogger.pojos.StatCount;
 import org.apache.roller.weblogger.pojos.StatCountCountComparator;
@@ -58,8 +57,6 @@ import org.apache.roller.weblogger.pojos.Weblog;
 import org.apache.roller.weblogger.pojos.WeblogBookmark;
 import org.apache.roller.weblogger.pojos.WeblogBookmarkFolder;
 import org.apache.roller.weblogger.pojos.WeblogCategory;
-import org.apache.roller.weblogger.pojos.WeblogEntry;
-import org.apache.roller.weblogger.pojos.WeblogEntryTag;
 import org.apache.roller.weblogger.pojos.WeblogEntryTagAggregate;
 import org.apache.roller.weblogger.pojos.WeblogPermission;
 import org.apache.roller.weblogger.pojos.WeblogTemplate;
@@ -80,6 +77,9 @@ public class JPAWeblogManagerImpl implements WeblogManager {
     private final Weblogger roller;
     private final JPAPersistenceStrategy strategy;
     
+    // how many entries to remove per transaction when removing a weblog
+    private final int removeBatchSize;
+    
     // cached mapping of weblogHandles -> weblogIds
     private final Map<String, String> weblogHandleToIdMap = Collections.synchronizedMap(new HashMap<>());
 
@@ -88,6 +88,8 @@ public class JPAWeblogManagerImpl implements WeblogManager {
         log.debug("Instantiating JPA Weblog Manager");
         this.roller = roller;
         this.strategy = strat;
+        this.removeBatchSize = Math.max(
+                WebloggerConfig.getIntProperty("weblogs.remove.batchSize", 500), 1);
     }
     
     
@@ -103,22 +105,54 @@ public class JPAWeblogManagerImpl implements WeblogManager {
         
         weblog.setLastModified(new java.util.Date());
         strategy.store(weblog);
+        MultiWeblogURLStrategy.invalidateWeblogURLCache(weblog);
     }
     
     @Override
     public void removeWeblog(Weblog weblog) throws WebloggerException {
         
+        // commit pending changes first, so that the counts include them
+        this.strategy.flush();
+        WeblogEntryManager emgr = roller.getWeblogEntryManager();
+        long entryCount = emgr.getEntryCount(weblog);
+        long commentCount = emgr.getCommentCount(weblog);
+        
         // remove contents first, then remove weblog
         this.removeWeblogContents(weblog);
+        SiteStatistics stats = SiteStatistics.getInstance();
+        stats.removedCounted(SiteStatistics.Kind.ENTRY, entryCount);
+        stats.removedCounted(SiteStatistics.Kind.COMMENT, commentCount);
+        stats.removed(SiteStatistics.Kind.WEBLOG, weblog.getId(), weblog.getHandle(),
+                () -> SiteStatistics.State.COUNTED);
         this.strategy.remove(weblog);
+        this.strategy.flush();
         
         // remove entry from cache mapping
         this.weblogHandleToIdMap.remove(weblog.getHandle());
+        MultiWeblogURLStrategy.invalidateWeblogURLCache(weblog);
+        
+        // uploaded files go once the database rows pointing at them are gone
+        final FileContentManager fileMgr = roller.getFileContentManager();
+        try {
+            roller.getThreadManager().executeInBackground(() -> {
+                try {
+                    fileMgr.deleteAllFiles(weblog);
+                } catch (Exception e) {
+                    log.error("Error deleting uploaded files of weblog " + weblog.getHandle(), e);
+                }
+            });
+        } catch (InterruptedException e) {
+            log.error("Error scheduling deletion of uploaded files of weblog " + weblog.getHandle(), e);
+        }
     }
     
     /**
      * convenience method for removing contents of a weblog.
-     * TODO BACKEND: use manager methods instead of queries here
+     *
+     * Contents are removed with bulk deletes, children before parents, rather
+     * than loading and removing them one at a time.  Entries and their
+     * comments go in batches of weblogs.remove.batchSize, each committed on
+     * its own so that locks are held for a bounded time.
      */
     private void removeWeblogContents(Weblog weblog)
     throws  WebloggerException {
@@ -127,27 +161,14 @@ public class JPAWeblogManagerImpl implements WeblogManager {
         WeblogEntryManager emgr = roller.getWeblogEntryManager();
 
         // remove tags
-        TypedQuery<WeblogEntryTag> tagQuery = strategy.getNamedQuery("WeblogEntryTag.getByWeblog",
-                WeblogEntryTag.class);
-        tagQuery.setParameter(1, weblog);
-        List<WeblogEntryTag> results = tagQuery.getResultList();
-        
-        for (WeblogEntryTag tagData : results) {
-            if (tagData.getWeblogEntry() != null) {
-                tagData.getWeblogEntry().getTags().remove(tagData);
-            }
-            this.strategy.remove(tagData);
-        }
+        removeByWeblog("WeblogEntryTag.removeByWeblog", weblog);
         
         // remove site tag aggregates
         List<TagStat> tags = emgr.getTags(weblog, null, null, 0, -1);
         updateTagAggregates(tags);
         
         // delete all weblog tag aggregates
-        Query removeAggs= strategy.getNamedUpdate(
-                "WeblogEntryTagAggregate.removeByWeblog");
-        removeAggs.setParameter(1, weblog);
-        removeAggs.executeUpdate();
+        removeByWeblog("WeblogEntryTagAggregate.removeByWeblog", weblog);
         
         // delete all bad counts
         Query removeCounts = strategy.getNamedUpdate(
@@ -155,63 +176,53 @@ public class JPAWeblogManagerImpl implements WeblogManager {
         removeCounts.setParameter(1, 0);
         removeCounts.executeUpdate();
         
-        // Remove the weblog's ping queue entries
-        TypedQuery<PingQueueEntry> q = strategy.getNamedQuery("PingQueueEntry.getByWebsite", PingQueueEntry.class);
-        q.setParameter(1, weblog);
-        List<PingQueueEntry> queueEntries = q.getResultList();
-        for (Object obj : queueEntries) {
-            this.strategy.remove(obj);
-        }
-        
-        // Remove the weblog's auto ping configurations
-        AutoPingManager autoPingMgr = roller.getAutopingManager();
-        List<AutoPing> autopings = autoPingMgr.getAutoPingsByWebsite(weblog);
-        for (AutoPing autoPing : autopings) {
-            this.strategy.remove(autoPing);
-        }
+        // Remove the weblog's ping queue entries and auto ping configurations
+        removeByWeblog("PingQueueEntry.removeByWebsite", weblog);
+        removeByWeblog("AutoPing.removeByWebsite", weblog);
         
         // remove associated templates
-        TypedQuery<WeblogTemplate> templateQuery = strategy.getNamedQuery("WeblogTemplate.getByWeblog",
-                WeblogTemplate.class);
-        templateQuery.setParameter(1, weblog);
-        List<WeblogTemplate> templates = templateQuery.getResultList();
-
-        for (WeblogTemplate template : templates) {
-            this.strategy.remove(template);
-        }
+        removeByWeblog("CustomTemplateRendition.removeByWeblog", weblog);
+        removeByWeblog("WeblogTemplate.removeByWeblog", weblog);
         
         // remove folders (including bookmarks)
-        TypedQuery<WeblogBookmarkFolder> folderQuery = strategy.getNamedQuery("WeblogBookmarkFolder.getByWebsite",
-                WeblogBookmarkFolder.class);
-        folderQuery.setParameter(1, weblog);
-        List<WeblogBookmarkFolder> folders = folderQuery.getResultList();
-        for (WeblogBookmarkFolder wbf : folders) {
-            this.strategy.remove(wbf);
-        }
-
-        // remove mediafile metadata
-        // remove uploaded files
-        MediaFileManager mfmgr = WebloggerFactory.getWeblogger().getMediaFileManager();
-        mfmgr.removeAllFiles(weblog);
-        //List<MediaFileDirectory> dirs = mmgr.getMediaFileDirectories(weblog);
-        //for (MediaFileDirectory dir : dirs) {
-            //this.strategy.remove(dir);
-        //}
+        removeByWeblog("WeblogBookmark.removeByWeblog", weblog);
+        removeByWeblog("WeblogBookmarkFolder.removeByWebsite", weblog);
+
+        // remove mediafile metadata, the files themselves are deleted
+        // in the background once the weblog is gone
+        removeByWeblog("MediaFileTag.removeByWeblog", weblog);
+        removeByWeblog("MediaFile.removeByWeblog", weblog);
+        removeByWeblog("MediaFileDirectory.removeByWeblog", weblog);
+
+        // remove hit statistics
+        removeByWeblog("WeblogHitRollup.removeByWeblog", weblog);
+        removeByWeblog("WeblogHitCount.removeByWeblog", weblog);
         this.strategy.flush();
 
-        // remove entries
-        TypedQuery<WeblogEntry> refQuery = strategy.getNamedQuery("WeblogEntry.getByWebsite", WeblogEntry.class);
-        refQuery.setParameter(1, weblog);
-        List<WeblogEntry> entries = refQuery.getResultList();
-        for (WeblogEntry entry : entries) {
-            emgr.removeWeblogEntry(entry);
-        }
-        this.strategy.flush();
+        // remove entries, with their comments and attributes
+        List<String> entryIds;
+        do {
+            TypedQuery<String> idQuery = strategy.getNamedQuery(
+                    "WeblogEntry.getIdsByWebsite", String.class);
+            idQuery.setParameter(1, weblog);
+            idQuery.setMaxResults(removeBatchSize);
+            entryIds = idQuery.getResultList();
+            if (entryIds.isEmpty()) {
+                break;
+            }
+            
+            removeByEntryIds("WeblogEntryComment.removeByEntryIds", entryIds);
+            removeByEntryIds("WeblogEntryAttribute.removeByEntryIds", entryIds);
+            if (removeByEntryIds("WeblogEntry.removeByIds", entryIds) == 0) {
+                throw new WebloggerException("Unable to remove entries of weblog " + weblog.getHandle());
+            }
+            this.strategy.flush();
+            
+        } while (entryIds.size() == removeBatchSize);
+        roller.getIndexManager().removeEditorIndexWeblog(weblog);
         
         // delete all weblog categories
-        Query removeCategories= strategy.getNamedUpdate("WeblogCategory.removeByWeblog");
-        removeCategories.setParameter(1, weblog);
-        removeCategories.executeUpdate();
+        removeByWeblog("WeblogCategory.removeByWeblog", weblog);
 
         // remove permissions
         for (WeblogPermission perm : umgr.getWeblogPermissions(weblog)) {
@@ -223,6 +234,18 @@ public class JPAWeblogManagerImpl implements WeblogManager {
         this.strategy.flush();        
     }
     
+    private int removeByWeblog(String queryName, Weblog weblog) throws WebloggerException {
+        Query query = strategy.getNamedUpdate(queryName);
+        query.setParameter(1, weblog);
+        return query.executeUpdate();
+    }
+    
+    private int removeByEntryIds(String queryName, List<String> entryIds) throws WebloggerException {
+        Query query = strategy.getNamedUpdate(queryName);
+        query.setParameter(1, entryIds);
+        return query.executeUpdate();
+    }
+    
     protected void updateTagAggregates(List<TagStat> tags) throws WebloggerException {
         for (TagStat stat : tags) {
             TypedQuery<WeblogEntryTagAggregate> query = strategy.getNamedQueryCommitFirst(
@@ -265,6 +288,8 @@ public class JPAWeblogManagerImpl implements WeblogManager {
     
     @Override
     public void addWeblog(Weblog newWeblog) throws WebloggerException {
+        SiteStatistics.getInstance().stored(SiteStatistics.Kind.WEBLOG, newWeblog.getId(),
+                newWeblog.getHandle(), SiteStatistics.State.COUNTED, () -> SiteStatistics.State.ABSENT);
         this.strategy.store(newWeblog);
         this.strategy.flush();
         this.addWeblogContents(newWeblog);
@@ -426,7 +451,7 @@ public class JPAWeblogManagerImpl implements WeblogManager {
         String queryString;
         StringBuilder whereClause = new StringBuilder();
         
-        queryString = "SELECT w FROM Weblog w WHERE ";
+        queryString = "SELECT w FROM Weblog w ";
 
         if (startDate != null) {
             Timestamp start = new Timestamp(startDate.getTime());
@@ -458,6 +483,9 @@ public class JPAWeblogManagerImpl implements WeblogManager {
             params.add(size++, active);
             whereClause.append(" w.active = ?").append(size);
         }      
+        if (whereClause.length() > 0) {
+            whereClause.insert(0, "WHERE ");
+        }
                 
         whereClause.append(" ORDER BY w.dateCreated DESC");
         
@@ -613,18 +641,9 @@ public class JPAWeblogManagerImpl implements WeblogManager {
     
     @Override
     public Map<String, Long> getWeblogHandleLetterMap() throws WebloggerException {
-        String lc = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
-        Map<String, Long> results = new TreeMap<>();
-        TypedQuery<Long> query = strategy.getNamedQuery(
-                "Weblog.getCountByHandleLike", Long.class);
-        for (int i=0; i<26; i++) {
-            char currentChar = lc.charAt(i);
-            query.setParameter(1, currentChar + "%");
-            List<Long> row = query.getResultList();
-            Long count = row.get(0);
-            results.put(String.valueOf(currentChar), count);
-        }
-        return results;
+        // one query grouping by first letter rather than one per letter
+        Query query = strategy.getNamedQuery("Weblog.getCountGroupByHandleLetter");
+        return SiteStatistics.toLetterMap(query.getResultList());
     }
     
     @Override
@@ -29,6 +29,7 @@ import org.apache.roller.weblogger.business.plugins.PluginManager;
 import org.apache.roller.weblogger.business.runnable.ThreadManager;
 import org.apache.roller.weblogger.business.search.IndexManager;
 import org.apache.roller.weblogger.business.themes.ThemeManager;
+import org.apache.roller.weblogger.util.cache.CacheManager;
 
 /**
  * A JPA specific implementation of the Weblogger business layer.
@@ -89,6 +90,25 @@ public class JPAWebloggerImpl extends WebloggerImpl {
             urlStrategy);
         
         this.strategy = strategy;
+        
+        // other cluster members change objects behind our shared cache
+        if (CacheManager.isClustered()) {
+            CacheManager.registerHandler(new SharedCacheEvictionHandler(strategy));
+        }
+        
+        // site statistics count changes once they are committed
+        final SiteStatistics siteStatistics = SiteStatistics.getInstance();
+        strategy.addTransactionListener(new JPAPersistenceStrategy.TransactionListener() {
+            @Override
+            public void afterCommit() {
+                siteStatistics.commit();
+            }
+            
+            @Override
+            public void afterRollback() {
+                siteStatistics.discard();
+            }
+        });
     }
     
     
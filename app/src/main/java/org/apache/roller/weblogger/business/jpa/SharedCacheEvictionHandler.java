@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.business.jpa;
+
+import org.apache.roller.weblogger.pojos.User;
+import org.apache.roller.weblogger.pojos.Weblog;
+import org.apache.roller.weblogger.pojos.WeblogBookmark;
+import org.apache.roller.weblogger.pojos.WeblogBookmarkFolder;
+import org.apache.roller.weblogger.pojos.WeblogCategory;
+import org.apache.roller.weblogger.pojos.WeblogEntry;
+import org.apache.roller.weblogger.pojos.WeblogEntryComment;
+import org.apache.roller.weblogger.pojos.WeblogTemplate;
+import org.apache.roller.weblogger.util.cache.CacheHandler;
+
+
+/**
+ * Evicts invalidated objects and their weblog from the JPA shared cache.
+ *
+ * Registered when cache invalidations are relayed between cluster members,
+ * so that changes made by another member are read from the database.  The
+ * page and feed caches compare against the weblog's last modified time,
+ * which has to be fresh for them to notice those changes.
+ */
+class SharedCacheEvictionHandler implements CacheHandler {
+    
+    private final JPAPersistenceStrategy strategy;
+    
+    
+    SharedCacheEvictionHandler(JPAPersistenceStrategy strategy) {
+        this.strategy = strategy;
+    }
+    
+    
+    @Override
+    public void invalidate(WeblogEntry entry) {
+        strategy.evict(WeblogEntry.class, entry.getId());
+        invalidate(entry.getWebsite());
+    }
+    
+    @Override
+    public void invalidate(Weblog weblog) {
+        if (weblog != null) {
+            strategy.evict(Weblog.class, weblog.getId());
+        }
+    }
+    
+    @Override
+    public void invalidate(WeblogBookmark bookmark) {
+        strategy.evict(WeblogBookmark.class, bookmark.getId());
+        // folders hold their list of bookmarks
+        strategy.evict(WeblogBookmarkFolder.class);
+        invalidate(bookmark.getWebsite());
+    }
+    
+    @Override
+    public void invalidate(WeblogBookmarkFolder folder) {
+        strategy.evict(WeblogBookmarkFolder.class, folder.getId());
+        invalidate(folder.getWeblog());
+    }
+    
+    @Override
+    public void invalidate(WeblogEntryComment comment) {
+        strategy.evict(WeblogEntryComment.class, comment.getId());
+        if (comment.getWeblogEntry() != null) {
+            invalidate(comment.getWeblogEntry().getWebsite());
+        }
+    }
+    
+    @Override
+    public void invalidate(User user) {
+        // invalidations carry the user name, not the id
+        strategy.evict(User.class);
+    }
+    
+    @Override
+    public void invalidate(WeblogCategory category) {
+        strategy.evict(WeblogCategory.class, category.getId());
+        invalidate(category.getWeblog());
+    }
+    
+    @Override
+    public void invalidate(WeblogTemplate template) {
+        strategy.evict(WeblogTemplate.class, template.getId());
+        invalidate(template.getWeblog());
+    }
+    
+}
@@ -35,6 +35,7 @@ import org.apache.roller.weblogger.business.plugins.comment.WeblogEntryCommentPl
 import org.apache.roller.weblogger.pojos.WeblogEntryComment;
 import org.apache.roller.weblogger.util.HTMLSanitizer;
 import org.apache.roller.weblogger.util.Reflection;
+import org.apache.roller.weblogger.util.RenderProfiler;
 
 
 /**
@@ -93,6 +94,9 @@ public class PluginManagerImpl implements PluginManager {
     @Override
     public String applyWeblogEntryPlugins(Map<String, WeblogEntryPlugin> pagePlugins, WeblogEntry entry, String str) {
 
+        RenderProfiler profile = RenderProfiler.current();
+        long start = (profile != null) ? System.nanoTime() : 0;
+        
         String ret = str;
         List<String> plugins = entry.getPluginsList();
 
@@ -104,6 +108,10 @@ public class PluginManagerImpl implements PluginManager {
                 log.warn("plugin not found: " + key);
             }
         }
+        
+        if (profile != null) {
+            profile.recordPlugin(System.nanoTime() - start);
+        }
 
         return HTMLSanitizer.conditionallySanitize(ret);
     }
@@ -131,6 +139,9 @@ public class PluginManagerImpl implements PluginManager {
         String content = text;
         
         if (!commentPlugins.isEmpty()) {
+            RenderProfiler profile = RenderProfiler.current();
+            long start = (profile != null) ? System.nanoTime() : 0;
+            
             for (WeblogEntryCommentPlugin plugin : commentPlugins) {
                 if(comment.getPlugins() != null &&
                         comment.getPlugins().contains(plugin.getId())) {
@@ -138,6 +149,10 @@ public class PluginManagerImpl implements PluginManager {
                     content = plugin.render(comment, content);
                 }
             }
+            
+            if (profile != null) {
+                profile.recordPlugin(System.nanoTime() - start);
+            }
         }
         
         return content;
@@ -18,11 +18,12 @@
 
 package org.apache.roller.weblogger.business.runnable;
 
+import java.util.Date;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.roller.util.DateUtil;
 import org.apache.roller.util.RollerConstants;
 import org.apache.roller.weblogger.WebloggerException;
 import org.apache.roller.weblogger.business.HitCountQueue;
@@ -34,7 +35,8 @@ import org.apache.roller.weblogger.pojos.Weblog;
 
 /**
  * A job which gathers the currently queued hits from the HitCountQueue and
- * stores them in the database.
+ * stores them in the database, both as daily hit counts and as hourly hit
+ * rollups.
  */
 public class HitCountProcessingJob implements Job {
     
@@ -58,22 +60,22 @@ public class HitCountProcessingJob implements Job {
         
         HitCountQueue hitCounter = HitCountQueue.getInstance();
         
-        // first get the current set of hits
-        List<String> currentHits = hitCounter.getHits();
+        // first take the hits of all minutes which are over
+        long now = System.currentTimeMillis();
+        Map<Long, Map<String, Integer>> minuteHits =
+                hitCounter.drainHits(now / RollerConstants.MIN_IN_MS * RollerConstants.MIN_IN_MS);
         
-        // now reset the queued hits
-        hitCounter.resetHits();
+        // and let page hits from earlier runs count for less
+        hitCounter.decayPageHits();
         
-        // tally the counts, grouped by weblog handle
-        Map<String, Long> hitsTally = new HashMap<>();
-        for (String weblogHandle : currentHits) {
-            Long count = hitsTally.get(weblogHandle);
-            if(count == null) {
-                count = 1L;
-            } else {
-                count = count + 1;
+        // tally the counts, grouped by weblog handle and then hour
+        Map<String, Map<Long, Integer>> hitsTally = new HashMap<>();
+        for (Map.Entry<Long, Map<String, Integer>> minute : minuteHits.entrySet()) {
+            long hour = DateUtil.getStartOfHour(new Date(minute.getKey())).getTime();
+            for (Map.Entry<String, Integer> count : minute.getValue().entrySet()) {
+                hitsTally.computeIfAbsent(count.getKey(), k -> new HashMap<>())
+                        .merge(hour, count.getValue(), Integer::sum);
             }
-            hitsTally.put(weblogHandle, count);
         }
 
         // iterate over the tallied hits and store them in the db
@@ -81,10 +83,18 @@ public class HitCountProcessingJob implements Job {
             long startTime = System.currentTimeMillis();
             
             Weblog weblog;
-            for (Map.Entry<String, Long> entry : hitsTally.entrySet()) {
+            for (Map.Entry<String, Map<Long, Integer>> entry : hitsTally.entrySet()) {
                 try {
                     weblog = wmgr.getWeblogByHandle(entry.getKey());
-                    emgr.incrementHitCount(weblog, entry.getValue().intValue());
+                    if(weblog == null) {
+                        continue;
+                    }
+                    int total = 0;
+                    for (Map.Entry<Long, Integer> hour : entry.getValue().entrySet()) {
+                        emgr.incrementHourlyHitCount(weblog, new Date(hour.getKey()), hour.getValue());
+                        total += hour.getValue();
+                    }
+                    emgr.incrementHitCount(weblog, total);
                 } catch (WebloggerException ex) {
                     log.error(ex);
                 }
@@ -18,6 +18,7 @@
 
 package org.apache.roller.weblogger.business.runnable;
 
+import java.util.Calendar;
 import java.util.Date;
 import java.util.Properties;
 import org.apache.commons.logging.Log;
@@ -49,6 +50,12 @@ public class ResetHitCountsTask extends RollerTaskWithLeasing {
     // lease time given to task lock, default is 30 minutes
     private int leaseTime = RollerTaskWithLeasing.DEFAULT_LEASE_MINS;
 
+    // days for which hourly hit rollups are kept before being downsampled
+    private int hourlyRetentionDays = 7;
+
+    // days for which daily hit rollups are kept
+    private int dailyRetentionDays = 400;
+
 
     @Override
     public String getClientId() {
@@ -118,6 +125,25 @@ public class ResetHitCountsTask extends RollerTaskWithLeasing {
                 log.warn("Invalid leaseTime: "+leaseTimeStr);
             }
         }
+
+        // extract hit rollup retention
+        String hourlyStr = props.getProperty("hourlyRetentionDays");
+        if(hourlyStr != null) {
+            try {
+                this.hourlyRetentionDays = Integer.parseInt(hourlyStr);
+            } catch (NumberFormatException ex) {
+                log.warn("Invalid hourlyRetentionDays: "+hourlyStr);
+            }
+        }
+
+        String dailyStr = props.getProperty("dailyRetentionDays");
+        if(dailyStr != null) {
+            try {
+                this.dailyRetentionDays = Integer.parseInt(dailyStr);
+            } catch (NumberFormatException ex) {
+                log.warn("Invalid dailyRetentionDays: "+dailyStr);
+            }
+        }
     }
 
 
@@ -134,6 +160,10 @@ public class ResetHitCountsTask extends RollerTaskWithLeasing {
             mgr.resetAllHitCounts();
             WebloggerFactory.getWeblogger().flush();
 
+            // downsample old hourly hit rollups and drop expired daily ones
+            mgr.rollupHitCounts(daysAgo(hourlyRetentionDays), daysAgo(dailyRetentionDays));
+            WebloggerFactory.getWeblogger().flush();
+
             log.info("task completed");
 
         } catch (WebloggerException e) {
@@ -148,6 +178,16 @@ public class ResetHitCountsTask extends RollerTaskWithLeasing {
     }
 
 
+    /**
+     * The current time, the given number of days ago.
+     */
+    private static Date daysAgo(int days) {
+        Calendar cal = Calendar.getInstance();
+        cal.add(Calendar.DATE, -days);
+        return cal.getTime();
+    }
+
+
     /**
      * Main method so that this task may be run from outside the webapp.
      */
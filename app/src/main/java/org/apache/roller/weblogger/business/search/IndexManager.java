@@ -19,9 +19,12 @@ package org.apache.roller.weblogger.business.search;
 
 import org.apache.roller.weblogger.WebloggerException;
 import org.apache.roller.weblogger.business.InitializationException;
+import java.util.List;
 import org.apache.roller.weblogger.business.URLStrategy;
 import org.apache.roller.weblogger.pojos.Weblog;
 import org.apache.roller.weblogger.pojos.WeblogEntry;
+import org.apache.roller.weblogger.pojos.WeblogEntryComment;
+import org.apache.roller.weblogger.pojos.WeblogEntryComment.ApprovalStatus;
 
 /**
  * Interface to Roller's full-text search facility.
@@ -71,6 +74,39 @@ public interface IndexManager {
         int entryCount,
         URLStrategy urlStrategy
     ) throws WebloggerException;
+
+    /** Add or update entry of any status in the editor index */
+    void saveEditorIndexEntry(WeblogEntry entry);
+
+    /** Remove entry and its comments from the editor index */
+    void removeEditorIndexEntry(WeblogEntry entry);
+
+    /** Remove all entries and comments of a weblog from the editor index */
+    void removeEditorIndexWeblog(Weblog weblog);
+
+    /** Add or update comment of any status in the editor index */
+    void saveEditorIndexComment(WeblogEntryComment comment);
+
+    /** Remove comment from the editor index */
+    void removeEditorIndexComment(WeblogEntryComment comment);
+
+    /**
+     * Find ids of entries of any status whose title, summary or text match.
+     * @return ids of matching entries, or null if the editor index can't
+     *         answer the search and the database has to be scanned instead
+     */
+    List<String> searchEditorIndexEntries(Weblog weblog, String text);
+
+    /**
+     * Find ids of comments whose content match.
+     * @return ids of matching comments, or null if the editor index can't
+     *         answer the search and the database has to be scanned instead
+     */
+    List<String> searchEditorIndexComments(
+        Weblog weblog,
+        WeblogEntry entry,
+        String text,
+        ApprovalStatus status);
 }
 
 
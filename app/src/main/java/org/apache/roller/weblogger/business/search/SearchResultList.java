@@ -20,21 +20,43 @@
 
 package org.apache.roller.weblogger.business.search;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import org.apache.roller.weblogger.pojos.wrapper.WeblogEntryWrapper;
 
 public class SearchResultList {
     int limit;
     int offset;
+    int totalHits;
     Set<String> categories;
     List<WeblogEntryWrapper> results;
+    Map<String, Integer> categoryCounts = Collections.emptyMap();
+    Map<String, Integer> weblogCounts = Collections.emptyMap();
+    Map<String, Integer> localeCounts = Collections.emptyMap();
+    Map<String, Integer> monthCounts = Collections.emptyMap();
     public SearchResultList(
         List<WeblogEntryWrapper> results, Set<String> categories, int limit, int offset) {
         this.results = results;
         this.categories = categories;
         this.limit = limit;
         this.offset = offset;
+        this.totalHits = results.size();
+    }
+    public SearchResultList(
+        List<WeblogEntryWrapper> results, Set<String> categories, int limit, int offset,
+        int totalHits,
+        Map<String, Integer> categoryCounts,
+        Map<String, Integer> weblogCounts,
+        Map<String, Integer> localeCounts,
+        Map<String, Integer> monthCounts) {
+        this(results, categories, limit, offset);
+        this.totalHits = totalHits;
+        this.categoryCounts = categoryCounts;
+        this.weblogCounts = weblogCounts;
+        this.localeCounts = localeCounts;
+        this.monthCounts = monthCounts;
     }
     public int getLimit() {
         return limit;
@@ -42,10 +64,30 @@ public class SearchResultList {
     public int getOffset() {
         return offset;
     }
+    /** Number of entries matching the search, over all pages. */
+    public int getTotalHits() {
+        return totalHits;
+    }
     public List<WeblogEntryWrapper> getResults() {
         return results;
     }
     public Set<String> getCategories() {
         return categories;
     }
+    /** Matching entries per category name, most frequent first. */
+    public Map<String, Integer> getCategoryCounts() {
+        return categoryCounts;
+    }
+    /** Matching entries per weblog handle, most frequent first. */
+    public Map<String, Integer> getWeblogCounts() {
+        return weblogCounts;
+    }
+    /** Matching entries per locale, most frequent first. */
+    public Map<String, Integer> getLocaleCounts() {
+        return localeCounts;
+    }
+    /** Matching entries per month of publication (yyyy-MM), most frequent first. */
+    public Map<String, Integer> getMonthCounts() {
+        return monthCounts;
+    }
 }
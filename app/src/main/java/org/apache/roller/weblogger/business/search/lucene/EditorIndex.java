@@ -0,0 +1,490 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.business.search.lucene;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.LowerCaseFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.ngram.NGramTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.roller.util.RollerConstants;
+import org.apache.roller.weblogger.WebloggerException;
+import org.apache.roller.weblogger.business.WeblogEntryManager;
+import org.apache.roller.weblogger.business.Weblogger;
+import org.apache.roller.weblogger.pojos.Weblog;
+import org.apache.roller.weblogger.pojos.WeblogEntry;
+import org.apache.roller.weblogger.pojos.WeblogEntryComment;
+import org.apache.roller.weblogger.pojos.WeblogEntryComment.ApprovalStatus;
+
+/**
+ * Secondary index backing the text searches of the authoring and admin UI.
+ *
+ * Unlike the public search index it holds entries of every status and all
+ * comments, including spam, along with their moderation status. Searches
+ * only resolve ids, callers load the matching rows by primary key.
+ *
+ * Text is indexed as overlapping lower case trigrams with their positions,
+ * so that a search matches text containing it anywhere, ignoring case, like
+ * the LIKE '%text%' database searches it stands in for. Searches shorter
+ * than a trigram are left to the database.
+ *
+ * The index is kept open for the lifetime of the application and updated
+ * from the calling thread, changes become searchable on the next search.
+ * Updates wait while a rebuild is reading and indexing a batch of rows, so
+ * that the rebuild can't overwrite them with what it read before.
+ */
+public class EditorIndex {
+
+    private static final Log logger = LogFactory.getLog(EditorIndex.class);
+
+    private static final String[] ENTRY_FIELDS = new String[] {
+        FieldConstants.TITLE,
+        FieldConstants.SUMMARY,
+        FieldConstants.CONTENT
+    };
+
+    private static final String[] COMMENT_FIELDS = new String[] {
+        FieldConstants.C_CONTENT
+    };
+
+    private static final int GRAM_SIZE = 3;
+
+    // recorded in the index, older formats are rebuilt
+    private static final String FORMAT_KEY = "format";
+    private static final String FORMAT = "ngram-" + GRAM_SIZE;
+
+    // entries read from the database at a time when rebuilding
+    private static final int REBUILD_BATCH_SIZE = 100;
+
+    private static final Analyzer ANALYZER = new Analyzer() {
+        @Override
+        protected TokenStreamComponents createComponents(String fieldName) {
+            Tokenizer source = new NGramTokenizer(GRAM_SIZE, GRAM_SIZE);
+            return new TokenStreamComponents(source, new LowerCaseFilter(source));
+        }
+    };
+
+    private final Path indexDir;
+    private final int maxHits;
+
+    private IndexWriter writer;
+    private SearcherManager searcherManager;
+
+    // false until the index reflects the database
+    private volatile boolean ready = false;
+
+    // held by updates, and by rebuilds for each batch
+    private final Object writeLock = new Object();
+
+    // only one rebuild at a time
+    private final Object rebuildLock = new Object();
+
+    // set when an update fails, so that a running rebuild doesn't mark the index ready
+    private boolean updateFailed = false;
+
+    public EditorIndex(Path indexDir, int maxHits) {
+        this.indexDir = indexDir;
+        this.maxHits = maxHits;
+    }
+
+    /**
+     * Open the index, creating it if needed.
+     *
+     * @param clean true if the index can be trusted to reflect the database
+     * @return false if the index is empty or was discarded and needs a rebuild
+     */
+    public synchronized boolean open(boolean clean) throws IOException {
+        Directory directory = FSDirectory.open(indexDir);
+
+        IndexWriterConfig config = new IndexWriterConfig(ANALYZER);
+        config.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+        writer = new IndexWriter(directory, config);
+
+        Map<String, String> commitData = new HashMap<>();
+        Iterable<Map.Entry<String, String>> liveCommitData = writer.getLiveCommitData();
+        if (liveCommitData != null) {
+            for (Map.Entry<String, String> entry : liveCommitData) {
+                commitData.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        boolean usable = clean && writer.getDocStats().numDocs > 0
+                && FORMAT.equals(commitData.get(FORMAT_KEY));
+        if (!usable) {
+            writer.deleteAll();
+        }
+        writer.setLiveCommitData(Map.of(FORMAT_KEY, FORMAT).entrySet());
+        writer.commit();
+        searcherManager = new SearcherManager(writer, null);
+        ready = usable;
+        return usable;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public synchronized void close() {
+        try {
+            if (searcherManager != null) {
+                searcherManager.close();
+            }
+            if (writer != null) {
+                if (!ready) {
+                    // make sure it gets rebuilt on next startup
+                    writer.deleteAll();
+                }
+                writer.close();
+            }
+        } catch (IOException e) {
+            logger.error("Error closing editor index", e);
+        } finally {
+            ready = false;
+            searcherManager = null;
+            writer = null;
+        }
+    }
+
+    public void saveEntry(WeblogEntry entry) {
+        update(key(FieldConstants.TYPE_ENTRY, entry.getId()), getDocument(entry));
+    }
+
+    public void removeEntry(WeblogEntry entry) {
+        // the entry's comments go with it
+        delete(key(FieldConstants.TYPE_ENTRY, entry.getId()),
+                new Term(FieldConstants.ENTRY_ID, entry.getId()));
+    }
+
+    public void removeWeblog(Weblog weblog) {
+        delete(new Term(FieldConstants.WEBLOG_ID, weblog.getId()));
+    }
+
+    public void saveComment(WeblogEntryComment comment) {
+        update(key(FieldConstants.TYPE_COMMENT, comment.getId()), getDocument(comment));
+    }
+
+    public void removeComment(WeblogEntryComment comment) {
+        delete(key(FieldConstants.TYPE_COMMENT, comment.getId()));
+    }
+
+    /**
+     * Ids of entries of any status matching the text.
+     *
+     * @return matching ids, or null if the index can't answer the search and
+     *         the caller should fall back to scanning the database
+     */
+    public List<String> searchEntryIds(Weblog weblog, String text) {
+        BooleanQuery.Builder query = getTextQuery(text, ENTRY_FIELDS);
+        if (query == null) {
+            return null;
+        }
+        query.add(new TermQuery(new Term(FieldConstants.TYPE, FieldConstants.TYPE_ENTRY)),
+                BooleanClause.Occur.FILTER);
+        if (weblog != null) {
+            query.add(new TermQuery(new Term(FieldConstants.WEBLOG_ID, weblog.getId())),
+                    BooleanClause.Occur.FILTER);
+        }
+        return search(query.build());
+    }
+
+    /**
+     * Ids of comments matching the text, optionally restricted to a weblog
+     * or entry and a moderation status.
+     *
+     * @return matching ids, or null if the index can't answer the search and
+     *         the caller should fall back to scanning the database
+     */
+    public List<String> searchCommentIds(Weblog weblog, WeblogEntry entry,
+            String text, ApprovalStatus status) {
+        BooleanQuery.Builder query = getTextQuery(text, COMMENT_FIELDS);
+        if (query == null) {
+            return null;
+        }
+        query.add(new TermQuery(new Term(FieldConstants.TYPE, FieldConstants.TYPE_COMMENT)),
+                BooleanClause.Occur.FILTER);
+        if (entry != null) {
+            query.add(new TermQuery(new Term(FieldConstants.ENTRY_ID, entry.getId())),
+                    BooleanClause.Occur.FILTER);
+        } else if (weblog != null) {
+            query.add(new TermQuery(new Term(FieldConstants.WEBLOG_ID, weblog.getId())),
+                    BooleanClause.Occur.FILTER);
+        }
+        if (status != null) {
+            query.add(new TermQuery(new Term(FieldConstants.STATUS, status.name())),
+                    BooleanClause.Occur.FILTER);
+        }
+        return search(query.build());
+    }
+
+    /**
+     * Replace the contents of the index with all entries and comments in
+     * the database. Searches fall back to the database until this completes.
+     */
+    public void rebuild(Weblogger roller) {
+        synchronized (rebuildLock) {
+            rebuildIndex(roller);
+        }
+    }
+
+    private void rebuildIndex(Weblogger roller) {
+        Date start = new Date();
+        ready = false;
+        int entryCount = 0;
+        int commentCount = 0;
+        try {
+            IndexWriter w = getWriter();
+            if (w == null) {
+                return;
+            }
+            synchronized (writeLock) {
+                w.deleteAll();
+                updateFailed = false;
+            }
+
+            WeblogEntryManager entryManager = roller.getWeblogEntryManager();
+            List<String> weblogIds = new ArrayList<>();
+            for (Weblog weblog : roller.getWeblogManager().getWeblogs(null, null, null, null, 0, -1)) {
+                weblogIds.add(weblog.getId());
+            }
+            roller.release();
+
+            // a batch of entries at a time to keep the persistence context small,
+            // rows changed meanwhile are indexed by the updates that follow
+            for (String weblogId : weblogIds) {
+                Weblog weblog = roller.getWeblogManager().getWeblog(weblogId);
+                if (weblog == null) {
+                    continue;
+                }
+                List<String> entryIds = entryManager.getWeblogEntryIds(weblog);
+                roller.release();
+
+                for (int i = 0; i < entryIds.size(); i += REBUILD_BATCH_SIZE) {
+                    List<String> batch = entryIds.subList(i, Math.min(entryIds.size(), i + REBUILD_BATCH_SIZE));
+                    synchronized (writeLock) {
+                        for (WeblogEntry entry : entryManager.getWeblogEntriesById(batch)) {
+                            w.updateDocument(key(FieldConstants.TYPE_ENTRY, entry.getId()), getDocument(entry));
+                            entryCount++;
+                        }
+                        for (WeblogEntryComment comment : entryManager.getCommentsByEntryIds(batch)) {
+                            w.updateDocument(key(FieldConstants.TYPE_COMMENT, comment.getId()), getDocument(comment));
+                            commentCount++;
+                        }
+                        roller.release();
+                    }
+                }
+            }
+
+            synchronized (writeLock) {
+                w.commit();
+                ready = !updateFailed;
+            }
+
+        } catch (IOException | WebloggerException | RuntimeException e) {
+            logger.error("Error rebuilding editor index", e);
+        } finally {
+            roller.release();
+        }
+
+        double length = (new Date().getTime() - start.getTime()) / (double) RollerConstants.SEC_IN_MS;
+        logger.info("Completed rebuilding editor index with " + entryCount + " entries and "
+                + commentCount + " comments in '" + length + "' seconds");
+    }
+
+    static Document getDocument(WeblogEntry entry) {
+        Document doc = new Document();
+        doc.add(new StringField(FieldConstants.KEY,
+                key(FieldConstants.TYPE_ENTRY, entry.getId()).text(), Field.Store.NO));
+        doc.add(new StringField(FieldConstants.ID, entry.getId(), Field.Store.YES));
+        doc.add(new StringField(FieldConstants.TYPE, FieldConstants.TYPE_ENTRY, Field.Store.NO));
+        doc.add(new StringField(FieldConstants.WEBLOG_ID, entry.getWebsite().getId(), Field.Store.NO));
+        if (entry.getStatus() != null) {
+            doc.add(new StringField(FieldConstants.STATUS, entry.getStatus().name(), Field.Store.NO));
+        }
+        addText(doc, FieldConstants.TITLE, entry.getTitle());
+        addText(doc, FieldConstants.SUMMARY, entry.getSummary());
+        addText(doc, FieldConstants.CONTENT, entry.getText());
+        return doc;
+    }
+
+    static Document getDocument(WeblogEntryComment comment) {
+        WeblogEntry entry = comment.getWeblogEntry();
+        Document doc = new Document();
+        doc.add(new StringField(FieldConstants.KEY,
+                key(FieldConstants.TYPE_COMMENT, comment.getId()).text(), Field.Store.NO));
+        doc.add(new StringField(FieldConstants.ID, comment.getId(), Field.Store.YES));
+        doc.add(new StringField(FieldConstants.TYPE, FieldConstants.TYPE_COMMENT, Field.Store.NO));
+        doc.add(new StringField(FieldConstants.ENTRY_ID, entry.getId(), Field.Store.NO));
+        doc.add(new StringField(FieldConstants.WEBLOG_ID, entry.getWebsite().getId(), Field.Store.NO));
+        if (comment.getStatus() != null) {
+            doc.add(new StringField(FieldConstants.STATUS, comment.getStatus().name(), Field.Store.NO));
+        }
+        addText(doc, FieldConstants.C_CONTENT, comment.getContent());
+        return doc;
+    }
+
+    private static void addText(Document doc, String field, String value) {
+        if (value != null) {
+            doc.add(new TextField(field, value, Field.Store.NO));
+        }
+    }
+
+    private static Term key(String type, String id) {
+        return new Term(FieldConstants.KEY, type + ":" + id);
+    }
+
+    /**
+     * The trigrams of the text have to follow each other in one of the
+     * fields, so the text has to occur in it.
+     *
+     * @return the query, or null if the text is too short to search for
+     */
+    private static BooleanQuery.Builder getTextQuery(String text, String[] fields) {
+        List<String> grams = getGrams(text);
+        if (grams.isEmpty()) {
+            return null;
+        }
+        BooleanQuery.Builder anyField = new BooleanQuery.Builder();
+        for (String field : fields) {
+            PhraseQuery.Builder phrase = new PhraseQuery.Builder();
+            for (int i = 0; i < grams.size(); i++) {
+                phrase.add(new Term(field, grams.get(i)), i);
+            }
+            anyField.add(phrase.build(), BooleanClause.Occur.SHOULD);
+        }
+        BooleanQuery.Builder query = new BooleanQuery.Builder();
+        query.add(anyField.build(), BooleanClause.Occur.MUST);
+        return query;
+    }
+
+    private static List<String> getGrams(String text) {
+        List<String> grams = new ArrayList<>();
+        if (text == null) {
+            return grams;
+        }
+        try (TokenStream stream = ANALYZER.tokenStream(FieldConstants.CONTENT, new StringReader(text))) {
+            CharTermAttribute term = stream.addAttribute(CharTermAttribute.class);
+            stream.reset();
+            while (stream.incrementToken()) {
+                grams.add(term.toString());
+            }
+            stream.end();
+        } catch (IOException e) {
+            logger.error("Error analyzing search text", e);
+            grams.clear();
+        }
+        return grams;
+    }
+
+    private List<String> search(BooleanQuery query) {
+        SearcherManager manager = getSearcherManager();
+        if (!ready || manager == null) {
+            return null;
+        }
+        try {
+            manager.maybeRefresh();
+            IndexSearcher searcher = manager.acquire();
+            try {
+                TopDocs hits = searcher.search(query, maxHits + 1);
+                if (hits.scoreDocs.length > maxHits) {
+                    // too broad, an IN list this long is no better than a scan
+                    return null;
+                }
+                StoredFields storedFields = searcher.storedFields();
+                List<String> ids = new ArrayList<>(hits.scoreDocs.length);
+                for (ScoreDoc hit : hits.scoreDocs) {
+                    ids.add(storedFields.document(hit.doc).get(FieldConstants.ID));
+                }
+                return ids;
+            } finally {
+                manager.release(searcher);
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.error("Error searching editor index", e);
+            return null;
+        }
+    }
+
+    private void update(Term key, Document doc) {
+        synchronized (writeLock) {
+            IndexWriter w = getWriter();
+            if (w != null) {
+                try {
+                    w.updateDocument(key, doc);
+                } catch (IOException | RuntimeException e) {
+                    logger.error("Error updating editor index, falling back to database searches", e);
+                    ready = false;
+                    updateFailed = true;
+                }
+            }
+        }
+    }
+
+    private void delete(Term... terms) {
+        synchronized (writeLock) {
+            IndexWriter w = getWriter();
+            if (w != null) {
+                try {
+                    w.deleteDocuments(terms);
+                } catch (IOException | RuntimeException e) {
+                    logger.error("Error updating editor index, falling back to database searches", e);
+                    ready = false;
+                    updateFailed = true;
+                }
+            }
+        }
+    }
+
+    private synchronized IndexWriter getWriter() {
+        return writer;
+    }
+
+    private synchronized SearcherManager getSearcherManager() {
+        return searcherManager;
+    }
+}
@@ -43,4 +43,20 @@ public final class FieldConstants {
     public static final String CONSTANT_V = "v";
     public static final String WEBSITE_HANDLE = "handle";
     public static final String LOCALE = "locale";
+
+    // facet dimensions of the search index
+    public static final String FACET_CATEGORY = "category";
+    public static final String FACET_WEBLOG = "weblog";
+    public static final String FACET_LOCALE = "locale";
+    public static final String FACET_MONTH = "month";
+
+    // fields only used by the editor index
+    public static final String KEY = "key";
+    public static final String TYPE = "type";
+    public static final String TYPE_ENTRY = "entry";
+    public static final String TYPE_COMMENT = "comment";
+    public static final String WEBLOG_ID = "weblogid";
+    public static final String ENTRY_ID = "entryid";
+    public static final String STATUS = "status";
+    public static final String SUMMARY = "summary";
 }
@@ -21,6 +21,7 @@
 package org.apache.roller.weblogger.business.search.lucene;
 
 import java.io.IOException;
+import java.text.SimpleDateFormat;
 import java.util.List;
 
 import org.apache.commons.logging.Log;
@@ -28,12 +29,13 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.lucene.analysis.miscellaneous.LimitTokenCountAnalyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
-import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.NumericDocValuesField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
+import org.apache.lucene.facet.FacetsConfig;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesFacetField;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
-import org.apache.lucene.util.BytesRef;
 import org.apache.roller.weblogger.config.WebloggerConfig;
 import org.apache.roller.weblogger.pojos.WeblogCategory;
 import org.apache.roller.weblogger.pojos.WeblogEntry;
@@ -53,6 +55,9 @@ public abstract class IndexOperation implements Runnable {
     private static Log logger = LogFactory.getFactory().getInstance(
             IndexOperation.class);
 
+    // facet fields are stored with the default settings, one value per dimension
+    static final FacetsConfig FACETS_CONFIG = new FacetsConfig();
+
     // ~ Instance fields
     // ========================================================
     protected LuceneIndexManager manager;
@@ -66,7 +71,7 @@ public abstract class IndexOperation implements Runnable {
 
     // ~ Methods
     // ================================================================
-    protected Document getDocument(WeblogEntry data) {
+    protected Document getDocument(WeblogEntry data) throws IOException {
 
         // Actual comment content is indexed only if search.index.comments
         // is true or absent from the (static) configuration properties.
@@ -138,7 +143,21 @@ public abstract class IndexOperation implements Runnable {
         // keyword
         if (data.getPubTime() != null) {
             // SearchOperation sorts results by date
-            doc.add(new SortedDocValuesField(FieldConstants.PUBLISHED, new BytesRef(data.getPubTime().toString())));
+            doc.add(new NumericDocValuesField(FieldConstants.PUBLISHED, data.getPubTime().getTime()));
+
+            // month of publication in the weblog's timezone
+            SimpleDateFormat monthFormat = new SimpleDateFormat("yyyy-MM");
+            monthFormat.setTimeZone(data.getWebsite().getTimeZoneInstance());
+            doc.add(new SortedSetDocValuesFacetField(FieldConstants.FACET_MONTH,
+                    monthFormat.format(data.getPubTime())));
+        }
+
+        // facets counted by SearchOperation
+        doc.add(new SortedSetDocValuesFacetField(FieldConstants.FACET_WEBLOG,
+                data.getWebsite().getHandle()));
+        if (!data.getLocale().isEmpty()) {
+            doc.add(new SortedSetDocValuesFacetField(FieldConstants.FACET_LOCALE,
+                    data.getLocale().toLowerCase()));
         }
 
         // index Category, needs to be in lower case as it is used in a term
@@ -146,6 +165,8 @@ public abstract class IndexOperation implements Runnable {
         if (categorydata != null) {
             doc.add(new StringField(FieldConstants.CATEGORY, categorydata
                     .getName().toLowerCase(), Field.Store.YES));
+            doc.add(new SortedSetDocValuesFacetField(FieldConstants.FACET_CATEGORY,
+                    categorydata.getName().toLowerCase()));
         }
 
         // index Comments, unstored
@@ -160,7 +181,7 @@ public abstract class IndexOperation implements Runnable {
         doc.add(new StringField(FieldConstants.C_NAME, commentName,
                 Field.Store.YES));
 
-        return doc;
+        return FACETS_CONFIG.build(doc);
     }
 
     /**
@@ -20,6 +20,8 @@ package org.apache.roller.weblogger.business.search.lucene;
 
 import java.io.IOException;
 import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.TokenStream;
@@ -66,4 +68,33 @@ public final class IndexUtil {
         return term;
     }
 
+    /**
+     * Split the input string into the tokens the analyzer would index.
+     * 
+     * @param field
+     *            The lucene document field the input is meant for
+     * @param input
+     *            The input you wish to tokenize
+     * 
+     * @return Tokens of the input, empty if there are none
+     */
+    public static List<String> getTokens(String field, String input) {
+        List<String> tokens = new ArrayList<>();
+        if (input == null || field == null) {
+            return tokens;
+        }
+        Analyzer analyzer = LuceneIndexManager.getAnalyzer();
+        try (TokenStream stream = analyzer.tokenStream(field, new StringReader(input))) {
+            CharTermAttribute termAtt = stream.addAttribute(CharTermAttribute.class);
+            stream.reset();
+            while (stream.incrementToken()) {
+                tokens.add(termAtt.toString());
+            }
+            stream.end();
+        } catch (IOException e) {
+            // ignored
+        }
+        return tokens;
+    }
+
 }
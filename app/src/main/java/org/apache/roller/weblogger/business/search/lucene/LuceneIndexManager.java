@@ -25,10 +25,15 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import org.apache.commons.beanutils.ConstructorUtils;
@@ -38,12 +43,18 @@ import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.miscellaneous.LimitTokenCountAnalyzer;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.facet.FacetsConfig;
+import org.apache.lucene.facet.sortedset.DefaultSortedSetDocValuesReaderState;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesReaderState;
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocValuesType;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.FieldInfos;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.StoredFields;
 import org.apache.lucene.search.ScoreDoc;
-import org.apache.lucene.search.TopFieldDocs;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 import org.apache.roller.weblogger.WebloggerException;
@@ -58,6 +69,10 @@ import org.apache.roller.weblogger.config.WebloggerConfig;
 import org.apache.roller.weblogger.config.WebloggerRuntimeConfig;
 import org.apache.roller.weblogger.pojos.Weblog;
 import org.apache.roller.weblogger.pojos.WeblogEntry;
+import org.apache.roller.weblogger.pojos.WeblogEntryComment;
+import org.apache.roller.weblogger.pojos.WeblogEntryComment.ApprovalStatus;
+import org.apache.roller.weblogger.util.cache.Cache;
+import org.apache.roller.weblogger.util.cache.CacheManager;
 import org.apache.roller.weblogger.pojos.wrapper.WeblogEntryWrapper;
 
 /**
@@ -71,6 +86,9 @@ import org.apache.roller.weblogger.pojos.wrapper.WeblogEntryWrapper;
 public class LuceneIndexManager implements IndexManager {
 
     private IndexReader reader;
+
+    // facet ordinals of the shared reader, built on first use
+    private SortedSetDocValuesReaderState facetState;
     private final Weblogger roller;
 
     private final static Log logger = LogFactory.getFactory().getInstance(LuceneIndexManager.class);
@@ -85,6 +103,26 @@ public class LuceneIndexManager implements IndexManager {
 
     private final ReadWriteLock rwl = new ReentrantReadWriteLock();
 
+    // a unique identifier for the search results cache, this is used as the
+    // prefix for roller config properties that apply to this cache
+    public static final String CACHE_ID = "cache.searchresults";
+
+    // hits beyond this are never collected, deeper pages wrap to the first
+    private static final int MAX_SEARCH_HITS = 500;
+
+    // only the id is needed to load the entries of a page
+    private static final Set<String> ID_FIELD = Set.of(FieldConstants.ID);
+
+    // pages of entry ids for recent searches, cleared when the index changes
+    private Cache resultCache = null;
+
+    // bumped on every index change so that searches which raced with a
+    // write don't repopulate the cache with stale pages
+    private final AtomicLong indexGeneration = new AtomicLong();
+
+    // entries of any status and all comments, for the authoring and admin UI
+    private EditorIndex editorIndex = null;
+
 
     /**
      * Creates a new lucene index manager. This should only be created once.
@@ -115,6 +153,39 @@ public class LuceneIndexManager implements IndexManager {
 
         String test = indexDir + File.separator + ".index-inconsistent";
         indexConsistencyMarker = new File(test);
+
+        if (this.searchEnabled && WebloggerConfig.getBooleanProperty("search.editorIndex.enabled", true)) {
+            String editorIndexDir = WebloggerConfig.getProperty("search.editorIndex.dir");
+            if (editorIndexDir == null || editorIndexDir.isBlank()) {
+                editorIndexDir = searchIndexDir + "-editor";
+            }
+            int maxHits = 1000;
+            try {
+                maxHits = WebloggerConfig.getIntProperty("search.editorIndex.maxHits", maxHits);
+            } catch (NumberFormatException e) {
+                logger.warn("Invalid search.editorIndex.maxHits, using " + maxHits);
+            }
+            editorIndex = new EditorIndex(Path.of(editorIndexDir.replace('/', File.separatorChar)), maxHits);
+            logger.info("editor index dir: " + editorIndexDir);
+        }
+
+        if (this.searchEnabled && WebloggerConfig.getBooleanProperty(CACHE_ID + ".enabled")) {
+            Map<String, String> cacheProps = new HashMap<>();
+            cacheProps.put("id", CACHE_ID);
+            Enumeration<Object> allProps = WebloggerConfig.keys();
+            String prop;
+            while (allProps.hasMoreElements()) {
+                prop = (String) allProps.nextElement();
+
+                // we are only interested in props for this cache
+                if (prop.startsWith(CACHE_ID + ".")) {
+                    cacheProps.put(prop.substring(CACHE_ID.length() + 1),
+                            WebloggerConfig.getProperty(prop));
+                }
+            }
+            logger.info("Search results cache = " + cacheProps);
+            resultCache = CacheManager.constructCache(null, cacheProps);
+        }
     }
 
     /**
@@ -151,6 +222,13 @@ public class LuceneIndexManager implements IndexManager {
                 try {
                     synchronized(this) {
                         reader = DirectoryReader.open(getIndexDirectory());
+                        if (isOutdatedIndex(reader)) {
+                            logger.info("Search index lacks sort or facet fields, scheduling rebuild.");
+                            reader.close();
+                            reader = null;
+                            inconsistentAtStartup = true;
+                            deleteIndex();
+                        }
                     }
                 } catch (IOException | IllegalArgumentException ex) {  // IAE for incompatible codecs
                     logger.warn("Failed to open search index, scheduling rebuild.", ex);
@@ -164,6 +242,8 @@ public class LuceneIndexManager implements IndexManager {
                 createIndex(getIndexDirectory());
             }
 
+            initializeEditorIndex();
+
             if (inconsistentAtStartup) {
                 logger.info("Index was inconsistent. Rebuilding index in the background...");
                 try {
@@ -178,9 +258,38 @@ public class LuceneIndexManager implements IndexManager {
 
     }
 
+    private void initializeEditorIndex() {
+        if (editorIndex == null) {
+            return;
+        }
+        try {
+            // an inconsistent search index gets both indexes rebuilt below
+            if (!editorIndex.open(!inconsistentAtStartup) && !inconsistentAtStartup) {
+                logger.info("Editor index is empty. Rebuilding it in the background...");
+                rebuildEditorIndex();
+            }
+        } catch (IOException e) {
+            logger.error("Unable to open editor index, editor searches will scan the database", e);
+            editorIndex.close();
+            editorIndex = null;
+        }
+    }
+
+    private void rebuildEditorIndex() {
+        try {
+            final EditorIndex index = editorIndex;
+            roller.getThreadManager().executeInBackground(() -> index.rebuild(roller));
+        } catch (InterruptedException e) {
+            logger.error("Error scheduling editor index rebuild", e);
+        }
+    }
+
     @Override
     public void rebuildWeblogIndex() throws WebloggerException {
         scheduleIndexOperation(new RebuildWebsiteIndexOperation(roller, this, null));
+        if (editorIndex != null) {
+            rebuildEditorIndex();
+        }
     }
 
     @Override
@@ -218,33 +327,109 @@ public class LuceneIndexManager implements IndexManager {
         int entryCount,
         URLStrategy urlStrategy) throws WebloggerException {
 
-        SearchOperation search = new SearchOperation(this);
-        search.setTerm(term);
         boolean weblogSpecific = !WebloggerRuntimeConfig.isSiteWideWeblog(weblogHandle);
-        if (weblogSpecific) {
-            search.setWeblogHandle(weblogHandle);
-        }
-        if (category != null) {
-            search.setCategory(category);
-        }
-        if (locale != null) {
-            search.setLocale(locale);
+        String cacheKey = getResultCacheKey(
+            term, weblogSpecific ? weblogHandle : null, category, locale, pageNum, entryCount);
+
+        long generation = indexGeneration.get();
+        SearchResultPage page = null;
+        if (resultCache != null) {
+            page = (SearchResultPage) resultCache.get(cacheKey);
         }
 
-        executeIndexOperationNow(search);
-        if (search.getResultsCount() >= 0) {
-            TopFieldDocs docs = search.getResults();
-            ScoreDoc[] hitsArr = docs.scoreDocs;
-            return convertHitsToEntryList(
-                hitsArr,
+        if (page == null) {
+            SearchOperation search = new SearchOperation(this);
+            search.setTerm(term);
+            if (weblogSpecific) {
+                search.setWeblogHandle(weblogHandle);
+            }
+            if (category != null) {
+                search.setCategory(category);
+            }
+            if (locale != null) {
+                search.setLocale(locale);
+            }
+
+            // only the hits up to the end of the requested page are needed
+            long window = ((long) pageNum + 1) * entryCount;
+            search.setDocLimit((int) Math.min(window, MAX_SEARCH_HITS));
+
+            executeIndexOperationNow(search);
+            if (search.getResultsCount() < 0) {
+                throw new WebloggerException("Error executing search");
+            }
+            page = collectHits(
+                search.getResults().scoreDocs,
                 search,
                 pageNum,
                 entryCount,
-                weblogHandle,
-                weblogSpecific,
-                urlStrategy);
+                weblogSpecific);
+
+            if (resultCache != null) {
+                resultCache.put(cacheKey, page);
+                if (generation != indexGeneration.get()) {
+                    // the index changed while we were searching
+                    resultCache.remove(cacheKey);
+                }
+            }
+        }
+
+        return hydrate(page, urlStrategy);
+    }
+
+    @Override
+    public void saveEditorIndexEntry(WeblogEntry entry) {
+        if (editorIndex != null) {
+            editorIndex.saveEntry(entry);
+        }
+    }
+
+    @Override
+    public void removeEditorIndexEntry(WeblogEntry entry) {
+        if (editorIndex != null) {
+            editorIndex.removeEntry(entry);
         }
-        throw new WebloggerException("Error executing search");
+    }
+
+    @Override
+    public void removeEditorIndexWeblog(Weblog weblog) {
+        if (editorIndex != null) {
+            editorIndex.removeWeblog(weblog);
+        }
+    }
+
+    @Override
+    public void saveEditorIndexComment(WeblogEntryComment comment) {
+        if (editorIndex != null) {
+            editorIndex.saveComment(comment);
+        }
+    }
+
+    @Override
+    public void removeEditorIndexComment(WeblogEntryComment comment) {
+        if (editorIndex != null) {
+            editorIndex.removeComment(comment);
+        }
+    }
+
+    @Override
+    public List<String> searchEditorIndexEntries(Weblog weblog, String text) {
+        if (editorIndex == null) {
+            return null;
+        }
+        return editorIndex.searchEntryIds(weblog, text);
+    }
+
+    @Override
+    public List<String> searchEditorIndexComments(
+        Weblog weblog,
+        WeblogEntry entry,
+        String text,
+        ApprovalStatus status) {
+        if (editorIndex == null) {
+            return null;
+        }
+        return editorIndex.searchCommentIds(weblog, entry, text, status);
     }
 
     public ReadWriteLock getReadWriteLock() {
@@ -313,6 +498,11 @@ public class LuceneIndexManager implements IndexManager {
 
     public synchronized void resetSharedReader() {
         reader = null;
+        facetState = null;
+        indexGeneration.incrementAndGet();
+        if (resultCache != null) {
+            resultCache.clear();
+        }
     }
 
     public synchronized IndexReader getSharedIndexReader() {
@@ -327,6 +517,30 @@ public class LuceneIndexManager implements IndexManager {
         return reader;
     }
 
+    /**
+     * Get the facet state for the given reader, null if the index has no
+     * facets yet.
+     */
+    public synchronized SortedSetDocValuesReaderState getFacetState(IndexReader indexReader) {
+        if (facetState != null && facetState.getReader() == indexReader) {
+            return facetState;
+        }
+        if (FieldInfos.getMergedFieldInfos(indexReader).fieldInfo(FacetsConfig.DEFAULT_INDEX_FIELD_NAME) == null) {
+            return null;
+        }
+        try {
+            SortedSetDocValuesReaderState state =
+                new DefaultSortedSetDocValuesReaderState(indexReader, IndexOperation.FACETS_CONFIG);
+            if (indexReader == reader) {
+                facetState = state;
+            }
+            return state;
+        } catch (IOException | IllegalArgumentException ex) {
+            logger.error("Error reading search facets", ex);
+            return null;
+        }
+    }
+
     /**
      * Get the directory that is used by the lucene index. This method will
      * return null if there is no index at the directory location.
@@ -343,6 +557,19 @@ public class LuceneIndexManager implements IndexManager {
         return null;
     }
 
+    /**
+     * Indexes written before the published date was stored as a numeric
+     * doc value, or before facets were added, need a rebuild.
+     */
+    private static boolean isOutdatedIndex(IndexReader reader) {
+        FieldInfos fieldInfos = FieldInfos.getMergedFieldInfos(reader);
+        FieldInfo published = fieldInfos.fieldInfo(FieldConstants.PUBLISHED);
+        if (published != null && published.getDocValuesType() != DocValuesType.NUMERIC) {
+            return true;
+        }
+        return reader.numDocs() > 0 && fieldInfos.fieldInfo(FacetsConfig.DEFAULT_INDEX_FIELD_NAME) == null;
+    }
+
     private boolean indexExists() {
         try {
             return DirectoryReader.indexExists(getIndexDirectory());
@@ -398,7 +625,11 @@ public class LuceneIndexManager implements IndexManager {
 
     @Override
     public void shutdown() {
-        
+
+        if (editorIndex != null) {
+            editorIndex.close();
+        }
+
         indexConsistencyMarker.delete();
 
         if (reader != null) {
@@ -411,7 +642,29 @@ public class LuceneIndexManager implements IndexManager {
     }
 
     /**
-     * Convert hits to entries.
+     * Build the results cache key, the term is whitespace normalized so that
+     * trivially different spellings of a query share an entry.
+     */
+    static String getResultCacheKey(
+        String term,
+        String weblogHandle,
+        String category,
+        String locale,
+        int pageNum,
+        int entryCount) {
+
+        StringBuilder key = new StringBuilder();
+        key.append(weblogHandle == null ? "" : weblogHandle);
+        key.append('|').append(category == null ? "" : category.toLowerCase());
+        key.append('|').append(locale == null ? "" : locale.toLowerCase());
+        key.append('|').append(pageNum).append('|').append(entryCount);
+        key.append('|').append(term == null ? "" : String.join(" ", term.trim().split("\\s+")));
+        return key.toString();
+    }
+
+    /**
+     * Pick the requested page out of the hits and read what is needed to
+     * build the results from the stored fields.
      *
      * @param hits
      *            the hits
@@ -420,18 +673,14 @@ public class LuceneIndexManager implements IndexManager {
      * @throws WebloggerException
      *             the weblogger exception
      */
-    static SearchResultList convertHitsToEntryList(
+    static SearchResultPage collectHits(
         ScoreDoc[] hits,
         SearchOperation search,
         int pageNum,
         int entryCount,
-        String weblogHandle,
-        boolean websiteSpecificSearch,
-        URLStrategy urlStrategy)
+        boolean websiteSpecificSearch)
         throws WebloggerException {
 
-        List<WeblogEntryWrapper> results = new ArrayList<>();
-
         // determine offset
         int offset = pageNum * entryCount;
         if (offset >= hits.length) {
@@ -445,41 +694,75 @@ public class LuceneIndexManager implements IndexManager {
         }
 
         try {
-            Set<String> categories = new TreeSet<>();
-            TreeSet<String> categorySet = new TreeSet<>();
-            Weblogger roller = WebloggerFactory.getWeblogger();
-            WeblogEntryManager weblogMgr = roller.getWeblogEntryManager();
-
-            WeblogEntry entry;
-            Document doc;
-            String handle;
-            Timestamp now = new Timestamp(new Date().getTime());
+            List<String> entryIds = new ArrayList<>(Math.max(limit, 0));
+            StoredFields storedFields = search.getSearcher().storedFields();
             for (int i = offset; i < offset + limit; i++) {
-                doc = search.getSearcher().doc(hits[i].doc);
-                handle = doc.getField(FieldConstants.WEBSITE_HANDLE).stringValue();
-                entry = weblogMgr.getWeblogEntry(doc.getField(FieldConstants.ID).stringValue());
-
-                if (!(websiteSpecificSearch && handle.equals(weblogHandle))
-                    && doc.getField(FieldConstants.CATEGORY) != null) {
-                    categorySet.add(doc.getField(FieldConstants.CATEGORY).stringValue());
-                }
-
-                // maybe null if search result returned inactive user
-                // or entry's user is not the requested user.
-                // but don't return future posts
-                if (entry != null && entry.getPubTime().before(now)) {
-                    results.add(WeblogEntryWrapper.wrap(entry, urlStrategy));
-                }
+                Document doc = storedFields.document(hits[i].doc, ID_FIELD);
+                entryIds.add(doc.get(FieldConstants.ID));
             }
 
-            if (!categorySet.isEmpty()) {
-                categories = categorySet;
+            Map<String, Map<String, Integer>> facets = search.getFacetCounts();
+
+            // the categories of a weblog are listed by the weblog itself
+            Set<String> categorySet = new TreeSet<>();
+            if (!websiteSpecificSearch) {
+                categorySet.addAll(facets.getOrDefault(FieldConstants.FACET_CATEGORY, Map.of()).keySet());
             }
 
-            return new SearchResultList(results, categories, limit, offset);
+            return new SearchResultPage(entryIds, categorySet, limit, offset,
+                search.getResultsCount(), facets);
 
         } catch (IOException e) {
             throw new WebloggerException(e);
         }
     }
+
+    /**
+     * Load the entries of a result page with a single query.
+     */
+    static SearchResultList hydrate(SearchResultPage page, URLStrategy urlStrategy)
+        throws WebloggerException {
+
+        WeblogEntryManager weblogMgr = WebloggerFactory.getWeblogger().getWeblogEntryManager();
+
+        List<WeblogEntryWrapper> results = new ArrayList<>(page.entryIds.size());
+        Timestamp now = new Timestamp(new Date().getTime());
+        for (WeblogEntry entry : weblogMgr.getWeblogEntriesById(page.entryIds)) {
+            // entries of the page may have been removed since they were
+            // indexed, and don't return future posts
+            if (entry.getPubTime() != null && entry.getPubTime().before(now)) {
+                results.add(WeblogEntryWrapper.wrap(entry, urlStrategy));
+            }
+        }
+
+        Set<String> categories = new TreeSet<>(page.categories);
+        return new SearchResultList(results, categories, page.limit, page.offset,
+            page.totalHits,
+            page.facets.getOrDefault(FieldConstants.FACET_CATEGORY, Map.of()),
+            page.facets.getOrDefault(FieldConstants.FACET_WEBLOG, Map.of()),
+            page.facets.getOrDefault(FieldConstants.FACET_LOCALE, Map.of()),
+            page.facets.getOrDefault(FieldConstants.FACET_MONTH, Map.of()));
+    }
+
+    /**
+     * One page of search hits, as kept in the results cache.
+     */
+    static final class SearchResultPage {
+        private final List<String> entryIds;
+        private final Set<String> categories;
+        private final int limit;
+        private final int offset;
+        private final int totalHits;
+        private final Map<String, Map<String, Integer>> facets;
+
+        SearchResultPage(List<String> entryIds, Set<String> categories, int limit, int offset,
+                int totalHits, Map<String, Map<String, Integer>> facets) {
+            this.entryIds = Collections.unmodifiableList(entryIds);
+            this.categories = Collections.unmodifiableSet(categories);
+            this.limit = limit;
+            this.offset = offset;
+            this.totalHits = totalHits;
+            this.facets = facets;
+        }
+    }
 }
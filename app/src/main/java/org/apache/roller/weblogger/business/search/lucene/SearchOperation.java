@@ -19,9 +19,18 @@
 package org.apache.roller.weblogger.business.search.lucene;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.lucene.facet.FacetResult;
+import org.apache.lucene.facet.Facets;
+import org.apache.lucene.facet.FacetsCollectorManager;
+import org.apache.lucene.facet.LabelAndValue;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesFacetCounts;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesReaderState;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.queryparser.classic.MultiFieldQueryParser;
@@ -55,20 +64,32 @@ public class SearchOperation extends ReadFromIndexOperation {
         FieldConstants.C_CONTENT
     };
 
+    private static final String[] FACET_DIMS = new String[] {
+        FieldConstants.FACET_CATEGORY,
+        FieldConstants.FACET_WEBLOG,
+        FieldConstants.FACET_LOCALE,
+        FieldConstants.FACET_MONTH
+    };
+
+    // most values returned per facet dimension
+    private static final int MAX_FACET_VALUES = 100;
+
     private static final Sort SORTER = new Sort(new SortField(
-            FieldConstants.PUBLISHED, SortField.Type.STRING, true));
+            FieldConstants.PUBLISHED, SortField.Type.LONG, true));
 
     // ~ Instance fields
     // ========================================================
 
     private IndexSearcher searcher;
     private TopFieldDocs searchresults;
+    private Map<String, Map<String, Integer>> facetCounts = Collections.emptyMap();
 
     private String term;
     private String weblogHandle;
     private String category;
     private String locale;
     private String parseError;
+    private int docLimit = 500;
 
     // ~ Constructors
     // ===========================================================
@@ -89,6 +110,14 @@ public class SearchOperation extends ReadFromIndexOperation {
         this.term = term;
     }
 
+    /**
+     * Sets the maximum number of top hits to collect, callers showing a
+     * single page of results only need the hits up to the end of that page.
+     */
+    public void setDocLimit(int docLimit) {
+        this.docLimit = Math.max(1, docLimit);
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -96,9 +125,9 @@ public class SearchOperation extends ReadFromIndexOperation {
      */
     @Override
     public void doRun() {
-        final int docLimit = 500;
         searchresults = null;
         searcher = null;
+        facetCounts = Collections.emptyMap();
 
         try {
             IndexReader reader = manager.getSharedIndexReader();
@@ -137,7 +166,28 @@ public class SearchOperation extends ReadFromIndexOperation {
                     .build();
             }
 
-            searchresults = searcher.search(query, docLimit, SORTER);
+            // count facets over all hits in the same pass that collects the page
+            FacetsCollectorManager.FacetsResult result = FacetsCollectorManager.search(
+                    searcher, query, docLimit, SORTER, new FacetsCollectorManager());
+            searchresults = (TopFieldDocs) result.topDocs();
+
+            SortedSetDocValuesReaderState facetState = manager.getFacetState(reader);
+            if (facetState != null) {
+                Facets facets = new SortedSetDocValuesFacetCounts(facetState, result.facetsCollector());
+                Map<String, Map<String, Integer>> counts = new LinkedHashMap<>();
+                for (String dim : FACET_DIMS) {
+                    Map<String, Integer> values = new LinkedHashMap<>();
+                    FacetResult top = facetState.getOrdRange(dim) == null
+                            ? null : facets.getTopChildren(MAX_FACET_VALUES, dim);
+                    if (top != null) {
+                        for (LabelAndValue lv : top.labelValues) {
+                            values.put(lv.label, lv.value.intValue());
+                        }
+                    }
+                    counts.put(dim, values);
+                }
+                facetCounts = counts;
+            }
 
         } catch (IOException e) {
             logger.error("Error searching index", e);
@@ -178,6 +228,16 @@ public class SearchOperation extends ReadFromIndexOperation {
         return searchresults;
     }
 
+    /**
+     * Gets the facet counts of all hits, keyed by dimension and then by value
+     * in descending count order.
+     * 
+     * @return the facet counts
+     */
+    public Map<String, Map<String, Integer>> getFacetCounts() {
+        return facetCounts;
+    }
+
     /**
      * Gets the results count.
      * 
@@ -25,8 +25,6 @@ import org.apache.commons.logging.LogFactory;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
 import java.util.*;
 import org.apache.roller.weblogger.pojos.TemplateRendition.RenditionType;
 import org.apache.roller.weblogger.pojos.ThemeResource;
@@ -37,6 +35,9 @@ import org.apache.roller.weblogger.pojos.ThemeTemplate.ComponentType;
  * The Theme object encapsulates all elements of a single weblog theme. It is
  * used mostly to contain all the templates for a theme, but does contain other
  * theme related attributes such as name, last modified date, etc.
+ *
+ * Only the theme descriptor is parsed when the theme is loaded; template
+ * contents and resources are read from disk when they're first used.
  */
 public class SharedThemeFromDir extends SharedTheme {
 
@@ -182,9 +183,10 @@ public class SharedThemeFromDir extends SharedTheme {
         try {
             // lookup theme descriptor and parse it
             ThemeMetadataParser parser = new ThemeMetadataParser();
-            InputStream is = new FileInputStream(this.themeDir + File.separator
-                    + "theme.xml");
-            themeMetadata = parser.unmarshall(is);
+            try (InputStream is = new FileInputStream(this.themeDir + File.separator
+                    + "theme.xml")) {
+                themeMetadata = parser.unmarshall(is);
+            }
         } catch (Exception ex) {
             throw new ThemeInitializationException(
                     "Unable to parse theme.xml for theme " + this.themeDir, ex);
@@ -255,9 +257,8 @@ public class SharedThemeFromDir extends SharedTheme {
             File templateFile = new File(this.themeDir + File.separator
                     + standardTemplateCode.getContentsFile());
 
-            // read stylesheet contents
-            String contents = loadTemplateFile(templateFile);
-            if (contents == null) {
+            // stylesheet contents are read when first used
+            if (!templateFile.canRead()) {
                 // if we don't have any contents then skip this one
                 log.error("Couldn't load stylesheet theme [" + this.getName()
                         + "] template file [" + templateFile + "]");
@@ -270,7 +271,7 @@ public class SharedThemeFromDir extends SharedTheme {
                         themeMetadata.getId() + ":"
                                 + stylesheetTmpl.getName(),
                         stylesheetTmpl.getAction(), stylesheetTmpl.getName(),
-                        stylesheetTmpl.getDescription(), contents,
+                        stylesheetTmpl.getDescription(), null,
                         stylesheetTmpl.getLink(), new Date(
                                 templateFile.lastModified()), false, false);
 
@@ -325,7 +326,7 @@ public class SharedThemeFromDir extends SharedTheme {
 
         }
 
-        // go through templates and read in contents to a ThemeTemplate
+        // go through templates and add them to the theme
         SharedThemeTemplate themeTemplate;
         for (ThemeMetadataTemplate templateMetadata : themeMetadata.getTemplates()) {
 
@@ -355,8 +356,7 @@ public class SharedThemeFromDir extends SharedTheme {
             File templateFile = new File(this.themeDir + File.separator
                     + standardTemplateCode.getContentsFile());
 
-            String contents = loadTemplateFile(templateFile);
-            if (contents == null) {
+            if (!templateFile.canRead()) {
                 // if we don't have any contents then skip this one
                 throw new ThemeInitializationException("Couldn't load theme ["
                         + this.getName() + "] template file [" + templateFile
@@ -367,7 +367,7 @@ public class SharedThemeFromDir extends SharedTheme {
             themeTemplate = new SharedThemeTemplate(
                     themeMetadata.getId() + ":" + templateMetadata.getName(),
                     templateMetadata.getAction(), templateMetadata.getName(),
-                    templateMetadata.getDescription(), contents,
+                    templateMetadata.getDescription(), null,
                     templateMetadata.getLink(), new Date(
                             templateFile.lastModified()),
                     templateMetadata.isHidden(), templateMetadata.isNavbar());
@@ -395,34 +395,6 @@ public class SharedThemeFromDir extends SharedTheme {
         }
     }
 
-    /**
-     * Load a single template file as a string, returns null if can't read file.
-     */
-    private String loadTemplateFile(File templateFile) {
-        // Continue reading theme even if problem encountered with one file
-        if (!templateFile.exists() && !templateFile.canRead()) {
-            return null;
-        }
-
-        char[] chars;
-        int length;
-        try {
-            chars = new char[(int) templateFile.length()];
-            FileInputStream stream = new FileInputStream(templateFile);
-            InputStreamReader reader = new InputStreamReader(stream, StandardCharsets.UTF_8);
-            length = reader.read(chars);
-        } catch (Exception noprob) {
-            log.error("Exception reading theme [" + this.getName()
-                    + "] template file [" + templateFile + "]");
-            if (log.isDebugEnabled()) {
-                log.debug(noprob);
-            }
-            return null;
-        }
-
-        return new String(chars, 0, length);
-    }
-
     /**
      * Set the value for a given template name.
      */
@@ -451,16 +423,14 @@ public class SharedThemeFromDir extends SharedTheme {
         File templateFile = new File(this.themeDir + File.separator
                 + templateCodeMetadata.getContentsFile());
 
-        // read stylesheet contents
-        String contents = loadTemplateFile(templateFile);
-        if (contents == null) {
-            // if we don't have any contents then load no string
-            contents = "";
+        // contents are read when first used, if we can't read them then
+        // the rendition will have no contents
+        if (!templateFile.canRead()) {
             log.error("Couldn't load stylesheet theme [" + this.getName()
                     + "] template file [" + templateFile + "]");
         }
         //TODO: remove templateId above
-        templateRendition.setTemplate(contents);
+        templateRendition.setTemplateFile(templateFile);
         templateRendition.setTemplateLanguage(templateCodeMetadata.getTemplateLang());
         templateRendition.setType(templateCodeMetadata.getType());
         templateRendition.setLastModified(new Date(templateFile.lastModified()));
@@ -96,6 +96,10 @@ public class SharedThemeTemplate implements ThemeTemplate, Serializable {
     }
 
     public String getContents() {
+        if (contents == null && templateRenditionHashMap.containsKey(RenditionType.STANDARD)) {
+            // shared theme templates are read from their standard rendition
+            return templateRenditionHashMap.get(RenditionType.STANDARD).getTemplate();
+        }
         return contents;
     }
 
@@ -151,7 +155,7 @@ public class SharedThemeTemplate implements ThemeTemplate, Serializable {
     @Override
     public String toString() {
         return (id + "," + name + "," + description + "," + link + "," + 
-                lastModified + "\n\n" + contents + "\n");
+                lastModified + "\n\n" + getContents() + "\n");
     }
 
     @Override
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.business.themes;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.weblogger.config.WebloggerConfig;
+
+
+/**
+ * Contents of shared theme template files, read on first use.
+ *
+ * Up to themes.templateCache.size files are kept, least recently used ones
+ * are dropped first and the garbage collector may drop any of them when
+ * memory runs low; they're simply read again next time.  Files are cached
+ * by path and the modification time seen when their theme was loaded, so a
+ * reloaded theme never sees the contents of its previous version.  A file
+ * found to have changed since its theme was loaded is not cached under the
+ * old modification time, and the change listener is told to reload its theme.
+ */
+final class SharedThemeTemplateCache {
+    
+    private static final Log log = LogFactory.getLog(SharedThemeTemplateCache.class);
+    
+    private static final int MAX_SIZE =
+            WebloggerConfig.getIntProperty("themes.templateCache.size", 1000);
+    
+    private static final Map<String, SoftReference<String>> CACHE =
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, SoftReference<String>> eldest) {
+                    return size() > MAX_SIZE;
+                }
+            };
+    
+    
+    // reloads the theme of a changed file
+    private static volatile Consumer<File> changeListener = null;
+    
+    
+    private SharedThemeTemplateCache() {}
+    
+    
+    static void setChangeListener(Consumer<File> listener) {
+        changeListener = listener;
+    }
+    
+    
+    /**
+     * Get the contents of a template file.
+     *
+     * @param file The template file.
+     * @param lastModified Modification time of the file when it was loaded.
+     * @return The contents, or null if the file can't be read.
+     */
+    static String getContents(File file, long lastModified) {
+        
+        String key = file.getPath() + "@" + lastModified;
+        synchronized (CACHE) {
+            SoftReference<String> ref = CACHE.get(key);
+            String contents = (ref != null) ? ref.get() : null;
+            if (contents != null) {
+                return contents;
+            }
+        }
+        
+        String contents;
+        long before = file.lastModified();
+        try {
+            contents = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        } catch (IOException ex) {
+            log.error("Exception reading theme template file [" + file + "]");
+            if (log.isDebugEnabled()) {
+                log.debug(ex);
+            }
+            return null;
+        }
+        long after = file.lastModified();
+        
+        if (before == lastModified && after == lastModified) {
+            synchronized (CACHE) {
+                CACHE.put(key, new SoftReference<>(contents));
+            }
+            return contents;
+        }
+        
+        // changed since the theme was loaded, keep it for the reloaded theme
+        log.debug("Theme template file [" + file + "] changed on disk");
+        if (before == after) {
+            synchronized (CACHE) {
+                CACHE.put(file.getPath() + "@" + after, new SoftReference<>(contents));
+            }
+        }
+        Consumer<File> listener = changeListener;
+        if (listener != null) {
+            listener.accept(file);
+        }
+        return contents;
+    }
+    
+    
+    /**
+     * Number of files currently cached, including ones whose contents the
+     * garbage collector dropped.
+     */
+    static int size() {
+        synchronized (CACHE) {
+            return CACHE.size();
+        }
+    }
+    
+    
+    static void clear() {
+        synchronized (CACHE) {
+            CACHE.clear();
+        }
+    }
+    
+}
@@ -22,6 +22,7 @@ import org.apache.roller.weblogger.pojos.TemplateRendition;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 
+import java.io.File;
 import java.io.Serializable;
 import java.util.Date;
 
@@ -31,6 +32,8 @@ import java.util.Date;
 public class SharedThemeTemplateRendition implements Serializable, TemplateRendition {
 
 	private String template = null;
+	// file the template is read from on first use, if not set explicitly
+	private File templateFile = null;
 	private RenditionType type = null;
 	private TemplateLanguage templateLanguage = null;
 	private Date lastModified = null;
@@ -45,6 +48,11 @@ public class SharedThemeTemplateRendition implements Serializable, TemplateRendi
 	// @Override
     @Override
 	public String getTemplate() {
+		if (template == null && templateFile != null) {
+			String contents = SharedThemeTemplateCache.getContents(templateFile,
+					lastModified != null ? lastModified.getTime() : 0);
+			return contents != null ? contents : "";
+		}
 		return template;
 	}
 
@@ -54,6 +62,17 @@ public class SharedThemeTemplateRendition implements Serializable, TemplateRendi
 		this.template = template;
 	}
 
+	/**
+	 * Sets the file the template is read from when needed, rather than
+	 * keeping it in memory.
+	 * 
+	 * @param templateFile
+	 *            the template file
+	 */
+	public void setTemplateFile(File templateFile) {
+		this.templateFile = templateFile;
+	}
+
 	// @Override
     @Override
 	public RenditionType getType() {
@@ -89,7 +108,7 @@ public class SharedThemeTemplateRendition implements Serializable, TemplateRendi
 
     @Override
 	public String toString() {
-        return "{" + this.template + ", [ " + this.template +"] , " + this.type + "}";
+        return "{" + getTemplate() + ", [ " + getTemplate() +"] , " + this.type + "}";
 	}
 
     @Override
@@ -102,7 +121,7 @@ public class SharedThemeTemplateRendition implements Serializable, TemplateRendi
         }
 		SharedThemeTemplateRendition o = (SharedThemeTemplateRendition) other;
 		return new EqualsBuilder()
-				.append(template, o.getTemplate()).isEquals();
+				.append(getTemplate(), o.getTemplate()).isEquals();
 	}
 
     @Override
@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.business.themes;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+
+/**
+ * Watches the themes directory and reports which theme directories changed.
+ *
+ * The themes directory itself is watched for themes being added or removed,
+ * and each theme directory is watched along with its subdirectories.  Changes
+ * are reported once a theme has been quiet for a while, so that copying a
+ * theme in reloads it once rather than once per file.
+ */
+class ThemeDirWatcher implements Runnable {
+    
+    private static final Log log = LogFactory.getLog(ThemeDirWatcher.class);
+    
+    private final Path themesDir;
+    private final Consumer<String> listener;
+    private final long quietPeriod;
+    private final WatchService watchService;
+    
+    // watched directories by key
+    private final Map<WatchKey, Path> watched = new ConcurrentHashMap<>();
+    
+    private Thread thread = null;
+    
+    
+    /**
+     * @param themesDir The themes directory.
+     * @param listener Called with the name of each changed theme directory.
+     * @param quietPeriod Milliseconds without changes before reporting.
+     */
+    ThemeDirWatcher(Path themesDir, Consumer<String> listener, long quietPeriod) throws IOException {
+        this.themesDir = themesDir;
+        this.listener = listener;
+        this.quietPeriod = quietPeriod;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        register(themesDir);
+    }
+    
+    
+    /**
+     * Watch a theme directory and its subdirectories.
+     */
+    void watch(String themeDirName) {
+        registerAll(themesDir.resolve(themeDirName));
+    }
+    
+    
+    synchronized void start() {
+        if (thread == null) {
+            thread = new Thread(this, "ThemeDirWatcher");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+    
+    
+    synchronized void shutdown() {
+        try {
+            watchService.close();
+        } catch (IOException ex) {
+            log.debug("Error closing theme watch service", ex);
+        }
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+    
+    
+    @Override
+    public void run() {
+        Set<String> changed = new LinkedHashSet<>();
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = changed.isEmpty()
+                        ? watchService.take()
+                        : watchService.poll(quietPeriod, TimeUnit.MILLISECONDS);
+                
+                if (key == null) {
+                    // things went quiet, report what changed
+                    for (String themeDirName : changed) {
+                        try {
+                            listener.accept(themeDirName);
+                        } catch (Exception ex) {
+                            log.error("Error reloading theme " + themeDirName, ex);
+                        }
+                    }
+                    changed.clear();
+                    continue;
+                }
+                
+                Path dir = watched.get(key);
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (dir == null || event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        continue;
+                    }
+                    Path path = dir.resolve((Path) event.context());
+                    Path relative = themesDir.relativize(path);
+                    if (relative.getNameCount() == 0 || relative.getFileName().toString().startsWith(".")) {
+                        continue;
+                    }
+                    String themeDirName = relative.getName(0).toString();
+                    
+                    // new directories in a theme need watching too, new
+                    // themes are watched once they've been loaded
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+                            && relative.getNameCount() > 1 && Files.isDirectory(path)) {
+                        registerAll(path);
+                    }
+                    changed.add(themeDirName);
+                }
+                if (!key.reset()) {
+                    watched.remove(key);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ex) {
+            log.debug("Theme directory watcher stopped");
+        }
+    }
+    
+    
+    private void registerAll(Path dir) {
+        try (Stream<Path> dirs = Files.walk(dir)) {
+            dirs.filter(Files::isDirectory).forEach(this::register);
+        } catch (IOException ex) {
+            log.warn("Unable to watch theme directory " + dir + ": " + ex.getMessage());
+        }
+    }
+    
+    private void register(Path dir) {
+        try {
+            WatchKey key = dir.register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+            watched.put(key, dir);
+        } catch (IOException | ClosedWatchServiceException ex) {
+            log.warn("Unable to watch theme directory " + dir + ": " + ex.getMessage());
+        }
+    }
+    
+}
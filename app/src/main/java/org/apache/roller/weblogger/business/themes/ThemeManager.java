@@ -38,6 +38,11 @@ public interface ThemeManager {
      */
     void initialize() throws InitializationException;
 
+    /**
+     * Stop watching themes on disk for changes.
+     */
+    void shutdown();
+
     /**
      * Get the Theme object with the given id.
      *
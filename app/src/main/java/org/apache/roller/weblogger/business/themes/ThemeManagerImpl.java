@@ -21,14 +21,20 @@ import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.EnumSet;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.activation.FileTypeMap;
 import javax.activation.MimetypesFileTypeMap;
@@ -55,12 +61,15 @@ import org.apache.roller.weblogger.pojos.Weblog;
 import org.apache.roller.weblogger.pojos.WeblogTemplate;
 import org.apache.roller.weblogger.pojos.WeblogTheme;
 import org.apache.roller.weblogger.util.RollerMessages;
+import org.apache.roller.weblogger.util.cache.CacheManager;
 
 /**
  * Base implementation of a ThemeManager.
  * 
- * This particular implementation reads theme data off the filesystem and
- * assumes that those themes are not changeable at runtime.
+ * This particular implementation reads theme data off the filesystem.  Theme
+ * descriptors are parsed in parallel at startup, template contents are read
+ * when first used, and if themes.watch.enabled is set the themes directory
+ * is watched so that changed themes are reloaded without a restart.
  */
 @com.google.inject.Singleton
 public class ThemeManagerImpl implements ThemeManager {
@@ -83,6 +92,12 @@ public class ThemeManagerImpl implements ThemeManager {
 	private String themeDir = null;
 	// the Map contains ... (theme id, Theme)
 	private Map<String, SharedTheme> themes = null;
+	// the Map contains ... (theme directory name, theme id)
+	private final Map<String, String> themeIdsByDir = new ConcurrentHashMap<>();
+	// reloads themes as they change on disk, if enabled
+	private ThemeDirWatcher watcher = null;
+	// theme directories being reloaded because a template changed
+	private final Set<String> reloading = ConcurrentHashMap.newKeySet();
 
 	@com.google.inject.Inject
 	protected ThemeManagerImpl(Weblogger roller) {
@@ -116,11 +131,31 @@ public class ThemeManagerImpl implements ThemeManager {
 		log.debug("Initializing Theme Manager");
 
 		if (themeDir != null) {
-			// rather than be lazy we are going to load all themes from
-			// the disk preemptive and cache them
+			// load all theme descriptors up front, template contents are
+			// read from disk when they're first needed
+			long startTime = System.currentTimeMillis();
 			this.themes = loadAllThemesFromDisk();
 
-			log.info("Successfully loaded " + this.themes.size() + " themes from disk.");
+			log.info("Successfully loaded " + this.themes.size() + " themes from disk in "
+					+ (System.currentTimeMillis() - startTime) + " ms.");
+
+			if (WebloggerConfig.getBooleanProperty("themes.watch.enabled")) {
+				startWatcher();
+			}
+
+			// templates found changed on first use reload their theme too
+			SharedThemeTemplateCache.setChangeListener(this::reloadThemeOf);
+		}
+	}
+
+	/**
+	 * @see org.apache.roller.weblogger.business.themes.ThemeManager#shutdown()
+	 */
+    @Override
+	public synchronized void shutdown() {
+		if (watcher != null) {
+			watcher.shutdown();
+			watcher = null;
 		}
 	}
 
@@ -373,7 +408,8 @@ public class ThemeManagerImpl implements ThemeManager {
 	 */
 	private Map<String, SharedTheme> loadAllThemesFromDisk() {
 
-		Map<String, SharedTheme> themeMap = new HashMap<>();
+		Map<String, SharedTheme> themeMap = new ConcurrentHashMap<>();
+		themeIdsByDir.clear();
 
 		// first, get a list of the themes available
 		File themesdir = new File(this.themeDir);
@@ -389,22 +425,131 @@ public class ThemeManagerImpl implements ThemeManager {
 		} else {
             log.info("Loading themes from " + themesdir.getAbsolutePath() + "...");
 
-            // now go through each theme and load it into a Theme object
-            for (String themeName : themenames) {
-                try {
-                    SharedTheme theme = new SharedThemeFromDir(this.themeDir + File.separator + themeName);
-                    themeMap.put(theme.getId(), theme);
-                    log.info("Loaded theme '" + themeName + "'");
-                } catch (Exception unexpected) {
-                    // shouldn't happen, so let's learn why it did
-                    log.error("Problem processing theme '" + themeName + "':", unexpected);
-                }
+            int threads = WebloggerConfig.getIntProperty("themes.loader.threads",
+                    Runtime.getRuntime().availableProcessors());
+            Map<String, SharedTheme> loaded = loadThemesFromDisk(this.themeDir, themenames, threads);
+            for (Map.Entry<String, SharedTheme> entry : loaded.entrySet()) {
+                themeMap.put(entry.getValue().getId(), entry.getValue());
+                themeIdsByDir.put(entry.getKey(), entry.getValue().getId());
             }
         }
 
 		return themeMap;
 	}
 
+	/**
+	 * Load themes from their directories, parsing their descriptors in
+	 * parallel.
+	 *
+	 * @return The themes which loaded, by directory name.
+	 */
+	static Map<String, SharedTheme> loadThemesFromDisk(String themeDir, String[] themenames, int threads) {
+
+		Map<String, SharedTheme> themeMap = new ConcurrentHashMap<>();
+		ExecutorService executor = Executors.newFixedThreadPool(
+				Math.max(1, Math.min(threads, themenames.length)));
+		try {
+			List<Future<?>> futures = new ArrayList<>(themenames.length);
+			for (String themeName : themenames) {
+				futures.add(executor.submit(() -> {
+					try {
+						SharedTheme theme = new SharedThemeFromDir(themeDir + File.separator + themeName);
+						themeMap.put(themeName, theme);
+						log.info("Loaded theme '" + themeName + "'");
+					} catch (Exception unexpected) {
+						// shouldn't happen, so let's learn why it did
+						log.error("Problem processing theme '" + themeName + "':", unexpected);
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} catch (ExecutionException ex) {
+			log.error("Problem loading themes", ex);
+		} catch (InterruptedException ex) {
+			log.error("Interrupted loading themes", ex);
+			Thread.currentThread().interrupt();
+		} finally {
+			executor.shutdown();
+		}
+		return themeMap;
+	}
+
+	private synchronized void startWatcher() {
+		shutdown();
+		try {
+			watcher = new ThemeDirWatcher(Paths.get(themeDir), this::reloadChangedTheme,
+					WebloggerConfig.getIntProperty("themes.watch.quietPeriod", 2) * 1000L);
+			for (String themeDirName : themeIdsByDir.keySet()) {
+				watcher.watch(themeDirName);
+			}
+			watcher.start();
+		} catch (IOException ex) {
+			log.warn("Unable to watch themes directory " + themeDir + ", themes won't reload", ex);
+		}
+	}
+
+	/**
+	 * Reload a theme whose directory changed on disk, adding, replacing or
+	 * removing it.
+	 */
+	void reloadChangedTheme(String themeDirName) {
+
+		File dir = new File(this.themeDir, themeDirName);
+		String oldId = themeIdsByDir.get(themeDirName);
+
+		if (!new File(dir, "theme.xml").exists()) {
+			if (oldId != null) {
+				themes.remove(oldId);
+				themeIdsByDir.remove(themeDirName);
+				CacheManager.clear();
+				log.info("Removed theme '" + themeDirName + "'");
+			}
+			return;
+		}
+
+		try {
+			SharedTheme theme = new SharedThemeFromDir(dir.getPath());
+			if (oldId != null && !oldId.equals(theme.getId())) {
+				themes.remove(oldId);
+			}
+			themes.put(theme.getId(), theme);
+			themeIdsByDir.put(themeDirName, theme.getId());
+			ThemeDirWatcher current = watcher;
+			if (oldId == null && current != null) {
+				current.watch(themeDirName);
+			}
+			CacheManager.clear();
+			log.info("Reloaded theme '" + themeDirName + "'");
+		} catch (Exception ex) {
+			// probably caught half way through an edit, keep what we had
+			log.error("Problem reloading theme '" + themeDirName + "':", ex);
+		}
+	}
+
+	/**
+	 * Reload the theme a changed template file belongs to, unless it's being
+	 * reloaded already.
+	 */
+	void reloadThemeOf(File templateFile) {
+
+		Path dir = Paths.get(themeDir).toAbsolutePath().normalize();
+		Path file = templateFile.toPath().toAbsolutePath().normalize();
+		if (!file.startsWith(dir) || dir.relativize(file).getNameCount() < 2) {
+			return;
+		}
+
+		String themeDirName = dir.relativize(file).getName(0).toString();
+		if (reloading.add(themeDirName)) {
+			try {
+				reloadChangedTheme(themeDirName);
+			} finally {
+				reloading.remove(themeDirName);
+			}
+		}
+	}
+
 	/**
 	 * @see ThemeManager#reLoadThemeFromDisk(String)
 	 */
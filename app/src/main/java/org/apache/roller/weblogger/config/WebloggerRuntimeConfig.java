@@ -26,6 +26,7 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.roller.util.RollerConstants;
 import org.apache.roller.weblogger.config.runtime.RuntimeConfigDefs;
 import org.apache.roller.weblogger.config.runtime.RuntimeConfigDefsParser;
+import org.apache.roller.weblogger.business.MultiWeblogURLStrategy;
 import org.apache.roller.weblogger.business.PropertiesManager;
 import org.apache.roller.weblogger.business.WebloggerFactory;
 import org.apache.roller.weblogger.pojos.RuntimeConfigProperty;
@@ -174,6 +175,7 @@ public final class WebloggerRuntimeConfig {
      */
     public static void setAbsoluteContextURL(String url) {
         absoluteContextURL = url;
+        MultiWeblogURLStrategy.clearWeblogURLCache();
     }
     
     
@@ -203,6 +205,7 @@ public final class WebloggerRuntimeConfig {
      */
     public static void setRelativeContextURL(String url) {
         relativeContextURL = url;
+        MultiWeblogURLStrategy.clearWeblogURLCache();
     }
     
     
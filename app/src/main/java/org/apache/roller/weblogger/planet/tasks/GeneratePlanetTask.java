@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.planet.tasks;
+
+import java.nio.file.Paths;
+import java.util.Date;
+import java.util.Properties;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.weblogger.WebloggerException;
+import org.apache.roller.weblogger.business.WebloggerFactory;
+import org.apache.roller.weblogger.business.runnable.RollerTaskWithLeasing;
+import org.apache.roller.weblogger.config.WebloggerConfig;
+import org.apache.roller.weblogger.ui.core.RollerContext;
+import org.apache.roller.weblogger.ui.rendering.export.StaticSiteExporter;
+
+
+/**
+ * Generates Planet files based on those entries and the Planet configuration.
+ * <pre>
+ * - Uses the planet.aggregator.output.dir property for the output directory
+ * - Writes the planet feed and the feed of each group of the default planet
+ * - Renders through the planet feed servlet, so runs as a scheduled task
+ *   within the web application
+ * </pre>
+ */
+public class GeneratePlanetTask extends RollerTaskWithLeasing {
+    private static Log log = LogFactory.getLog(GeneratePlanetTask.class);
+
+    public static final String NAME = "GeneratePlanetTask";
+
+    // a unique id for this specific task instance
+    // this is meant to be unique for each client in a clustered environment
+    private String clientId = "unspecifiedClientId";
+
+    // a String description of when to start this task
+    private String startTimeDesc = "immediate";
+
+    // interval at which the task is run, default is 60 minutes
+    private int interval = 60;
+
+    // lease time given to task, default is 10 minutes
+    private int leaseTime = 10;
+
+
+    @Override
+    public String getClientId() {
+        return clientId;
+    }
+
+    @Override
+    public Date getStartTime(Date currentTime) {
+        return getAdjustedTime(currentTime, startTimeDesc);
+    }
+
+    @Override
+    public String getStartTimeDesc() {
+        return startTimeDesc;
+    }
+
+    @Override
+    public int getInterval() {
+        return this.interval;
+    }
+
+    @Override
+    public int getLeaseTime() {
+        return this.leaseTime;
+    }
+
+    public void init() throws WebloggerException {
+        this.init(GeneratePlanetTask.NAME);
+    }
+
+    @Override
+    public void init(String name) throws WebloggerException {
+        super.init(name);
+
+        // get relevant props
+        Properties props = this.getTaskProperties();
+
+        // extract clientId
+        String client = props.getProperty("clientId");
+        if(client != null) {
+            this.clientId = client;
+        }
+
+        // extract start time
+        String startTimeStr = props.getProperty("startTime");
+        if(startTimeStr != null) {
+            this.startTimeDesc = startTimeStr;
+        }
+
+        // extract interval
+        String intervalStr = props.getProperty("interval");
+        if(intervalStr != null) {
+            try {
+                this.interval = Integer.parseInt(intervalStr);
+            } catch (NumberFormatException ex) {
+                log.warn("Invalid interval: "+intervalStr);
+            }
+        }
+
+        // extract lease time
+        String leaseTimeStr = props.getProperty("leaseTime");
+        if(leaseTimeStr != null) {
+            try {
+                this.leaseTime = Integer.parseInt(leaseTimeStr);
+            } catch (NumberFormatException ex) {
+                log.warn("Invalid leaseTime: "+leaseTimeStr);
+            }
+        }
+    }
+
+
+    @Override
+    public void runTask() {
+        try {
+            if (RollerContext.getServletContext() == null) {
+                log.error("Planet files can only be generated within the web application");
+                return;
+            }
+
+            String outputDir = WebloggerConfig.getProperty("planet.aggregator.output.dir");
+            log.info("Generating Planet files to [" + outputDir + "]");
+            int count = new StaticSiteExporter(Paths.get(outputDir)).exportPlanet();
+            log.info("Generated " + count + " Planet files");
+
+        } catch (Exception e) {
+            log.error("ERROR generating planet", e);
+        } finally {
+            // always release
+            WebloggerFactory.getWeblogger().release();
+        }
+    }
+
+}
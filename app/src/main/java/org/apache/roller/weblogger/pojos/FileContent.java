@@ -20,7 +20,10 @@ package org.apache.roller.weblogger.pojos;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import javax.imageio.stream.FileImageInputStream;
+import javax.imageio.stream.ImageInputStream;
 
 
 /**
@@ -76,4 +79,12 @@ public class FileContent {
             throw new RuntimeException("Error constructing input stream", ex);
         }
     }
+    
+    /**
+     * Returns an image input stream which reads the underlying file in place,
+     * so that image readers can seek without caching the file.
+     */
+    public ImageInputStream getImageInputStream() throws IOException {
+        return new FileImageInputStream(resourceFile);
+    }
 }
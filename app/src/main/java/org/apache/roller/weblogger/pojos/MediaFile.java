@@ -61,6 +61,7 @@ public class MediaFile implements Serializable {
     private Timestamp dateUploaded = new Timestamp(System.currentTimeMillis());
     private Timestamp lastUpdated = new Timestamp(System.currentTimeMillis());
     private String creatorUserName;
+    private String contentHash;
     private Weblog weblog;
 
     private InputStream is;
@@ -374,6 +375,17 @@ public class MediaFile implements Serializable {
         this.creatorUserName = creatorUserName;
     }
 
+    /**
+     * Hex encoded SHA-256 of the content, if it was computed on upload.
+     */
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
     public User getCreator() {
         try {
             return WebloggerFactory.getWeblogger().getUserManager()
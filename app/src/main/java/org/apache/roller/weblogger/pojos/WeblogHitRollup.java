@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.pojos;
+
+import java.io.Serializable;
+import java.util.Date;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.apache.roller.util.UUIDGenerator;
+
+
+/**
+ * Represents the number of hits a weblog received during one period of time,
+ * either an hour or a day.  Hourly rollups are recorded as hits come in and
+ * are later downsampled into daily rollups.
+ */
+public class WeblogHitRollup implements Serializable {
+    
+    /** Granularity of an hourly rollup, as the period length in minutes */
+    public static final int HOURLY = 60;
+    
+    /** Granularity of a daily rollup, as the period length in minutes */
+    public static final int DAILY = 24 * 60;
+    
+    private String id = UUIDGenerator.generateUUID();
+    private Weblog weblog = null;
+    private int granularity = HOURLY;
+    private Date periodStart = null;
+    private int hits = 0;
+    
+    
+    public WeblogHitRollup() {}
+    
+    public WeblogHitRollup(Weblog weblog, int granularity, Date periodStart, int hits) {
+        this.weblog = weblog;
+        this.granularity = granularity;
+        this.periodStart = periodStart;
+        this.hits = hits;
+    }
+    
+    
+    //------------------------------------------------------- Good citizenship
+
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder();
+        buf.append("{");
+        buf.append(getId());
+        buf.append(", ").append(getGranularity());
+        buf.append(", ").append(getPeriodStart());
+        buf.append(", ").append(getHits());
+        buf.append("}");
+        return buf.toString();
+    }
+    
+    @Override
+    public boolean equals(Object other) {
+        
+        if(this == other) {
+            return true;
+        }
+        if( !(other instanceof WeblogHitRollup) ) {
+            return false;
+        }
+        
+        // our natural key is our weblog, granularity and period
+        final WeblogHitRollup that = (WeblogHitRollup) other;
+        return this.getWeblog().equals(that.getWeblog())
+                && this.getGranularity() == that.getGranularity()
+                && this.getPeriodStart().equals(that.getPeriodStart());
+    }
+       
+    @Override
+    public int hashCode() { 
+        return new HashCodeBuilder()
+            .append(getWeblog())
+            .append(getGranularity())
+            .append(getPeriodStart())
+            .toHashCode();
+    }
+    
+    
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+    
+    
+    public Weblog getWeblog() {
+        return weblog;
+    }
+
+    public void setWeblog(Weblog weblog) {
+        this.weblog = weblog;
+    }
+    
+    
+    /**
+     * Length of the period covered, in minutes; either HOURLY or DAILY.
+     */
+    public int getGranularity() {
+        return granularity;
+    }
+
+    public void setGranularity(int granularity) {
+        this.granularity = granularity;
+    }
+    
+    
+    public Date getPeriodStart() {
+        return periodStart;
+    }
+
+    public void setPeriodStart(Date periodStart) {
+        this.periodStart = periodStart;
+    }
+    
+    
+    public int getHits() {
+        return hits;
+    }
+
+    public void setHits(int hits) {
+        this.hits = hits;
+    }
+    
+}
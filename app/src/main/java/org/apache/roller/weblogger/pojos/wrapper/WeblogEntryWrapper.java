@@ -40,6 +40,12 @@ public final class WeblogEntryWrapper {
     // url strategy to use for any url building
     private final URLStrategy urlStrategy;
     
+    // memoized permalink, templates ask for it over and over
+    private String permalink = null;
+    
+    // memoized creator, each lookup goes through the user manager
+    private UserWrapper creator = null;
+    
     
     // this is private so that we can force the use of the .wrap(pojo) method
     private WeblogEntryWrapper(WeblogEntry toWrap, URLStrategy strat) {
@@ -80,7 +86,10 @@ public final class WeblogEntryWrapper {
     
     
     public UserWrapper getCreator() {
-        return UserWrapper.wrap(this.pojo.getCreator());
+        if (creator == null) {
+            creator = UserWrapper.wrap(this.pojo.getCreator());
+        }
+        return creator;
     }
     
     
@@ -226,7 +235,10 @@ public final class WeblogEntryWrapper {
     
     
     public String getPermalink() {
-        return this.pojo.getPermalink();
+        if (this.permalink == null) {
+            this.permalink = this.pojo.getPermalink();
+        }
+        return this.permalink;
     }
     
     
@@ -45,6 +45,11 @@ import org.apache.roller.weblogger.business.startup.WebloggerStartup;
 import org.apache.roller.weblogger.ui.core.plugins.UIPluginManager;
 import org.apache.roller.weblogger.ui.core.plugins.UIPluginManagerImpl;
 import org.apache.roller.weblogger.ui.core.security.AutoProvision;
+import org.apache.roller.weblogger.ui.rendering.model.ModelLoader;
+import org.apache.roller.weblogger.ui.rendering.export.StaticSiteExporter;
+import org.apache.roller.weblogger.ui.rendering.plugins.comments.LinkbackVerifier;
+import org.apache.roller.weblogger.ui.rendering.util.cache.WeblogCacheWarmer;
+import org.apache.roller.weblogger.util.IPBanList;
 import org.apache.roller.weblogger.util.Reflection;
 import org.apache.roller.weblogger.util.cache.CacheManager;
 import org.apache.velocity.runtime.RuntimeSingleton;
@@ -187,6 +192,14 @@ public class RollerContext extends ContextLoaderListener
                 weblogger = WebloggerFactory.getWeblogger();
                 weblogger.initialize();
 
+                // keep hot weblog pages cached across invalidations
+                WeblogCacheWarmer.getInstance().start();
+
+                // write out rendered pages for a static web server
+                if (StaticSiteExporter.getInstance() != null) {
+                    StaticSiteExporter.getInstance().start();
+                }
+
             } catch (BootstrapException ex) {
                 log.fatal("Roller Weblogger bootstrap failed", ex);
             } catch (WebloggerException ex) {
@@ -205,6 +218,9 @@ public class RollerContext extends ContextLoaderListener
 
             // Setup Velocity template engine
             setupVelocity();
+
+            // Resolve rendering model classes once, up front
+            ModelLoader.preloadModels();
         } catch (WebloggerException ex) {
             log.fatal("Error initializing Roller Weblogger web tier", ex);
         }
@@ -218,7 +234,13 @@ public class RollerContext extends ContextLoaderListener
     public void contextDestroyed(ServletContextEvent sce) {
         WebloggerFactory.getWeblogger().shutdown();
         // do we need a more generic mechanism for presentation layer shutdown?
+        WeblogCacheWarmer.getInstance().shutdown();
+        if (StaticSiteExporter.getInstance() != null) {
+            StaticSiteExporter.getInstance().shutdown();
+        }
+        LinkbackVerifier.getInstance().shutdown();
         CacheManager.shutdown();
+        IPBanList.getInstance().shutdown();
     }
 
     /**
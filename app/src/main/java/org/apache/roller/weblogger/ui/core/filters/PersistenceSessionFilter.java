@@ -19,6 +19,7 @@
 package org.apache.roller.weblogger.ui.core.filters;
 
 import java.io.IOException;
+import java.util.Set;
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
@@ -36,12 +37,29 @@ import org.apache.roller.weblogger.business.WebloggerFactory;
  * Sole responsibility is to ensure that each request's Roller
  * persistence session is released at end of the request.
  *
+ * Requests for the static files of the application never use a persistence
+ * session, so they are passed straight through.
+ *
  * @web.filter name="PersistenceSessionFilter"
  */
 public class PersistenceSessionFilter implements Filter {
     
     private static Log log = LogFactory.getLog(PersistenceSessionFilter.class);
     
+    // directories of static files, which are served without a persistence
+    // session, each ending in a slash so no weblog handle can match them
+    private static final String[] STATIC_DIRS = {
+        "/images/", "/theme/", "/themes/", "/webjars/",
+        "/roller-ui/images/", "/roller-ui/scripts/", "/roller-ui/styles/",
+        "/roller-ui/theme/"
+    };
+    
+    // static files at the root of the application
+    private static final Set<String> STATIC_FILES = Set.of(
+        "/favicon.svg", "/favicon-feed.svg", "/favicon-red.svg", "/favicon-rw.svg",
+        "/robots.txt"
+    );
+    
     
     /**
      * Release Roller persistence session at end of request processing.
@@ -53,6 +71,11 @@ public class PersistenceSessionFilter implements Filter {
         HttpServletRequest request = (HttpServletRequest) req;
         HttpServletResponse response = (HttpServletResponse) res;
         
+        if (isStaticResource(request)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        
         log.debug("Entered "+request.getRequestURI());
         
         try {
@@ -69,6 +92,22 @@ public class PersistenceSessionFilter implements Filter {
     }
     
     
+    /**
+     * True if the request is for one of the static files of the application.
+     */
+    static boolean isStaticResource(HttpServletRequest request) {
+        
+        String uri = request.getRequestURI();
+        int start = request.getContextPath().length();
+        for (String dir : STATIC_DIRS) {
+            if (uri.startsWith(dir, start)) {
+                return true;
+            }
+        }
+        return STATIC_FILES.contains(uri.substring(start));
+    }
+    
+    
     @Override
     public void init(FilterConfig filterConfig) throws ServletException {}
     
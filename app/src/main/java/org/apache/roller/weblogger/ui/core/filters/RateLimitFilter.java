@@ -0,0 +1,104 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one or more
+*  contributor license agreements.  The ASF licenses this file to You
+* under the Apache License, Version 2.0 (the "License"); you may not
+* use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.  For additional information regarding
+* copyright in this work, please see the NOTICE file in the top level
+* directory of this distribution.
+*/
+
+package org.apache.roller.weblogger.ui.core.filters;
+
+import java.io.IOException;
+import java.util.Map;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.weblogger.util.RateLimiter;
+
+
+/**
+ * Per client rate limiting for the rendering and webservice endpoints.
+ * Clients over the limit get a 429 response.
+ *
+ * The endpoint is chosen from the servlet path of the request and maps to
+ * the &lt;endpoint&gt;.throttle.* properties; endpoints without throttling
+ * enabled pass straight through.
+ *
+ * @web.filter name="RateLimitFilter"
+ */
+public class RateLimitFilter implements Filter {
+    
+    private static Log log = LogFactory.getLog(RateLimitFilter.class);
+    
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+    
+    // servlet paths which are rate limited, and the endpoint for each
+    private static final Map<String, String> ENDPOINTS = Map.of(
+            "/roller-ui/rendering/page", "page",
+            "/roller-ui/rendering/search", "search",
+            "/roller-ui/rendering/trackback", "trackback",
+            "/roller-services/xmlrpc", "xmlrpc",
+            "/roller-services/app", "atom");
+    
+    
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        
+        log.info("INIT RateLimitFilter");
+    }
+    
+    
+    @Override
+    public void doFilter(ServletRequest req, ServletResponse res, FilterChain chain)
+            throws IOException, ServletException {
+        
+        HttpServletRequest request = (HttpServletRequest) req;
+        HttpServletResponse response = (HttpServletResponse) res;
+        
+        String endpoint = ENDPOINTS.get(request.getServletPath());
+        RateLimiter limiter = (endpoint != null) ? RateLimiter.getRateLimiter(endpoint) : null;
+        
+        if (limiter != null
+                && limiter.processHit(request.getRemoteAddr(), getWeblogHandle(request))) {
+            log.debug("THROTTLED " + request.getRemoteAddr() + " on " + endpoint);
+            response.sendError(SC_TOO_MANY_REQUESTS);
+        } else {
+            chain.doFilter(request, response);
+        }
+    }
+    
+    @Override
+    public void destroy() {}
+    
+    
+    /**
+     * The weblog handle of a rendering or webservice request is the first
+     * element of its path info, if there is one.
+     */
+    public static String getWeblogHandle(HttpServletRequest request) {
+        String pathInfo = request.getPathInfo();
+        if (pathInfo == null || pathInfo.length() < 2) {
+            return null;
+        }
+        int end = pathInfo.indexOf('/', 1);
+        return (end > 0) ? pathInfo.substring(1, end) : pathInfo.substring(1);
+    }
+    
+}
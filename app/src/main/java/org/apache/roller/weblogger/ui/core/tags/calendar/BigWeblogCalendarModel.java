@@ -18,7 +18,6 @@
 
 package org.apache.roller.weblogger.ui.core.tags.calendar;
 
-import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -32,6 +31,7 @@ import org.apache.roller.weblogger.business.WeblogEntryManager;
 import org.apache.roller.weblogger.pojos.WeblogEntry;
 import org.apache.roller.weblogger.pojos.WeblogEntrySearchCriteria;
 import org.apache.roller.weblogger.ui.rendering.util.WeblogPageRequest;
+import org.apache.roller.util.DateFormatter;
 import org.apache.roller.util.DateUtil;
 
 
@@ -42,18 +42,16 @@ public class BigWeblogCalendarModel extends WeblogCalendarModel {
     
     private static final Log mLogger = LogFactory.getLog(BigWeblogCalendarModel.class);
 
-    protected final SimpleDateFormat starDateFormat =
-            DateUtil.get8charDateFormat();
+    protected final DateFormatter starDateFormat;
 
-    protected final SimpleDateFormat singleDayFormat =
-            new SimpleDateFormat("dd");
+    protected final DateFormatter singleDayFormat;
 
 
     public BigWeblogCalendarModel(WeblogPageRequest pRequest, String cat) {
         super(pRequest, cat);
         TimeZone tz = weblog.getTimeZoneInstance();
-        starDateFormat.setTimeZone(tz);
-        singleDayFormat.setTimeZone(tz);
+        starDateFormat = DateFormatter.getInstance(DateUtil.FORMAT_8CHARS, null, tz);
+        singleDayFormat = DateFormatter.getInstance("dd", null, tz);
     }
     
     
@@ -97,7 +95,7 @@ public class BigWeblogCalendarModel extends WeblogCalendarModel {
                 sb.append("<a href=\"");
                 sb.append( dayUrl );
                 sb.append("\">");
-                sb.append(singleDayFormat.format(day));
+                singleDayFormat.formatTo(day, sb);
                 sb.append("</a></div>");
                 
                 for ( int i=0; i<entries.size(); i++ ) {
@@ -120,7 +118,7 @@ public class BigWeblogCalendarModel extends WeblogCalendarModel {
                 
             } else {
                 sb.append("<div class=\"hCalendarDayTitleBig\">");
-                sb.append(singleDayFormat.format(day));
+                singleDayFormat.formatTo(day, sb);
                 sb.append("</div>");
                 sb.append("<div class=\"bCalendarDayContentBig\"/>");
             }
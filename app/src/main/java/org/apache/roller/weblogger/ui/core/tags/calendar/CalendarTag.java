@@ -65,6 +65,10 @@ public class CalendarTag extends TagSupport {
     public void setModel( String s ) { mModelName= s; }
     private String mModelName = null;
     
+    // not a tag attribute, the model itself rather than its name
+    public void setCalendarModel( CalendarModel model ) { mModel = model; }
+    private CalendarModel mModel = null;
+    
     /** @jsp.attribute */
     public String getClassSuffix() { return mClassSuffix; }
     public void setClassSuffix( String s ) { mClassSuffix= s; }
@@ -130,14 +134,18 @@ public class CalendarTag extends TagSupport {
             // ---------------------------------
             
             // check for parameter map and target url
-            StringTokenizer toker = new StringTokenizer(mModelName,".");
-            String tok1 = toker.nextToken();
-            if (toker.hasMoreTokens()) {
-                String tok2 = toker.nextToken();
-                Object bean = pageContext.findAttribute(tok1);
-                model = (CalendarModel)PropertyUtils.getProperty(bean, tok2);
+            if (mModel != null) {
+                model = mModel;
             } else {
-                model = (CalendarModel)pageContext.findAttribute( mModelName );
+                StringTokenizer toker = new StringTokenizer(mModelName,".");
+                String tok1 = toker.nextToken();
+                if (toker.hasMoreTokens()) {
+                    String tok2 = toker.nextToken();
+                    Object bean = pageContext.findAttribute(tok1);
+                    model = (CalendarModel)PropertyUtils.getProperty(bean, tok2);
+                } else {
+                    model = (CalendarModel)pageContext.findAttribute( mModelName );
+                }
             }
             
             // no model specified, nothing to generate
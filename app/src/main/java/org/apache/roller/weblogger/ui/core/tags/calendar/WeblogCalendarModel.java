@@ -18,8 +18,7 @@
 
 package org.apache.roller.weblogger.ui.core.tags.calendar;
 
-import java.text.ParsePosition;
-import java.text.SimpleDateFormat;
+import java.text.ParseException;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
@@ -39,6 +38,7 @@ import org.apache.roller.weblogger.pojos.WeblogEntry.PubStatus;
 import org.apache.roller.weblogger.pojos.Weblog;
 import org.apache.roller.weblogger.pojos.WeblogEntrySearchCriteria;
 import org.apache.roller.weblogger.ui.rendering.util.WeblogPageRequest;
+import org.apache.roller.util.DateFormatter;
 import org.apache.roller.util.DateUtil;
 
 
@@ -177,10 +177,8 @@ public class WeblogCalendarModel implements CalendarModel {
 
     @Override
     public void setDay(String month) throws Exception {
-        SimpleDateFormat fmt = DateUtil.get8charDateFormat();
-        fmt.setCalendar(getCalendar());
-        ParsePosition pos = new ParsePosition(0);
-        initDay( fmt.parse( month, pos ) );
+        initDay(DateFormatter.getInstance(DateUtil.FORMAT_8CHARS,
+                weblog.getLocaleInstance(), weblog.getTimeZoneInstance()).parse(month));
     }
     
     @Override
@@ -193,18 +191,14 @@ public class WeblogCalendarModel implements CalendarModel {
     }
 
     // convenience method returns 8 char day stamp YYYYMMDD
-    public static String format8chars(Date date, Calendar cal) {
-    	SimpleDateFormat format = DateUtil.get8charDateFormat();
-    	format.setCalendar(cal);
-    	return DateUtil.format(date,format);
+    public String format8chars(Date date) {
+        return DateUtil.format8chars(date, weblog.getTimeZoneInstance(), weblog.getLocaleInstance());
     }
     
     
     // convenience method returns 6 char month stamp YYYYMM
-    public static String format6chars(Date date, Calendar cal) {
-    	SimpleDateFormat format = DateUtil.get6charDateFormat();
-    	format.setCalendar(cal);
-    	return DateUtil.format(date,format);
+    public String format6chars(Date date) {
+        return DateUtil.format6chars(date, weblog.getTimeZoneInstance(), weblog.getLocaleInstance());
     }
 
     /**
@@ -213,32 +207,27 @@ public class WeblogCalendarModel implements CalendarModel {
     public static Date parseWeblogURLDateString(String dateString, TimeZone tz, Locale locale) {
         
         Date ret = new Date();
-        Calendar cal = Calendar.getInstance(tz,locale);
+        String pattern = null;
         
         if (dateString != null
                 && dateString.length()==8
                 && StringUtils.isNumeric(dateString) ) {
-            SimpleDateFormat char8DateFormat = DateUtil.get8charDateFormat();
-            char8DateFormat.setCalendar(cal);
-            ParsePosition pos = new ParsePosition(0);
-            ret = char8DateFormat.parse(dateString, pos);
-
-            // make sure the requested date is not in the future
-            // Date is always ms offset from epoch in UTC, by no means of timezone.
-            Date today = new Date();
-            if(ret.after(today)) {
-                ret = today;
-            }
-            
+            pattern = DateUtil.FORMAT_8CHARS;
         } else if(dateString != null
                 && dateString.length()==6
                 && StringUtils.isNumeric(dateString)) {
-            SimpleDateFormat char6DateFormat = DateUtil.get6charDateFormat();
-            char6DateFormat.setCalendar(cal);
-            ParsePosition pos = new ParsePosition(0);
-            ret = char6DateFormat.parse(dateString, pos);
-            
+            pattern = DateUtil.FORMAT_6CHARS;
+        }
+        
+        if (pattern != null) {
+            try {
+                ret = DateFormatter.getInstance(pattern, locale, tz).parse(dateString);
+            } catch (ParseException e) {
+                return ret;
+            }
+
             // make sure the requested date is not in the future
+            // Date is always ms offset from epoch in UTC, by no means of timezone.
             Date today = new Date();
             if(ret.after(today)) {
                 ret = today;
@@ -263,9 +252,9 @@ public class WeblogCalendarModel implements CalendarModel {
             return null;
         }
         else if (dateString == null && !monthURL) {
-        	dateString = format8chars(day,getCalendar());
+        	dateString = format8chars(day);
         } else if (dateString == null) {
-            dateString = format6chars(day,getCalendar());
+            dateString = format6chars(day);
         }
         try {
             if (pageLink == null) {
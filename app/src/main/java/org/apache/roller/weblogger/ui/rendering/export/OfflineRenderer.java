@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.ui.rendering.export;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Enumeration;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.jsp.PageContext;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.weblogger.ui.core.RollerContext;
+import org.apache.roller.weblogger.ui.rendering.servlets.FeedServlet;
+import org.apache.roller.weblogger.ui.rendering.servlets.PageServlet;
+import org.apache.roller.weblogger.ui.rendering.servlets.PlanetFeedServlet;
+import org.apache.roller.weblogger.ui.rendering.util.cache.WeblogCacheWarmer;
+
+
+/**
+ * Renders weblog pages and feeds, and the planet feeds, within the
+ * application, through the same servlets which serve them to visitors.
+ *
+ * Requests are anonymous GETs marked as warmup requests, so the servlets
+ * skip the cache lookup, don't count a hit, and put what they render in the
+ * cache.  The caller is responsible for releasing the persistence session.
+ */
+public final class OfflineRenderer {
+    
+    private static final Log log = LogFactory.getLog(OfflineRenderer.class);
+    
+    public static final String PAGE_SERVLET = "/roller-ui/rendering/page";
+    public static final String FEED_SERVLET = "/roller-ui/rendering/feed";
+    public static final String PLANET_SERVLET = "/planetrss";
+    
+    private final HttpServlet pageServlet = new OfflinePageServlet();
+    private final HttpServlet feedServlet = new FeedServlet();
+    private final HttpServlet planetServlet = new PlanetFeedServlet();
+    private boolean servletsInitialized = false;
+    
+    
+    /**
+     * Render a path as a request to the servlet which serves it.
+     *
+     * @param path Servlet path, decoded path info and encoded query string,
+     *        as in WeblogCacheWarmer.getPath().
+     * @return The response, or null if no servlet serves the path.
+     */
+    public OfflineResponse render(String path) throws IOException {
+        int q = path.indexOf('?');
+        String query = q < 0 ? null : path.substring(q + 1);
+        String servletPath = q < 0 ? path : path.substring(0, q);
+        for (String prefix : new String[] { PAGE_SERVLET, FEED_SERVLET, PLANET_SERVLET }) {
+            if (servletPath.equals(prefix)) {
+                return render(prefix, null, query);
+            } else if (servletPath.startsWith(prefix + "/")) {
+                return render(prefix, servletPath.substring(prefix.length()), query);
+            }
+        }
+        return null;
+    }
+    
+    
+    /**
+     * Render a request to one of the rendering servlets.
+     *
+     * @param servletPath Path of the servlet.
+     * @param pathInfo Decoded path after the servlet path, or null.
+     * @param queryString Encoded query string, or null.
+     */
+    public OfflineResponse render(String servletPath, String pathInfo, String queryString)
+            throws IOException {
+    
+        HttpServlet servlet;
+        if (PAGE_SERVLET.equals(servletPath)) {
+            servlet = pageServlet;
+        } else if (FEED_SERVLET.equals(servletPath)) {
+            servlet = feedServlet;
+        } else if (PLANET_SERVLET.equals(servletPath)) {
+            servlet = planetServlet;
+        } else {
+            throw new IllegalArgumentException("Not a rendering servlet: " + servletPath);
+        }
+    
+        HttpServletRequest request = OfflineRequest.create(servletPath, pathInfo, queryString);
+        request.setAttribute(WeblogCacheWarmer.WARMUP_ATTR, Boolean.TRUE);
+        OfflineResponse response = new OfflineResponse();
+        try {
+            initServlets();
+            servlet.service(request, response.getResponse());
+        } catch (ServletException ex) {
+            log.error("Error rendering " + request, ex);
+            response.getResponse().sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        }
+        return response;
+    }
+    
+    
+    private synchronized void initServlets() throws ServletException {
+        if (servletsInitialized) {
+            return;
+        }
+        ServletConfig config = new ServletConfig() {
+            @Override
+            public String getServletName() {
+                return "OfflineRenderer";
+            }
+    
+            @Override
+            public ServletContext getServletContext() {
+                return RollerContext.getServletContext();
+            }
+    
+            @Override
+            public String getInitParameter(String name) {
+                return null;
+            }
+    
+            @Override
+            public Enumeration<String> getInitParameterNames() {
+                return Collections.emptyEnumeration();
+            }
+        };
+        pageServlet.init(config);
+        feedServlet.init(config);
+        planetServlet.init(config);
+        servletsInitialized = true;
+    }
+    
+    
+    /**
+     * Page servlet which doesn't ask the JSP factory of the container for a
+     * page context, which is only meant for requests made by its clients.
+     */
+    private static class OfflinePageServlet extends PageServlet {
+    
+        private static final long serialVersionUID = 1L;
+    
+        @Override
+        protected PageContext getPageContext(HttpServletRequest request, HttpServletResponse response) {
+            return null;
+        }
+    }
+    
+}
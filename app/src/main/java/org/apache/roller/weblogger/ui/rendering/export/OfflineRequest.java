@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.ui.rendering.export;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import javax.servlet.http.HttpServletRequest;
+import org.apache.roller.weblogger.config.WebloggerRuntimeConfig;
+import org.apache.roller.weblogger.ui.core.RollerContext;
+
+
+/**
+ * An anonymous GET request made from within Roller, for rendering content
+ * through the rendering servlets outside of a client request.
+ *
+ * Only what the rendering servlets and request parsers use is answered, the
+ * rest of HttpServletRequest returns null, false or zero.
+ */
+final class OfflineRequest implements InvocationHandler {
+    
+    private final String servletPath;
+    private final String pathInfo;
+    private final String queryString;
+    private final Map<String, String[]> parameters;
+    private final Map<String, Object> attributes = new HashMap<>();
+    
+    
+    private OfflineRequest(String servletPath, String pathInfo, String queryString) {
+        this.servletPath = servletPath;
+        this.pathInfo = pathInfo;
+        this.queryString = queryString;
+        this.parameters = parseQuery(queryString);
+    }
+    
+    
+    /**
+     * @param servletPath Path of the servlet.
+     * @param pathInfo Decoded path after the servlet path, or null.
+     * @param queryString Encoded query string, or null.
+     */
+    static HttpServletRequest create(String servletPath, String pathInfo, String queryString) {
+        return (HttpServletRequest) Proxy.newProxyInstance(OfflineRequest.class.getClassLoader(),
+                new Class<?>[] { HttpServletRequest.class },
+                new OfflineRequest(servletPath, pathInfo, queryString));
+    }
+    
+    
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "getMethod":
+                return "GET";
+            case "getServletPath":
+                return servletPath;
+            case "getPathInfo":
+                return pathInfo;
+            case "getContextPath":
+                return contextPath();
+            case "getRequestURI":
+                return contextPath() + servletPath + (pathInfo != null ? pathInfo : "");
+            case "getRequestURL":
+                String base = WebloggerRuntimeConfig.getAbsoluteContextURL();
+                return new StringBuffer(base != null ? base : "")
+                        .append(servletPath).append(pathInfo != null ? pathInfo : "");
+            case "getQueryString":
+                return queryString;
+            case "getParameter":
+                String[] values = parameters.get((String) args[0]);
+                return values != null ? values[0] : null;
+            case "getParameterValues":
+                return parameters.get((String) args[0]);
+            case "getParameterMap":
+                return Collections.unmodifiableMap(parameters);
+            case "getParameterNames":
+                return Collections.enumeration(parameters.keySet());
+            case "getAttribute":
+                return attributes.get((String) args[0]);
+            case "setAttribute":
+                if (args[1] == null) {
+                    attributes.remove((String) args[0]);
+                } else {
+                    attributes.put((String) args[0], args[1]);
+                }
+                return null;
+            case "removeAttribute":
+                attributes.remove((String) args[0]);
+                return null;
+            case "getAttributeNames":
+                return Collections.enumeration(new ArrayList<>(attributes.keySet()));
+            case "getHeaders":
+            case "getHeaderNames":
+                return Collections.emptyEnumeration();
+            case "getDateHeader":
+                return -1L;
+            case "getIntHeader":
+                return -1;
+            case "getLocale":
+                return Locale.getDefault();
+            case "getLocales":
+                return Collections.enumeration(List.of(Locale.getDefault()));
+            case "getCharacterEncoding":
+                return StandardCharsets.UTF_8.name();
+            case "getServletContext":
+                return RollerContext.getServletContext();
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "equals":
+                return proxy == args[0];
+            case "toString":
+                return "OfflineRequest[" + servletPath + (pathInfo != null ? pathInfo : "")
+                        + (queryString != null ? "?" + queryString : "") + "]";
+            default:
+                return defaultValue(method.getReturnType());
+        }
+    }
+    
+    
+    private static String contextPath() {
+        String path = WebloggerRuntimeConfig.getRelativeContextURL();
+        return path != null ? path : "";
+    }
+    
+    
+    private static Map<String, String[]> parseQuery(String queryString) {
+        Map<String, List<String>> params = new LinkedHashMap<>();
+        if (queryString != null) {
+            for (String pair : queryString.split("&")) {
+                if (pair.isEmpty()) {
+                    continue;
+                }
+                int eq = pair.indexOf('=');
+                String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+                String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+                params.computeIfAbsent(name, k -> new ArrayList<>()).add(value);
+            }
+        }
+        Map<String, String[]> result = new LinkedHashMap<>();
+        params.forEach((name, values) -> result.put(name, values.toArray(new String[0])));
+        return result;
+    }
+    
+    
+    static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+    
+}
@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.ui.rendering.export;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+
+
+/**
+ * Collects what a rendering servlet writes for an {@link OfflineRequest}.
+ */
+public final class OfflineResponse implements InvocationHandler {
+    
+    private final ByteArrayOutputStream content = new ByteArrayOutputStream();
+    private final HttpServletResponse response;
+    
+    private int status = HttpServletResponse.SC_OK;
+    private String contentType = null;
+    private PrintWriter writer = null;
+    
+    private final ServletOutputStream out = new ServletOutputStream() {
+        @Override
+        public void write(int b) {
+            content.write(b);
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) {
+            content.write(b, off, len);
+        }
+        
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+        
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+        }
+    };
+    
+    
+    OfflineResponse() {
+        response = (HttpServletResponse) Proxy.newProxyInstance(OfflineResponse.class.getClassLoader(),
+                new Class<?>[] { HttpServletResponse.class }, this);
+    }
+    
+    
+    HttpServletResponse getResponse() {
+        return response;
+    }
+    
+    public int getStatus() {
+        return status;
+    }
+    
+    public String getContentType() {
+        return contentType;
+    }
+    
+    public byte[] getContent() {
+        if (writer != null) {
+            writer.flush();
+        }
+        return content.toByteArray();
+    }
+    
+    
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "setStatus":
+            case "sendError":
+                status = (Integer) args[0];
+                return null;
+            case "sendRedirect":
+                status = HttpServletResponse.SC_FOUND;
+                return null;
+            case "getStatus":
+                return status;
+            case "setContentType":
+                contentType = (String) args[0];
+                return null;
+            case "getContentType":
+                return contentType;
+            case "getCharacterEncoding":
+                return StandardCharsets.UTF_8.name();
+            case "getOutputStream":
+                return out;
+            case "getWriter":
+                if (writer == null) {
+                    writer = new PrintWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+                }
+                return writer;
+            case "reset":
+            case "resetBuffer":
+                content.reset();
+                return null;
+            case "encodeURL":
+            case "encodeRedirectURL":
+                return args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "equals":
+                return proxy == args[0];
+            case "toString":
+                return "OfflineResponse[" + status + "]";
+            default:
+                // headers and buffering don't matter offline
+                return OfflineRequest.defaultValue(method.getReturnType());
+        }
+    }
+    
+}
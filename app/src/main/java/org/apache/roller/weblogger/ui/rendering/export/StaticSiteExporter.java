@@ -0,0 +1,708 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.ui.rendering.export;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.planet.pojos.Planet;
+import org.apache.roller.planet.pojos.PlanetGroup;
+import org.apache.roller.RollerException;
+import org.apache.roller.util.DateUtil;
+import org.apache.roller.util.RollerConstants;
+import org.apache.roller.weblogger.WebloggerException;
+import org.apache.roller.weblogger.business.URLStrategy;
+import org.apache.roller.weblogger.business.WeblogEntryManager;
+import org.apache.roller.weblogger.business.Weblogger;
+import org.apache.roller.weblogger.business.WebloggerFactory;
+import org.apache.roller.weblogger.business.runnable.ContinuousWorkerThread;
+import org.apache.roller.weblogger.business.runnable.Job;
+import org.apache.roller.weblogger.business.runnable.WorkerThread;
+import org.apache.roller.weblogger.config.WebloggerConfig;
+import org.apache.roller.weblogger.config.WebloggerRuntimeConfig;
+import org.apache.roller.weblogger.pojos.ThemeTemplate;
+import org.apache.roller.weblogger.pojos.ThemeTemplate.ComponentType;
+import org.apache.roller.weblogger.pojos.Weblog;
+import org.apache.roller.weblogger.pojos.WeblogBookmark;
+import org.apache.roller.weblogger.pojos.WeblogBookmarkFolder;
+import org.apache.roller.weblogger.pojos.WeblogCategory;
+import org.apache.roller.weblogger.pojos.WeblogEntry;
+import org.apache.roller.weblogger.pojos.WeblogEntry.PubStatus;
+import org.apache.roller.weblogger.pojos.WeblogEntryComment;
+import org.apache.roller.weblogger.pojos.WeblogEntrySearchCriteria;
+import org.apache.roller.weblogger.pojos.WeblogTemplate;
+import org.apache.roller.weblogger.ui.rendering.util.cache.PlanetCache;
+import org.apache.roller.weblogger.util.cache.CacheHandler;
+import org.apache.roller.weblogger.util.cache.CacheManager;
+
+
+/**
+ * Writes rendered weblog pages, permalinks, archives and feeds, and the
+ * planet feeds, to a directory tree which a static web server can serve.
+ *
+ * Content is rendered by the page, feed and planet feed servlets through an
+ * OfflineRenderer, so files hold exactly what the servlets would send an
+ * anonymous visitor.  The file for a path is index.EXT in the
+ * directory of the path, where EXT follows the content type, and paths with
+ * a query string go to index_QUERY.EXT.  Every file is written along with a
+ * gzip compressed .gz variant, and paths which don't render are removed.
+ *
+ * Each exported entry remembers the pages it appears on: its permalink,
+ * the weblog front page, its category and month archives, the weblog feeds
+ * and those of the site-wide weblog.  When static.export.enabled is set the
+ * exporter listens for invalidations and every static.export.interval
+ * seconds renders again the pages of the changed entries, before and after
+ * the change, and all the pages of weblogs changed otherwise.
+ */
+public final class StaticSiteExporter implements CacheHandler {
+    
+    private static final Log log = LogFactory.getLog(StaticSiteExporter.class);
+    
+    private static final String[] FEED_FORMATS = { "atom", "rss" };
+    
+    // the exporter of the web application, if enabled
+    private static StaticSiteExporter instance = null;
+    
+    private final Path outputDir;
+    
+    private final OfflineRenderer renderer = new OfflineRenderer();
+    
+    // paths each exported entry appears on, by entry id
+    private final Map<String, Set<String>> entryPaths = new ConcurrentHashMap<>();
+    
+    // changes to export on the next run, entry ids map to weblog handles
+    private final Set<String> changedWeblogs = ConcurrentHashMap.newKeySet();
+    private final Map<String, String> changedEntries = new ConcurrentHashMap<>();
+    private boolean exportedAll = false;
+    private Date planetExported = null;
+    
+    private WorkerThread worker = null;
+    
+    
+    /**
+     * @param outputDir Directory to write files to.
+     */
+    public StaticSiteExporter(Path outputDir) {
+        this.outputDir = outputDir.toAbsolutePath().normalize();
+    }
+    
+    
+    /**
+     * The exporter of the web application, or null if static export isn't
+     * enabled.
+     */
+    public static synchronized StaticSiteExporter getInstance() {
+        if (instance == null && WebloggerConfig.getBooleanProperty("static.export.enabled")) {
+            instance = new StaticSiteExporter(Paths.get(WebloggerConfig.getProperty("static.export.dir")));
+        }
+        return instance;
+    }
+    
+    
+    /**
+     * Export everything and keep exported files up to date with changes.
+     */
+    public synchronized void start() {
+        
+        if (worker != null) {
+            return;
+        }
+        
+        CacheManager.registerHandler(this);
+        
+        int interval = WebloggerConfig.getIntProperty("static.export.interval", 30);
+        worker = new ContinuousWorkerThread("StaticSiteExporter", new ExportJob(this),
+                Math.max(interval, 1) * (long) RollerConstants.SEC_IN_MS);
+        worker.setDaemon(true);
+        worker.start();
+        
+        log.info("Static export ENABLED to " + outputDir + ", every " + interval + " secs");
+    }
+    
+    
+    public synchronized void shutdown() {
+        if (worker != null) {
+            log.info("stopping worker " + worker.getName());
+            worker.interrupt();
+            worker = null;
+        }
+    }
+    
+    
+    public Path getOutputDir() {
+        return outputDir;
+    }
+    
+    
+    /**
+     * Export all pages of all active weblogs, and the planet feeds if the
+     * planet aggregator is enabled.
+     *
+     * @return Number of files written.
+     */
+    public int exportAll() throws RollerException, IOException {
+        int count = 0;
+        List<Weblog> weblogs = WebloggerFactory.getWeblogger().getWeblogManager()
+                .getWeblogs(Boolean.TRUE, Boolean.TRUE, null, null, 0, -1);
+        for (Weblog weblog : weblogs) {
+            count += exportWeblog(weblog);
+        }
+        if (WebloggerConfig.getBooleanProperty("planet.aggregator.enabled")) {
+            count += exportPlanet();
+        }
+        return count;
+    }
+    
+    
+    /**
+     * Export all pages of a weblog.
+     *
+     * @return Number of files written.
+     */
+    public int exportWeblog(Weblog weblog) throws WebloggerException, IOException {
+        
+        long start = System.currentTimeMillis();
+        
+        Set<String> paths = getWeblogPaths(weblog);
+        for (WeblogEntry entry : getPublishedEntries(weblog)) {
+            Set<String> pages = getEntryPaths(entry);
+            entryPaths.put(entry.getId(), pages);
+            paths.addAll(pages);
+        }
+        
+        int count = export(paths);
+        
+        long time = System.currentTimeMillis() - start;
+        log.info("Exported " + count + " of " + paths.size() + " pages of weblog "
+                + weblog.getHandle() + " in " + time + " ms");
+        return count;
+    }
+    
+    
+    /**
+     * Remove all files exported for a weblog, and forget its entries.
+     */
+    public void deleteWeblog(String handle) throws IOException {
+        
+        String prefix = "/" + handle + "/";
+        entryPaths.values().removeIf(paths -> paths.stream().anyMatch(path -> path.startsWith(prefix)));
+        
+        Path root = getDir(prefix);
+        if (root.equals(outputDir) || !Files.isDirectory(root)) {
+            return;
+        }
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(root)) {
+            files = walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+        }
+        for (Path file : files) {
+            Files.deleteIfExists(file);
+        }
+        log.info("Deleted export of removed weblog " + handle);
+    }
+    
+    
+    /**
+     * Export again the pages an entry appeared on when last exported and
+     * those it appears on now.
+     *
+     * @return Paths which were rendered.
+     */
+    public Set<String> exportEntry(String entryId) throws WebloggerException, IOException {
+        
+        Set<String> paths = new LinkedHashSet<>();
+        Set<String> previous = entryPaths.remove(entryId);
+        if (previous != null) {
+            paths.addAll(previous);
+        }
+        
+        WeblogEntry entry = WebloggerFactory.getWeblogger().getWeblogEntryManager().getWeblogEntry(entryId);
+        if (entry != null && entry.isPublished()) {
+            Set<String> pages = getEntryPaths(entry);
+            entryPaths.put(entryId, pages);
+            paths.addAll(pages);
+        }
+        
+        export(paths);
+        return paths;
+    }
+    
+    
+    /**
+     * Export the planet feed and the feeds of the groups of the default
+     * planet.
+     *
+     * @return Number of files written.
+     */
+    public int exportPlanet() throws RollerException, IOException {
+        
+        Set<String> paths = new LinkedHashSet<>();
+        paths.add(OfflineRenderer.PLANET_SERVLET);
+        Planet planet = WebloggerFactory.getWeblogger().getPlanetManager().getWeblogger("default");
+        if (planet != null) {
+            for (PlanetGroup group : planet.getGroups()) {
+                paths.add(OfflineRenderer.PLANET_SERVLET + "?group=" + URLEncoder.encode(group.getHandle(), StandardCharsets.UTF_8));
+            }
+        }
+        return export(paths);
+    }
+    
+    
+    /**
+     * Paths of the pages an entry appeared on when it was last exported.
+     */
+    Set<String> getExportedPaths(String entryId) {
+        return entryPaths.getOrDefault(entryId, Collections.emptySet());
+    }
+    
+    
+    /**
+     * Paths of the pages an entry appears on.
+     */
+    Set<String> getEntryPaths(WeblogEntry entry) {
+        
+        Weblog weblog = entry.getWebsite();
+        URLStrategy urls = WebloggerFactory.getWeblogger().getUrlStrategy();
+        
+        Set<String> paths = new LinkedHashSet<>();
+        paths.add(path(weblog, urls.getWeblogEntryURL(weblog, null, entry.getAnchor(), false)));
+        paths.add(path(weblog, urls.getWeblogURL(weblog, null, false)));
+        if (entry.getPubTime() != null) {
+            String month = DateUtil.format6chars(entry.getPubTime(), weblog.getTimeZoneInstance());
+            paths.add(path(weblog, urls.getWeblogCollectionURL(weblog, null, null, month, null, 0, false)));
+        }
+        if (entry.getCategory() != null) {
+            addCategoryPaths(paths, weblog, entry.getCategory().getName());
+        }
+        addFeedPaths(paths, weblog);
+        
+        // the site-wide weblog shows entries of all weblogs
+        Weblog siteWide = getSiteWideWeblog();
+        if (siteWide != null && !siteWide.getHandle().equals(weblog.getHandle())) {
+            paths.add(path(siteWide, urls.getWeblogURL(siteWide, null, false)));
+            addFeedPaths(paths, siteWide);
+        }
+        return paths;
+    }
+    
+    
+    /**
+     * Paths of the pages of a weblog, other than those of its entries.
+     */
+    Set<String> getWeblogPaths(Weblog weblog) throws WebloggerException {
+        
+        URLStrategy urls = WebloggerFactory.getWeblogger().getUrlStrategy();
+        
+        Set<String> paths = new LinkedHashSet<>();
+        paths.add(path(weblog, urls.getWeblogURL(weblog, null, false)));
+        addFeedPaths(paths, weblog);
+        for (WeblogCategory category : weblog.getWeblogCategories()) {
+            addCategoryPaths(paths, weblog, category.getName());
+        }
+        
+        // custom pages and stylesheet of the theme
+        List<ThemeTemplate> pages = new ArrayList<>(weblog.getTheme().getTemplates());
+        ThemeTemplate stylesheet = weblog.getTheme().getStylesheet();
+        if (stylesheet != null) {
+            pages.add(stylesheet);
+        }
+        for (ThemeTemplate page : pages) {
+            if (page.getLink() != null && !page.isHidden()
+                    && (page == stylesheet || page.getAction() == ComponentType.CUSTOM)) {
+                paths.add(path(weblog, urls.getWeblogPageURL(weblog, null, page.getLink(),
+                        null, null, null, null, 0, false)));
+            }
+        }
+        return paths;
+    }
+    
+    
+    private static void addCategoryPaths(Set<String> paths, Weblog weblog, String category) {
+        URLStrategy urls = WebloggerFactory.getWeblogger().getUrlStrategy();
+        paths.add(path(weblog, urls.getWeblogCollectionURL(weblog, null, category, null, null, 0, false)));
+        for (String format : FEED_FORMATS) {
+            paths.add(path(weblog, urls.getWeblogFeedURL(weblog, null, "entries", format,
+                    category, null, null, false, false)));
+        }
+    }
+    
+    
+    private static void addFeedPaths(Set<String> paths, Weblog weblog) {
+        URLStrategy urls = WebloggerFactory.getWeblogger().getUrlStrategy();
+        for (String type : new String[] { "entries", "comments" }) {
+            for (String format : FEED_FORMATS) {
+                paths.add(path(weblog, urls.getWeblogFeedURL(weblog, null, type, format,
+                        null, null, null, false, false)));
+            }
+        }
+    }
+    
+    
+    // path of a url relative to the context, which url strategies don't give
+    private static String path(Weblog weblog, String url) {
+        String base = WebloggerFactory.getWeblogger().getUrlStrategy().getWeblogURL(weblog, null, false);
+        return "/" + weblog.getHandle() + "/" + url.substring(base.length());
+    }
+    
+    
+    private static Weblog getSiteWideWeblog() {
+        String handle = WebloggerRuntimeConfig.getProperty("site.frontpage.weblog.handle");
+        if (handle == null || !WebloggerRuntimeConfig.isSiteWideWeblog(handle)) {
+            return null;
+        }
+        try {
+            return WebloggerFactory.getWeblogger().getWeblogManager().getWeblogByHandle(handle);
+        } catch (WebloggerException ex) {
+            log.error("Error looking up site-wide weblog " + handle, ex);
+            return null;
+        }
+    }
+    
+    
+    private static List<WeblogEntry> getPublishedEntries(Weblog weblog) throws WebloggerException {
+        WeblogEntrySearchCriteria wesc = new WeblogEntrySearchCriteria();
+        wesc.setWeblog(weblog);
+        wesc.setStatus(PubStatus.PUBLISHED);
+        wesc.setEndDate(new Date());
+        return WebloggerFactory.getWeblogger().getWeblogEntryManager().getWeblogEntries(wesc);
+    }
+    
+    
+    // export some paths, returns the number of files written
+    private int export(Set<String> paths) throws IOException {
+        int count = 0;
+        for (String path : paths) {
+            if (export(path)) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    
+    /**
+     * Render a path and write it out, or remove its files if it doesn't
+     * render.
+     *
+     * @return True if the path was written.
+     */
+    boolean export(String path) throws IOException {
+        OfflineResponse response = render(path);
+        if (response.getStatus() != HttpServletResponse.SC_OK) {
+            log.debug("Got status " + response.getStatus() + " rendering " + path);
+            delete(path);
+            return false;
+        }
+        
+        Path file = getFile(path, response.getContentType());
+        Files.createDirectories(file.getParent());
+        byte[] content = response.getContent();
+        write(file, content);
+        write(file.resolveSibling(file.getFileName() + ".gz"), gzip(content));
+        return true;
+    }
+    
+    
+    /**
+     * Render a path through the servlet which serves it.
+     *
+     * @param path Path relative to the context, with an optional query string.
+     */
+    OfflineResponse render(String path) throws IOException {
+        
+        int q = path.indexOf('?');
+        String query = q < 0 ? null : path.substring(q + 1);
+        String decoded = decodePath(q < 0 ? path : path.substring(0, q));
+        
+        String servletPath;
+        String pathInfo;
+        if (decoded.equals(OfflineRenderer.PLANET_SERVLET)) {
+            servletPath = OfflineRenderer.PLANET_SERVLET;
+            pathInfo = null;
+        } else {
+            // /handle[/context/data], feeds are /handle/feed/data
+            String[] parts = decoded.substring(1).split("/", 3);
+            if (parts.length > 1 && "feed".equals(parts[1])) {
+                servletPath = OfflineRenderer.FEED_SERVLET;
+                pathInfo = "/" + parts[0] + (parts.length > 2 ? "/" + parts[2] : "");
+            } else {
+                servletPath = OfflineRenderer.PAGE_SERVLET;
+                pathInfo = decoded;
+            }
+            if (pathInfo.endsWith("/")) {
+                pathInfo = pathInfo.substring(0, pathInfo.length() - 1);
+            }
+        }
+        
+        return renderer.render(servletPath, pathInfo, query);
+    }
+    
+    
+    /**
+     * File a path is exported to, given its content type.
+     */
+    Path getFile(String path, String contentType) {
+        int q = path.indexOf('?');
+        Path dir = getDir(q < 0 ? path : path.substring(0, q));
+        String name = "index";
+        if (q >= 0) {
+            name += "_" + path.substring(q + 1).replaceAll("[^A-Za-z0-9=&._-]", "_");
+        }
+        return dir.resolve(name + "." + getExtension(contentType));
+    }
+    
+    
+    private Path getDir(String path) {
+        Path dir = outputDir.resolve(decodePath(path).substring(1)).normalize();
+        if (!dir.startsWith(outputDir)) {
+            throw new IllegalArgumentException("Path outside of export directory: " + path);
+        }
+        return dir;
+    }
+    
+    
+    // remove whatever was exported for a path
+    private void delete(String path) throws IOException {
+        Path file = getFile(path, null);
+        if (!Files.isDirectory(file.getParent())) {
+            return;
+        }
+        String name = file.getFileName().toString();
+        String base = name.substring(0, name.lastIndexOf('.') + 1);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(file.getParent(), base + "*")) {
+            for (Path exported : files) {
+                Files.deleteIfExists(exported);
+            }
+        }
+    }
+    
+    
+    private static String getExtension(String contentType) {
+        if (contentType == null) {
+            return "html";
+        }
+        String type = contentType.split(";")[0].trim();
+        if (type.endsWith("xml")) {
+            return "xml";
+        } else if (type.equals("text/css")) {
+            return "css";
+        } else if (type.endsWith("javascript")) {
+            return "js";
+        } else if (type.endsWith("json")) {
+            return "json";
+        } else if (type.equals("text/plain")) {
+            return "txt";
+        }
+        return "html";
+    }
+    
+    
+    // decode a url path the way servlet containers and web servers do
+    private static String decodePath(String path) {
+        return URLDecoder.decode(path.replace("+", "%2B"), StandardCharsets.UTF_8);
+    }
+    
+    
+    // write through a temporary file, so that a file is never seen half written
+    private static void write(Path file, byte[] content) throws IOException {
+        Path temp = Files.createTempFile(file.getParent(), ".export", ".tmp");
+        try {
+            Files.write(temp, content);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+    
+    
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(content);
+        }
+        return bytes.toByteArray();
+    }
+    
+    
+    /**
+     * Export what changed since the last run, or everything on the first run.
+     */
+    void exportChanges() {
+        
+        if (!exportedAll) {
+            changedWeblogs.clear();
+            changedEntries.clear();
+            try {
+                exportAll();
+                planetExported = PlanetCache.getInstance().getLastModified();
+            } catch (RollerException | IOException ex) {
+                log.error("Error exporting site", ex);
+            }
+            exportedAll = true;
+            return;
+        }
+        
+        Weblogger weblogger = WebloggerFactory.getWeblogger();
+        
+        List<String> weblogs = new ArrayList<>(changedWeblogs);
+        changedWeblogs.removeAll(weblogs);
+        for (String handle : weblogs) {
+            try {
+                Weblog weblog = weblogger.getWeblogManager().getWeblogByHandle(handle);
+                if (weblog != null) {
+                    exportWeblog(weblog);
+                } else {
+                    // deleted, so stop publishing it
+                    deleteWeblog(handle);
+                }
+            } catch (WebloggerException | IOException ex) {
+                log.error("Error exporting weblog " + handle, ex);
+            }
+        }
+        
+        for (String entryId : new ArrayList<>(changedEntries.keySet())) {
+            String handle = changedEntries.remove(entryId);
+            if (weblogs.contains(handle)) {
+                continue;
+            }
+            try {
+                exportEntry(entryId);
+            } catch (WebloggerException | IOException ex) {
+                log.error("Error exporting entry " + entryId, ex);
+            }
+        }
+        
+        // planet feeds change when subscriptions are refreshed
+        if (WebloggerConfig.getBooleanProperty("planet.aggregator.enabled")) {
+            Date lastModified = PlanetCache.getInstance().getLastModified();
+            if (planetExported == null || lastModified.after(planetExported)) {
+                try {
+                    exportPlanet();
+                    planetExported = lastModified;
+                } catch (RollerException | IOException ex) {
+                    log.error("Error exporting planet", ex);
+                }
+            }
+        }
+    }
+    
+    
+    private void changed(Weblog weblog) {
+        if (weblog != null) {
+            changedWeblogs.add(weblog.getHandle());
+        }
+    }
+    
+    
+    private void changed(WeblogEntry entry) {
+        if (entry != null && entry.getWebsite() != null) {
+            changedEntries.put(entry.getId(), entry.getWebsite().getHandle());
+        }
+    }
+    
+    
+    @Override
+    public void invalidate(WeblogEntry entry) {
+        changed(entry);
+    }
+    
+    
+    @Override
+    public void invalidate(Weblog website) {
+        changed(website);
+    }
+    
+    
+    @Override
+    public void invalidate(WeblogBookmark bookmark) {
+        changed(bookmark.getWebsite());
+    }
+    
+    
+    @Override
+    public void invalidate(WeblogBookmarkFolder folder) {
+        changed(folder.getWeblog());
+    }
+    
+    
+    @Override
+    public void invalidate(WeblogEntryComment comment) {
+        changed(comment.getWeblogEntry());
+    }
+    
+    
+    @Override
+    public void invalidate(WeblogCategory category) {
+        changed(category.getWeblog());
+    }
+    
+    
+    @Override
+    public void invalidate(WeblogTemplate template) {
+        changed(template.getWeblog());
+    }
+    
+    
+    private static class ExportJob implements Job {
+        
+        private final StaticSiteExporter exporter;
+        
+        ExportJob(StaticSiteExporter exporter) {
+            this.exporter = exporter;
+        }
+        
+        @Override
+        public void execute() {
+            exporter.exportChanges();
+        }
+        
+        @Override
+        public void input(Map<String, Object> input) {
+        }
+        
+        @Override
+        public Map<String, Object> output() {
+            return null;
+        }
+    }
+    
+}
@@ -0,0 +1,5 @@
+/**
+ * Static export of rendered weblogs and planet feeds, and rendering of
+ * content within the application.
+ */
+package org.apache.roller.weblogger.ui.rendering.export;
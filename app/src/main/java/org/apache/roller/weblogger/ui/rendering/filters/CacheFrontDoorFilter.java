@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.ui.rendering.filters;
+
+import java.io.IOException;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.weblogger.ui.rendering.util.cache.WeblogCacheFrontDoor;
+
+
+/**
+ * Answers requests for cached weblog pages and feeds straight from the
+ * cache, ahead of the persistence session and request mapping filters.
+ *
+ * Does nothing unless cache.frontdoor.enabled is set, see
+ * WeblogCacheFrontDoor for which requests are answered.
+ *
+ * @web.filter name="CacheFrontDoorFilter"
+ */
+public class CacheFrontDoorFilter implements Filter {
+
+    private static final Log log = LogFactory.getLog(CacheFrontDoorFilter.class);
+
+    private WeblogCacheFrontDoor frontDoor = null;
+
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+
+        frontDoor = WeblogCacheFrontDoor.getInstance();
+
+        log.info("INIT CacheFrontDoorFilter, enabled = " + frontDoor.isEnabled());
+    }
+
+
+    @Override
+    public void doFilter(ServletRequest req, ServletResponse res, FilterChain chain)
+            throws IOException, ServletException {
+
+        HttpServletRequest request = (HttpServletRequest) req;
+        HttpServletResponse response = (HttpServletResponse) res;
+
+        if (!frontDoor.serve(request, response)) {
+            chain.doFilter(request, response);
+        }
+    }
+
+
+    @Override
+    public void destroy() {}
+
+}
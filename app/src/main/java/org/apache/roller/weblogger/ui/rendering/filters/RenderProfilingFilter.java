@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.ui.rendering.filters;
+
+import java.io.IOException;
+import java.util.Map;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.weblogger.ui.core.filters.RateLimitFilter;
+import org.apache.roller.weblogger.util.RenderProfiler;
+
+
+/**
+ * Profiles requests to the page, feed and search rendering servlets.
+ *
+ * Does nothing unless rendering.profiler.enabled is set, see RenderProfiler
+ * for what is collected.
+ *
+ * @web.filter name="RenderProfilingFilter"
+ */
+public class RenderProfilingFilter implements Filter {
+    
+    private static final Log log = LogFactory.getLog(RenderProfilingFilter.class);
+    
+    // servlet paths which are profiled, and the endpoint for each
+    private static final Map<String, String> ENDPOINTS = Map.of(
+            "/roller-ui/rendering/page", "page",
+            "/roller-ui/rendering/feed", "feed",
+            "/roller-ui/rendering/search", "search");
+    
+    
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        
+        log.info("INIT RenderProfilingFilter");
+    }
+    
+    
+    @Override
+    public void doFilter(ServletRequest req, ServletResponse res, FilterChain chain)
+            throws IOException, ServletException {
+        
+        HttpServletRequest request = (HttpServletRequest) req;
+        
+        String endpoint = ENDPOINTS.get(request.getServletPath());
+        RenderProfiler profile = (endpoint != null) ? RenderProfiler.start(endpoint) : null;
+        
+        if (profile == null) {
+            chain.doFilter(req, res);
+            return;
+        }
+        
+        try {
+            profile.setWeblogHandle(RateLimitFilter.getWeblogHandle(request));
+            chain.doFilter(req, res);
+        } finally {
+            profile.finish();
+        }
+    }
+    
+    
+    @Override
+    public void destroy() {}
+    
+}
@@ -19,7 +19,6 @@
 package org.apache.roller.weblogger.ui.rendering.model;
 
 import java.util.Map;
-import javax.servlet.jsp.PageContext;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.roller.weblogger.WebloggerException;
@@ -40,7 +39,6 @@ public class CalendarModel implements Model {
     
     private static final Log log = LogFactory.getLog(CalendarModel.class);
     
-    private PageContext pageContext = null;
     private WeblogPageRequest pageRequest = null;
     
     
@@ -55,9 +53,6 @@ public class CalendarModel implements Model {
     @Override
     public void init(Map<String, Object> initData) throws WebloggerException {
         
-        // extract page context
-        this.pageContext = (PageContext) initData.get("pageContext");
-        
         // we expect the init data to contain a weblogRequest object
         WeblogRequest weblogRequest = (WeblogRequest) initData.get("parsedRequest");
         if(weblogRequest == null) {
@@ -99,13 +94,10 @@ public class CalendarModel implements Model {
                 model = new WeblogCalendarModel(pageRequest, catArgument);
             }
             
-            // save model in JSP page context so CalendarTag can find it
-            pageContext.setAttribute("calendarModel", model);
-            
+            // hand the model straight to the tag, no page context is needed
             CalendarTag calTag = new CalendarTag();
-            calTag.setPageContext(pageContext);
             calTag.setName("calendar");
-            calTag.setModel("calendarModel");
+            calTag.setCalendarModel(model);
             calTag.setLocale(websiteWrapper.getLocaleInstance());
             if (big) {
                 calTag.setClassSuffix("Big");
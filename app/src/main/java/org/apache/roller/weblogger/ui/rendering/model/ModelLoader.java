@@ -18,21 +18,83 @@
 
 package org.apache.roller.weblogger.ui.rendering.model;
 
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.roller.weblogger.WebloggerException;
-import org.apache.roller.weblogger.util.Reflection;
+import org.apache.roller.weblogger.config.WebloggerConfig;
 import org.apache.roller.weblogger.util.Utilities;
 
 
 /**
  * Helps with model loading process.
+ *
+ * Model class names are resolved once and kept as factories, so rendering a
+ * page does not go through Class.forName() and constructor lookup for every
+ * model on every request.
  */
 public class ModelLoader {
     
     private static final Log log = LogFactory.getLog(ModelLoader.class);
     
+    /**
+     * The sets of models configured for each rendering context.
+     */
+    public enum ModelSet {
+        PAGE("rendering.pageModels"),
+        FEED("rendering.feedModels"),
+        SEARCH("rendering.searchModels"),
+        PREVIEW("rendering.previewModels"),
+        SITE("rendering.siteModels");
+        
+        private final String propertyName;
+        
+        ModelSet(String propertyName) {
+            this.propertyName = propertyName;
+        }
+        
+        public String getPropertyName() {
+            return propertyName;
+        }
+    }
+    
+    // resolved factories, keyed by the comma-separated list of model classes
+    private static final Map<String, List<ModelFactory>> FACTORIES =
+            new ConcurrentHashMap<>();
+    
+    // resolved factories for each of the configured model sets
+    private static final Map<ModelSet, List<ModelFactory>> MODEL_SETS =
+            new ConcurrentHashMap<>();
+    
+    
+    private ModelLoader() {
+        // utility class
+    }
+    
+    
+    /**
+     * Load the models configured for the given rendering context.
+     *
+     * Optionally fails if any exceptions are thrown when initializing
+     * the Model instances.
+     */
+    public static void loadModels(ModelSet modelSet, Map<String, Object> modelMap,
+            Map<String, Object> initData, boolean fail) throws WebloggerException {
+        
+        List<ModelFactory> factories = MODEL_SETS.get(modelSet);
+        if (factories == null) {
+            factories = resolveModelSet(modelSet, fail);
+        }
+        loadModels(factories, modelMap, initData, fail);
+    }
+    
+    
     /**
      * Convenience method to load a comma-separated list of page models.
      *
@@ -41,27 +103,100 @@ public class ModelLoader {
      */
     public static void loadModels(String modelsString, Map<String, Object> modelMap,
             Map<String, Object> initData, boolean fail) throws WebloggerException {
+        loadModels(getFactories(modelsString, fail), modelMap, initData, fail);
+    }
+    
+    
+    /**
+     * Resolve all model factories up front, typically at application startup,
+     * so that the first requests do not pay for class loading.
+     */
+    public static void preloadModels() {
+        for (ModelSet modelSet : ModelSet.values()) {
+            try {
+                resolveModelSet(modelSet, false);
+            } catch (WebloggerException e) {
+                log.warn("Error preloading models for " + modelSet, e);
+            }
+        }
+    }
+    
+    
+    private static void loadModels(List<ModelFactory> factories, Map<String, Object> modelMap,
+            Map<String, Object> initData, boolean fail) throws WebloggerException {
         
+        for (ModelFactory factory : factories) {
+            try {
+                Model pageModel = factory.get();
+                if (!factory.isShared()) {
+                    pageModel.init(initData);
+                }
+                modelMap.put(pageModel.getModelName(), pageModel);
+            } catch (WebloggerException re) {
+                if(fail) {
+                    throw re;
+                } else {
+                    log.warn("Error initializing model: " + factory.getClassName());
+                }
+            } catch (ModelInstantiationException ex) {
+                if(fail) {
+                    throw new WebloggerException("Error instantiating model: "
+                            + factory.getClassName(), ex.getCause());
+                } else {
+                    log.warn("Error instantiating model: " + factory.getClassName());
+                }
+            }
+        }
+    }
+    
+    
+    private static List<ModelFactory> resolveModelSet(ModelSet modelSet, boolean fail)
+            throws WebloggerException {
+        String modelsString = WebloggerConfig.getProperty(modelSet.getPropertyName());
+        List<ModelFactory> factories = getFactories(modelsString, fail);
+        // only remember the set once every model in it has been resolved
+        if (modelsString == null || FACTORIES.get(modelsString) == factories) {
+            MODEL_SETS.putIfAbsent(modelSet, factories);
+        }
+        return factories;
+    }
+    
+    
+    /**
+     * Resolve the factories for a comma-separated list of model classes.
+     *
+     * Lists which resolve completely are cached.  A list containing a class
+     * which cannot be found is resolved again next time, so that failures
+     * are reported consistently.
+     */
+    private static List<ModelFactory> getFactories(String modelsString, boolean fail)
+            throws WebloggerException {
+        
+        if (modelsString == null) {
+            return Collections.emptyList();
+        }
+        
+        List<ModelFactory> factories = FACTORIES.get(modelsString);
+        if (factories != null) {
+            return factories;
+        }
+        
+        boolean complete = true;
+        factories = new ArrayList<>();
         String[] models = Utilities.stringToStringArray(modelsString, ",");
         if (models != null) {
             for (String model : models) {
                 try {
-                    Model pageModel = (Model) Reflection.newInstance(model);
-                    pageModel.init(initData);
-                    modelMap.put(pageModel.getModelName(), pageModel);
-                } catch (WebloggerException re) {
-                    if(fail) {
-                        throw re;
-                    } else {
-                        log.warn("Error initializing model: " + model);
-                    }
+                    factories.add(new ModelFactory(model));
                 } catch (ClassNotFoundException cnfe) {
+                    complete = false;
                     if(fail) {
                         throw new WebloggerException("Error finding model: " + model, cnfe);
                     } else {
                         log.warn("Error finding model: " + model);
                     }
-                } catch (ReflectiveOperationException ex) {
+                } catch (ReflectiveOperationException | ClassCastException ex) {
+                    complete = false;
                     if(fail) {
                         throw new WebloggerException("Error instantiating model: " + model, ex);
                     } else {
@@ -70,6 +205,79 @@ public class ModelLoader {
                 }
             }
         }
+        
+        factories = Collections.unmodifiableList(factories);
+        if (complete) {
+            FACTORIES.putIfAbsent(modelsString, factories);
+        }
+        return factories;
+    }
+    
+    
+    /**
+     * Creates instances of a single model class.  Models implementing
+     * {@link SharedModel} are created once, on first use, and reused.
+     */
+    private static final class ModelFactory implements Supplier<Model> {
+        
+        private final String className;
+        private final Constructor<? extends Model> constructor;
+        private final boolean shared;
+        private volatile Model sharedInstance = null;
+        
+        ModelFactory(String className) throws ReflectiveOperationException {
+            this.className = className;
+            Class<? extends Model> clazz = Class.forName(className).asSubclass(Model.class);
+            this.constructor = clazz.getDeclaredConstructor();
+            this.shared = SharedModel.class.isAssignableFrom(clazz);
+        }
+        
+        String getClassName() {
+            return className;
+        }
+        
+        boolean isShared() {
+            return shared;
+        }
+        
+        @Override
+        public Model get() {
+            if (!shared) {
+                return newInstance();
+            }
+            Model instance = sharedInstance;
+            if (instance == null) {
+                synchronized (this) {
+                    instance = sharedInstance;
+                    if (instance == null) {
+                        instance = newInstance();
+                        try {
+                            instance.init(Collections.emptyMap());
+                        } catch (WebloggerException e) {
+                            throw new ModelInstantiationException(e);
+                        }
+                        sharedInstance = instance;
+                    }
+                }
+            }
+            return instance;
+        }
+        
+        private Model newInstance() {
+            try {
+                return constructor.newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new ModelInstantiationException(e);
+            }
+        }
+    }
+    
+    
+    private static final class ModelInstantiationException extends RuntimeException {
+        
+        ModelInstantiationException(Throwable cause) {
+            super(cause);
+        }
     }
     
 }
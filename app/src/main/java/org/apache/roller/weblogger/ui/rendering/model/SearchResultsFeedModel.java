@@ -58,6 +58,10 @@ public class SearchResultsFeedModel implements Model {
 	private List<WeblogEntryWrapper> results = new ArrayList<>();
 
 	private Set<String> categories = Collections.emptySet();
+	private Map<String, Integer> categoryCounts = Collections.emptyMap();
+	private Map<String, Integer> weblogCounts = Collections.emptyMap();
+	private Map<String, Integer> localeCounts = Collections.emptyMap();
+	private Map<String, Integer> monthCounts = Collections.emptyMap();
 
 	private int hits = 0;
 	private int offset = 0;
@@ -123,11 +127,15 @@ public class SearchResultsFeedModel implements Model {
 				entryCount,
 				urlStrategy
 			);
-			this.hits = searchResult.getResults().size();
+			this.hits = searchResult.getTotalHits();
 			this.offset = searchResult.getOffset();
 			this.limit = searchResult.getLimit();
 			this.results = searchResult.getResults();
 			this.categories = searchResult.getCategories();
+			this.categoryCounts = searchResult.getCategoryCounts();
+			this.weblogCounts = searchResult.getWeblogCounts();
+			this.localeCounts = searchResult.getLocaleCounts();
+			this.monthCounts = searchResult.getMonthCounts();
 
 		} catch (WebloggerException we) {
 			errorMessage = we.getMessage();
@@ -181,6 +189,34 @@ public class SearchResultsFeedModel implements Model {
 		return categories;
 	}
 
+	/**
+	 * Number of matching entries per category name, over all pages.
+	 */
+	public Map<String, Integer> getCategoryCounts() {
+		return categoryCounts;
+	}
+
+	/**
+	 * Number of matching entries per weblog handle, over all pages.
+	 */
+	public Map<String, Integer> getWeblogCounts() {
+		return weblogCounts;
+	}
+
+	/**
+	 * Number of matching entries per locale, over all pages.
+	 */
+	public Map<String, Integer> getLocaleCounts() {
+		return localeCounts;
+	}
+
+	/**
+	 * Number of matching entries per month (yyyy-MM), over all pages.
+	 */
+	public Map<String, Integer> getMonthCounts() {
+		return monthCounts;
+	}
+
 	public String getCategoryName() {
 		return feedRequest.getWeblogCategoryName();
 	}
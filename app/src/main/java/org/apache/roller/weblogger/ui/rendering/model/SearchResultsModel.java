@@ -62,6 +62,10 @@ public class SearchResultsModel extends PageModel {
 	private int offset = 0;
 	private int limit = 0;
 	private Set<String> categories = new TreeSet<String>();
+	private Map<String, Integer> categoryCounts = Collections.emptyMap();
+	private Map<String, Integer> weblogCounts = Collections.emptyMap();
+	private Map<String, Integer> localeCounts = Collections.emptyMap();
+	private Map<String, Integer> monthCounts = Collections.emptyMap();
 	private String errorMessage = "";
 
 	@Override
@@ -100,10 +104,14 @@ public class SearchResultsModel extends PageModel {
 				RESULTS_PER_PAGE,
 				urlStrategy
 			);
-			hits = searchResultList.getResults().size();
+			hits = searchResultList.getTotalHits();
 			offset = searchResultList.getOffset();
 			limit = searchResultList.getLimit();
 			categories = searchResultList.getCategories();
+			categoryCounts = searchResultList.getCategoryCounts();
+			weblogCounts = searchResultList.getWeblogCounts();
+			localeCounts = searchResultList.getLocaleCounts();
+			monthCounts = searchResultList.getMonthCounts();
 
 			Timestamp now = new Timestamp(new Date().getTime());
 			for (WeblogEntryWrapper entry : searchResultList.getResults()) {
@@ -190,6 +198,34 @@ public class SearchResultsModel extends PageModel {
 		return categories;
 	}
 
+	/**
+	 * Number of matching entries per category name, over all pages.
+	 */
+	public Map<String, Integer> getCategoryCounts() {
+		return categoryCounts;
+	}
+
+	/**
+	 * Number of matching entries per weblog handle, over all pages.
+	 */
+	public Map<String, Integer> getWeblogCounts() {
+		return weblogCounts;
+	}
+
+	/**
+	 * Number of matching entries per locale, over all pages.
+	 */
+	public Map<String, Integer> getLocaleCounts() {
+		return localeCounts;
+	}
+
+	/**
+	 * Number of matching entries per month (yyyy-MM), over all pages.
+	 */
+	public Map<String, Integer> getMonthCounts() {
+		return monthCounts;
+	}
+
 	public String getErrorMessage() {
 		return errorMessage;
 	}
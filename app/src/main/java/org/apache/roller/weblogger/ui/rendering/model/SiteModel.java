@@ -28,6 +28,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.roller.weblogger.WebloggerException;
+import org.apache.roller.weblogger.business.SiteStatistics;
 import org.apache.roller.weblogger.business.URLStrategy;
 import org.apache.roller.weblogger.business.Weblogger;
 import org.apache.roller.weblogger.business.WebloggerFactory;
@@ -35,7 +36,6 @@ import org.apache.roller.weblogger.business.UserManager;
 import org.apache.roller.weblogger.business.WeblogEntryManager;
 import org.apache.roller.weblogger.business.jpa.JPAWeblogEntryManagerImpl;
 import org.apache.roller.weblogger.pojos.TagStat;
-import org.apache.roller.weblogger.pojos.WeblogHitCount;
 import org.apache.roller.weblogger.pojos.StatCount;
 import org.apache.roller.weblogger.pojos.ThemeTemplate;
 import org.apache.roller.weblogger.pojos.User;
@@ -287,9 +287,7 @@ public class SiteModel implements Model {
      */
     public Map<String, Long> getUserNameLetterMap() {
         try {
-            Weblogger roller = WebloggerFactory.getWeblogger();
-            UserManager umgr = roller.getUserManager();
-            return umgr.getUserNameLetterMap();
+            return SiteStatistics.getInstance().getSnapshot().getUserNameLetterMap();
         } catch (Exception e) {
             log.error("ERROR: fetching username letter map", e);
         }
@@ -304,7 +302,7 @@ public class SiteModel implements Model {
      */
     public Map<String, Long> getWeblogHandleLetterMap() {
         try {
-            return WebloggerFactory.getWeblogger().getWeblogManager().getWeblogHandleLetterMap();
+            return SiteStatistics.getInstance().getSnapshot().getWeblogHandleLetterMap();
         } catch (Exception e) {
             log.error("ERROR: fetching weblog handle letter map", e);
         }
@@ -428,32 +426,16 @@ public class SiteModel implements Model {
     
     /**
      * Get list of WebsiteDisplay objects, ordered by number of hits.
-     * @param sinceDays Only consider weblogs updated in the last sinceDays
+     * @param sinceDays Only consider hits of the last sinceDays
      * @param length      Max number of results to return
      */
     public List<StatCount> getHotWeblogs(int sinceDays, int length) {
-        
-        List<StatCount> results = new ArrayList<>();
         try {
-            WeblogEntryManager mgr = WebloggerFactory.getWeblogger().getWeblogEntryManager();
-            List<WeblogHitCount> hotBlogs = mgr.getHotWeblogs(sinceDays, 0, length);
-            
-            for (WeblogHitCount hitCount : hotBlogs) {
-                StatCount statCount = new StatCount(
-                    hitCount.getWeblog().getId(),
-                    hitCount.getWeblog().getHandle(),
-                    hitCount.getWeblog().getName(),
-                    "statCount.weblogDayHits",
-                    hitCount.getDailyHits());
-                statCount.setWeblogHandle(hitCount.getWeblog().getHandle());
-                results.add(statCount);              
-            }
-            
+            return SiteStatistics.getInstance().getHotWeblogs(sinceDays, length);
         } catch (Exception e) {
             log.error("ERROR: fetching hot weblog list", e);
         }
-        
-        return results;
+        return Collections.emptyList();
     }
     
     
@@ -464,10 +446,8 @@ public class SiteModel implements Model {
      * @param length   Max number of results to return
      */
     public List<StatCount> getMostCommentedWeblogs(int sinceDays , int length) {
-        Date startDate = JPAWeblogEntryManagerImpl.getStartDateNow(sinceDays);
         try {
-            return WebloggerFactory.getWeblogger().getWeblogManager().getMostCommentedWeblogs(
-                    startDate, new Date(), 0, length);
+            return SiteStatistics.getInstance().getMostCommentedWeblogs(sinceDays, length);
         } catch (Exception e) {
             log.error("ERROR: fetching commented weblog list", e);
         }
@@ -543,9 +523,7 @@ public class SiteModel implements Model {
     public long getCommentCount() {
         long count = 0;
         try {
-            Weblogger roller = WebloggerFactory.getWeblogger();
-            WeblogEntryManager mgr = roller.getWeblogEntryManager();
-            count = mgr.getCommentCount();            
+            count = SiteStatistics.getInstance().getSnapshot().getCommentCount();
         } catch (WebloggerException e) {
             log.error("Error getting comment count for site ", e);
         }
@@ -556,9 +534,7 @@ public class SiteModel implements Model {
     public long getEntryCount() {
         long count = 0;
         try {
-            Weblogger roller = WebloggerFactory.getWeblogger();
-            WeblogEntryManager mgr = roller.getWeblogEntryManager();
-            count = mgr.getEntryCount();            
+            count = SiteStatistics.getInstance().getSnapshot().getEntryCount();
         } catch (WebloggerException e) {
             log.error("Error getting entry count for site", e);
         }
@@ -569,7 +545,7 @@ public class SiteModel implements Model {
     public long getWeblogCount() {
         long count = 0;
         try {
-            count = WebloggerFactory.getWeblogger().getWeblogManager().getWeblogCount();            
+            count = SiteStatistics.getInstance().getSnapshot().getWeblogCount();
         } catch (WebloggerException e) {
             log.error("Error getting weblog count for site", e);
         }
@@ -580,9 +556,7 @@ public class SiteModel implements Model {
     public long getUserCount() {
         long count = 0;
         try {
-            Weblogger roller = WebloggerFactory.getWeblogger();
-            UserManager mgr = roller.getUserManager();
-            count = mgr.getUserCount();            
+            count = SiteStatistics.getInstance().getSnapshot().getUserCount();
         } catch (WebloggerException e) {
             log.error("Error getting user count for site", e);
         }
@@ -18,7 +18,6 @@
 
 package org.apache.roller.weblogger.ui.rendering.model;
 
-import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Map;
 import java.util.TimeZone;
@@ -31,6 +30,7 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.roller.weblogger.WebloggerException;
 import org.apache.roller.weblogger.pojos.wrapper.WeblogWrapper;
 import org.apache.roller.weblogger.ui.rendering.util.WeblogRequest;
+import org.apache.roller.util.DateFormatter;
 import org.apache.roller.util.DateUtil;
 import org.apache.roller.util.RegexUtil;
 import org.apache.roller.weblogger.pojos.Weblog;
@@ -135,12 +135,7 @@ public class UtilitiesModel implements Model {
             return fmt;
         }
         
-        SimpleDateFormat format = new SimpleDateFormat(fmt, weblog.getLocaleInstance());
-        if(tzOverride != null) {
-            format.setTimeZone(tzOverride);
-        }
-        
-        return format.format(d);
+        return DateFormatter.getInstance(fmt, weblog.getLocaleInstance(), tzOverride).format(d);
     }
     
     /**
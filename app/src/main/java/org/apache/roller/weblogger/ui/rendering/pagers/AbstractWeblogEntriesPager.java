@@ -18,8 +18,7 @@
 
 package org.apache.roller.weblogger.ui.rendering.pagers;
 
-import java.text.ParsePosition;
-import java.text.SimpleDateFormat;
+import java.text.ParseException;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
@@ -28,6 +27,7 @@ import java.util.Locale;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.roller.weblogger.config.WebloggerRuntimeConfig;
 import org.apache.roller.weblogger.pojos.Weblog;
+import org.apache.roller.util.DateFormatter;
 import org.apache.roller.util.DateUtil;
 import org.apache.roller.weblogger.business.URLStrategy;
 import org.apache.roller.weblogger.util.I18nMessages;
@@ -188,29 +188,24 @@ public abstract class AbstractWeblogEntriesPager implements WeblogEntriesPager {
      */
     protected Date parseDate(String dateString) {
         Date ret = null;
-        SimpleDateFormat char8DateFormat = DateUtil.get8charDateFormat();
-        SimpleDateFormat char6DateFormat = DateUtil.get6charDateFormat();
-        Calendar cal = Calendar.getInstance(
-                weblog.getTimeZoneInstance(), weblog.getLocaleInstance());
+        String pattern = null;
         if (   dateString!=null
                 && dateString.length()==8
                 && StringUtils.isNumeric(dateString) ) {
-        	char8DateFormat.setCalendar(cal);
-            ParsePosition pos = new ParsePosition(0);
-            ret = char8DateFormat.parse( dateString, pos );
-            
-            // make sure the requested date is not in the future
-            Date today = getToday();
-            if (ret.after(today)) {
-                ret = today;
-            }
+            pattern = DateUtil.FORMAT_8CHARS;
         }
         if (   dateString!=null
                 && dateString.length()==6
                 && StringUtils.isNumeric(dateString) ) {
-        	char6DateFormat.setCalendar(cal);
-            ParsePosition pos = new ParsePosition(0);
-            ret = char6DateFormat.parse( dateString, pos );
+            pattern = DateUtil.FORMAT_6CHARS;
+        }
+        if (pattern != null) {
+            try {
+                ret = DateFormatter.getInstance(pattern, weblog.getLocaleInstance(),
+                        weblog.getTimeZoneInstance()).parse(dateString);
+            } catch (ParseException e) {
+                return null;
+            }
             
             // make sure the requested date is not in the future
             Date today = getToday();
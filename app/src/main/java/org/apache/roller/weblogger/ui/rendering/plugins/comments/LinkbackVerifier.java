@@ -0,0 +1,178 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.ui.rendering.plugins.comments;
+
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.weblogger.business.WeblogEntryManager;
+import org.apache.roller.weblogger.business.WebloggerFactory;
+import org.apache.roller.weblogger.config.WebloggerConfig;
+import org.apache.roller.weblogger.config.WebloggerRuntimeConfig;
+import org.apache.roller.weblogger.pojos.WeblogEntryComment;
+import org.apache.roller.weblogger.pojos.WeblogEntryComment.ApprovalStatus;
+import org.apache.roller.weblogger.util.I18nMessages;
+import org.apache.roller.weblogger.util.LinkbackExtractor;
+import org.apache.roller.weblogger.util.MailUtil;
+import org.apache.roller.weblogger.util.RollerMessages;
+import org.apache.roller.weblogger.util.cache.CacheManager;
+
+
+/**
+ * Verifies in the background that trackbacks come from pages which link to
+ * the entry they were sent to.
+ *
+ * Trackbacks are saved as pending and handed to a small pool of worker
+ * threads with a bounded queue, sized by linkback.verifier.threads and
+ * linkback.verifier.queueSize.  Once the referring page has been checked the
+ * trackback is approved, or left pending if the weblog moderates comments,
+ * or marked as spam when no link back was found.  Trackbacks which can't be
+ * queued stay pending for the weblog owner to moderate.
+ */
+public final class LinkbackVerifier {
+    
+    private static final Log log = LogFactory.getLog(LinkbackVerifier.class);
+    
+    private static final LinkbackVerifier singletonInstance = new LinkbackVerifier();
+    
+    private final ThreadPoolExecutor executor;
+    
+    
+    // non-instantiable because we are a singleton
+    private LinkbackVerifier() {
+        int threads = WebloggerConfig.getIntProperty("linkback.verifier.threads", 2);
+        int queueSize = WebloggerConfig.getIntProperty("linkback.verifier.queueSize", 100);
+        
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = r -> {
+            Thread thread = new Thread(r, "LinkbackVerifier-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), factory);
+    }
+    
+    
+    public static LinkbackVerifier getInstance() {
+        return singletonInstance;
+    }
+    
+    
+    /**
+     * Queue a saved, pending trackback for verification.
+     *
+     * @param comment The trackback, already saved with status PENDING.
+     * @param entryURL Absolute permalink of the entry the trackback was sent to.
+     * @param locale Locale used for notification emails.
+     * @return false if there is no room to queue the trackback.
+     */
+    public boolean verify(WeblogEntryComment comment, String entryURL, Locale locale) {
+        
+        final String commentId = comment.getId();
+        final String refererURL = comment.getUrl();
+        try {
+            executor.execute(() -> processTrackback(commentId, refererURL, entryURL, locale));
+            return true;
+        } catch (RejectedExecutionException e) {
+            log.warn("Linkback verification queue is full, leaving trackback "
+                    + commentId + " for moderation");
+            return false;
+        }
+    }
+    
+    
+    /**
+     * Number of trackbacks waiting to be verified.
+     */
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+    
+    
+    /**
+     * Check whether the page at refererURL links to entryURL.
+     */
+    public static boolean isLinkedBack(String refererURL, String entryURL) {
+        return new LinkbackExtractor(refererURL, entryURL).getExcerpt() != null;
+    }
+    
+    
+    private void processTrackback(String commentId, String refererURL, String entryURL, Locale locale) {
+        
+        boolean verified = isLinkedBack(refererURL, entryURL);
+        log.debug("Trackback " + commentId + " from " + refererURL + " verified: " + verified);
+        
+        try {
+            WeblogEntryManager mgr = WebloggerFactory.getWeblogger().getWeblogEntryManager();
+            WeblogEntryComment comment = mgr.getComment(commentId);
+            
+            // the trackback may have been moderated or removed meanwhile
+            if (comment == null || !ApprovalStatus.PENDING.equals(comment.getStatus())) {
+                return;
+            }
+            
+            boolean moderated = comment.getWeblogEntry().getWebsite().getCommentModerationRequired();
+            if (!verified) {
+                comment.setStatus(ApprovalStatus.SPAM);
+            } else if (!moderated) {
+                comment.setStatus(ApprovalStatus.APPROVED);
+            }
+            
+            if (!verified && WebloggerRuntimeConfig.getBooleanProperty("trackbacks.ignoreSpam.enabled")) {
+                mgr.removeComment(comment);
+                WebloggerFactory.getWeblogger().flush();
+                return;
+            }
+            mgr.saveComment(comment);
+            WebloggerFactory.getWeblogger().flush();
+            
+            if (ApprovalStatus.APPROVED.equals(comment.getStatus())) {
+                CacheManager.invalidate(comment);
+            }
+            
+            RollerMessages messages = new RollerMessages();
+            if (!verified) {
+                messages.addError("comment.validator.trackbackLinkbackMessage");
+            }
+            MailUtil.sendEmailNotification(comment, messages,
+                    I18nMessages.getMessages(locale), verified);
+            
+        } catch (Exception e) {
+            log.error("Error saving verification of trackback " + commentId, e);
+        } finally {
+            WebloggerFactory.getWeblogger().release();
+        }
+    }
+    
+    
+    /**
+     * clean up.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+    
+}
@@ -18,20 +18,19 @@
 
 package org.apache.roller.weblogger.ui.rendering.plugins.comments;
 
-import java.io.IOException;
-import java.net.MalformedURLException;
 import java.util.ResourceBundle;
 
 import org.apache.roller.util.RollerConstants;
 import org.apache.roller.weblogger.business.WebloggerFactory;
 import org.apache.roller.weblogger.config.WebloggerRuntimeConfig;
 import org.apache.roller.weblogger.pojos.WeblogEntryComment;
-import org.apache.roller.weblogger.util.LinkbackExtractor;
 import org.apache.roller.weblogger.util.RollerMessages;
 
 /**
  * Validates comment if comment's URL links back to the comment's entry,
- * intended for use with trackbacks only.
+ * intended for use with trackbacks only.  The referring page is fetched on
+ * the calling thread, see LinkbackVerifier for checking trackbacks in the
+ * background.
  */
 public class TrackbackLinkbackCommentValidator implements CommentValidator {
     
@@ -52,19 +51,13 @@ public class TrackbackLinkbackCommentValidator implements CommentValidator {
         }
         
         int ret = 0;
-        LinkbackExtractor linkback = null;
-        try {
-            linkback = new LinkbackExtractor(
-                    comment.getUrl(),
-                    WebloggerFactory.getWeblogger().getUrlStrategy().getWeblogEntryURL(
-                    comment.getWeblogEntry().getWebsite(),
-                    null,
-                    comment.getWeblogEntry().getAnchor(),
-                    true));
-        } catch (MalformedURLException ignored1) {
-        } catch (IOException ignored2) {}
+        String entryURL = WebloggerFactory.getWeblogger().getUrlStrategy().getWeblogEntryURL(
+                comment.getWeblogEntry().getWebsite(),
+                null,
+                comment.getWeblogEntry().getAnchor(),
+                true);
         
-        if (linkback != null && linkback.getExcerpt() != null) {
+        if (LinkbackVerifier.isLinkedBack(comment.getUrl(), entryURL)) {
             ret = RollerConstants.PERCENT_100;
         } else {
             messages.addError("comment.validator.trackbackLinkbackMessage");
@@ -49,8 +49,8 @@ import org.apache.roller.weblogger.ui.rendering.plugins.comments.CommentValidati
 import org.apache.roller.weblogger.ui.rendering.plugins.comments.DefaultCommentAuthenticator;
 import org.apache.roller.weblogger.ui.rendering.util.WeblogCommentRequest;
 import org.apache.roller.weblogger.ui.rendering.util.WeblogEntryCommentForm;
-import org.apache.roller.weblogger.util.GenericThrottle;
 import org.apache.roller.weblogger.util.IPBanList;
+import org.apache.roller.weblogger.util.RateLimiter;
 import org.apache.roller.weblogger.util.MailUtil;
 import org.apache.roller.weblogger.util.I18nMessages;
 import org.apache.roller.weblogger.util.Reflection;
@@ -78,7 +78,7 @@ public class CommentServlet extends HttpServlet {
 
     private CommentAuthenticator authenticator = null;
     private CommentValidationManager commentValidationManager = null;
-    private GenericThrottle commentThrottle = null;
+    private RateLimiter commentThrottle = null;
 
     /**
      * Initialization.
@@ -106,36 +106,7 @@ public class CommentServlet extends HttpServlet {
         commentValidationManager = new CommentValidationManager();
 
         // are we doing throttling?
-        if (WebloggerConfig.getBooleanProperty("comment.throttle.enabled")) {
-
-            int threshold = 25;
-            try {
-                threshold = Integer.parseInt(WebloggerConfig.getProperty("comment.throttle.threshold"));
-            } catch (NumberFormatException e) {
-                log.warn("bad input for config property comment.throttle.threshold", e);
-            }
-
-            int interval = RollerConstants.MIN_IN_MS;
-            try {
-                interval = Integer.parseInt(WebloggerConfig.getProperty("comment.throttle.interval"));
-                // convert from seconds to milliseconds
-                interval = interval * RollerConstants.SEC_IN_MS;
-            } catch (NumberFormatException e) {
-                log.warn("bad input for config property comment.throttle.interval", e);
-            }
-
-            int maxEntries = 250;
-            try {
-                maxEntries = Integer.parseInt(WebloggerConfig.getProperty("comment.throttle.maxentries"));
-            } catch (NumberFormatException e) {
-                log.warn("bad input for config property comment.throttle.maxentries", e);
-            }
-
-            commentThrottle = new GenericThrottle(threshold, interval, maxEntries);
-            log.info("Comment Throttling ENABLED");
-        } else {
-            log.info("Comment Throttling DISABLED");
-        }
+        commentThrottle = RateLimiter.getRateLimiter("comment");
     }
 
     /**
@@ -179,7 +150,7 @@ public class CommentServlet extends HttpServlet {
             log.debug("Handling regular comment post");
         }
 
-        // throttling protection against spammers
+        // throttling protection against spammers, across all weblogs
         if (commentThrottle != null
                 && commentThrottle.processHit(request.getRemoteAddr())) {
 
@@ -32,7 +32,6 @@ import org.apache.roller.util.RollerConstants;
 import org.apache.roller.weblogger.WebloggerException;
 import org.apache.roller.weblogger.business.WebloggerFactory;
 import org.apache.roller.weblogger.business.WeblogEntryManager;
-import org.apache.roller.weblogger.config.WebloggerConfig;
 import org.apache.roller.weblogger.config.WebloggerRuntimeConfig;
 import org.apache.roller.weblogger.pojos.StaticTemplate;
 import org.apache.roller.weblogger.pojos.Template;
@@ -44,8 +43,12 @@ import org.apache.roller.weblogger.ui.rendering.Renderer;
 import org.apache.roller.weblogger.ui.rendering.RendererManager;
 import org.apache.roller.weblogger.ui.rendering.mobile.MobileDeviceRepository;
 import org.apache.roller.weblogger.ui.rendering.model.ModelLoader;
+import org.apache.roller.weblogger.ui.rendering.model.ModelLoader.ModelSet;
 import org.apache.roller.weblogger.ui.rendering.model.SearchResultsFeedModel;
+import org.apache.roller.weblogger.ui.rendering.util.cache.InFlightRenders;
 import org.apache.roller.weblogger.ui.rendering.util.cache.SiteWideCache;
+import org.apache.roller.weblogger.ui.rendering.util.cache.WeblogCacheFrontDoor;
+import org.apache.roller.weblogger.ui.rendering.util.cache.WeblogCacheWarmer;
 import org.apache.roller.weblogger.ui.rendering.util.cache.WeblogFeedCache;
 import org.apache.roller.weblogger.ui.rendering.util.ModDateHeaderUtil;
 
@@ -59,6 +62,13 @@ public class FeedServlet extends HttpServlet {
 
     private WeblogFeedCache weblogFeedCache = null;
     private SiteWideCache siteWideCache = null;
+    private WeblogCacheWarmer cacheWarmer = null;
+    private WeblogCacheFrontDoor frontDoor = null;
+
+    // feeds which are being rendered, and the request attribute holding the
+    // render a request has claimed
+    private final InFlightRenders feedRenders = InFlightRenders.getInstance("feed");
+    private static final String RENDER_ATTR = "FeedServlet.render";
 
 
     /**
@@ -76,6 +86,10 @@ public class FeedServlet extends HttpServlet {
 
         // get a reference to the site wide cache
         this.siteWideCache = SiteWideCache.getInstance();
+
+        this.cacheWarmer = WeblogCacheWarmer.getInstance();
+
+        this.frontDoor = WeblogCacheFrontDoor.getInstance();
     }
 
 
@@ -86,8 +100,26 @@ public class FeedServlet extends HttpServlet {
     public void doGet(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
 
+        try {
+            renderFeed(request, response);
+        } finally {
+            // let go of any feed this request took on rendering
+            InFlightRenders.Render render = (InFlightRenders.Render) request.getAttribute(RENDER_ATTR);
+            if (render != null) {
+                request.removeAttribute(RENDER_ATTR);
+                render.complete(null);
+            }
+        }
+    }
+
+    private void renderFeed(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+
         log.debug("Entering");
 
+        // read before the weblog is looked up, see WeblogCacheFrontDoor
+        long frontDoorGeneration = frontDoor.getGeneration();
+
         Weblog weblog;
         boolean isSiteWide;
 
@@ -131,22 +163,21 @@ public class FeedServlet extends HttpServlet {
         ModDateHeaderUtil.setLastModifiedHeader(response, lastModified,
                 feedRequest.getDeviceType());
 
-        // set content type
-        String accepts = request.getHeader("Accept");
-        String userAgent = request.getHeader("User-Agent");
-        if (WebloggerRuntimeConfig
-                .getBooleanProperty("site.newsfeeds.styledFeeds")
-                && accepts != null
-                && accepts.contains("*/*")
-                && userAgent != null && userAgent.startsWith("Mozilla")) {
-            // client is a browser and feed style is enabled so we want
-            // browsers to load the page rather than popping up the download
-            // dialog, so we provide a content-type that browsers will display
-            response.setContentType("text/xml");
-        } else if ("rss".equals(feedRequest.getFormat())) {
-            response.setContentType("application/rss+xml; charset=utf-8");
+        // set content type.  if the client is a browser and feed style is
+        // enabled we want browsers to load the page rather than popping up the
+        // download dialog, so we provide a content-type that browsers will display
+        String formatContentType = null;
+        if ("rss".equals(feedRequest.getFormat())) {
+            formatContentType = "application/rss+xml; charset=utf-8";
         } else if ("atom".equals(feedRequest.getFormat())) {
-            response.setContentType("application/atom+xml; charset=utf-8");
+            formatContentType = "application/atom+xml; charset=utf-8";
+        }
+        boolean styledFeeds = WebloggerRuntimeConfig
+                .getBooleanProperty("site.newsfeeds.styledFeeds");
+        String contentType = WeblogCacheFrontDoor.getFeedContentType(request,
+                formatContentType, styledFeeds);
+        if (contentType != null) {
+            response.setContentType(contentType);
         }
 
         // generate cache key
@@ -157,13 +188,30 @@ public class FeedServlet extends HttpServlet {
             cacheKey = weblogFeedCache.generateKey(feedRequest);
         }
 
-        // cached content checking
-        CachedContent cachedContent;
-        if (isSiteWide) {
+        // cached content checking, warmup requests always render
+        CachedContent cachedContent = null;
+        if (cacheWarmer.isWarmupRequest(request)) {
+            log.debug("WARMUP " + cacheKey);
+        } else if (isSiteWide) {
+            // let the front door answer this url while the content is cached
+            frontDoor.recordFeed(request, frontDoorGeneration,
+                    feedRequest.getWeblogHandle(), true, cacheKey, lastModified,
+                    formatContentType, styledFeeds);
             cachedContent = (CachedContent) siteWideCache.get(cacheKey);
+            if (cachedContent == null) {
+                cachedContent = claimRender(request, cacheKey, null);
+            }
         } else {
+            // let the front door answer this url while the content is cached
+            frontDoor.recordFeed(request, frontDoorGeneration,
+                    feedRequest.getWeblogHandle(), false, cacheKey, lastModified,
+                    formatContentType, styledFeeds);
             cachedContent = (CachedContent) weblogFeedCache.get(cacheKey,
                     lastModified);
+            if (cachedContent == null) {
+                cachedContent = claimRender(request, cacheKey, lastModified);
+            }
+            cacheWarmer.processHit(weblog, request);
         }
 
         if (cachedContent != null) {
@@ -249,16 +297,12 @@ public class FeedServlet extends HttpServlet {
                     .getUrlStrategy());
 
             // Load models for feeds
-            String feedModels = WebloggerConfig
-                    .getProperty("rendering.feedModels");
-            ModelLoader.loadModels(feedModels, model, initData, true);
+            ModelLoader.loadModels(ModelSet.FEED, model, initData, true);
 
             // Load special models for site-wide blog
 
             if (siteWide) {
-                String siteModels = WebloggerConfig
-                        .getProperty("rendering.siteModels");
-                ModelLoader.loadModels(siteModels, model, initData, true);
+                ModelLoader.loadModels(ModelSet.SITE, model, initData, true);
             }
 
             // Load search models if search feed
@@ -339,7 +383,55 @@ public class FeedServlet extends HttpServlet {
             weblogFeedCache.put(cacheKey, rendererOutput);
         }
 
+        // hand the content to any requests waiting on this render
+        InFlightRenders.Render render = (InFlightRenders.Render) request.getAttribute(RENDER_ATTR);
+        if (render != null) {
+            render.complete(rendererOutput);
+        }
+
         log.debug("Exiting");
     }
 
+
+    /**
+     * Take on rendering a feed which missed in the cache.  If the feed has
+     * stale content then serve that, while the feed is re-rendered in the
+     * background or by another request.  Otherwise render the feed, or wait
+     * for the other request which is rendering it.
+     *
+     * @param lastModified last modified time of the weblog, or null for the
+     *        site-wide cache which has no stale content
+     * @return content to serve, or null if this request should render
+     */
+    private CachedContent claimRender(HttpServletRequest request,
+            String cacheKey, Long lastModified) {
+
+        InFlightRenders.Render render = feedRenders.begin(cacheKey);
+
+        CachedContent stale = null;
+        if (lastModified != null) {
+            stale = (CachedContent) weblogFeedCache.getStale(cacheKey, lastModified);
+        }
+
+        if (render != null) {
+            // feeds are the same for everyone, so the warmer can render them
+            if (stale != null
+                    && cacheWarmer.refresh(WeblogCacheWarmer.getPath(request), render)) {
+                log.debug("STALE " + cacheKey + ", refreshing");
+                feedRenders.recordStale();
+                return stale;
+            }
+            request.setAttribute(RENDER_ATTR, render);
+            return null;
+        }
+
+        if (stale != null) {
+            log.debug("STALE " + cacheKey);
+            feedRenders.recordStale();
+            return stale;
+        }
+
+        return feedRenders.await(cacheKey);
+    }
+
 }
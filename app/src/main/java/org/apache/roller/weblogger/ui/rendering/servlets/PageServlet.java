@@ -42,12 +42,17 @@ import org.apache.roller.weblogger.pojos.WeblogTheme;
 import org.apache.roller.weblogger.ui.core.RollerContext;
 import org.apache.roller.weblogger.ui.rendering.Renderer;
 import org.apache.roller.weblogger.ui.rendering.RendererManager;
+import org.apache.roller.weblogger.ui.rendering.mobile.MobileDeviceRepository.DeviceType;
 import org.apache.roller.weblogger.ui.rendering.model.ModelLoader;
+import org.apache.roller.weblogger.ui.rendering.model.ModelLoader.ModelSet;
 import org.apache.roller.weblogger.ui.rendering.util.InvalidRequestException;
 import org.apache.roller.weblogger.ui.rendering.util.ModDateHeaderUtil;
 import org.apache.roller.weblogger.ui.rendering.util.WeblogEntryCommentForm;
 import org.apache.roller.weblogger.ui.rendering.util.WeblogPageRequest;
+import org.apache.roller.weblogger.ui.rendering.util.cache.InFlightRenders;
 import org.apache.roller.weblogger.ui.rendering.util.cache.SiteWideCache;
+import org.apache.roller.weblogger.ui.rendering.util.cache.WeblogCacheFrontDoor;
+import org.apache.roller.weblogger.ui.rendering.util.cache.WeblogCacheWarmer;
 import org.apache.roller.weblogger.ui.rendering.util.cache.WeblogPageCache;
 import org.apache.roller.weblogger.util.BannedwordslistChecker;
 import org.apache.roller.weblogger.util.I18nMessages;
@@ -79,6 +84,13 @@ public class PageServlet extends HttpServlet {
     private boolean excludeOwnerPages = false;
     private WeblogPageCache weblogPageCache = null;
     private SiteWideCache siteWideCache = null;
+    private WeblogCacheWarmer cacheWarmer = null;
+    private WeblogCacheFrontDoor frontDoor = null;
+
+    // pages which are being rendered, and the request attribute holding the
+    // render a request has claimed
+    private final InFlightRenders pageRenders = InFlightRenders.getInstance("page");
+    private static final String RENDER_ATTR = "PageServlet.render";
 
     // Development theme reloading
     Boolean themeReload = false;
@@ -102,6 +114,10 @@ public class PageServlet extends HttpServlet {
         // get a reference to the site wide cache
         this.siteWideCache = SiteWideCache.getInstance();
 
+        this.cacheWarmer = WeblogCacheWarmer.getInstance();
+
+        this.frontDoor = WeblogCacheFrontDoor.getInstance();
+
         // see if built-in referrer spam check is enabled
         this.processReferrers = WebloggerConfig
                 .getBooleanProperty("site.bannedwordslist.enable.referrers");
@@ -136,8 +152,26 @@ public class PageServlet extends HttpServlet {
     public void doGet(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
 
+        try {
+            renderPage(request, response);
+        } finally {
+            // let go of any page this request took on rendering
+            InFlightRenders.Render render = (InFlightRenders.Render) request.getAttribute(RENDER_ATTR);
+            if (render != null) {
+                request.removeAttribute(RENDER_ATTR);
+                render.complete(null);
+            }
+        }
+    }
+
+    private void renderPage(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+
         log.debug("Entering");
 
+        // read before the weblog is looked up, see WeblogCacheFrontDoor
+        long frontDoorGeneration = frontDoor.getGeneration();
+
         // do referrer processing, if it's enabled
         // NOTE: this *must* be done first because it triggers a hibernate flush
         // which will close the active session and cause lazy init exceptions
@@ -232,17 +266,36 @@ public class PageServlet extends HttpServlet {
             }
         }
 
+        // warmup requests always render, and don't count as hits
+        boolean warmup = cacheWarmer.isWarmupRequest(request);
+
         // cached content checking
         if ((!this.excludeOwnerPages || !pageRequest.isLoggedIn())
                 && request.getAttribute("skipCache") == null
-                && request.getParameter("skipCache") == null) {
+                && request.getParameter("skipCache") == null
+                && !warmup) {
+
+            // let the front door answer this url while the content is cached
+            frontDoor.recordPage(request, frontDoorGeneration,
+                    pageRequest.getWeblogHandle(), isSiteWide, cacheKey, lastModified,
+                    pageRequest.isWebsitePageHit() || pageRequest.isOtherPageHit());
 
             CachedContent cachedContent;
             if (isSiteWide) {
                 cachedContent = (CachedContent) siteWideCache.get(cacheKey);
+                if (cachedContent == null) {
+                    cachedContent = claimRender(request, cacheKey, null, false);
+                }
             } else {
                 cachedContent = (CachedContent) weblogPageCache.get(cacheKey,
                         lastModified);
+                if (cachedContent == null) {
+                    // the warmer renders pages as an anonymous standard visitor
+                    boolean refreshable = pageRequest.getAuthenticUser() == null
+                            && pageRequest.getDeviceType() == DeviceType.standard;
+                    cachedContent = claimRender(request, cacheKey, lastModified, refreshable);
+                }
+                cacheWarmer.processHit(weblog, request);
             }
 
             if (cachedContent != null) {
@@ -412,7 +465,7 @@ public class PageServlet extends HttpServlet {
         }
 
         // allow for hit counting
-        if (!isSiteWide
+        if (!isSiteWide && !warmup
                 && (pageRequest.isWebsitePageHit() || pageRequest
                         .isOtherPageHit())) {
             this.processHit(weblog);
@@ -441,9 +494,7 @@ public class PageServlet extends HttpServlet {
 
         HashMap<String, Object> model = new HashMap<>();
         try {
-            PageContext pageContext = JspFactory.getDefaultFactory()
-                    .getPageContext(this, request, response, "", false,
-                            RollerConstants.EIGHT_KB_IN_BYTES, true);
+            PageContext pageContext = getPageContext(request, response);
 
             // special hack for menu tag
             request.setAttribute("pageRequest", pageRequest);
@@ -466,14 +517,10 @@ public class PageServlet extends HttpServlet {
             }
 
             // Load models for pages
-            String pageModels = WebloggerConfig
-                    .getProperty("rendering.pageModels");
-            ModelLoader.loadModels(pageModels, model, initData, true);
+            ModelLoader.loadModels(ModelSet.PAGE, model, initData, true);
             // Load special models for site-wide blog
             if (WebloggerRuntimeConfig.isSiteWideWeblog(weblog.getHandle())) {
-                String siteModels = WebloggerConfig
-                        .getProperty("rendering.siteModels");
-                ModelLoader.loadModels(siteModels, model, initData, true);
+                ModelLoader.loadModels(ModelSet.SITE, model, initData, true);
             }
 
         } catch (WebloggerException ex) {
@@ -542,6 +589,12 @@ public class PageServlet extends HttpServlet {
             } else {
                 weblogPageCache.put(cacheKey, rendererOutput);
             }
+
+            // hand the content to any requests waiting on this render
+            InFlightRenders.Render render = (InFlightRenders.Render) request.getAttribute(RENDER_ATTR);
+            if (render != null) {
+                render.complete(rendererOutput);
+            }
         } else {
             log.debug("SKIPPED " + cacheKey);
         }
@@ -568,6 +621,48 @@ public class PageServlet extends HttpServlet {
         this.doGet(request, response);
     }
 
+    /**
+     * Take on rendering a page which missed in the cache.  If the page has
+     * stale content then serve that, while the page is re-rendered in the
+     * background or by another request.  Otherwise render the page, or wait
+     * for the other request which is rendering it.
+     *
+     * @param lastModified last modified time of the weblog, or null for the
+     *        site-wide cache which has no stale content
+     * @param refreshable true if the cache warmer can render the page as this
+     *        request would
+     * @return content to serve, or null if this request should render
+     */
+    private CachedContent claimRender(HttpServletRequest request,
+            String cacheKey, Long lastModified, boolean refreshable) {
+
+        InFlightRenders.Render render = pageRenders.begin(cacheKey);
+
+        CachedContent stale = null;
+        if (lastModified != null) {
+            stale = (CachedContent) weblogPageCache.getStale(cacheKey, lastModified);
+        }
+
+        if (render != null) {
+            if (stale != null && refreshable
+                    && cacheWarmer.refresh(WeblogCacheWarmer.getPath(request), render)) {
+                log.debug("STALE " + cacheKey + ", refreshing");
+                pageRenders.recordStale();
+                return stale;
+            }
+            request.setAttribute(RENDER_ATTR, render);
+            return null;
+        }
+
+        if (stale != null) {
+            log.debug("STALE " + cacheKey);
+            pageRenders.recordStale();
+            return stale;
+        }
+
+        return pageRenders.await(cacheKey);
+    }
+
     /**
      * Notify the hit tracker that it has an incoming page hit.
      */
@@ -676,4 +771,13 @@ public class PageServlet extends HttpServlet {
 
         return false;
     }
+
+    /**
+     * Page context for the rendering models, which may be null for requests
+     * not made by a client of the servlet container.
+     */
+    protected PageContext getPageContext(HttpServletRequest request, HttpServletResponse response) {
+        return JspFactory.getDefaultFactory().getPageContext(this, request, response, "", false,
+                RollerConstants.EIGHT_KB_IN_BYTES, true);
+    }
 }
@@ -44,6 +44,7 @@ import org.apache.roller.weblogger.pojos.WeblogTheme;
 import org.apache.roller.weblogger.ui.rendering.Renderer;
 import org.apache.roller.weblogger.ui.rendering.RendererManager;
 import org.apache.roller.weblogger.ui.rendering.model.ModelLoader;
+import org.apache.roller.weblogger.ui.rendering.model.ModelLoader.ModelSet;
 import org.apache.roller.weblogger.ui.rendering.util.WeblogPageRequest;
 import org.apache.roller.weblogger.ui.rendering.util.WeblogSearchRequest;
 import org.apache.roller.weblogger.ui.rendering.util.cache.SiteWideCache;
@@ -182,13 +183,11 @@ public class SearchServlet extends HttpServlet {
             initData.put("urlStrategy", WebloggerFactory.getWeblogger().getUrlStrategy());
 
             // Load models for pages
-            String searchModels = WebloggerConfig.getProperty("rendering.searchModels");
-            ModelLoader.loadModels(searchModels, model, initData, true);
+            ModelLoader.loadModels(ModelSet.SEARCH, model, initData, true);
 
             // Load special models for site-wide blog
             if (WebloggerRuntimeConfig.isSiteWideWeblog(weblog.getHandle())) {
-                String siteModels = WebloggerConfig.getProperty("rendering.siteModels");
-                ModelLoader.loadModels(siteModels, model, initData, true);
+                ModelLoader.loadModels(ModelSet.SITE, model, initData, true);
             }
 
         } catch (WebloggerException ex) {
@@ -39,7 +39,7 @@ import org.apache.roller.weblogger.pojos.WeblogEntryComment.ApprovalStatus;
 import org.apache.roller.weblogger.pojos.WeblogEntry;
 import org.apache.roller.weblogger.pojos.Weblog;
 import org.apache.roller.weblogger.ui.rendering.plugins.comments.CommentValidationManager;
-import org.apache.roller.weblogger.ui.rendering.plugins.comments.TrackbackLinkbackCommentValidator;
+import org.apache.roller.weblogger.ui.rendering.plugins.comments.LinkbackVerifier;
 import org.apache.roller.weblogger.ui.rendering.util.WeblogTrackbackRequest;
 import org.apache.roller.weblogger.util.I18nMessages;
 import org.apache.roller.weblogger.util.MailUtil;
@@ -63,8 +63,8 @@ public class TrackbackServlet extends HttpServlet {
     public void init(ServletConfig config) throws ServletException {
         commentValidationManager = new CommentValidationManager();
         
-        // add trackback verification validator just for trackbacks
-        commentValidationManager.addCommentValidator(new TrackbackLinkbackCommentValidator());
+        // trackback verification is not done by a validator, trackbacks which
+        // pass validation are verified in the background by LinkbackVerifier
     }
     
     
@@ -167,7 +167,14 @@ public class TrackbackServlet extends HttpServlet {
                 int validationScore = commentValidationManager.validateComment(comment, messages);
                 logger.debug("Comment Validation score: " + validationScore);
                 
-                if (validationScore == RollerConstants.PERCENT_100 && weblog.getCommentModerationRequired()) {
+                // linkback verification can be toggled at runtime
+                boolean verify = validationScore == RollerConstants.PERCENT_100 &&
+                        WebloggerRuntimeConfig.getBooleanProperty("site.trackbackVerification.enabled");
+                
+                if (verify) {
+                    // Valid trackbacks wait for their linkback to be verified
+                    comment.setStatus(ApprovalStatus.PENDING);
+                } else if (validationScore == RollerConstants.PERCENT_100 && weblog.getCommentModerationRequired()) {
                     // Valid comments go into moderation if required
                     comment.setStatus(ApprovalStatus.PENDING);
                 } else if (validationScore == RollerConstants.PERCENT_100) {
@@ -186,6 +193,17 @@ public class TrackbackServlet extends HttpServlet {
                     mgr.saveComment(comment);
                     WebloggerFactory.getWeblogger().flush();
                     
+                    // the verifier notifies once the trackback is verified
+                    if (verify) {
+                        String entryURL = WebloggerFactory.getWeblogger().getUrlStrategy()
+                                .getWeblogEntryURL(weblog, null, entry.getAnchor(), true);
+                        if (LinkbackVerifier.getInstance().verify(
+                                comment, entryURL, trackbackRequest.getLocaleInstance())) {
+                            pw.println(this.getSuccessResponse("Trackback submitted for verification"));
+                            return;
+                        }
+                    }
+                    
                     // only invalidate the cache if comment isn't moderated
                     if(!weblog.getCommentModerationRequired()) {
                         // Clear all caches associated with comment
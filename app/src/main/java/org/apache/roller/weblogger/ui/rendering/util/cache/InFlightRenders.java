@@ -0,0 +1,215 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.ui.rendering.util.cache;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.util.RollerConstants;
+import org.apache.roller.weblogger.config.WebloggerConfig;
+import org.apache.roller.weblogger.util.cache.CachedContent;
+
+
+/**
+ * Keeps track of which cache keys are currently being rendered, so that only
+ * one request at a time renders a given key.
+ *
+ * A request which wants to render a key calls {@link #begin(String)}.  If no
+ * one else is rendering that key it gets back a Render which it must
+ * {@link Render#complete(CachedContent)} when done, whether or not rendering
+ * worked.  Otherwise it gets null and can either fall back on whatever
+ * content it already has or {@link #await(String)} the other render.
+ *
+ * Waiting is bounded by cache.coalesce.timeout seconds, after which the
+ * request is expected to render the content itself.
+ */
+public final class InFlightRenders {
+    
+    private static final Log log = LogFactory.getLog(InFlightRenders.class);
+    
+    // all in-flight registries, by name
+    private static final Map<String, InFlightRenders> REGISTRY = new ConcurrentHashMap<>();
+    
+    private final String name;
+    private final long waitTimeout;
+    private final ConcurrentMap<String, Render> renders = new ConcurrentHashMap<>();
+    
+    // stats
+    private final LongAdder claimed = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder stale = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    
+    
+    InFlightRenders(String name, long waitTimeout) {
+        this.name = name;
+        this.waitTimeout = waitTimeout;
+    }
+    
+    
+    /**
+     * Get the registry of in-flight renders with the given name, which is
+     * created on first use.
+     */
+    public static InFlightRenders getInstance(String name) {
+        return REGISTRY.computeIfAbsent(name, n -> new InFlightRenders(n,
+                WebloggerConfig.getIntProperty("cache.coalesce.timeout", 10)
+                        * (long) RollerConstants.SEC_IN_MS));
+    }
+    
+    
+    /**
+     * Claim the render of the given key.
+     *
+     * @return the claimed render, or null if someone else is already
+     *         rendering the key
+     */
+    public Render begin(String key) {
+        Render render = new Render(key);
+        if (renders.putIfAbsent(key, render) == null) {
+            claimed.increment();
+            return render;
+        }
+        return null;
+    }
+    
+    
+    public boolean isRendering(String key) {
+        return renders.containsKey(key);
+    }
+    
+    
+    /**
+     * Wait for the render of the given key which someone else is doing.
+     *
+     * @return the rendered content, or null if no one is rendering the key,
+     *         their render failed or it did not finish in time
+     */
+    public CachedContent await(String key) {
+        
+        Render render = renders.get(key);
+        if (render == null || waitTimeout <= 0) {
+            return null;
+        }
+        
+        try {
+            CachedContent content = render.result.get(waitTimeout, TimeUnit.MILLISECONDS);
+            if (content != null) {
+                coalesced.increment();
+                log.debug("COALESCED " + key);
+            }
+            return content;
+            
+        } catch (TimeoutException ex) {
+            timedOut.increment();
+            log.debug("Gave up waiting on render of " + key);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            // renders are only ever completed normally
+            log.debug("Render of " + key + " failed", ex);
+        }
+        return null;
+    }
+    
+    
+    /**
+     * Count a request which got stale content while the key was being
+     * rendered by someone else.
+     */
+    public void recordStale() {
+        stale.increment();
+    }
+    
+    
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+    
+    
+    public long getTimedOutCount() {
+        return timedOut.sum();
+    }
+    
+    
+    private Map<String, Object> getRenderStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("inFlight", renders.size());
+        stats.put("rendered", claimed.sum());
+        stats.put("coalesced", coalesced.sum());
+        stats.put("servedStale", stale.sum());
+        stats.put("timedOut", timedOut.sum());
+        return Collections.unmodifiableMap(stats);
+    }
+    
+    
+    /**
+     * Stats for all in-flight registries, by name.
+     */
+    public static Map<String, Map<String, Object>> getStats() {
+        Map<String, Map<String, Object>> stats = new TreeMap<>();
+        for (InFlightRenders inFlight : REGISTRY.values()) {
+            stats.put(inFlight.name, inFlight.getRenderStats());
+        }
+        return stats;
+    }
+    
+    
+    /**
+     * A claimed render of a single key.
+     */
+    public final class Render {
+        
+        private final String key;
+        private final CompletableFuture<CachedContent> result = new CompletableFuture<>();
+        
+        
+        private Render(String key) {
+            this.key = key;
+        }
+        
+        
+        public String getKey() {
+            return key;
+        }
+        
+        
+        /**
+         * Release the key and hand the content to anyone waiting on it.
+         * Content is null if rendering failed or produced nothing cacheable.
+         * Only the first call has any effect.
+         */
+        public void complete(CachedContent content) {
+            if (result.complete(content)) {
+                renders.remove(key, this);
+            }
+        }
+    }
+    
+}
@@ -0,0 +1,505 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.ui.rendering.util.cache;
+
+import java.io.IOException;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.servlet.RequestDispatcher;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.util.RollerConstants;
+import org.apache.roller.weblogger.business.HitCountQueue;
+import org.apache.roller.weblogger.config.WebloggerConfig;
+import org.apache.roller.weblogger.pojos.Weblog;
+import org.apache.roller.weblogger.pojos.WeblogBookmark;
+import org.apache.roller.weblogger.pojos.WeblogBookmarkFolder;
+import org.apache.roller.weblogger.pojos.WeblogCategory;
+import org.apache.roller.weblogger.pojos.WeblogEntry;
+import org.apache.roller.weblogger.pojos.WeblogEntryComment;
+import org.apache.roller.weblogger.pojos.WeblogTemplate;
+import org.apache.roller.weblogger.ui.rendering.mobile.MobileDeviceRepository;
+import org.apache.roller.weblogger.ui.rendering.util.ModDateHeaderUtil;
+import org.apache.roller.weblogger.util.RateLimiter;
+import org.apache.roller.weblogger.util.cache.Cache;
+import org.apache.roller.weblogger.util.cache.CacheHandler;
+import org.apache.roller.weblogger.util.cache.CacheManager;
+import org.apache.roller.weblogger.util.cache.CachedContent;
+
+
+/**
+ * Answers requests for cached weblog pages and feeds before they reach the
+ * request mapper and rendering servlets, so that a cache hit needs neither a
+ * persistence session nor any weblog lookups.
+ *
+ * The page and feed servlets record a route for each anonymous GET they can
+ * serve from the cache: the url as requested, with host and device type,
+ * mapped to the cache key of its content.  They also record the last modified
+ * time of the weblog, which is what cached content is checked against.  Both
+ * are kept in memory, and the last modified time of a weblog is forgotten
+ * when any of its content is invalidated, so that the next request goes
+ * through the servlet again and sees the new time.
+ *
+ * Routes and last modified times are trusted for at most cache.frontdoor.timeout
+ * seconds.  That bounds how long a change made without a cache invalidation,
+ * such as one on another cluster member with no invalidation bus, or a change
+ * to the site-wide weblog settings, can go unnoticed by cache-served requests.
+ *
+ * Anything which isn't a plain anonymous GET for fresh cached content, or
+ * which the servlets would have to look at more closely, such as a page with
+ * a referrer from another site, is left to the servlets.
+ */
+public final class WeblogCacheFrontDoor implements CacheHandler {
+
+    private static final Log log = LogFactory.getLog(WeblogCacheFrontDoor.class);
+
+    // a unique identifier for this cache, this is used as the prefix for
+    // roller config properties that apply to this cache
+    public static final String CACHE_ID = "cache.frontdoor";
+
+    enum Kind { PAGE, FEED }
+
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+
+    private static final WeblogCacheFrontDoor singletonInstance = new WeblogCacheFrontDoor();
+
+    private boolean enabled = true;
+    private long timeout = 0;
+    private Cache routes = null;
+
+    // last modified time of each weblog, as seen by the servlets
+    private final ConcurrentMap<String, Stamp> weblogStamps = new ConcurrentHashMap<>();
+
+    // bumped on every invalidation, so that a servlet which looked up a
+    // weblog before an invalidation doesn't record its old last modified time
+    private final AtomicLong generation = new AtomicLong();
+
+    // page referrers are only checked if the servlet checks them
+    private final boolean processReferrers;
+
+    // stats
+    private final LongAdder served = new LongAdder();
+    private final LongAdder notModified = new LongAdder();
+
+
+    private WeblogCacheFrontDoor() {
+
+        enabled = WebloggerConfig.getBooleanProperty(CACHE_ID+".enabled")
+                && !WebloggerConfig.getBooleanProperty("themes.reload.mode");
+        timeout = WebloggerConfig.getIntProperty(CACHE_ID+".timeout", 60)
+                * (long) RollerConstants.SEC_IN_MS;
+        processReferrers = WebloggerConfig
+                .getBooleanProperty("site.bannedwordslist.enable.referrers");
+
+        Map<String, String> cacheProps = new HashMap<>();
+        cacheProps.put("id", CACHE_ID);
+        Enumeration<Object> allProps = WebloggerConfig.keys();
+        String prop;
+        while(allProps.hasMoreElements()) {
+            prop = (String) allProps.nextElement();
+
+            // we are only interested in props for this cache
+            if(prop.startsWith(CACHE_ID+".")) {
+                cacheProps.put(prop.substring(CACHE_ID.length()+1),
+                        WebloggerConfig.getProperty(prop));
+            }
+        }
+
+        log.info(cacheProps);
+
+        if (enabled && timeout > 0) {
+            routes = CacheManager.constructCache(this, cacheProps);
+        } else {
+            enabled = false;
+            log.info("Cache front door DISABLED");
+        }
+    }
+
+
+    public static WeblogCacheFrontDoor getInstance() {
+        return singletonInstance;
+    }
+
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+
+    /**
+     * Current invalidation generation, to be read by a servlet before it
+     * looks up the weblog and passed back when recording a route.
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+
+    /**
+     * Record that the page requested can be served from the given cache key.
+     *
+     * @param lastModified last modified time of the weblog, ignored for the
+     *        site-wide weblog whose cache keeps its own
+     * @param countHit whether serving the page counts as a weblog hit
+     */
+    public void recordPage(HttpServletRequest request, long generation,
+            String weblogHandle, boolean siteWide, String cacheKey,
+            long lastModified, boolean countHit) {
+
+        record(request, generation, new Route(Kind.PAGE, weblogHandle, siteWide,
+                cacheKey, countHit, WeblogCacheWarmer.getPath(request), null, false),
+                lastModified);
+    }
+
+
+    /**
+     * Record that the feed requested can be served from the given cache key.
+     *
+     * @param contentType content type for the feed format, may be null
+     * @param styledFeeds whether browsers are sent feeds as text/xml
+     */
+    public void recordFeed(HttpServletRequest request, long generation,
+            String weblogHandle, boolean siteWide, String cacheKey,
+            long lastModified, String contentType, boolean styledFeeds) {
+
+        record(request, generation, new Route(Kind.FEED, weblogHandle, siteWide,
+                cacheKey, false, WeblogCacheWarmer.getPath(request), contentType, styledFeeds),
+                lastModified);
+    }
+
+
+    private void record(HttpServletRequest request, long generation,
+            Route route, long lastModified) {
+
+        if (!enabled || !isCacheable(request)) {
+            return;
+        }
+
+        String uri = (String) request.getAttribute(RequestDispatcher.FORWARD_REQUEST_URI);
+        String query;
+        if (uri != null) {
+            query = (String) request.getAttribute(RequestDispatcher.FORWARD_QUERY_STRING);
+        } else {
+            uri = request.getRequestURI();
+            query = request.getQueryString();
+        }
+
+        // don't record a weblog which changed while the servlet handled it
+        if (!route.siteWide) {
+            Stamp stamp = new Stamp(lastModified, System.currentTimeMillis());
+            if (this.generation.get() != generation) {
+                return;
+            }
+            weblogStamps.put(route.weblogHandle, stamp);
+            if (this.generation.get() != generation) {
+                weblogStamps.remove(route.weblogHandle, stamp);
+                return;
+            }
+        }
+
+        String key = generateKey(request, uri, query,
+                MobileDeviceRepository.getRequestType(request));
+        routes.put(key, route);
+        log.debug("ROUTE "+key+" -> "+route.cacheKey);
+    }
+
+
+    /**
+     * Serve the request from the cache if it is for fresh cached content.
+     *
+     * @return true if the request has been answered
+     */
+    public boolean serve(HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+
+        if (!enabled || !isCacheable(request)) {
+            return false;
+        }
+
+        MobileDeviceRepository.DeviceType deviceType = MobileDeviceRepository.getRequestType(request);
+        String key = generateKey(request, request.getRequestURI(), request.getQueryString(), deviceType);
+        Route route = (Route) routes.get(key);
+        if (route == null) {
+            return false;
+        }
+
+        if (route.kind == Kind.PAGE && processReferrers && !isLocalReferrer(request)) {
+            return false;
+        }
+
+        long lastModified;
+        CachedContent content;
+        if (route.siteWide) {
+            SiteWideCache siteWideCache = SiteWideCache.getInstance();
+            lastModified = siteWideCache.getLastModified().getTime();
+            content = (CachedContent) siteWideCache.get(route.cacheKey);
+        } else {
+            Stamp stamp = weblogStamps.get(route.weblogHandle);
+            if (stamp == null || System.currentTimeMillis() - stamp.recorded > timeout) {
+                return false;
+            }
+            lastModified = stamp.lastModified;
+            if (route.kind == Kind.PAGE) {
+                content = (CachedContent) WeblogPageCache.getInstance().get(route.cacheKey, lastModified);
+            } else {
+                content = (CachedContent) WeblogFeedCache.getInstance().get(route.cacheKey, lastModified);
+            }
+        }
+
+        if (content == null) {
+            return false;
+        }
+
+        // page requests are rate limited the same as on their way to the servlet
+        if (route.kind == Kind.PAGE) {
+            RateLimiter limiter = RateLimiter.getRateLimiter("page");
+            if (limiter != null && limiter.processHit(request.getRemoteAddr(), route.weblogHandle)) {
+                log.debug("THROTTLED "+request.getRemoteAddr()+" on page");
+                response.sendError(SC_TOO_MANY_REQUESTS);
+                return true;
+            }
+        }
+
+        if (ModDateHeaderUtil.respondIfNotModified(request, response, lastModified, deviceType)) {
+            notModified.increment();
+            return true;
+        }
+        ModDateHeaderUtil.setLastModifiedHeader(response, lastModified, deviceType);
+
+        if (!route.siteWide) {
+            if (route.countHit) {
+                HitCountQueue.getInstance().processHit(route.weblogHandle);
+            }
+            WeblogCacheWarmer.getInstance().processHit(route.weblogHandle, route.hitPath);
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("HIT "+key);
+        }
+        served.increment();
+
+        if (route.kind == Kind.PAGE) {
+            response.setContentType(content.getContentType());
+        } else {
+            String contentType = getFeedContentType(request, route.contentType, route.styledFeeds);
+            if (contentType != null) {
+                response.setContentType(contentType);
+            }
+        }
+        byte[] bytes = content.getContent();
+        response.setContentLength(bytes.length);
+        response.getOutputStream().write(bytes);
+        return true;
+    }
+
+
+    /**
+     * Content type of a feed, which browsers get as text/xml when styled
+     * feeds are enabled so that they display the feed.
+     *
+     * @param contentType content type for the feed format, may be null
+     */
+    public static String getFeedContentType(HttpServletRequest request,
+            String contentType, boolean styledFeeds) {
+
+        String accepts = request.getHeader("Accept");
+        String userAgent = request.getHeader("User-Agent");
+        if (styledFeeds
+                && accepts != null
+                && accepts.contains("*/*")
+                && userAgent != null && userAgent.startsWith("Mozilla")) {
+            return "text/xml";
+        }
+        return contentType;
+    }
+
+
+    /**
+     * Only plain anonymous GETs are served from or recorded to the front
+     * door, the same requests the servlets answer from their caches.
+     */
+    private static boolean isCacheable(HttpServletRequest request) {
+        return "GET".equals(request.getMethod())
+                && request.getUserPrincipal() == null
+                && request.getAttribute("skipCache") == null
+                && request.getParameter("skipCache") == null
+                && !WeblogCacheWarmer.getInstance().isWarmupRequest(request);
+    }
+
+
+    /**
+     * True if the request has no referrer or one from the same host, which
+     * the page servlet wouldn't check against the banned words list.
+     */
+    private static boolean isLocalReferrer(HttpServletRequest request) {
+
+        String referrer = request.getHeader("Referer");
+        if (referrer == null) {
+            return true;
+        }
+
+        int start = referrer.indexOf("://");
+        if (start < 0) {
+            return false;
+        }
+        start += 3;
+        String host = request.getServerName();
+        int end = start + host.length();
+        return referrer.regionMatches(true, start, host, 0, host.length())
+                && (end == referrer.length() || referrer.charAt(end) == '/'
+                        || referrer.charAt(end) == ':');
+    }
+
+
+    private static String generateKey(HttpServletRequest request, String uri, String query,
+            MobileDeviceRepository.DeviceType deviceType) {
+
+        StringBuilder key = new StringBuilder(128);
+        key.append(request.getHeader("Host")).append(uri);
+        if (query != null) {
+            key.append('?').append(query);
+        }
+        key.append('|').append(deviceType.name());
+        return key.toString();
+    }
+
+
+    public long getServedCount() {
+        return served.sum();
+    }
+
+
+    public long getNotModifiedCount() {
+        return notModified.sum();
+    }
+
+
+    public void clear() {
+
+        if (!enabled) {
+            return;
+        }
+
+        routes.clear();
+        weblogStamps.clear();
+        generation.incrementAndGet();
+        log.debug("CLEAR");
+    }
+
+
+    private void changed(Weblog weblog) {
+        generation.incrementAndGet();
+        if (weblog != null && weblog.getHandle() != null) {
+            weblogStamps.remove(weblog.getHandle());
+        }
+    }
+
+
+    @Override
+    public void invalidate(WeblogEntry entry) {
+        changed(entry.getWebsite());
+    }
+
+
+    @Override
+    public void invalidate(Weblog website) {
+        changed(website);
+    }
+
+
+    @Override
+    public void invalidate(WeblogBookmark bookmark) {
+        changed(bookmark.getWebsite());
+    }
+
+
+    @Override
+    public void invalidate(WeblogBookmarkFolder folder) {
+        changed(folder.getWeblog());
+    }
+
+
+    @Override
+    public void invalidate(WeblogEntryComment comment) {
+        changed(comment.getWeblogEntry().getWebsite());
+    }
+
+
+    @Override
+    public void invalidate(WeblogCategory category) {
+        changed(category.getWeblog());
+    }
+
+
+    @Override
+    public void invalidate(WeblogTemplate template) {
+        changed(template.getWeblog());
+    }
+
+
+    /**
+     * Where the content for a url is cached, and what serving it involves.
+     */
+    private static final class Route {
+
+        private final Kind kind;
+        private final String weblogHandle;
+        private final boolean siteWide;
+        private final String cacheKey;
+        private final boolean countHit;
+        private final String hitPath;
+        private final String contentType;
+        private final boolean styledFeeds;
+
+        Route(Kind kind, String weblogHandle, boolean siteWide, String cacheKey,
+                boolean countHit, String hitPath, String contentType, boolean styledFeeds) {
+            this.kind = kind;
+            this.weblogHandle = weblogHandle;
+            this.siteWide = siteWide;
+            this.cacheKey = cacheKey;
+            this.countHit = countHit;
+            this.hitPath = hitPath;
+            this.contentType = contentType;
+            this.styledFeeds = styledFeeds;
+        }
+    }
+
+
+    /**
+     * Last modified time of a weblog and when it was read.
+     */
+    private static final class Stamp {
+
+        private final long lastModified;
+        private final long recorded;
+
+        Stamp(long lastModified, long recorded) {
+            this.lastModified = lastModified;
+            this.recorded = recorded;
+        }
+    }
+
+}
@@ -0,0 +1,327 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.ui.rendering.util.cache;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.RequestDispatcher;
+import javax.servlet.http.HttpServletRequest;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.util.RollerConstants;
+import org.apache.roller.weblogger.business.HitCountQueue;
+import org.apache.roller.weblogger.business.WebloggerFactory;
+import org.apache.roller.weblogger.business.runnable.ContinuousWorkerThread;
+import org.apache.roller.weblogger.business.runnable.WorkerThread;
+import org.apache.roller.weblogger.config.WebloggerConfig;
+import org.apache.roller.weblogger.pojos.Weblog;
+import org.apache.roller.weblogger.pojos.WeblogBookmark;
+import org.apache.roller.weblogger.pojos.WeblogBookmarkFolder;
+import org.apache.roller.weblogger.pojos.WeblogCategory;
+import org.apache.roller.weblogger.pojos.WeblogEntry;
+import org.apache.roller.weblogger.pojos.WeblogEntryComment;
+import org.apache.roller.weblogger.pojos.WeblogTemplate;
+import org.apache.roller.weblogger.ui.rendering.export.OfflineRenderer;
+import org.apache.roller.weblogger.ui.rendering.export.OfflineResponse;
+import org.apache.roller.weblogger.util.cache.CacheHandler;
+import org.apache.roller.weblogger.util.cache.CacheManager;
+
+
+/**
+ * Re-renders the most visited pages and feeds of weblogs which have changed,
+ * so that visitors don't pay for the render after an edit.
+ *
+ * Page and feed servlets report hits on cacheable content, which are tallied
+ * per page by the HitCountQueue.  When a weblog is invalidated its handle is
+ * remembered, and every cache.warmer.interval seconds a WeblogCacheWarmupJob
+ * requests the top cache.warmer.pagesPerWeblog pages of each changed weblog.
+ *
+ * Pages are warmed within the application by an OfflineRenderer, whose
+ * requests set the WARMUP_ATTR request attribute so that the servlets skip
+ * the cache lookup, don't count a hit and cache what they render.
+ *
+ * The warmer also re-renders in the background pages and feeds whose stale
+ * content is being served, on cache.warmer.refreshThreads threads, whether
+ * or not warming is enabled.
+ */
+public final class WeblogCacheWarmer implements CacheHandler {
+    
+    private static final Log log = LogFactory.getLog(WeblogCacheWarmer.class);
+    
+    public static final String WARMUP_ATTR = "roller.cacheWarmup";
+    
+    // background refreshes which may wait for a thread
+    private static final int REFRESH_QUEUE_SIZE = 100;
+    
+    private static final WeblogCacheWarmer singletonInstance = new WeblogCacheWarmer();
+    
+    private final boolean enabled;
+    private final int interval;
+    private final int pagesPerWeblog;
+    private final ThreadPoolExecutor refresher;
+    private OfflineRenderer renderer = null;
+    
+    // weblogs which changed since the last warmup
+    private final Set<String> changedWeblogs = ConcurrentHashMap.newKeySet();
+    
+    private WorkerThread worker = null;
+    
+    
+    private WeblogCacheWarmer() {
+        enabled = WebloggerConfig.getBooleanProperty("cache.warmer.enabled");
+        interval = WebloggerConfig.getIntProperty("cache.warmer.interval", 60);
+        pagesPerWeblog = WebloggerConfig.getIntProperty("cache.warmer.pagesPerWeblog", 10);
+        
+        int threads = Math.max(WebloggerConfig.getIntProperty("cache.warmer.refreshThreads", 2), 1);
+        refresher = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(REFRESH_QUEUE_SIZE), runnable -> {
+                    Thread thread = new Thread(runnable, "WeblogCacheRefresher");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        refresher.allowCoreThreadTimeOut(true);
+    }
+    
+    
+    public static WeblogCacheWarmer getInstance() {
+        return singletonInstance;
+    }
+    
+    
+    /**
+     * Start listening for invalidations and warming caches, if enabled.
+     */
+    public synchronized void start() {
+        
+        if (!enabled || worker != null) {
+            return;
+        }
+        
+        CacheManager.registerHandler(this);
+        
+        WeblogCacheWarmupJob job = new WeblogCacheWarmupJob();
+        job.input(Map.of("hot-pages", "true"));
+        
+        worker = new ContinuousWorkerThread("WeblogCacheWarmer", job,
+                Math.max(interval, 1) * (long) RollerConstants.SEC_IN_MS);
+        worker.setDaemon(true);
+        worker.start();
+        
+        log.info("Cache warming ENABLED, every " + interval + " secs for "
+                + pagesPerWeblog + " pages per weblog");
+    }
+    
+    
+    public synchronized void shutdown() {
+        
+        if (worker != null) {
+            log.info("stopping worker " + worker.getName());
+            worker.interrupt();
+            worker = null;
+        }
+        refresher.shutdownNow();
+    }
+    
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    
+    /**
+     * True if the request was made up within the application, to render
+     * content without serving it to anyone.
+     */
+    public boolean isWarmupRequest(HttpServletRequest request) {
+        return request.getAttribute(WARMUP_ATTR) != null;
+    }
+    
+    
+    /**
+     * Re-render content in the background while its stale copy is served,
+     * and release the claimed render when done.
+     *
+     * @param path path of the request, see getPath()
+     * @param render the claimed render of the content
+     * @return false if the refresh couldn't be queued, and the caller should
+     *         render the content itself
+     */
+    public boolean refresh(String path, InFlightRenders.Render render) {
+        try {
+            refresher.execute(() -> {
+                try {
+                    warm(path);
+                } catch (Exception e) {
+                    log.warn("Error refreshing " + path + ": " + e.getMessage());
+                } finally {
+                    render.complete(null);
+                    WebloggerFactory.getWeblogger().release();
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            log.debug("Too many refreshes queued, rendering " + path + " in the foreground");
+            return false;
+        }
+    }
+    
+    
+    /**
+     * Render a path so that its content is cached.  The caller releases the
+     * persistence session.
+     *
+     * @param path path of the request, see getPath()
+     * @return the response status, or 0 if the path isn't rendered by a
+     *         weblog or planet servlet
+     */
+    int warm(String path) throws IOException {
+        OfflineResponse response = getRenderer().render(path);
+        return response != null ? response.getStatus() : 0;
+    }
+    
+    
+    private synchronized OfflineRenderer getRenderer() {
+        if (renderer == null) {
+            renderer = new OfflineRenderer();
+        }
+        return renderer;
+    }
+    
+    
+    /**
+     * Count a hit on cacheable content of a weblog, so that the most visited
+     * content can be warmed.
+     */
+    public void processHit(Weblog weblog, HttpServletRequest request) {
+        
+        if (!enabled || weblog == null || isWarmupRequest(request)) {
+            return;
+        }
+        
+        HitCountQueue.getInstance().processPageHit(weblog.getHandle(), getPath(request));
+    }
+    
+    
+    /**
+     * Count a hit on cacheable content answered by the front door, which
+     * has already left out warmup requests.
+     */
+    void processHit(String weblogHandle, String path) {
+        
+        if (enabled) {
+            HitCountQueue.getInstance().processPageHit(weblogHandle, path);
+        }
+    }
+    
+    
+    /**
+     * Handles of the weblogs changed since the last call.
+     */
+    List<String> takeChangedWeblogs() {
+        List<String> handles = new ArrayList<>(changedWeblogs);
+        changedWeblogs.removeAll(handles);
+        return handles;
+    }
+    
+    
+    int getPagesPerWeblog() {
+        return pagesPerWeblog;
+    }
+    
+    
+    /**
+     * Path of the request relative to the context, including the original
+     * query string if the request was forwarded to the servlet.
+     */
+    public static String getPath(HttpServletRequest request) {
+        
+        StringBuilder path = new StringBuilder(request.getServletPath());
+        if (request.getPathInfo() != null) {
+            path.append(request.getPathInfo());
+        }
+        
+        String query = (String) request.getAttribute(RequestDispatcher.FORWARD_QUERY_STRING);
+        if (query == null) {
+            query = request.getQueryString();
+        }
+        if (query != null) {
+            path.append('?').append(query);
+        }
+        
+        return path.toString();
+    }
+    
+    
+    private void changed(Weblog weblog) {
+        if (weblog != null) {
+            changedWeblogs.add(weblog.getHandle());
+        }
+    }
+    
+    
+    @Override
+    public void invalidate(WeblogEntry entry) {
+        changed(entry.getWebsite());
+    }
+    
+    
+    @Override
+    public void invalidate(Weblog website) {
+        changed(website);
+    }
+    
+    
+    @Override
+    public void invalidate(WeblogBookmark bookmark) {
+        changed(bookmark.getWebsite());
+    }
+    
+    
+    @Override
+    public void invalidate(WeblogBookmarkFolder folder) {
+        changed(folder.getWeblog());
+    }
+    
+    
+    @Override
+    public void invalidate(WeblogEntryComment comment) {
+        changed(comment.getWeblogEntry().getWebsite());
+    }
+    
+    
+    @Override
+    public void invalidate(WeblogCategory category) {
+        changed(category.getWeblog());
+    }
+    
+    
+    @Override
+    public void invalidate(WeblogTemplate template) {
+        changed(template.getWeblog());
+    }
+    
+}
@@ -23,9 +23,11 @@ import java.util.List;
 import java.util.Map;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import javax.servlet.http.HttpServletResponse;
 import org.apache.roller.util.RollerConstants;
+import org.apache.roller.weblogger.business.HitCountQueue;
+import org.apache.roller.weblogger.business.WebloggerFactory;
 import org.apache.roller.weblogger.business.runnable.Job;
-import org.apache.roller.weblogger.config.WebloggerConfig;
 import org.apache.roller.weblogger.pojos.StaticTemplate;
 import org.apache.roller.weblogger.pojos.Template;
 import org.apache.roller.weblogger.pojos.TemplateRendition.TemplateLanguage;
@@ -33,6 +35,7 @@ import org.apache.roller.weblogger.ui.rendering.Renderer;
 import org.apache.roller.weblogger.ui.rendering.RendererManager;
 import org.apache.roller.weblogger.ui.rendering.mobile.MobileDeviceRepository.DeviceType;
 import org.apache.roller.weblogger.ui.rendering.model.ModelLoader;
+import org.apache.roller.weblogger.ui.rendering.model.ModelLoader.ModelSet;
 import org.apache.roller.weblogger.ui.rendering.util.WeblogFeedRequest;
 import org.apache.roller.weblogger.util.cache.CachedContent;
 
@@ -44,7 +47,9 @@ import org.apache.roller.weblogger.util.cache.CachedContent;
  * over all weblogs in the system and rendering a set of their content to put
  * in the caches for later use.
  *
- * Currently only supports warming up the feed cache.
+ * Supports warming up the entries feeds of the given weblogs, and with the
+ * "hot-pages" input the most visited pages and feeds of the weblogs which
+ * have changed since the last run, see WeblogCacheWarmer.
  */
 public class WeblogCacheWarmupJob implements Job {
     
@@ -62,6 +67,11 @@ public class WeblogCacheWarmupJob implements Job {
         // check inputs to see what work we are going to do
         if(inputs != null) {
             
+            // should we do the most visited pages of changed weblogs?
+            if("true".equals(inputs.get("hot-pages"))) {
+                this.warmupHotPages(WeblogCacheWarmer.getInstance().takeChangedWeblogs());
+            }
+            
             // what weblogs will we handle?
             @SuppressWarnings("unchecked")
             List<String> weblogs = (List<String>) inputs.get("weblogs");
@@ -96,6 +106,46 @@ public class WeblogCacheWarmupJob implements Job {
     }
     
     
+    private void warmupHotPages(List<String> weblogs) {
+        
+        if(weblogs.isEmpty()) {
+            return;
+        }
+        
+        WeblogCacheWarmer warmer = WeblogCacheWarmer.getInstance();
+        long start = System.currentTimeMillis();
+        int count = 0;
+        
+        for (String weblogHandle : weblogs) {
+            for (String path : HitCountQueue.getInstance().getHotPages(
+                    weblogHandle, warmer.getPagesPerWeblog())) {
+                
+                if(Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                
+                log.debug("warming "+path);
+                try {
+                    int status = warmer.warm(path);
+                    if(status != HttpServletResponse.SC_OK) {
+                        log.debug("Got status "+status+" warming "+path);
+                    }
+                    count++;
+                    
+                } catch(Exception e) {
+                    log.warn("Error warming "+path+" of weblog "+weblogHandle+": "+e.getMessage());
+                } finally {
+                    // don't hold one persistence session for the whole run
+                    WebloggerFactory.getWeblogger().release();
+                }
+            }
+        }
+        
+        long time = System.currentTimeMillis() - start;
+        log.info("Warmed "+count+" pages of "+weblogs.size()+" weblogs in "+time+" ms.");
+    }
+    
+    
     private void warmupFeedCache(List<String> weblogs, String type, String format) {
         
         if(weblogs == null) {
@@ -125,8 +175,7 @@ public class WeblogCacheWarmupJob implements Job {
                 initData.put("weblogRequest", feedRequest);
                 
                 // Load models for feeds
-                String feedModels = WebloggerConfig.getProperty("rendering.feedModels");
-                ModelLoader.loadModels(feedModels, modelMap, initData, true);
+                ModelLoader.loadModels(ModelSet.FEED, modelMap, initData, true);
                 
                 // TODO: re-enable custom models when they are actually used
                 // Load weblog custom models
@@ -26,6 +26,7 @@ import java.util.HashMap;
 import java.util.Map;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.roller.util.RollerConstants;
 import org.apache.roller.weblogger.config.WebloggerConfig;
 import org.apache.roller.weblogger.ui.rendering.util.WeblogPageRequest;
 import org.apache.roller.weblogger.util.Utilities;
@@ -49,6 +50,9 @@ public final class WeblogPageCache {
     private boolean cacheEnabled = true;
     private Cache contentCache = null;
     
+    // how long after an invalidation stale content may still be served, in ms
+    private long staleTimeout = 0;
+    
     // reference to our singleton instance
     private static final WeblogPageCache singletonInstance = new WeblogPageCache();
     
@@ -73,6 +77,9 @@ public final class WeblogPageCache {
         
         log.info(cacheProps);
         
+        staleTimeout = WebloggerConfig.getIntProperty(CACHE_ID+".staleTimeout", 0)
+                * (long) RollerConstants.SEC_IN_MS;
+        
         if (cacheEnabled) {
             contentCache = CacheManager.constructCache(null, cacheProps);
         } else {
@@ -112,6 +119,29 @@ public final class WeblogPageCache {
     }
     
     
+    /**
+     * Get cached content which has been invalidated, as long as the
+     * invalidation happened less than staleTimeout ago.  Stale content can be
+     * served while a single request renders a fresh copy.
+     */
+    public Object getStale(String key, long lastModified) {
+        
+        if (!cacheEnabled || staleTimeout <= 0
+                || System.currentTimeMillis() - lastModified > staleTimeout) {
+            return null;
+        }
+        
+        LazyExpiringCacheEntry lazyEntry =
+                (LazyExpiringCacheEntry) this.contentCache.get(key);
+        if(lazyEntry != null && lazyEntry.isInvalid(lastModified)) {
+            log.debug("HIT-STALE "+key);
+            return lazyEntry.getValue(0);
+        }
+        
+        return null;
+    }
+    
+    
     public void put(String key, Object value) {
         
         if (!cacheEnabled) {
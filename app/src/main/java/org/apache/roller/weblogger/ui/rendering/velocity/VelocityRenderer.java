@@ -21,15 +21,16 @@ package org.apache.roller.weblogger.ui.rendering.velocity;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.roller.util.RollerConstants;
 import org.apache.roller.weblogger.pojos.Template;
 import org.apache.roller.weblogger.ui.rendering.Renderer;
 import org.apache.roller.weblogger.ui.rendering.RenderingException;
 import org.apache.roller.weblogger.ui.rendering.mobile.MobileDeviceRepository;
 import org.apache.roller.weblogger.ui.rendering.model.UtilitiesModel;
+import org.apache.roller.weblogger.util.RenderProfiler;
 import org.apache.velocity.VelocityContext;
 import org.apache.velocity.context.Context;
 import org.apache.velocity.exception.ResourceNotFoundException;
@@ -113,7 +114,7 @@ public class VelocityRenderer implements Renderer {
                 return;
             }
 
-            long startTime = System.currentTimeMillis();
+            long startTime = System.nanoTime();
 
             // convert model to Velocity Context
             Context ctx = new VelocityContext(model);
@@ -143,11 +144,17 @@ public class VelocityRenderer implements Renderer {
                 velocityTemplate.merge(ctx, out);
             }
 
-            long endTime = System.currentTimeMillis();
-            long renderTime = (endTime - startTime) / RollerConstants.SEC_IN_MS;
+            long renderTime = System.nanoTime() - startTime;
 
-            log.debug("Rendered [" + renderTemplate.getId() + "] in "
-                    + renderTime + " secs");
+            RenderProfiler profile = RenderProfiler.current();
+            if (profile != null) {
+                profile.recordTemplate(renderTemplate.getId(), renderTime);
+            }
+
+            if (log.isDebugEnabled()) {
+                log.debug("Rendered [" + renderTemplate.getId() + "] in "
+                        + TimeUnit.NANOSECONDS.toMillis(renderTime) + " ms");
+            }
 
         } catch (VelocityException ex) {
 
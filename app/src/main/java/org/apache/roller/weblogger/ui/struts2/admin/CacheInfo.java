@@ -22,7 +22,10 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import org.apache.roller.weblogger.pojos.GlobalPermission;
+import org.apache.roller.weblogger.ui.rendering.util.cache.InFlightRenders;
 import org.apache.roller.weblogger.ui.struts2.util.UIAction;
+import org.apache.roller.weblogger.util.RateLimiter;
+import org.apache.roller.weblogger.util.RenderProfiler;
 import org.apache.roller.weblogger.util.cache.CacheManager;
 import org.apache.struts2.convention.annotation.AllowedMethods;
 
@@ -36,6 +39,15 @@ public class CacheInfo extends UIAction {
     // map of stats to display
     private Map<String, Map<String, Object>> stats = Collections.emptyMap();
     
+    // request throttling stats, by endpoint
+    private Map<String, Map<String, Object>> throttleStats = Collections.emptyMap();
+    
+    // render profiling stats, by endpoint
+    private Map<String, Map<String, Object>> renderStats = Collections.emptyMap();
+    
+    // coalesced rendering stats, by servlet
+    private Map<String, Map<String, Object>> renderingStats = Collections.emptyMap();
+    
     // cache which we would clear when clear() is called
     private String cache = null;
     
@@ -61,6 +73,9 @@ public class CacheInfo extends UIAction {
     @Override
     public void myPrepare() {
         setStats(CacheManager.getStats());
+        setThrottleStats(RateLimiter.getStats());
+        setRenderStats(RenderProfiler.getStats());
+        setRenderingStats(InFlightRenders.getStats());
     }
     
     
@@ -101,6 +116,30 @@ public class CacheInfo extends UIAction {
         this.stats = stats;
     }
 
+    public Map<String, Map<String, Object>> getThrottleStats() {
+        return throttleStats;
+    }
+
+    public void setThrottleStats(Map<String, Map<String, Object>> throttleStats) {
+        this.throttleStats = throttleStats;
+    }
+
+    public Map<String, Map<String, Object>> getRenderStats() {
+        return renderStats;
+    }
+
+    public void setRenderStats(Map<String, Map<String, Object>> renderStats) {
+        this.renderStats = renderStats;
+    }
+
+    public Map<String, Map<String, Object>> getRenderingStats() {
+        return renderingStats;
+    }
+
+    public void setRenderingStats(Map<String, Map<String, Object>> renderingStats) {
+        this.renderingStats = renderingStats;
+    }
+
     public String getCache() {
         return cache;
     }
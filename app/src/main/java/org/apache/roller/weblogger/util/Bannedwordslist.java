@@ -31,14 +31,11 @@ import java.net.HttpURLConnection;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.StringTokenizer;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.regex.PatternSyntaxException;
 
 import org.apache.roller.weblogger.config.WebloggerConfig;
 import org.apache.commons.lang3.StringUtils;
@@ -75,6 +72,7 @@ public final class Bannedwordslist {
     private Date lastModified = null;
     private final List<String> bannedwordslistStr = new ArrayList<>();
     private final List<Pattern> bannedwordslistRegex = new ArrayList<>();
+    private volatile BannedwordslistMatcher matcher = BannedwordslistMatcher.EMPTY;
     
     // setup our singleton at class loading time
     static {
@@ -215,6 +213,7 @@ public final class Bannedwordslist {
             mLogger.error("Couldn't load a bannedwordslist file from anywhere, "
                         + "this means bannedwordslist checking is disabled for now.");
         }
+        matcher = BannedwordslistMatcher.compile(bannedwordslistStr, bannedwordslistRegex);
         mLogger.info("Number of bannedwordslist string rules: "+bannedwordslistStr.size());
         mLogger.info("Number of bannedwordslist regex rules: "+bannedwordslistRegex.size());
     }
@@ -286,8 +285,7 @@ public final class Bannedwordslist {
             str = str.substring(lastUpdatePos + LAST_UPDATE_STR.length());
             str = str.trim();
             try {
-                SimpleDateFormat sdf = new SimpleDateFormat("yyyy/MM/dd HH:mm:ss");
-                lastModified = DateUtil.parse(str, sdf);
+                lastModified = DateUtil.parse(str, "yyyy/MM/dd HH:mm:ss");
             } catch (ParseException e) {
                 mLogger.debug("ParseException reading " + str);
             }
@@ -310,34 +308,22 @@ public final class Bannedwordslist {
      */
     public boolean isBannedwordslisted(
          String str, List<String> moreStringRules, List<Pattern> moreRegexRules) {
+        return isBannedwordslisted(str,
+                BannedwordslistMatcher.compile(moreStringRules, moreRegexRules));
+    }
+
+    /** 
+     * Does the String argument match any of the rules in the built-in bannedwordslist
+     * or the additional, precompiled rules provided by caller?
+     * @param str       String to be checked against bannedwordslist
+     * @param moreRules Additional rules to consider, may be null
+     */
+    public boolean isBannedwordslisted(String str, BannedwordslistMatcher moreRules) {
         if (str == null || StringUtils.isEmpty(str)) {
             return false;
         }
-
-        // First iterate over bannedwordslist, doing indexOf.
-        // Then iterate over bannedwordslistRegex and test.
-        // As soon as there is a hit in either case return true
-        
-        // test plain String.indexOf
-        List<String> stringRules = bannedwordslistStr;
-        if (moreStringRules != null && !moreStringRules.isEmpty()) {
-            stringRules = new ArrayList<>();
-            stringRules.addAll(moreStringRules);
-            stringRules.addAll(bannedwordslistStr);
-        }
-        if (testStringRules(str, stringRules)) {
-            return true;
-        }
-        
-        // test regex bannedwordslisted
-        List<Pattern> regexRules = bannedwordslistRegex;
-        if (moreRegexRules != null && !moreRegexRules.isEmpty()) {
-            regexRules = new ArrayList<>();
-            regexRules.addAll(moreRegexRules);
-            regexRules.addAll(bannedwordslistRegex);
-        }
-        return testRegExRules(str, regexRules);
-    }      
+        return (moreRules != null && moreRules.matches(str)) || matcher.matches(str);
+    }
 
     /** 
      * Test string only against rules provided by caller, NOT against built-in bannedwordslist.
@@ -347,80 +333,8 @@ public final class Bannedwordslist {
      */
     public static boolean matchesRulesOnly(
         String str, List<String> stringRules, List<Pattern> regexRules) {
-        return testStringRules(str, stringRules) || testRegExRules(str, regexRules);
-    }
-        
-    /** Test String against the RegularExpression rules. */
-    private static boolean testRegExRules(String str, List<Pattern> regexRules) {
-        for (Pattern testPattern : regexRules) {
-            // want to see what it is matching on, but only in debug mode
-            if (mLogger.isDebugEnabled()) {
-                Matcher matcher = testPattern.matcher(str);
-                if (matcher.find()) {
-                    mLogger.debug(matcher.group()
-                            + " matched by " + testPattern.pattern());
-                    return true;
-                }
-            } else {
-                if (testPattern.matcher(str).find()) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        return BannedwordslistMatcher.compile(stringRules, regexRules).matches(str);
     }
-
-    /**
-     * Tests the source text against the String rules. Each String rule is
-     * first treated as a word-boundary, case insensitive regular expression.
-     * If a PatternSyntaxException is encountered, a simple contains test
-     * is performed.
-     *
-     * @param source The text in which to apply the matching rules.
-     * @param rules A list a simple matching rules.
-     *
-     * @return true if a match was found, otherwise false
-     */
-    private static boolean testStringRules(String source, List<String> rules) {
-        boolean matches = false;
-        
-        for (String rule : rules) {
-
-            try {
-                StringBuilder patternBuilder;
-                patternBuilder = new StringBuilder();
-                patternBuilder.append("\\b(");
-                patternBuilder.append(rule);
-                patternBuilder.append(")\\b");
-
-                Pattern pattern;
-                pattern = Pattern.compile(patternBuilder.toString(),
-                        Pattern.CASE_INSENSITIVE);
-
-                Matcher matcher;
-                matcher = pattern.matcher(source);
-
-                matches = matcher.find();
-                if (matches) {
-                    break;
-                }
-            }
-            catch (PatternSyntaxException e) {
-                matches = source.contains(rule);
-                if (matches) {
-                    break;
-                }
-            }
-            finally {
-                if (matches && mLogger.isDebugEnabled()) {
-                    // Log the matched rule in debug mode
-                    mLogger.debug("matched:" + rule + ":");
-                }
-            }
-        }
-        
-        return matches;
-    }   
     
     /** Utility method to populate lists based a bannedwordslist in string form */
     public static void populateSpamRules(
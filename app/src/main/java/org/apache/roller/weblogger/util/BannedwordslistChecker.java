@@ -19,6 +19,9 @@ package org.apache.roller.weblogger.util;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 import org.apache.roller.weblogger.config.WebloggerConfig;
@@ -33,6 +36,11 @@ import org.apache.roller.weblogger.pojos.Weblog;
  */
 public final class BannedwordslistChecker {
 
+    // upper bound on the number of weblogs with compiled rules held in memory
+    private static final int MAX_CACHED_WEBLOGS = 1000;
+
+    private static final Map<String, CompiledRules> WEBLOG_RULES = new ConcurrentHashMap<>();
+
     private BannedwordslistChecker() {
         // never instantiable
         throw new AssertionError();
@@ -66,15 +74,7 @@ public final class BannedwordslistChecker {
      */
     public static boolean checkReferrer(Weblog website, String referrerURL) {
         if (WebloggerConfig.getBooleanProperty("site.bannedwordslist.enable.referrers")) {
-            List<String> stringRules = new ArrayList<>();
-            List<Pattern> regexRules = new ArrayList<>();
-            Bannedwordslist.populateSpamRules(
-                website.getBannedwordslist(), stringRules, regexRules, null);
-            if (WebloggerRuntimeConfig.getProperty("spam.bannedwordslist") != null) {
-                Bannedwordslist.populateSpamRules(
-                    WebloggerRuntimeConfig.getProperty("spam.bannedwordslist"), stringRules, regexRules, null);
-            }
-            return Bannedwordslist.matchesRulesOnly(referrerURL, stringRules, regexRules);
+            return getWeblogRules(website).matches(referrerURL);
         }
         return false;
     }
@@ -84,21 +84,58 @@ public final class BannedwordslistChecker {
      * @return True if comment matches bannedwordslist term
      */
     private static boolean testComment(WeblogEntryComment c) {
-        boolean ret = false;
+        BannedwordslistMatcher rules = getWeblogRules(c.getWeblogEntry().getWebsite());
+        Bannedwordslist bannedwordslist = Bannedwordslist.getBannedwordslist();
+        return bannedwordslist.isBannedwordslisted(c.getUrl(),     rules)
+            || bannedwordslist.isBannedwordslisted(c.getEmail(),   rules)
+            || bannedwordslist.isBannedwordslisted(c.getName(),    rules)
+            || bannedwordslist.isBannedwordslisted(c.getContent(), rules);
+    }
+
+    /**
+     * Get the compiled site plus website bannedwordslist rules for a weblog.
+     * Compiled rules are cached per weblog and only rebuilt when either
+     * list has changed since they were compiled.
+     */
+    static BannedwordslistMatcher getWeblogRules(Weblog website) {
+        String weblogWords = website.getBannedwordslist();
+        String siteWords = WebloggerRuntimeConfig.getProperty("spam.bannedwordslist");
+
+        CompiledRules cached = WEBLOG_RULES.get(website.getId());
+        if (cached != null && cached.isFor(weblogWords, siteWords)) {
+            return cached.matcher;
+        }
+
         List<String> stringRules = new ArrayList<>();
         List<Pattern> regexRules = new ArrayList<>();
-        Weblog website = c.getWeblogEntry().getWebsite();
-        Bannedwordslist.populateSpamRules(
-            website.getBannedwordslist(), stringRules, regexRules,
-            WebloggerRuntimeConfig.getProperty("spam.bannedwordslist"));
-        Bannedwordslist bannedwordslist = Bannedwordslist.getBannedwordslist();
-        if (   bannedwordslist.isBannedwordslisted(c.getUrl(),     stringRules, regexRules)
-            || bannedwordslist.isBannedwordslisted(c.getEmail(),   stringRules, regexRules)
-            || bannedwordslist.isBannedwordslisted(c.getName(),    stringRules, regexRules)
-            || bannedwordslist.isBannedwordslisted(c.getContent(), stringRules, regexRules)) {
-            ret = true;
+        Bannedwordslist.populateSpamRules(weblogWords, stringRules, regexRules, siteWords);
+        CompiledRules compiled = new CompiledRules(weblogWords, siteWords,
+                BannedwordslistMatcher.compile(stringRules, regexRules));
+
+        if (website.getId() != null) {
+            if (WEBLOG_RULES.size() >= MAX_CACHED_WEBLOGS) {
+                WEBLOG_RULES.clear();
+            }
+            WEBLOG_RULES.put(website.getId(), compiled);
         }
-        return ret;
-    }        
-}
+        return compiled.matcher;
+    }
+
+    /** Compiled rules along with the lists they were compiled from. */
+    private static final class CompiledRules {
+        private final String weblogWords;
+        private final String siteWords;
+        private final BannedwordslistMatcher matcher;
 
+        CompiledRules(String weblogWords, String siteWords, BannedwordslistMatcher matcher) {
+            this.weblogWords = weblogWords;
+            this.siteWords = siteWords;
+            this.matcher = matcher;
+        }
+
+        boolean isFor(String weblogWords, String siteWords) {
+            return Objects.equals(this.weblogWords, weblogWords)
+                && Objects.equals(this.siteWords, siteWords);
+        }
+    }
+}
@@ -0,0 +1,308 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one or more
+*  contributor license agreements.  The ASF licenses this file to You
+* under the Apache License, Version 2.0 (the "License"); you may not
+* use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.  For additional information regarding
+* copyright in this work, please see the NOTICE file in the top level
+* directory of this distribution.
+*/
+package org.apache.roller.weblogger.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Immutable, precompiled form of a set of bannedwordslist rules.
+ * <br />
+ * String rules have always been matched as case insensitive, word bounded
+ * regular expressions, falling back to a plain contains test when a rule is
+ * not a valid expression.  Rules without any regex metacharacters are
+ * literals, so they are loaded into a single Aho-Corasick automaton and
+ * matched in one pass over the text.  The remaining string rules are joined
+ * into one alternation, as are the regex rules, so each group costs a single
+ * scan instead of one scan per rule.
+ * <br />
+ * Rules which cannot safely be combined (back references, or rules which
+ * only compile on their own) are kept as individual patterns.
+ */
+public final class BannedwordslistMatcher {
+    
+    private static final Log log = LogFactory.getLog(BannedwordslistMatcher.class);
+    
+    /** Matches nothing at all. */
+    public static final BannedwordslistMatcher EMPTY = new BannedwordslistMatcher(
+            Collections.emptyList(), Collections.emptyList());
+    
+    private static final String REGEX_METACHARS = "\\[](){}.*+?^$|";
+    private static final Pattern BACK_REFERENCE = Pattern.compile("\\\\([1-9]|k<)");
+    
+    private final LiteralAutomaton literals;
+    private final List<Pattern> patterns;
+    private final List<String> containsRules;
+    private final int ruleCount;
+    
+    
+    private BannedwordslistMatcher(List<String> stringRules, List<Pattern> regexRules) {
+        
+        List<String> literalRules = new ArrayList<>();
+        List<String> wordRules = new ArrayList<>();
+        List<String> plainRules = new ArrayList<>();
+        List<Pattern> separatePatterns = new ArrayList<>();
+        
+        for (String rule : stringRules) {
+            if (rule == null || rule.isEmpty()) {
+                continue;
+            }
+            if (isLiteral(rule)) {
+                literalRules.add(rule);
+                continue;
+            }
+            try {
+                Pattern single = Pattern.compile("\\b(" + rule + ")\\b", Pattern.CASE_INSENSITIVE);
+                if (BACK_REFERENCE.matcher(rule).find()) {
+                    separatePatterns.add(single);
+                } else {
+                    wordRules.add(rule);
+                }
+            } catch (PatternSyntaxException e) {
+                plainRules.add(rule);
+            }
+        }
+        
+        List<String> regexSources = new ArrayList<>();
+        for (Pattern pattern : regexRules) {
+            if (pattern.flags() != 0 || BACK_REFERENCE.matcher(pattern.pattern()).find()) {
+                separatePatterns.add(pattern);
+            } else {
+                regexSources.add(pattern.pattern());
+            }
+        }
+        
+        List<Pattern> compiled = new ArrayList<>();
+        combine(wordRules, "\\b(?:", ")\\b", Pattern.CASE_INSENSITIVE, compiled);
+        combine(regexSources, "(?:", ")", 0, compiled);
+        compiled.addAll(separatePatterns);
+        
+        this.literals = literalRules.isEmpty() ? null : new LiteralAutomaton(literalRules);
+        this.patterns = Collections.unmodifiableList(compiled);
+        this.containsRules = Collections.unmodifiableList(plainRules);
+        this.ruleCount = literalRules.size() + wordRules.size() + plainRules.size()
+                + separatePatterns.size() + regexSources.size();
+    }
+    
+    
+    /**
+     * Compile the given string and regex rules, as produced by
+     * {@link Bannedwordslist#populateSpamRules}.
+     */
+    public static BannedwordslistMatcher compile(List<String> stringRules, List<Pattern> regexRules) {
+        if ((stringRules == null || stringRules.isEmpty())
+                && (regexRules == null || regexRules.isEmpty())) {
+            return EMPTY;
+        }
+        return new BannedwordslistMatcher(
+                stringRules != null ? stringRules : Collections.emptyList(),
+                regexRules != null ? regexRules : Collections.emptyList());
+    }
+    
+    
+    /**
+     * Does the given text match any of the compiled rules?
+     */
+    public boolean matches(String str) {
+        if (str == null || str.isEmpty()) {
+            return false;
+        }
+        if (literals != null && literals.matches(str)) {
+            return true;
+        }
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(str).find()) {
+                if (log.isDebugEnabled()) {
+                    log.debug("matched by " + pattern.pattern());
+                }
+                return true;
+            }
+        }
+        for (String rule : containsRules) {
+            if (str.contains(rule)) {
+                if (log.isDebugEnabled()) {
+                    log.debug("matched:" + rule + ":");
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    
+    public boolean isEmpty() {
+        return ruleCount == 0;
+    }
+    
+    
+    /**
+     * Join the given expressions into a single alternation.  Each alternative
+     * gets its own group so that inline flags stay scoped to their rule.  If
+     * the combined expression does not compile, each expression is kept on
+     * its own instead.
+     */
+    private static void combine(List<String> sources, String prefix, String suffix,
+            int flags, List<Pattern> compiled) {
+        if (sources.isEmpty()) {
+            return;
+        }
+        StringBuilder buf = new StringBuilder(prefix);
+        for (int i = 0; i < sources.size(); i++) {
+            if (i > 0) {
+                buf.append('|');
+            }
+            buf.append("(?:").append(sources.get(i)).append(')');
+        }
+        buf.append(suffix);
+        try {
+            compiled.add(Pattern.compile(buf.toString(), flags));
+        } catch (PatternSyntaxException | StackOverflowError e) {
+            log.debug("Unable to combine rules, keeping them separate", e);
+            for (String source : sources) {
+                compiled.add(Pattern.compile(prefix + source + suffix, flags));
+            }
+        }
+    }
+    
+    
+    private static boolean isLiteral(String rule) {
+        for (int i = 0; i < rule.length(); i++) {
+            if (REGEX_METACHARS.indexOf(rule.charAt(i)) > -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    
+    /**
+     * Same as the word check used by java.util.regex for \b without the
+     * UNICODE_CHARACTER_CLASS flag.
+     */
+    private static boolean isWord(char ch) {
+        return ch == '_' || Character.isLetterOrDigit(ch);
+    }
+    
+    
+    /** ASCII only case folding, matching Pattern.CASE_INSENSITIVE. */
+    private static char fold(char ch) {
+        return (ch >= 'A' && ch <= 'Z') ? (char) (ch + ('a' - 'A')) : ch;
+    }
+    
+    
+    /**
+     * Aho-Corasick automaton over case folded literal rules.  A hit only
+     * counts when it sits on word boundaries, like the \b(rule)\b expression
+     * it replaces.
+     */
+    private static final class LiteralAutomaton {
+        
+        // per state: goto transitions, failure link and lengths of rules ending here
+        private final List<Map<Character, Integer>> transitions = new ArrayList<>();
+        private int[] failure;
+        private int[][] outputs;
+        
+        LiteralAutomaton(List<String> rules) {
+            List<List<Integer>> out = new ArrayList<>();
+            transitions.add(new HashMap<>());
+            out.add(new ArrayList<>());
+            
+            for (String rule : rules) {
+                int state = 0;
+                for (int i = 0; i < rule.length(); i++) {
+                    char ch = fold(rule.charAt(i));
+                    Integer next = transitions.get(state).get(ch);
+                    if (next == null) {
+                        next = transitions.size();
+                        transitions.add(new HashMap<>());
+                        out.add(new ArrayList<>());
+                        transitions.get(state).put(ch, next);
+                    }
+                    state = next;
+                }
+                out.get(state).add(rule.length());
+            }
+            
+            failure = new int[transitions.size()];
+            Queue<Integer> queue = new ArrayDeque<>();
+            for (Integer child : transitions.get(0).values()) {
+                queue.add(child);
+            }
+            while (!queue.isEmpty()) {
+                int state = queue.remove();
+                for (Map.Entry<Character, Integer> edge : transitions.get(state).entrySet()) {
+                    int child = edge.getValue();
+                    queue.add(child);
+                    int fallback = failure[state];
+                    while (fallback != 0 && !transitions.get(fallback).containsKey(edge.getKey())) {
+                        fallback = failure[fallback];
+                    }
+                    Integer target = transitions.get(fallback).get(edge.getKey());
+                    failure[child] = (target != null && target != child) ? target : 0;
+                    out.get(child).addAll(out.get(failure[child]));
+                }
+            }
+            
+            outputs = new int[out.size()][];
+            for (int i = 0; i < out.size(); i++) {
+                outputs[i] = out.get(i).stream().distinct().mapToInt(Integer::intValue).toArray();
+                Arrays.sort(outputs[i]);
+            }
+        }
+        
+        boolean matches(String str) {
+            int state = 0;
+            for (int i = 0; i < str.length(); i++) {
+                char ch = fold(str.charAt(i));
+                Integer next = transitions.get(state).get(ch);
+                while (next == null && state != 0) {
+                    state = failure[state];
+                    next = transitions.get(state).get(ch);
+                }
+                state = (next != null) ? next : 0;
+                for (int length : outputs[state]) {
+                    if (isBounded(str, i + 1 - length, i + 1)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+        
+        private static boolean isBounded(String str, int start, int end) {
+            return isBoundary(str, start) && isBoundary(str, end);
+        }
+        
+        private static boolean isBoundary(String str, int index) {
+            boolean before = index > 0 && isWord(str.charAt(index - 1));
+            boolean after = index < str.length() && isWord(str.charAt(index));
+            return before != after;
+        }
+    }
+    
+}
@@ -42,8 +42,7 @@ package org.apache.roller.weblogger.util;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Stack;
-import java.util.regex.Matcher;
+import java.util.Set;
 import java.util.regex.Pattern;
 import org.apache.commons.validator.routines.UrlValidator;
 import org.apache.roller.weblogger.config.WebloggerConfig;
@@ -54,22 +53,29 @@ public class HTMLSanitizer {
     public static Pattern forbiddenTags = Pattern.compile("^(script|object|embed|link|style|form|input)$");
     public static Pattern allowedTags = Pattern.compile("^(b|p|i|s|a|img|table|thead|tbody|tfoot|tr|th|td|dd|dl|dt|em|h1|h2|h3|h4|h5|h6|li|ul|ol|span|div|strike|strong|"
             + "sub|sup|pre|del|code|blockquote|kbd|br|hr|area|map|object|embed|param|link|form|small|big)$");
-    // <!--.........>
-    private static final Pattern commentPattern = Pattern.compile("<!--.*");
-    // <tag ....props.....>
-    private static final Pattern tagStartPattern = Pattern.compile("<(?i)(\\w+\\b)\\s*(.*)/?>$");
-    // </tag .........>
-    private static final Pattern tagClosePattern = Pattern.compile("</(?i)(\\w+\\b)\\s*>$");
-    private static final Pattern standAloneTags = Pattern.compile("^(img|br|hr)$");
-    private static final Pattern selfClosed = Pattern.compile("<.+/>");
-    // prop="...."
-    private static final Pattern attributesPattern = Pattern.compile("(\\w*)\\s*=\\s*\"([^\"]*)\"");
-    // color:red;
-    private static final Pattern stylePattern = Pattern.compile("([^\\s^:]+)\\s*:\\s*([^;]+);?");
-    // url('....')"
-    private static final Pattern urlStylePattern = Pattern.compile("(?i).*\\b\\s*url\\s*\\(['\"]([^)]*)['\"]\\)");
-    // expression(....)"   thanks to Ben Summer
-    private static final Pattern forbiddenStylePattern = Pattern.compile("(?:(expression|eval|javascript))\\s*\\(");
+
+    // the default tag patterns, and the same tag names as lookup tables
+    private static final Pattern DEFAULT_FORBIDDEN_TAGS = forbiddenTags;
+    private static final Pattern DEFAULT_ALLOWED_TAGS = allowedTags;
+    private static final Set<String> FORBIDDEN_TAG_NAMES = Set.of(
+            "script", "object", "embed", "link", "style", "form", "input");
+    private static final Set<String> ALLOWED_TAG_NAMES = Set.of(
+            "b", "p", "i", "s", "a", "img", "table", "thead", "tbody", "tfoot", "tr", "th", "td",
+            "dd", "dl", "dt", "em", "h1", "h2", "h3", "h4", "h5", "h6", "li", "ul", "ol", "span",
+            "div", "strike", "strong", "sub", "sup", "pre", "del", "code", "blockquote", "kbd",
+            "br", "hr", "area", "map", "object", "embed", "param", "link", "form", "small", "big");
+    private static final Set<String> STAND_ALONE_TAG_NAMES = Set.of("img", "br", "hr");
+
+    // functions forbidden in style values, when followed by "("   thanks to Ben Summer
+    private static final String[] FORBIDDEN_STYLE_CALLS = {"expression", "eval", "javascript"};
+
+    // outputs a sanitizer run builds
+    private static final int HTML = 1;
+    private static final int TEXT = 2;
+    private static final int VAL = 4;
+    private static final int ALL = HTML | TEXT | VAL;
+
+    private static final UrlValidator urlValidator = new UrlValidator(new String[]{"http", "https"});
 
     /**
      * This method should be used to test input.
@@ -78,7 +84,7 @@ public class HTMLSanitizer {
      * @return true if the input is "valid"
      */
     public static boolean isSanitized(String html) {
-        return sanitizer(html).isValid;
+        return sanitizer(html, allowedTags, forbiddenTags, 0).isValid;
     }
 
     /**
@@ -88,7 +94,7 @@ public class HTMLSanitizer {
      * @return sanitized html
      */
     public static String sanitize(String html) {
-        return sanitizer(html).html;
+        return sanitizer(html, allowedTags, forbiddenTags, HTML).html;
     }
 
     public static String conditionallySanitize(String ret) {
@@ -106,7 +112,7 @@ public class HTMLSanitizer {
      * @return sanitized text
      */
     public static String getText(String html) {
-        return sanitizer(html).text;
+        return sanitizer(html, allowedTags, forbiddenTags, TEXT).text;
     }
 
     /**
@@ -120,322 +126,702 @@ public class HTMLSanitizer {
     }
 
     public static SanitizeResult sanitizer(String html, Pattern allowedTags, Pattern forbiddenTags) {
-        SanitizeResult ret = new SanitizeResult();
-        Stack<String> openTags = new Stack<>();
+        return sanitizer(html, allowedTags, forbiddenTags, ALL);
+    }
+
+    /**
+     * Sanitize in a single pass over the input.  Text between tags is copied
+     * straight into the results, tags and their attributes are scanned in
+     * place, and only the requested outputs are built, the others are left
+     * empty in the result.
+     */
+    private static SanitizeResult sanitizer(String html, Pattern allowedTags, Pattern forbiddenTags,
+            int outputs) {
+        Sanitizer sanitizer = new Sanitizer(html, allowedTags, forbiddenTags, outputs);
+
+        int pos = 0;
+        int len = html.length();
+        while (pos < len) {
+            int end;
+            if (html.startsWith("<!--", pos)) {
+                // a comment is starting, search the end of <!-- ...... -->
+                end = moveToMarkerEnd(pos, "-->", html);
+                sanitizer.tag(pos, end);
+            } else if (html.charAt(pos) == '<') {
+                // a new "<" token is starting, search the end of <......>
+                end = moveToMarkerEnd(pos, ">", html);
+                sanitizer.tag(pos, end);
+            } else {
+                // text runs up to the next tag
+                end = html.indexOf('<', pos);
+                if (end < 0) {
+                    end = len;
+                }
+                sanitizer.text(pos, end);
+            }
+            pos = end;
+        }
 
+        return sanitizer.finish();
+    }
 
-        List<String> tokens = tokenize(html);
+    private static int moveToMarkerEnd(int pos, String marker, String s) {
+        int i = s.indexOf(marker, pos);
+        if (i > -1) {
+            pos = i + marker.length();
+        } else {
+            pos = s.length();
+        }
+        return pos;
+    }
 
-        // -------------------   LOOP for every token --------------------------
-        for (String token : tokens) {
-            boolean isAcceptedToken = false;
+    /**
+     * State of a single sanitizer run.
+     *
+     * Tags are scanned by hand rather than with regular expressions, but
+     * accept exactly what these expressions of the original implementation
+     * matched, which the tests check:
+     * <pre>
+     * open tag     &lt;(?i)(\w+\b)\s*(.*)/?&gt;$
+     * close tag    &lt;/(?i)(\w+\b)\s*&gt;$
+     * attribute    (\w*)\s*=\s*"([^"]*)"
+     * style        ([^\s^:]+)\s*:\s*([^;]+);?
+     * style url    (?i).*\b\s*url\s*\(['"]([^)]*)['"]\)
+     * </pre>
+     */
+    private static final class Sanitizer {
+
+        private final String src;
+        private final Pattern allowedTags;
+        private final Pattern forbiddenTags;
+
+        // requested outputs, null when not requested
+        private final StringBuilder html;
+        private final StringBuilder text;
+        private final StringBuilder val;
+        private final List<String> invalidTags = new ArrayList<>();
+        private final List<String> openTags = new ArrayList<>();
+
+        // the clean form of the tag being processed, reused for every tag
+        private StringBuilder cleanToken = null;
+
+        // where the name and the attributes of the last tag found are
+        private int nameEnd;
+        private int bodyStart;
+
+        Sanitizer(String src, Pattern allowedTags, Pattern forbiddenTags, int outputs) {
+            this.src = src;
+            this.allowedTags = allowedTags;
+            this.forbiddenTags = forbiddenTags;
+            int capacity = src.length();
+            this.html = ((outputs & HTML) != 0) ? new StringBuilder(capacity + 16) : null;
+            this.text = ((outputs & TEXT) != 0) ? new StringBuilder(capacity) : null;
+            this.val = ((outputs & VAL) != 0) ? new StringBuilder(capacity + 16) : null;
+        }
 
-            Matcher startMatcher = tagStartPattern.matcher(token);
-            Matcher endMatcher = tagClosePattern.matcher(token);
+        /**
+         * Plain text, which is never accepted as is and so always encoded.
+         */
+        void text(int start, int end) {
+            if (val != null) {
+                val.append(src, start, end);
+            }
+            encode(start, end);
+        }
 
+        /**
+         * A token starting with '<', which may be a comment, an open or a
+         * close tag, or something else which needs to be encoded.
+         */
+        void tag(int start, int end) {
 
             //--------------------------------------------------------------------------------  COMMENT    <!-- ......... -->
-            if (commentPattern.matcher(token).find()) {
-                ret.val = ret.val + token + (token.endsWith("-->") ? "" : "-->");
-                ret.invalidTags.add(token + (token.endsWith("-->") ? "" : "-->"));
-                continue;
-
+            int comment = src.indexOf("<!--", start);
+            if (comment >= 0 && comment + 4 <= end) {
+                String token = src.substring(start, end);
+                if (!token.endsWith("-->")) {
+                    token = token + "-->";
+                }
+                if (val != null) {
+                    val.append(token);
+                }
+                invalidTags.add(token);
+                return;
+            }
 
-                //--------------------------------------------------------------------------------  OPEN TAG    <tag .........>
-            } else if (startMatcher.find()) {
+            //--------------------------------------------------------------------------------  OPEN TAG    <tag .........>
+            int tagStart = findOpenTag(start, end);
+            if (tagStart >= 0) {
 
                 //tag name extraction
-                String tag = startMatcher.group(1).toLowerCase();
-
+                String tag = src.substring(tagStart + 1, nameEnd).toLowerCase();
 
                 //-----------------------------------------------------  FORBIDDEN TAG   <script .........>
-                if (forbiddenTags.matcher(tag).find()) {
-                    ret.invalidTags.add("<" + tag + ">");
-                    continue;
+                if (isForbidden(tag)) {
+                    invalidTags.add("<" + tag + ">");
+                    return;
+                }
 
+                // --------------------------------------------------------------------------------  UNKNOWN TAG
+                if (!isAllowed(tag)) {
+                    keepInvalid(start, end);
+                    return;
+                }
 
-                    // --------------------------------------------------  WELL KNOWN TAG
-                } else if (allowedTags.matcher(tag).find()) {
+                // --------------------------------------------------  WELL KNOWN TAG
+                //first test table consistency
+                //table tbody tfoot thead th tr td
+                if ("thead".equals(tag) || "tbody".equals(tag) || "tfoot".equals(tag) || "tr".equals(tag)) {
+                    if (search("table") < 1) {
+                        invalidTags.add("<" + tag + ">");
+                        return;
+                    }
+                } else if (("td".equals(tag) || "th".equals(tag)) && search("tr") < 1) {
+                    invalidTags.add("<" + tag + ">");
+                    return;
+                }
 
+                StringBuilder clean = startCleanToken();
+                clean.append('<').append(tag);
+                boolean foundURL = appendAttributes(tag, bodyStart, end - 1, clean);
+                clean.append('>');
 
-                    String cleanToken = "<" + tag;
-                    String tokenBody = startMatcher.group(2);
+                // for <img> and <a>, which are dropped without a valid URL
+                if (("a".equals(tag) || "img".equals(tag) || "embed".equals(tag)) && !foundURL) {
+                    return;
+                }
 
+                // push the tag if require closure
+                if (!STAND_ALONE_TAG_NAMES.contains(tag)) {
+                    openTags.add(tag);
+                }
+                accept(clean);
+                return;
+            }
 
-                    //first test table consistency
-                    //table tbody tfoot thead th tr td
-                    if ("thead".equals(tag) || "tbody".equals(tag) || "tfoot".equals(tag) || "tr".equals(tag)) {
-                        if (openTags.search("table") < 1) {
-                            ret.invalidTags.add("<" + tag + ">");
-                            continue;
-                        }
-                    } else if (("td".equals(tag) || "th".equals(tag)) && openTags.search("tr") < 1) {
-                        ret.invalidTags.add("<" + tag + ">");
-                        continue;
-                    }
+            // --------------------------------------------------------------------------------  CLOSE TAG </tag>
+            tagStart = findCloseTag(start, end);
+            if (tagStart >= 0) {
+                String tag = src.substring(tagStart + 2, nameEnd).toLowerCase();
 
+                if (isForbidden(tag)) {
+                    invalidTags.add("/" + tag);
+                    return;
+                }
+                if (!isAllowed(tag)) {
+                    keepInvalid(start, end);
+                    return;
+                }
 
-                    // then test properties
-                    Matcher attributes = attributesPattern.matcher(tokenBody);
-
-                    // URL flag
-                    boolean foundURL = false;
-                    while (attributes.find()) {
-
-                        String attr = attributes.group(1).toLowerCase();
-                        String val = attributes.group(2);
-
-                        // we will accept href in case of <A>
-                        // <a href="......">
-                        if ("a".equals(tag) && "href".equals(attr)) {
-                            String[] customSchemes = {"http", "https"};
-                            if (new UrlValidator(customSchemes).isValid(val)) {
-                                foundURL = true;
-                            } else {
-                                // may be it is a mailto?
-                                // case <a href="mailto:pippo@pippo.com?subject=...."
-                                if (val.toLowerCase().startsWith("mailto:") && val.indexOf('@') >= 0) {
-                                    String val1 = "http://www." + val.substring(val.indexOf('@') + 1);
-                                    if (new UrlValidator(customSchemes).isValid(val1)) {
-                                        foundURL = true;
-                                    } else {
-                                        ret.invalidTags.add(attr + " " + val);
-                                        val = "";
-                                    }
-                                } else {
-                                    ret.invalidTags.add(attr + " " + val);
-                                    val = "";
-                                }
-                            }
-
-                        } else if (tag.matches("img|embed") && "src".equals(attr)) {
-                            // <img src="......">
-                            String[] customSchemes = {"http", "https"};
-                            if (new UrlValidator(customSchemes).isValid(val)) {
-                                foundURL = true;
-                            } else {
-                                ret.invalidTags.add(attr + " " + val);
-                                val = "";
-                            }
-                        } else if ("href".equals(attr) || "src".equals(attr)) {
-                            // <tag src/href="......">   skipped
-                            ret.invalidTags.add(tag + " " + attr + " " + val);
-                            continue;
-                        } else if (attr.matches("width|height")) {
-                            // <tag width/height="......">
-                            if (!val.toLowerCase().matches("\\d+%|\\d+$")) {
-                                // test numeric values
-                                ret.invalidTags.add(tag + " " + attr + " " + val);
-                                continue;
-                            }
-
-                        } else if ("style".equals(attr)) {
-                            // <tag style="......">
-                            // then test properties
-                            Matcher styles = stylePattern.matcher(val);
-                            String cleanStyle = "";
-
-                            while (styles.find()) {
-                                String styleName = styles.group(1).toLowerCase();
-                                String styleValue = styles.group(2);
-
-                                // suppress invalid styles values
-                                if (forbiddenStylePattern.matcher(styleValue).find()) {
-                                    ret.invalidTags.add(tag + " " + attr + " " + styleValue);
-                                    continue;
-                                }
-
-                                // check if valid url
-                                Matcher urlStyleMatcher = urlStylePattern.matcher(styleValue);
-                                if (urlStyleMatcher.find()) {
-                                    String[] customSchemes = {"http", "https"};
-                                    String url = urlStyleMatcher.group(1);
-                                    if (!new UrlValidator(customSchemes).isValid(url)) {
-                                        ret.invalidTags.add(tag + " " + attr + " " + styleValue);
-                                        continue;
-                                    }
-                                }
-
-                                cleanStyle = cleanStyle + styleName + ":" + encode(styleValue) + ";";
-
-                            }
-                            val = cleanStyle;
-
-                        } else if (attr.startsWith("on")) {
-                            // skip all javascript events
-                            ret.invalidTags.add(tag + " " + attr + " " + val);
-                            continue;
-
-                        } else {
-                            // by default encode all properties
-                            val = encode(val);
-                        }
-
-                        cleanToken = cleanToken + " " + attr + "=\"" + val + "\"";
+                // check tag position in the stack, pop all elements before tag and close it
+                int pos = search(tag);
+                if (pos >= 1) {
+                    StringBuilder clean = startCleanToken();
+                    for (int i = 1; i <= pos; i++) {
+                        String poppedTag = openTags.remove(openTags.size() - 1);
+                        clean.append("</").append(poppedTag).append('>');
                     }
-                    cleanToken = cleanToken + ">";
+                    accept(clean);
+                }
+                return;
+            }
 
-                    isAcceptedToken = true;
+            // anything else is encoded
+            if (val != null) {
+                val.append(src, start, end);
+            }
+            encode(start, end);
+        }
 
-                    // for <img> and <a>
-                    if (tag.matches("a|img|embed") && !foundURL) {
-                        isAcceptedToken = false;
-                        cleanToken = "";
-                    }
+        /**
+         * Find an open tag in the token.
+         *
+         * @return where the tag starts, or -1 if there is none
+         */
+        private int findOpenTag(int start, int end) {
+            int last = end - 1;
+            if (last <= start || src.charAt(last) != '>') {
+                return -1;
+            }
+            for (int i = src.indexOf('<', start); i >= 0 && i < last; i = src.indexOf('<', i + 1)) {
+                int name = wordEnd(i + 1, last);
+                if (name == i + 1 || isWordAt(src, name, start)) {
+                    continue;
+                }
+                int body = spacesEnd(src, name, last);
+                if (!hasLineTerminator(body, last)) {
+                    nameEnd = name;
+                    bodyStart = body;
+                    return i;
+                }
+            }
+            return -1;
+        }
 
-                    token = cleanToken;
+        /**
+         * Find a close tag in the token.
+         *
+         * @return where the tag starts, or -1 if there is none
+         */
+        private int findCloseTag(int start, int end) {
+            int last = end - 1;
+            if (last <= start || src.charAt(last) != '>') {
+                return -1;
+            }
+            for (int i = src.indexOf("</", start); i >= 0 && i + 1 < last; i = src.indexOf("</", i + 1)) {
+                int name = wordEnd(i + 2, last);
+                if (name == i + 2 || isWordAt(src, name, start)) {
+                    continue;
+                }
+                if (spacesEnd(src, name, last) == last) {
+                    nameEnd = name;
+                    return i;
+                }
+            }
+            return -1;
+        }
 
+        /**
+         * Append the accepted attributes of an allowed tag, found between
+         * start and end.
+         *
+         * @return true if the tag has a valid URL
+         */
+        private boolean appendAttributes(String tag, int start, int end, StringBuilder cleanToken) {
+
+            // URL flag
+            boolean foundURL = false;
+
+            int pos = start;
+            while (pos < end) {
+                // prop="...."
+                int name = wordEnd(pos, end);
+                int equals = spacesEnd(src, name, end);
+                int quote = (equals < end && src.charAt(equals) == '=') ? spacesEnd(src, equals + 1, end) : end;
+                if (quote >= end || src.charAt(quote) != '"') {
+                    pos = name + 1;
+                    continue;
+                }
+                int closeQuote = src.indexOf('"', quote + 1);
+                if (closeQuote < 0 || closeQuote >= end) {
+                    break;
+                }
 
-                    // push the tag if require closure and it is accepted (otherwise is encoded)
-                    if (isAcceptedToken && !(standAloneTags.matcher(tag).find() || selfClosed.matcher(tag).find())) {
-                        openTags.push(tag);
+                String attr = src.substring(pos, name).toLowerCase();
+                String val = src.substring(quote + 1, closeQuote);
+                pos = closeQuote + 1;
+
+                // we will accept href in case of <A>
+                // <a href="......">
+                if ("a".equals(tag) && "href".equals(attr)) {
+                    if (urlValidator.isValid(val)) {
+                        foundURL = true;
+                    } else if (val.toLowerCase().startsWith("mailto:") && val.indexOf('@') >= 0
+                            && urlValidator.isValid("http://www." + val.substring(val.indexOf('@') + 1))) {
+                        // may be it is a mailto?
+                        // case <a href="mailto:pippo@pippo.com?subject=...."
+                        foundURL = true;
+                    } else {
+                        invalidTags.add(attr + " " + val);
+                        val = "";
                     }
 
-                    // --------------------------------------------------------------------------------  UNKNOWN TAG
-                } else {
-                    ret.invalidTags.add(token);
-                    ret.val = ret.val + token;
+                } else if (("img".equals(tag) || "embed".equals(tag)) && "src".equals(attr)) {
+                    // <img src="......">
+                    if (urlValidator.isValid(val)) {
+                        foundURL = true;
+                    } else {
+                        invalidTags.add(attr + " " + val);
+                        val = "";
+                    }
+                } else if ("href".equals(attr) || "src".equals(attr)) {
+                    // <tag src/href="......">   skipped
+                    invalidTags.add(tag + " " + attr + " " + val);
                     continue;
+                } else if ("width".equals(attr) || "height".equals(attr)) {
+                    // <tag width/height="......">
+                    if (!isDimension(val)) {
+                        // test numeric values
+                        invalidTags.add(tag + " " + attr + " " + val);
+                        continue;
+                    }
 
+                } else if ("style".equals(attr)) {
+                    // <tag style="......">
+                    val = cleanStyle(tag, attr, val);
 
+                } else if (attr.startsWith("on")) {
+                    // skip all javascript events
+                    invalidTags.add(tag + " " + attr + " " + val);
+                    continue;
+
+                } else {
+                    // by default encode all properties
+                    val = HTMLSanitizer.encode(val);
                 }
 
-                // --------------------------------------------------------------------------------  CLOSE TAG </tag>
-            } else if (endMatcher.find()) {
-                String tag = endMatcher.group(1).toLowerCase();
+                cleanToken.append(' ').append(attr).append("=\"").append(val).append('"');
+            }
+            return foundURL;
+        }
 
-                //is self closing
-                if (selfClosed.matcher(tag).find()) {
-                    ret.invalidTags.add(token);
-                    continue;
+        /**
+         * Keep only the safe properties of a style attribute.
+         */
+        private String cleanStyle(String tag, String attr, String style) {
+            StringBuilder cleanStyle = new StringBuilder(style.length());
+
+            int len = style.length();
+            int pos = 0;
+            while (pos < len) {
+                // color:red;
+                int name = pos;
+                while (name < len && isStyleNameChar(style.charAt(name))) {
+                    name++;
                 }
-                if (forbiddenTags.matcher(tag).find()) {
-                    ret.invalidTags.add("/" + tag);
+                int colon = spacesEnd(style, name, len);
+                if (name == pos || colon >= len || style.charAt(colon) != ':') {
+                    pos = name + 1;
                     continue;
                 }
-                if (!allowedTags.matcher(tag).find()) {
-                    ret.invalidTags.add(token);
-                    ret.val = ret.val + token;
+                int value = spacesEnd(style, colon + 1, len);
+                int valueEnd = style.indexOf(';', value);
+                if (valueEnd < 0) {
+                    valueEnd = len;
+                }
+                if (value == valueEnd) {
+                    if (value == colon + 1) {
+                        pos = name + 1;
+                        continue;
+                    }
+                    // the value is the last of the spaces after the colon
+                    value--;
+                }
+
+                String styleName = style.substring(pos, name).toLowerCase();
+                String styleValue = style.substring(value, valueEnd);
+                pos = (valueEnd < len) ? valueEnd + 1 : len;
+
+                // suppress invalid styles values
+                if (hasForbiddenCall(styleValue)) {
+                    invalidTags.add(tag + " " + attr + " " + styleValue);
                     continue;
-                } else {
+                }
 
+                // check if valid url
+                String url = findStyleUrl(styleValue);
+                if (url != null && !urlValidator.isValid(url)) {
+                    invalidTags.add(tag + " " + attr + " " + styleValue);
+                    continue;
+                }
 
-                    String cleanToken = "";
+                cleanStyle.append(styleName).append(':').append(HTMLSanitizer.encode(styleValue)).append(';');
+            }
+            return cleanStyle.toString();
+        }
 
-                    // check tag position in the stack
-                    int pos = openTags.search(tag);
-                    // if found on top ok
-                    for (int i = 1; i <= pos; i++) {
-                        //pop all elements before tag and close it
-                        String poppedTag = openTags.pop();
-                        cleanToken = cleanToken + "</" + poppedTag + ">";
-                        isAcceptedToken = true;
-                    }
+        SanitizeResult finish() {
+            SanitizeResult ret = new SanitizeResult();
 
-                    token = cleanToken;
+            // must close remaining tags
+            for (int i = openTags.size() - 1; i >= 0; i--) {
+                String poppedTag = openTags.get(i);
+                if (html != null) {
+                    html.append("</").append(poppedTag).append('>');
+                }
+                if (val != null) {
+                    val.append("</").append(poppedTag).append('>');
                 }
-
             }
+            openTags.clear();
 
-            ret.val = ret.val + token;
+            if (html != null) {
+                ret.html = html.toString();
+            }
+            if (text != null) {
+                ret.text = text.toString();
+            }
+            if (val != null) {
+                ret.val = val.toString();
+            }
+            ret.invalidTags = invalidTags;
+            //set boolean value
+            ret.isValid = invalidTags.isEmpty();
+            return ret;
+        }
 
-            if (isAcceptedToken) {
-                ret.html = ret.html + token;
-                //ret.text = ret.text + " ";
+        private StringBuilder startCleanToken() {
+            if (cleanToken == null) {
+                cleanToken = new StringBuilder(64);
             } else {
-                String sanToken = htmlEncodeApexesAndTags(token);
-                ret.html = ret.html + sanToken;
-                ret.text = ret.text + htmlEncodeApexesAndTags(removeLineFeed(token));
+                cleanToken.setLength(0);
+            }
+            return cleanToken;
+        }
+
+        private void accept(StringBuilder token) {
+            if (val != null) {
+                val.append(token);
+            }
+            if (html != null) {
+                html.append(token);
+            }
+        }
+
+        private void keepInvalid(int start, int end) {
+            String token = src.substring(start, end);
+            invalidTags.add(token);
+            if (val != null) {
+                val.append(token);
+            }
+        }
+
+        private void encode(int start, int end) {
+            if (html != null) {
+                for (int i = start; i < end; i++) {
+                    appendEncoded(html, src.charAt(i));
+                }
+            }
+            if (text != null) {
+                for (int i = start; i < end; i++) {
+                    char c = src.charAt(i);
+                    if (c == '\n' || c == '\f' || c == '\r') {
+                        text.append(' ');
+                    } else {
+                        appendEncoded(text, c);
+                    }
+                }
             }
+        }
 
+        private int wordEnd(int pos, int end) {
+            while (pos < end && isWordChar(src.charAt(pos))) {
+                pos++;
+            }
+            return pos;
+        }
 
+        private boolean hasLineTerminator(int start, int end) {
+            for (int i = start; i < end; i++) {
+                if (isLineTerminator(src.charAt(i))) {
+                    return true;
+                }
+            }
+            return false;
         }
 
-        // must close remaining tags
-        while (!openTags.isEmpty()) {
-            //pop all elements before tag and close it
-            String poppedTag = openTags.pop();
-            ret.html = ret.html + "</" + poppedTag + ">";
-            ret.val = ret.val + "</" + poppedTag + ">";
+        /**
+         * Same as Stack.search(), the 1-based position of the tag from the
+         * top of the open tags, or -1 if it is not open.
+         */
+        private int search(String tag) {
+            int i = openTags.lastIndexOf(tag);
+            return (i >= 0) ? openTags.size() - i : -1;
         }
 
-        //set boolean value
-        ret.isValid = ret.invalidTags.isEmpty();
+        private boolean isAllowed(String tag) {
+            return (allowedTags == DEFAULT_ALLOWED_TAGS)
+                    ? ALLOWED_TAG_NAMES.contains(tag) : allowedTags.matcher(tag).find();
+        }
 
-        return ret;
+        private boolean isForbidden(String tag) {
+            return (forbiddenTags == DEFAULT_FORBIDDEN_TAGS)
+                    ? FORBIDDEN_TAG_NAMES.contains(tag) : forbiddenTags.matcher(tag).find();
+        }
+    }
+
+    /**
+     * True for a width or height, a number or a percentage.
+     */
+    private static boolean isDimension(String value) {
+        int len = value.length();
+        int digits = 0;
+        while (digits < len && isDigit(value.charAt(digits))) {
+            digits++;
+        }
+        return digits > 0 && (digits == len || (digits == len - 1 && value.charAt(digits) == '%'));
+    }
+
+    /**
+     * True if a style value calls expression(), eval() or javascript().
+     */
+    private static boolean hasForbiddenCall(String value) {
+        for (String call : FORBIDDEN_STYLE_CALLS) {
+            for (int i = value.indexOf(call); i >= 0; i = value.indexOf(call, i + 1)) {
+                int paren = spacesEnd(value, i + call.length(), value.length());
+                if (paren < value.length() && value.charAt(paren) == '(') {
+                    return true;
+                }
+            }
+        }
+        return false;
     }
 
     /**
-     * Splits html tag and tag content <......>.
+     * The url('...') of a style value the original expression would have
+     * found: of the first line holding one, the last which starts a word.
      *
-     * @param html
-     * @return a list of token
+     * @return the quoted url, or null if there is none
      */
-    private static List<String> tokenize(String html) {
-        List<String> tokens = new ArrayList<>();
-        int pos = 0;
-        String token = "";
-        int len = html.length();
-        while (pos < len) {
-            char c = html.charAt(pos);
+    private static String findStyleUrl(String value) {
+        String url = null;
+        int lineEnd = -1;
+        for (int u = indexOfUrl(value, 0); u >= 0; u = indexOfUrl(value, u + 3)) {
+            String argument = urlArgument(value, u + 3);
+            if (argument == null) {
+                continue;
+            }
 
-            String ahead = html.substring(pos, pos > len - 4 ? len : pos + 4);
+            // the word boundary is either before the spaces leading to
+            // "url" or right before it
+            int boundary;
+            int spaces = u;
+            while (spaces > 0 && isSpace(value.charAt(spaces - 1))) {
+                spaces--;
+            }
+            if (spaces < u && isWordBefore(value, spaces)) {
+                boundary = spaces;
+            } else if (!isWordBefore(value, u)) {
+                boundary = u;
+            } else {
+                continue;
+            }
 
-            //a comment is starting
-            if ("<!--".equals(ahead)) {
-                //store the current token
-                if (token.length() > 0) {
-                    tokens.add(token);
+            if (url == null) {
+                lineEnd = boundary;
+                while (lineEnd < value.length() && !isLineTerminator(value.charAt(lineEnd))) {
+                    lineEnd++;
                 }
+            } else if (boundary > lineEnd) {
+                break;
+            }
+            url = argument;
+        }
+        return url;
+    }
+
+    // index of "url" in any case, starting at from
+    private static int indexOfUrl(String value, int from) {
+        for (int i = from; i + 3 <= value.length(); i++) {
+            if ((value.charAt(i) | 0x20) == 'u' && (value.charAt(i + 1) | 0x20) == 'r'
+                    && (value.charAt(i + 2) | 0x20) == 'l') {
+                return i;
+            }
+        }
+        return -1;
+    }
 
-                //clear the token
-                token = "";
+    // the quoted argument of ('...') at pos, or null if there is none there
+    private static String urlArgument(String value, int pos) {
+        int paren = spacesEnd(value, pos, value.length());
+        int quote = paren + 1;
+        if (quote >= value.length() || value.charAt(paren) != '(' || !isQuote(value.charAt(quote))) {
+            return null;
+        }
+        int close = value.indexOf(')', quote + 1);
+        if (close < quote + 2 || !isQuote(value.charAt(close - 1))) {
+            return null;
+        }
+        return value.substring(quote + 1, close - 1);
+    }
 
-                // search the end of <......>
-                int end = moveToMarkerEnd(pos, "-->", html);
-                tokens.add(html.substring(pos, end));
-                pos = end;
+    private static int spacesEnd(String s, int pos, int end) {
+        while (pos < end && isSpace(s.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
 
+    // \s
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
 
-                // a new "<" token is starting
-            } else if ('<' == c) {
+    // \w
+    private static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || isDigit(c) || c == '_';
+    }
 
-                //store the current token
-                if (token.length() > 0) {
-                    tokens.add(token);
-                }
+    // \d
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
 
-                //clear the token
-                token = "";
+    // [^\s^:]
+    private static boolean isStyleNameChar(char c) {
+        return !isSpace(c) && c != '^' && c != ':';
+    }
 
-                // serch the end of <......>
-                int end = moveToMarkerEnd(pos, ">", html);
-                tokens.add(html.substring(pos, end));
-                pos = end;
+    private static boolean isQuote(char c) {
+        return c == '\'' || c == '"';
+    }
 
-            } else {
-                token = token + c;
-                pos++;
-            }
+    // the characters "." doesn't match
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
 
+    /*
+     * Word characters on either side of a \b boundary are letters, digits,
+     * '_' and the non-spacing marks following one, as java.util.regex has
+     * them up to Java 18.
+     */
+
+    private static boolean isWordAt(String s, int pos, int from) {
+        if (pos >= s.length()) {
+            return false;
         }
+        int c = s.codePointAt(pos);
+        return isBoundaryWordChar(c) || (Character.getType(c) == Character.NON_SPACING_MARK
+                && hasBaseCharacter(s, pos, from));
+    }
 
-        //store the last token
-        if (token.length() > 0) {
-            tokens.add(token);
+    private static boolean isWordBefore(String s, int pos) {
+        if (pos <= 0) {
+            return false;
         }
+        int c = s.codePointBefore(pos);
+        return isBoundaryWordChar(c) || (Character.getType(c) == Character.NON_SPACING_MARK
+                && hasBaseCharacter(s, pos - 1, 0));
+    }
 
-        return tokens;
+    private static boolean isBoundaryWordChar(int c) {
+        return c == '_' || Character.isLetterOrDigit(c);
     }
 
-    private static int moveToMarkerEnd(int pos, String marker, String s) {
-        int i = s.indexOf(marker, pos);
-        if (i > -1) {
-            pos = i + marker.length();
-        } else {
-            pos = s.length();
+    private static boolean hasBaseCharacter(String s, int pos, int from) {
+        for (int i = pos; i >= from; i--) {
+            int c = s.codePointAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                return true;
+            }
+            if (Character.getType(c) != Character.NON_SPACING_MARK) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Append a character encoded as htmlEncodeApexesAndTags() would.
+     */
+    private static void appendEncoded(StringBuilder buf, char c) {
+        switch (c) {
+            case '"':
+                buf.append("&quot;");
+                break;
+            case '\'':
+                buf.append("&#39;");
+                break;
+            case '<':
+                buf.append("&lt;");
+                break;
+            case '>':
+                buf.append("&gt;");
+                break;
+            default:
+                buf.append(c);
         }
-        return pos;
     }
 
     /**
@@ -456,7 +842,28 @@ public class HTMLSanitizer {
     }
 
     public static String encode(String s) {
-        return convertLineFeedToBR(htmlEncodeApexesAndTags(s == null ? "" : s));
+        if (s == null) {
+            return "";
+        }
+        StringBuilder buf = null;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\'' || c == '<' || c == '>' || c == '\n' || c == '\f' || c == '\r') {
+                if (buf == null) {
+                    buf = new StringBuilder(s.length() + 16).append(s, 0, i);
+                }
+                if (c == '\n' || c == '\f') {
+                    buf.append("<br>");
+                } else if (c == '\r') {
+                    buf.append(' ');
+                } else {
+                    appendEncoded(buf, c);
+                }
+            } else if (buf != null) {
+                buf.append(c);
+            }
+        }
+        return (buf != null) ? buf.toString() : s;
     }
 
     public static final String htmlEncodeApexesAndTags(String source) {
@@ -0,0 +1,306 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one or more
+*  contributor license agreements.  The ASF licenses this file to You
+* under the Apache License, Version 2.0 (the "License"); you may not
+* use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.  For additional information regarding
+* copyright in this work, please see the NOTICE file in the top level
+* directory of this distribution.
+*/
+
+package org.apache.roller.weblogger.util;
+
+
+/**
+ * Immutable binary radix trie of IPv4 and IPv6 address ranges.
+ *
+ * Entries are single addresses or CIDR blocks such as 10.1.0.0/16 or
+ * 2001:db8::/32.  Adding an entry copies only the path to it and returns a
+ * new trie, so a trie can be shared with readers without any locking and
+ * replaced atomically.  IPv4-mapped IPv6 addresses are treated as IPv4.
+ */
+public final class IPAddressTrie {
+    
+    /** Trie which contains nothing. */
+    public static final IPAddressTrie EMPTY = new IPAddressTrie(null, null, 0);
+    
+    private final Node ipv4Root;
+    private final Node ipv6Root;
+    private final int size;
+    
+    
+    private IPAddressTrie(Node ipv4Root, Node ipv6Root, int size) {
+        this.ipv4Root = ipv4Root;
+        this.ipv6Root = ipv6Root;
+        this.size = size;
+    }
+    
+    
+    /**
+     * Return a trie which also contains the given address or CIDR block.
+     *
+     * @throws IllegalArgumentException if the entry is not a valid address or block
+     */
+    public IPAddressTrie with(String entry) {
+        
+        String address = entry.trim();
+        int prefixLength = -1;
+        int slash = address.indexOf('/');
+        if (slash > -1) {
+            try {
+                prefixLength = Integer.parseInt(address.substring(slash + 1).trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid prefix length: " + entry, e);
+            }
+            address = address.substring(0, slash).trim();
+        }
+        
+        byte[] bytes = toBytes(address);
+        if (bytes == null) {
+            throw new IllegalArgumentException("Invalid address: " + entry);
+        }
+        
+        int bits = bytes.length * 8;
+        if (prefixLength < 0) {
+            prefixLength = bits;
+        } else if (prefixLength > bits) {
+            throw new IllegalArgumentException("Invalid prefix length: " + entry);
+        }
+        
+        if (bytes.length == 4) {
+            return new IPAddressTrie(insert(ipv4Root, bytes, 0, prefixLength), ipv6Root, size + 1);
+        }
+        return new IPAddressTrie(ipv4Root, insert(ipv6Root, bytes, 0, prefixLength), size + 1);
+    }
+    
+    
+    /**
+     * Is the given address inside any of the entries of this trie?
+     * Strings which are not IP address literals are never contained.
+     */
+    public boolean contains(String address) {
+        if (address == null || size == 0) {
+            return false;
+        }
+        byte[] bytes = toBytes(address);
+        if (bytes == null) {
+            return false;
+        }
+        
+        Node node = (bytes.length == 4) ? ipv4Root : ipv6Root;
+        int bits = bytes.length * 8;
+        for (int i = 0; node != null; i++) {
+            if (node.terminal) {
+                return true;
+            }
+            if (i == bits) {
+                return false;
+            }
+            node = bit(bytes, i) ? node.one : node.zero;
+        }
+        return false;
+    }
+    
+    
+    /** Number of entries added to this trie. */
+    public int size() {
+        return size;
+    }
+    
+    
+    private static Node insert(Node node, byte[] bytes, int depth, int prefixLength) {
+        if (node != null && node.terminal) {
+            // already covered by a shorter prefix
+            return node;
+        }
+        if (depth == prefixLength) {
+            return Node.TERMINAL;
+        }
+        Node zero = (node != null) ? node.zero : null;
+        Node one = (node != null) ? node.one : null;
+        if (bit(bytes, depth)) {
+            one = insert(one, bytes, depth + 1, prefixLength);
+        } else {
+            zero = insert(zero, bytes, depth + 1, prefixLength);
+        }
+        return new Node(zero, one, false);
+    }
+    
+    
+    private static boolean bit(byte[] bytes, int index) {
+        return (bytes[index >>> 3] & (0x80 >>> (index & 7))) != 0;
+    }
+    
+    
+    /**
+     * Parse an IP address literal, never doing a name lookup.
+     */
+    private static byte[] toBytes(String address) {
+        if (address.indexOf(':') > -1) {
+            String literal = address;
+            if (literal.startsWith("[") && literal.endsWith("]")) {
+                literal = literal.substring(1, literal.length() - 1);
+            }
+            byte[] bytes = parseIPv6(literal);
+            if (bytes != null && isIPv4Mapped(bytes)) {
+                // IPv4-mapped addresses are treated as IPv4
+                return new byte[] { bytes[12], bytes[13], bytes[14], bytes[15] };
+            }
+            return bytes;
+        }
+        return parseIPv4(address);
+    }
+    
+    
+    /**
+     * Parse groups of up to 4 hex digits separated by ':', with at most one
+     * "::" standing for one or more zero groups, and optionally ending in an
+     * IPv4 address.
+     */
+    private static byte[] parseIPv6(String address) {
+        
+        int gap = address.indexOf("::");
+        if (gap > -1 && address.indexOf("::", gap + 1) > -1) {
+            return null;
+        }
+        
+        byte[] head = new byte[16];
+        int headLength = 0;
+        byte[] tail = new byte[16];
+        int tailLength = 0;
+        if (gap < 0) {
+            headLength = parseGroups(address, head, true);
+            if (headLength != 16) {
+                return null;
+            }
+        } else {
+            if (gap > 0) {
+                headLength = parseGroups(address.substring(0, gap), head, false);
+            }
+            if (gap + 2 < address.length()) {
+                tailLength = parseGroups(address.substring(gap + 2), tail, true);
+            }
+            if (headLength < 0 || tailLength < 0 || headLength + tailLength > 14) {
+                return null;
+            }
+        }
+        
+        byte[] bytes = new byte[16];
+        System.arraycopy(head, 0, bytes, 0, headLength);
+        System.arraycopy(tail, 0, bytes, 16 - tailLength, tailLength);
+        return bytes;
+    }
+    
+    
+    /**
+     * Parse groups separated by single ':' into bytes.
+     *
+     * @param ipv4 whether the groups may end in an IPv4 address
+     * @return the number of bytes parsed, or -1 if the groups are invalid
+     */
+    private static int parseGroups(String groups, byte[] bytes, boolean ipv4) {
+        int length = 0;
+        int start = 0;
+        while (true) {
+            int end = groups.indexOf(':', start);
+            if (end < 0) {
+                end = groups.length();
+            }
+            String group = groups.substring(start, end);
+            if (ipv4 && end == groups.length() && group.indexOf('.') > -1) {
+                // embedded IPv4 address in the last two groups
+                byte[] embedded = parseIPv4(group);
+                if (embedded == null || length > 12) {
+                    return -1;
+                }
+                System.arraycopy(embedded, 0, bytes, length, 4);
+                return length + 4;
+            }
+            if (group.isEmpty() || group.length() > 4 || length > 14) {
+                return -1;
+            }
+            int value = 0;
+            for (int i = 0; i < group.length(); i++) {
+                char ch = group.charAt(i);
+                int digit;
+                if (ch >= '0' && ch <= '9') {
+                    digit = ch - '0';
+                } else if (ch >= 'a' && ch <= 'f') {
+                    digit = ch - 'a' + 10;
+                } else if (ch >= 'A' && ch <= 'F') {
+                    digit = ch - 'A' + 10;
+                } else {
+                    return -1;
+                }
+                value = (value << 4) | digit;
+            }
+            bytes[length++] = (byte) (value >>> 8);
+            bytes[length++] = (byte) value;
+            if (end == groups.length()) {
+                return length;
+            }
+            start = end + 1;
+        }
+    }
+    
+    
+    private static boolean isIPv4Mapped(byte[] bytes) {
+        for (int i = 0; i < 10; i++) {
+            if (bytes[i] != 0) {
+                return false;
+            }
+        }
+        return bytes[10] == (byte) 0xff && bytes[11] == (byte) 0xff;
+    }
+    
+    
+    private static byte[] parseIPv4(String address) {
+        byte[] bytes = new byte[4];
+        int part = 0;
+        int value = -1;
+        for (int i = 0; i < address.length(); i++) {
+            char ch = address.charAt(i);
+            if (ch >= '0' && ch <= '9') {
+                value = (value < 0 ? 0 : value * 10) + (ch - '0');
+                if (value > 255) {
+                    return null;
+                }
+            } else if (ch == '.' && value >= 0 && part < 3) {
+                bytes[part++] = (byte) value;
+                value = -1;
+            } else {
+                return null;
+            }
+        }
+        if (part != 3 || value < 0) {
+            return null;
+        }
+        bytes[3] = (byte) value;
+        return bytes;
+    }
+    
+    
+    private static final class Node {
+        
+        static final Node TERMINAL = new Node(null, null, true);
+        
+        final Node zero;
+        final Node one;
+        final boolean terminal;
+        
+        Node(Node zero, Node one, boolean terminal) {
+            this.zero = zero;
+            this.one = one;
+            this.terminal = terminal;
+        }
+    }
+    
+}
@@ -19,11 +19,18 @@
 package org.apache.roller.weblogger.util;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
+import java.io.IOException;
 import java.io.PrintWriter;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.function.Supplier;
 
 import org.apache.commons.logging.Log;
@@ -34,19 +41,28 @@ import org.apache.roller.weblogger.config.WebloggerConfig;
 /**
  * Represents a list of banned ip addresses.
  *
- * This base implementation gets its list from a file on the filesystem.  We
- * are also aware of when the file changes via some outside source and we will
- * automatically re-read the file and update the list when that happens.
+ * This base implementation gets its list from a file on the filesystem.  Each
+ * line of the file is either a single address or a CIDR block, for IPv4 or
+ * IPv6, e.g. 10.1.0.0/16.  The entries are kept in an immutable trie which is
+ * swapped atomically when the list changes, so lookups never lock.
+ *
+ * We are also aware of when the file changes via some outside source.  A
+ * background thread watches the file and re-reads it when it changes, so the
+ * request path never has to check the file itself.
  */
 public final class IPBanList {
 
     private static final Log log = LogFactory.getLog(IPBanList.class);
 
-    // set of ips that are banned, use a set to ensure uniqueness
-    private volatile Set<String> bannedIps = newThreadSafeSet();
+    // trie of ip addresses and ranges that are banned
+    private volatile IPAddressTrie bannedIps = IPAddressTrie.EMPTY;
 
     // file listing the ips that are banned
-    private ModifiedFile bannedIpsFile = null;
+    private File bannedIpsFile = null;
+
+    // watches for changes to the file
+    private WatchService watchService = null;
+    private Thread watcher = null;
 
     // reference to our singleton instance
     private static IPBanList instance = null;
@@ -65,11 +81,12 @@ public final class IPBanList {
         // load up set of denied ips
         String banIpsFilePath = banIpsFilePathSupplier.get();
         if(banIpsFilePath != null) {
-            ModifiedFile banIpsFile = new ModifiedFile(banIpsFilePath);
+            File banIpsFile = new File(banIpsFilePath);
 
             if(banIpsFile.exists() && banIpsFile.canRead()) {
                 this.bannedIpsFile = banIpsFile;
                 this.loadBannedIps();
+                this.watchBannedIpsFile();
             }
         }
     }
@@ -82,15 +99,7 @@ public final class IPBanList {
 
 
     public boolean isBanned(String ip) {
-
-        // update the banned ips list if needed
-        this.loadBannedIpsIfNeeded();
-
-        if(ip != null) {
-            return this.bannedIps.contains(ip);
-        } else {
-            return false;
-        }
+        return this.bannedIps.contains(ip);
     }
 
 
@@ -100,22 +109,20 @@ public final class IPBanList {
             return;
         }
 
-        // update the banned ips list if needed
-        this.loadBannedIpsIfNeeded();
-
         if(!this.bannedIps.contains(ip) &&
                 (bannedIpsFile != null && bannedIpsFile.canWrite())) {
 
             try {
                 synchronized(this) {
+                    IPAddressTrie updated = this.bannedIps.with(ip);
+
                     // add to file
                     try (PrintWriter out = new PrintWriter(new FileWriter(this.bannedIpsFile, true))) {
                         out.println(ip);
                     }
-                    this.bannedIpsFile.clearChanged();
 
-                    // add to Set
-                    this.bannedIps.add(ip);
+                    // add to trie
+                    this.bannedIps = updated;
                 }
 
                 log.debug("ADDED "+ip);
@@ -127,15 +134,22 @@ public final class IPBanList {
 
 
     /**
-     * Check if the banned ips file has changed and needs to be reloaded.
+     * Stop watching the banned ips file, and wait for the watcher to finish.
      */
-    private void loadBannedIpsIfNeeded() {
-
-        if(bannedIpsFile != null &&
-                (bannedIpsFile.hasChanged())) {
-
-            // need to reload
-            this.loadBannedIps();
+    public void shutdown() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                log.debug("Error closing banned ips file watcher", e);
+            }
+        }
+        if (watcher != null) {
+            try {
+                watcher.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
         }
     }
 
@@ -148,18 +162,24 @@ public final class IPBanList {
 
         if(bannedIpsFile != null) {
 
-            // TODO: optimize this
             try (BufferedReader in = new BufferedReader(new FileReader(this.bannedIpsFile))) {
-                Set<String> newBannedIpList = newThreadSafeSet();
+                IPAddressTrie newBannedIps = IPAddressTrie.EMPTY;
 
-                String ip = null;
-                while((ip = in.readLine()) != null) {
-                    newBannedIpList.add(ip);
+                String line;
+                while((line = in.readLine()) != null) {
+                    line = line.trim();
+                    if (line.isEmpty() || line.startsWith("#")) {
+                        continue;
+                    }
+                    try {
+                        newBannedIps = newBannedIps.with(line);
+                    } catch (IllegalArgumentException e) {
+                        log.warn("Ignoring invalid banned ip entry: " + line);
+                    }
                 }
 
-                // list updated, reset modified file
-                this.bannedIps = newBannedIpList;
-                this.bannedIpsFile.clearChanged();
+                // list updated
+                this.bannedIps = newBannedIps;
 
                 log.info(this.bannedIps.size()+" banned ips loaded");
             } catch(Exception ex) {
@@ -170,28 +190,54 @@ public final class IPBanList {
     }
 
 
-    // a simple extension to the File class which tracks if the file has
-    // changed since the last time we checked
-    private static class ModifiedFile extends java.io.File {
-
-        private long myLastModified = 0;
-
-        public ModifiedFile(String filePath) {
-            super(filePath);
+    /**
+     * Start a daemon thread which reloads the list whenever the file changes.
+     */
+    private void watchBannedIpsFile() {
 
-            this.myLastModified = lastModified();
+        Path file = bannedIpsFile.toPath().toAbsolutePath();
+        Path dir = file.getParent();
+        if (dir == null) {
+            return;
         }
 
-        public boolean hasChanged() {
-            return lastModified() != myLastModified;
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            dir.register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            log.warn("Unable to watch banned ips file for changes, it will not be reloaded", e);
+            return;
         }
 
-        public void clearChanged() {
-            myLastModified = lastModified();
-        }
-    }
-
-    private static <T> Set<T> newThreadSafeSet() {
-        return ConcurrentHashMap.newKeySet();
+        watcher = new Thread(() -> {
+            try {
+                while (true) {
+                    WatchKey key = watchService.take();
+                    boolean changed = false;
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        Object context = event.context();
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                                || file.getFileName().equals(context)) {
+                            changed = true;
+                        }
+                    }
+                    if (changed) {
+                        loadBannedIps();
+                    }
+                    if (!key.reset()) {
+                        log.warn("Stopped watching banned ips file " + file);
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ClosedWatchServiceException e) {
+                log.debug("Banned ips file watcher closed");
+            }
+        }, "IPBanListWatcher");
+        watcher.setDaemon(true);
+        watcher.start();
     }
 }
@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.util;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the dimensions of an image from the first bytes of its file, without
+ * decoding it.  PNG, GIF, JPEG, BMP and WebP are understood.
+ */
+public final class ImageHeaders {
+    
+    /** Number of leading bytes which should be enough for all formats. */
+    public static final int HEADER_BYTES = 64 * 1024;
+    
+    private static final byte[] PNG = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+    private static final byte[] GIF = ascii("GIF8");
+    private static final byte[] BMP = ascii("BM");
+    private static final byte[] RIFF = ascii("RIFF");
+    
+    
+    private ImageHeaders() {
+        // utility class
+    }
+    
+    
+    /**
+     * Dimensions of an image.
+     *
+     * @param header Leading bytes of the image file.
+     * @param length Number of bytes of header which are valid.
+     * @return Width and height, or null if not known from the header.
+     */
+    public static int[] getDimensions(byte[] header, int length) {
+        try {
+            if (startsWith(header, length, PNG)) {
+                // IHDR is always the first chunk
+                return dimensions(int32be(header, length, 16), int32be(header, length, 20));
+            } else if (startsWith(header, length, GIF)) {
+                return dimensions(int16le(header, length, 6), int16le(header, length, 8));
+            } else if (startsWith(header, length, BMP)) {
+                return getBmpDimensions(header, length);
+            } else if (length > 2 && (header[0] & 0xFF) == 0xFF && (header[1] & 0xFF) == 0xD8) {
+                return getJpegDimensions(header, length);
+            } else if (startsWith(header, length, RIFF)
+                    && "WEBP".equals(ascii(header, length, 8))) {
+                return getWebpDimensions(header, length);
+            }
+        } catch (IndexOutOfBoundsException ex) {
+            // header was cut short
+        }
+        return null;
+    }
+    
+    
+    private static int[] getBmpDimensions(byte[] header, int length) {
+        if (int32le(header, length, 14) == 12) {
+            // OS/2 bitmap core header
+            return dimensions(int16le(header, length, 18), int16le(header, length, 20));
+        }
+        // negative heights are top down bitmaps
+        return dimensions(int32le(header, length, 18), Math.abs(int32le(header, length, 22)));
+    }
+    
+    
+    private static int[] getJpegDimensions(byte[] header, int length) {
+        int pos = 2;
+        while (true) {
+            // markers may be preceded by any number of fill bytes
+            if (byteAt(header, length, pos) != 0xFF) {
+                return null;
+            }
+            int marker = byteAt(header, length, pos + 1);
+            while (marker == 0xFF) {
+                pos++;
+                marker = byteAt(header, length, pos + 1);
+            }
+            pos += 2;
+            if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+                // no length
+                continue;
+            }
+            if (marker == 0xD9 || marker == 0xDA) {
+                // end of image or start of scan before any frame
+                return null;
+            }
+            int segmentLength = int16be(header, length, pos);
+            if (marker >= 0xC0 && marker <= 0xCF
+                    && marker != 0xC4 && marker != 0xC8 && marker != 0xCC) {
+                // start of frame: precision, height, width
+                return dimensions(int16be(header, length, pos + 5), int16be(header, length, pos + 3));
+            }
+            pos += segmentLength;
+        }
+    }
+    
+    
+    private static int[] getWebpDimensions(byte[] header, int length) {
+        switch (ascii(header, length, 12)) {
+            case "VP8 ":
+                // key frame header follows the frame tag and start code
+                return dimensions(int16le(header, length, 26) & 0x3FFF, int16le(header, length, 28) & 0x3FFF);
+            case "VP8L": {
+                int b0 = byteAt(header, length, 21);
+                int b1 = byteAt(header, length, 22);
+                int b2 = byteAt(header, length, 23);
+                int b3 = byteAt(header, length, 24);
+                return dimensions(1 + (((b1 & 0x3F) << 8) | b0),
+                        1 + (((b3 & 0x0F) << 10) | (b2 << 2) | ((b1 & 0xC0) >> 6)));
+            }
+            case "VP8X":
+                return dimensions(1 + int24le(header, length, 24), 1 + int24le(header, length, 27));
+            default:
+                return null;
+        }
+    }
+    
+    
+    private static int[] dimensions(int width, int height) {
+        return width > 0 && height > 0 ? new int[] { width, height } : null;
+    }
+    
+    
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+    
+    
+    // four character code at a position
+    private static String ascii(byte[] header, int length, int pos) {
+        byteAt(header, length, pos + 3);
+        return new String(header, pos, 4, StandardCharsets.US_ASCII);
+    }
+    
+    
+    private static boolean startsWith(byte[] header, int length, byte[] prefix) {
+        if (length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (header[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    
+    private static int byteAt(byte[] header, int length, int pos) {
+        if (pos >= length) {
+            throw new IndexOutOfBoundsException(pos);
+        }
+        return header[pos] & 0xFF;
+    }
+    
+    
+    private static int int16be(byte[] header, int length, int pos) {
+        return (byteAt(header, length, pos) << 8) | byteAt(header, length, pos + 1);
+    }
+    
+    
+    private static int int16le(byte[] header, int length, int pos) {
+        return byteAt(header, length, pos) | (byteAt(header, length, pos + 1) << 8);
+    }
+    
+    
+    private static int int24le(byte[] header, int length, int pos) {
+        return int16le(header, length, pos) | (byteAt(header, length, pos + 2) << 16);
+    }
+    
+    
+    private static int int32be(byte[] header, int length, int pos) {
+        return (int16be(header, length, pos) << 16) | int16be(header, length, pos + 2);
+    }
+    
+    
+    private static int int32le(byte[] header, int length, int pos) {
+        return int16le(header, length, pos) | (int16le(header, length, pos + 2) << 16);
+    }
+    
+}
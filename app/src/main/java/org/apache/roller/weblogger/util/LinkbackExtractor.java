@@ -21,15 +21,29 @@ import com.rometools.rome.feed.synd.SyndEntry;
 import com.rometools.rome.feed.synd.SyndFeed;
 import com.rometools.rome.io.FeedException;
 import com.rometools.rome.io.SyndFeedInput;
-import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.StringReader;
 import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.servlet.http.HttpServletResponse;
 
 import javax.swing.text.MutableAttributeSet;
 import javax.swing.text.html.HTML;
@@ -40,11 +54,17 @@ import javax.swing.text.html.HTMLEditorKit.ParserCallback;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.roller.util.RollerConstants;
+import org.apache.roller.weblogger.config.WebloggerConfig;
 
 
 /**
  * Parses HTML file for referring linkback title and excerpt.
  * 
+ * Referring pages are fetched with a deadline covering the whole exchange
+ * and only their first bytes are read, so a slow or huge page can't hold
+ * up the caller for long.
+ * 
  * @author David M Johnson
  */
 public class LinkbackExtractor
@@ -65,14 +85,37 @@ public class LinkbackExtractor
     private static final int MAX_EXCERPT_CHARS = 500;
     private static final int DESIRED_TITLE_LENGTH = 50;
 
+    private static HttpClient httpClient = null;
+
+    private final long       mTimeout;
+    private final int        mMaxBytes;
+
+    //------------------------------------------------------------------------
+    /**
+     * Extract referring page title, excerpt, and permalink, fetching pages
+     * with the configured timeout and size limit.
+     * 
+     * @param refererURL
+     * @param requestURL
+     */
+    public LinkbackExtractor(String refererURL, String requestURL) {
+        this(refererURL, requestURL,
+                WebloggerConfig.getIntProperty("linkback.timeout", 10) * (long) RollerConstants.SEC_IN_MS,
+                WebloggerConfig.getIntProperty("linkback.maxBytes", 262144));
+    }
+
     //------------------------------------------------------------------------
     /**
      * Extract referring page title, excerpt, and permalink.
      * 
      * @param refererURL
      * @param requestURL
+     * @param timeout Milliseconds allowed for fetching each page.
+     * @param maxBytes Number of bytes read at most from each page.
      */
-    public LinkbackExtractor(String refererURL, String requestURL) throws IOException {
+    public LinkbackExtractor(String refererURL, String requestURL, long timeout, int maxBytes) {
+        mTimeout = timeout;
+        mMaxBytes = maxBytes;
         try {
             extractByParsingHtml(refererURL, requestURL);
             if (mRssLink != null) {
@@ -87,8 +130,7 @@ public class LinkbackExtractor
 
     //------------------------------------------------------------------------
     private void extractByParsingHtml(String refererURL, String requestURL) throws IOException {
-        URL url = new URL(refererURL);
-        InputStream is = url.openStream();
+        String html = fetch(refererURL);
 
         mRefererURL = refererURL;
 
@@ -110,26 +152,16 @@ public class LinkbackExtractor
             }
         }).getParser();
 
-        // Read HTML file into string
-        StringBuilder sb = new StringBuilder();
-        InputStreamReader isr = new InputStreamReader(is);
-        BufferedReader br = new BufferedReader(isr);
-        try {
-            String line;
-            while ((line = br.readLine()) != null) {
-                sb.append(line);
-            }
-        } finally {
-            br.close();
-        }
+        // Join the lines of the HTML file
+        String page = html.replace("\r", "").replace("\n", "");
 
         // Parse HTML string to find title and start and end position
         // of the referring excerpt.
-        StringReader sr = new StringReader(sb.toString());
+        StringReader sr = new StringReader(page);
         parser.parse(sr, new LinkbackCallback(), true);
 
-        if (mStart != 0 && mEnd != 0 && mEnd > mStart) {
-            mExcerpt = sb.toString().substring(mStart, mEnd);
+        if (mStart != 0 && mEnd != 0 && mEnd > mStart && mEnd <= page.length()) {
+            mExcerpt = page.substring(mStart, mEnd);
             mExcerpt = Utilities.removeHTML(mExcerpt);
 
             if (mExcerpt.length() > MAX_EXCERPT_CHARS) {
@@ -146,8 +178,7 @@ public class LinkbackExtractor
     private void extractByParsingRss(String rssLink, String requestURL)
             throws FeedException, IOException {
         SyndFeedInput feedInput = new SyndFeedInput();       
-        SyndFeed feed = feedInput.build(
-            new InputStreamReader(new URL(rssLink).openStream()));
+        SyndFeed feed = feedInput.build(new StringReader(fetch(rssLink)));
         String feedTitle = feed.getTitle();
 
         int count = 0;
@@ -181,6 +212,71 @@ public class LinkbackExtractor
         }
     }
 
+    //------------------------------------------------------------------------
+    /**
+     * Fetch the first mMaxBytes of a page, giving up once mTimeout has
+     * passed since the request was started.
+     */
+    private String fetch(String location) throws IOException {
+        URI uri;
+        try {
+            uri = new URI(location);
+        } catch (URISyntaxException e) {
+            throw new MalformedURLException(e.getMessage());
+        }
+        if (!"http".equalsIgnoreCase(uri.getScheme()) && !"https".equalsIgnoreCase(uri.getScheme())) {
+            throw new MalformedURLException("Not an http URL: " + location);
+        }
+
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .timeout(Duration.ofMillis(mTimeout))
+                .GET()
+                .build();
+        CompletableFuture<HttpResponse<byte[]>> response = getHttpClient().sendAsync(
+                request, info -> new LimitedBodySubscriber(mMaxBytes));
+        try {
+            HttpResponse<byte[]> result = response.get(mTimeout, TimeUnit.MILLISECONDS);
+            if (result.statusCode() != HttpServletResponse.SC_OK) {
+                throw new IOException("Fetching " + location + " returned " + result.statusCode());
+            }
+            return new String(result.body(), getCharset(result));
+        } catch (TimeoutException e) {
+            response.cancel(true);
+            throw new IOException("Timed out fetching " + location, e);
+        } catch (ExecutionException e) {
+            throw new IOException("Error fetching " + location, e.getCause());
+        } catch (InterruptedException e) {
+            response.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted fetching " + location, e);
+        }
+    }
+
+    private static Charset getCharset(HttpResponse<?> response) {
+        String contentType = response.headers().firstValue("Content-Type").orElse("");
+        int idx = contentType.toLowerCase().indexOf("charset=");
+        if (idx != -1) {
+            String name = contentType.substring(idx + "charset=".length()).split(";")[0].trim();
+            try {
+                return Charset.forName(name.replace("\"", ""));
+            } catch (IllegalArgumentException e) {
+                mLogger.debug("Unknown charset " + name);
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    private static synchronized HttpClient getHttpClient() {
+        if (httpClient == null) {
+            httpClient = HttpClient.newBuilder()
+                    .connectTimeout(Duration.ofSeconds(
+                            WebloggerConfig.getIntProperty("linkback.timeout", 10)))
+                    .followRedirects(HttpClient.Redirect.NORMAL)
+                    .build();
+        }
+        return httpClient;
+    }
+
     //------------------------------------------------------------------------
     /**
      * Returns the excerpt.
@@ -225,6 +321,73 @@ public class LinkbackExtractor
 
     /////////////////////////////////////////////////////////////////////////
 
+    /**
+     * Collects a response body up to a number of bytes, then stops reading
+     * and completes with what it has got so far.
+     */
+    private static final class LimitedBodySubscriber implements HttpResponse.BodySubscriber<byte[]>
+    {
+        private final CompletableFuture<byte[]> mBody = new CompletableFuture<>();
+        private final ByteArrayOutputStream mBytes = new ByteArrayOutputStream();
+        private final int mMaxBytes;
+        private Flow.Subscription mSubscription;
+
+        LimitedBodySubscriber(int maxBytes)
+        {
+            mMaxBytes = maxBytes;
+        }
+
+        @Override
+        public CompletionStage<byte[]> getBody()
+        {
+            return mBody;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription)
+        {
+            mSubscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> buffers)
+        {
+            if (mBody.isDone())
+            {
+                return;
+            }
+            for (ByteBuffer buffer : buffers)
+            {
+                int len = Math.min(buffer.remaining(), mMaxBytes - mBytes.size());
+                byte[] chunk = new byte[len];
+                buffer.get(chunk);
+                mBytes.write(chunk, 0, len);
+            }
+            if (mBytes.size() >= mMaxBytes)
+            {
+                mSubscription.cancel();
+                mBody.complete(mBytes.toByteArray());
+            }
+            else
+            {
+                mSubscription.request(1);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable)
+        {
+            mBody.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete()
+        {
+            mBody.complete(mBytes.toByteArray());
+        }
+    }
+
     /**
      * Parser callback that finds title and excerpt. As we walk through the HTML
      * tags, we keep track of the most recently encountered divider tag in the
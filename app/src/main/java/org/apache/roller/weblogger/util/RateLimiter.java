@@ -0,0 +1,295 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.util;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.util.RollerConstants;
+import org.apache.roller.weblogger.config.WebloggerConfig;
+
+
+/**
+ * A lock-free sliding window rate limiter.
+ *
+ * The basic idea is that if the # of hits from a client within a certain
+ * interval of time is greater than the threshold value then the client is
+ * considered to be abusive.  Hits are counted in fixed windows the length
+ * of the interval, and the count for the sliding window is estimated by
+ * weighting the previous window by how much of it still overlaps.
+ *
+ * Each client's window number and counts are packed into a single long and
+ * updated with compare-and-set, so recording a hit never takes a lock.  The
+ * number of clients tracked is bounded; when it is reached a quarter of the
+ * clients are evicted at once, so that the scan is paid for by many new
+ * clients rather than each of them.
+ *
+ * Limiters are configured per endpoint through the properties
+ * &lt;endpoint&gt;.throttle.enabled, .threshold, .interval (in seconds) and
+ * .maxentries, and are obtained with {@link #getRateLimiter(String)}.
+ */
+public class RateLimiter {
+    
+    private static final Log log = LogFactory.getLog(RateLimiter.class);
+    
+    // counts are kept in 16 bits each, and saturate
+    private static final int MAX_COUNT = 0xFFFF;
+    
+    // all configured limiters, by endpoint
+    private static final Map<String, RateLimiter> LIMITERS = new ConcurrentHashMap<>();
+    
+    // endpoints which have been looked up and found to be disabled
+    private static final Map<String, Boolean> DISABLED = new ConcurrentHashMap<>();
+    
+    private final String endpoint;
+    private final int threshold;
+    private final long interval;
+    private final int maxEntries;
+    private final LongSupplier clock;
+    
+    private final ConcurrentMap<String, AtomicLong> clients = new ConcurrentHashMap<>();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    
+    
+    /**
+     * @param endpoint   name used when reporting stats
+     * @param threshold  number of hits allowed within the interval
+     * @param interval   length of the sliding window in milliseconds
+     * @param maxEntries maximum number of clients to track
+     */
+    public RateLimiter(String endpoint, int threshold, long interval, int maxEntries) {
+        this(endpoint, threshold, interval, maxEntries, System::currentTimeMillis);
+    }
+    
+    
+    RateLimiter(String endpoint, int threshold, long interval, int maxEntries, LongSupplier clock) {
+        this.endpoint = endpoint;
+        
+        // threshold can't be negative, that would mean everyone is abusive
+        this.threshold = Math.min(Math.max(threshold, 0), MAX_COUNT - 1);
+        
+        // interval must be a positive value
+        this.interval = interval > 0 ? interval : RollerConstants.MIN_IN_MS;
+        
+        // max entries must be a positive value
+        this.maxEntries = maxEntries > 0 ? maxEntries : 1;
+        
+        this.clock = clock;
+    }
+    
+    
+    /**
+     * Get the rate limiter configured for an endpoint, or null if rate
+     * limiting is not enabled for it.
+     */
+    public static RateLimiter getRateLimiter(String endpoint) {
+        RateLimiter limiter = LIMITERS.get(endpoint);
+        if (limiter != null || DISABLED.containsKey(endpoint)) {
+            return limiter;
+        }
+        
+        String prefix = endpoint + ".throttle.";
+        if (!WebloggerConfig.getBooleanProperty(prefix + "enabled")) {
+            DISABLED.put(endpoint, Boolean.TRUE);
+            log.info("Throttling DISABLED for " + endpoint);
+            return null;
+        }
+        
+        int threshold = getIntProperty(prefix + "threshold", 25);
+        int interval = getIntProperty(prefix + "interval", 60);
+        int maxEntries = getIntProperty(prefix + "maxentries", 250);
+        
+        limiter = LIMITERS.computeIfAbsent(endpoint, name -> new RateLimiter(
+                name, threshold, (long) interval * RollerConstants.SEC_IN_MS, maxEntries));
+        log.info("Throttling ENABLED for " + endpoint);
+        return limiter;
+    }
+    
+    
+    /**
+     * Stats for all configured rate limiters, by endpoint.
+     */
+    public static Map<String, Map<String, Object>> getStats() {
+        Map<String, Map<String, Object>> stats = new TreeMap<>();
+        for (RateLimiter limiter : LIMITERS.values()) {
+            stats.put(limiter.endpoint, limiter.getLimiterStats());
+        }
+        return stats;
+    }
+    
+    
+    /**
+     * Process a new hit from the client.
+     *
+     * Each call to this method increments the hit count for the client and
+     * then returns a boolean value indicating if the hit has pushed the client
+     * over the threshold.
+     *
+     * @param clientId usually the remote address of the client
+     * @param weblogHandle weblog being accessed, or null if not known
+     * @return true if client is abusive, false otherwise
+     */
+    public boolean processHit(String clientId, String weblogHandle) {
+        
+        if (clientId == null) {
+            return false;
+        }
+        
+        String key = (weblogHandle != null) ? clientId + '|' + weblogHandle : clientId;
+        long now = clock.getAsLong();
+        long window = now / interval;
+        
+        AtomicLong state = clients.get(key);
+        if (state == null) {
+            if (clients.size() >= maxEntries && evicting.compareAndSet(false, true)) {
+                // others carry on while one thread makes room
+                try {
+                    evict(window);
+                } finally {
+                    evicting.set(false);
+                }
+            }
+            state = clients.computeIfAbsent(key, k -> new AtomicLong(pack(window, 0, 0)));
+        }
+        
+        long current;
+        long updated;
+        do {
+            current = state.get();
+            int previousCount;
+            int count;
+            long stateWindow = window(current);
+            if (stateWindow == (window & 0xFFFFFFFFL)) {
+                previousCount = previousCount(current);
+                count = count(current);
+            } else if (stateWindow == ((window - 1) & 0xFFFFFFFFL)) {
+                previousCount = count(current);
+                count = 0;
+            } else {
+                previousCount = 0;
+                count = 0;
+            }
+            updated = pack(window, previousCount, Math.min(count + 1, MAX_COUNT));
+        } while (!state.compareAndSet(current, updated));
+        
+        hits.increment();
+        
+        // weight the previous window by how much of it the sliding window still covers
+        long elapsed = now - (window * interval);
+        double estimate = previousCount(updated) * ((double) (interval - elapsed) / interval)
+                + count(updated);
+        
+        if (estimate > threshold) {
+            rejected.increment();
+            if (log.isDebugEnabled()) {
+                log.debug("ABUSIVE " + key + " on " + endpoint);
+            }
+            return true;
+        }
+        return false;
+    }
+    
+    
+    /**
+     * Process a new hit from a client, not tied to any weblog.
+     */
+    public boolean processHit(String clientId) {
+        return processHit(clientId, null);
+    }
+    
+    
+    public Map<String, Object> getLimiterStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("threshold", threshold);
+        stats.put("interval", interval);
+        stats.put("maxEntries", maxEntries);
+        stats.put("clients", clients.size());
+        stats.put("hits", hits.sum());
+        stats.put("rejected", rejected.sum());
+        return Collections.unmodifiableMap(stats);
+    }
+    
+    
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+    
+    
+    /**
+     * Make room for new clients.  Clients with no hits in the current or
+     * previous window are dropped first; if that leaves more than three
+     * quarters of maxEntries then some clients are dropped regardless.
+     */
+    private void evict(long window) {
+        long currentWindow = window & 0xFFFFFFFFL;
+        long previousWindow = (window - 1) & 0xFFFFFFFFL;
+        clients.values().removeIf(state -> {
+            long stateWindow = window(state.get());
+            return stateWindow != currentWindow && stateWindow != previousWindow;
+        });
+        
+        int target = maxEntries - Math.max(maxEntries / 4, 1);
+        Iterator<String> keys = clients.keySet().iterator();
+        while (clients.size() > target && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+    }
+    
+    
+    private static int getIntProperty(String name, int defaultValue) {
+        try {
+            return WebloggerConfig.getIntProperty(name, defaultValue);
+        } catch (NumberFormatException e) {
+            log.warn("bad input for config property " + name, e);
+            return defaultValue;
+        }
+    }
+    
+    
+    private static long pack(long window, int previousCount, int count) {
+        return (window << 32) | ((long) previousCount << 16) | count;
+    }
+    
+    private static long window(long state) {
+        return state >>> 32;
+    }
+    
+    private static int previousCount(long state) {
+        return (int) ((state >>> 16) & MAX_COUNT);
+    }
+    
+    private static int count(long state) {
+        return (int) (state & MAX_COUNT);
+    }
+    
+}
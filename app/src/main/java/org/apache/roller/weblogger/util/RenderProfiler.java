@@ -0,0 +1,423 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.util;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.weblogger.config.WebloggerConfig;
+
+
+/**
+ * Opt-in profiling of a single rendering request.
+ *
+ * A profile is started for the current thread by {@link #start(String)}
+ * and collects the number and time of JPA queries, cache hits and misses,
+ * and the time spent in plugins and templates, until {@link #finish()} is
+ * called.  Code which wants to report into the profile looks it up with
+ * {@link #current()}, which is null whenever profiling is off, so the cost
+ * when disabled is a thread local lookup.
+ *
+ * Finished profiles are added to per endpoint totals which are available
+ * from {@link #getStats()} and as MBeans named
+ * org.apache.roller.weblogger:type=RenderProfiler,name=&lt;endpoint&gt;.
+ * Profiles slower than rendering.profiler.slowThreshold milliseconds are
+ * logged at info level with the weblog and template.
+ */
+public final class RenderProfiler {
+    
+    private static final Log log = LogFactory.getLog(RenderProfiler.class);
+    
+    private static final ThreadLocal<RenderProfiler> CURRENT = new ThreadLocal<>();
+    
+    // totals for all finished profiles, by endpoint
+    private static final Map<String, RenderStats> STATS = new ConcurrentHashMap<>();
+    
+    private static volatile boolean enabled =
+            WebloggerConfig.getBooleanProperty("rendering.profiler.enabled");
+    
+    private static volatile long slowThreshold = TimeUnit.MILLISECONDS.toNanos(
+            WebloggerConfig.getIntProperty("rendering.profiler.slowThreshold", 1000));
+    
+    private final String endpoint;
+    private final long startTime = System.nanoTime();
+    
+    private String weblogHandle = null;
+    private String templateId = null;
+    
+    private int queries = 0;
+    private long queryTime = 0;
+    private int cacheHits = 0;
+    private int cacheMisses = 0;
+    private long pluginTime = 0;
+    private long templateTime = 0;
+    
+    
+    private RenderProfiler(String endpoint) {
+        this.endpoint = endpoint;
+    }
+    
+    
+    /**
+     * Start profiling the current thread, if profiling is enabled and there
+     * isn't already a profile running.
+     * 
+     * @return the new profile, or null if nothing is being profiled
+     */
+    public static RenderProfiler start(String endpoint) {
+        if (!enabled || CURRENT.get() != null) {
+            return null;
+        }
+        RenderProfiler profile = new RenderProfiler(endpoint);
+        CURRENT.set(profile);
+        return profile;
+    }
+    
+    
+    /**
+     * The profile running on the current thread, or null.
+     */
+    public static RenderProfiler current() {
+        return CURRENT.get();
+    }
+    
+    
+    /**
+     * Count a cache lookup against the current profile, if there is one.
+     */
+    public static void recordCacheLookup(boolean hit) {
+        RenderProfiler profile = CURRENT.get();
+        if (profile != null) {
+            if (hit) {
+                profile.cacheHits++;
+            } else {
+                profile.cacheMisses++;
+            }
+        }
+    }
+    
+    
+    /**
+     * Turn a cache hit which was already recorded into a miss, for caches
+     * which only find out about expired entries after the lookup.
+     */
+    public static void recordCacheExpired() {
+        RenderProfiler profile = CURRENT.get();
+        if (profile != null && profile.cacheHits > 0) {
+            profile.cacheHits--;
+            profile.cacheMisses++;
+        }
+    }
+    
+    
+    /**
+     * Wrap a JPA query so that executing it is counted and timed against the
+     * profile of whatever thread runs it.  Calls which return the query
+     * itself return the wrapper so that chained calls are profiled as well.
+     */
+    @SuppressWarnings("unchecked")
+    public static <Q> Q profileQuery(Q query, Class<? super Q> queryInterface) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            RenderProfiler profile = CURRENT.get();
+            boolean execute = profile != null && isQueryExecution(method.getName());
+            long start = execute ? System.nanoTime() : 0;
+            try {
+                Object result = method.invoke(query, args);
+                return (result == query) ? proxy : result;
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            } finally {
+                if (execute) {
+                    profile.recordQuery(System.nanoTime() - start);
+                }
+            }
+        };
+        return (Q) Proxy.newProxyInstance(queryInterface.getClassLoader(),
+                new Class<?>[] { queryInterface }, handler);
+    }
+    
+    
+    private static boolean isQueryExecution(String methodName) {
+        return methodName.startsWith("getResult")
+                || "getSingleResult".equals(methodName)
+                || "executeUpdate".equals(methodName);
+    }
+    
+    
+    public void setWeblogHandle(String weblogHandle) {
+        this.weblogHandle = weblogHandle;
+    }
+    
+    
+    public void recordQuery(long nanos) {
+        queries++;
+        queryTime += nanos;
+    }
+    
+    
+    public void recordPlugin(long nanos) {
+        pluginTime += nanos;
+    }
+    
+    
+    /**
+     * Time spent rendering a template.  The first template rendered names
+     * the profile in the slow render log.
+     */
+    public void recordTemplate(String id, long nanos) {
+        if (templateId == null) {
+            templateId = id;
+        }
+        templateTime += nanos;
+    }
+    
+    
+    /**
+     * Stop profiling the current thread and add this profile to the totals.
+     */
+    public void finish() {
+        
+        if (CURRENT.get() == this) {
+            CURRENT.remove();
+        }
+        
+        long elapsed = System.nanoTime() - startTime;
+        boolean slow = elapsed >= slowThreshold;
+        
+        STATS.computeIfAbsent(endpoint, RenderStats::register).add(this, elapsed, slow);
+        
+        if (slow && log.isInfoEnabled()) {
+            log.info("SLOW " + endpoint + " render of weblog [" + weblogHandle
+                    + "] template [" + templateId + "] took " + toMillis(elapsed)
+                    + " ms: " + queries + " queries in " + toMillis(queryTime)
+                    + " ms, cache " + cacheHits + " hits / " + cacheMisses
+                    + " misses, plugins " + toMillis(pluginTime) + " ms, templates "
+                    + toMillis(templateTime) + " ms");
+        }
+    }
+    
+    
+    public int getQueryCount() {
+        return queries;
+    }
+    
+    public int getCacheHits() {
+        return cacheHits;
+    }
+    
+    public int getCacheMisses() {
+        return cacheMisses;
+    }
+    
+    
+    /**
+     * Totals for all finished profiles, by endpoint.
+     */
+    public static Map<String, Map<String, Object>> getStats() {
+        Map<String, Map<String, Object>> stats = new TreeMap<>();
+        for (Map.Entry<String, RenderStats> entry : STATS.entrySet()) {
+            stats.put(entry.getKey(), entry.getValue().getStats());
+        }
+        return stats;
+    }
+    
+    
+    /**
+     * Forget the totals of all endpoints.
+     */
+    public static void clearStats() {
+        for (RenderStats stats : STATS.values()) {
+            stats.clear();
+        }
+    }
+    
+    
+    // for testing
+    static void configure(boolean enable, long slowThresholdMillis) {
+        enabled = enable;
+        slowThreshold = TimeUnit.MILLISECONDS.toNanos(slowThresholdMillis);
+    }
+    
+    
+    private static long toMillis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+    
+    
+    /**
+     * Management interface of the per endpoint totals, times in milliseconds.
+     */
+    public interface RenderStatsMBean {
+        long getRenders();
+        long getSlowRenders();
+        long getTotalTime();
+        long getMaxTime();
+        long getQueries();
+        long getQueryTime();
+        long getCacheHits();
+        long getCacheMisses();
+        long getPluginTime();
+        long getTemplateTime();
+        void clear();
+    }
+    
+    
+    private static final class RenderStats implements RenderStatsMBean {
+        
+        private final LongAdder renders = new LongAdder();
+        private final LongAdder slowRenders = new LongAdder();
+        private final LongAdder totalTime = new LongAdder();
+        private final LongAccumulator maxTime = new LongAccumulator(Math::max, 0);
+        private final LongAdder queries = new LongAdder();
+        private final LongAdder queryTime = new LongAdder();
+        private final LongAdder cacheHits = new LongAdder();
+        private final LongAdder cacheMisses = new LongAdder();
+        private final LongAdder pluginTime = new LongAdder();
+        private final LongAdder templateTime = new LongAdder();
+        
+        
+        static RenderStats register(String endpoint) {
+            RenderStats stats = new RenderStats();
+            try {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                ObjectName name = new ObjectName(
+                        "org.apache.roller.weblogger:type=RenderProfiler,name=" + endpoint);
+                if (!server.isRegistered(name)) {
+                    server.registerMBean(new StandardMBean(stats, RenderStatsMBean.class), name);
+                }
+            } catch (Exception e) {
+                log.warn("Unable to register render profiler MBean for " + endpoint, e);
+            }
+            return stats;
+        }
+        
+        
+        void add(RenderProfiler profile, long elapsed, boolean slow) {
+            renders.increment();
+            if (slow) {
+                slowRenders.increment();
+            }
+            totalTime.add(elapsed);
+            maxTime.accumulate(elapsed);
+            queries.add(profile.queries);
+            queryTime.add(profile.queryTime);
+            cacheHits.add(profile.cacheHits);
+            cacheMisses.add(profile.cacheMisses);
+            pluginTime.add(profile.pluginTime);
+            templateTime.add(profile.templateTime);
+        }
+        
+        
+        Map<String, Object> getStats() {
+            long count = renders.sum();
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("renders", count);
+            stats.put("slowRenders", slowRenders.sum());
+            stats.put("averageTime", count > 0 ? getTotalTime() / count : 0);
+            stats.put("maxTime", getMaxTime());
+            stats.put("averageQueries", count > 0 ? (double) queries.sum() / count : 0);
+            stats.put("queryTime", getQueryTime());
+            stats.put("cacheHits", cacheHits.sum());
+            stats.put("cacheMisses", cacheMisses.sum());
+            stats.put("pluginTime", getPluginTime());
+            stats.put("templateTime", getTemplateTime());
+            return Collections.unmodifiableMap(stats);
+        }
+        
+        
+        @Override
+        public long getRenders() {
+            return renders.sum();
+        }
+        
+        @Override
+        public long getSlowRenders() {
+            return slowRenders.sum();
+        }
+        
+        @Override
+        public long getTotalTime() {
+            return toMillis(totalTime.sum());
+        }
+        
+        @Override
+        public long getMaxTime() {
+            return toMillis(maxTime.get());
+        }
+        
+        @Override
+        public long getQueries() {
+            return queries.sum();
+        }
+        
+        @Override
+        public long getQueryTime() {
+            return toMillis(queryTime.sum());
+        }
+        
+        @Override
+        public long getCacheHits() {
+            return cacheHits.sum();
+        }
+        
+        @Override
+        public long getCacheMisses() {
+            return cacheMisses.sum();
+        }
+        
+        @Override
+        public long getPluginTime() {
+            return toMillis(pluginTime.sum());
+        }
+        
+        @Override
+        public long getTemplateTime() {
+            return toMillis(templateTime.sum());
+        }
+        
+        @Override
+        public void clear() {
+            renders.reset();
+            slowRenders.reset();
+            totalTime.reset();
+            maxTime.reset();
+            queries.reset();
+            queryTime.reset();
+            cacheHits.reset();
+            cacheMisses.reset();
+            pluginTime.reset();
+            templateTime.reset();
+        }
+    }
+    
+}
@@ -18,10 +18,13 @@
 
 package org.apache.roller.weblogger.util.cache;
 
+import java.io.IOException;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArraySet;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.roller.weblogger.config.WebloggerConfig;
@@ -48,6 +51,10 @@ import org.apache.roller.weblogger.util.Reflection;
  * changes in the system we often need to notify all caches that some part of
  * their cached data needs to be invalidated, and the CacheManager makes that
  * process easier.
+ *
+ * When the cache.invalidation.bus property names an {@link InvalidationBus}
+ * invalidations are also sent to the other members of the cluster, and the
+ * invalidations they send are passed to the local handlers.
  */
 public final class CacheManager {
     
@@ -59,12 +66,15 @@ public final class CacheManager {
     // a reference to the cache factory in use
     private static final CacheFactory cacheFactory;
     
-    // a set of all registered cache handlers
-    private static final Set<CacheHandler> cacheHandlers = new HashSet<>();
+    // a set of all registered cache handlers, also notified by the relay thread
+    private static final Set<CacheHandler> cacheHandlers = new CopyOnWriteArraySet<>();
     
     // a map of all registered caches
     private static final Map<String, Cache> caches = new HashMap<>();
     
+    // relays invalidations to the rest of the cluster, null if not clustered
+    private static final InvalidationRelay relay;
+    
     
     static {
         // lookup what cache factory we want to use
@@ -106,6 +116,34 @@ public final class CacheManager {
         } catch(ReflectiveOperationException e) {
             log.error("Unable to instantiate custom cache handlers", e);
         }
+        
+        relay = createRelay();
+    }
+    
+    
+    private static InvalidationRelay createRelay() {
+        String classname = WebloggerConfig.getProperty("cache.invalidation.bus");
+        if (StringUtils.isBlank(classname)) {
+            return null;
+        }
+        
+        String nodeId = WebloggerConfig.getProperty("cache.invalidation.nodeId");
+        if (StringUtils.isBlank(nodeId)) {
+            nodeId = UUID.randomUUID().toString().substring(0, 8);
+        }
+        
+        try {
+            InvalidationBus bus = (InvalidationBus) Reflection.newInstance(classname.trim());
+            InvalidationRelay newRelay = new InvalidationRelay(bus, nodeId, CacheManager::applyRemote,
+                    WebloggerConfig.getIntProperty("cache.invalidation.batchInterval", 50));
+            newRelay.start();
+            return newRelay;
+        } catch (ClassCastException cce) {
+            log.error("It appears that your invalidation bus does not implement the InvalidationBus interface", cce);
+        } catch (ReflectiveOperationException | IOException | RuntimeException e) {
+            log.error("Unable to start invalidation bus ["+classname+"], invalidations stay local", e);
+        }
+        return null;
     }
     
     
@@ -198,8 +236,9 @@ public final class CacheManager {
     public static void invalidate(WeblogEntry entry) {
         
         log.debug("invalidating entry = "+entry.getAnchor());
-        for (CacheHandler handler : cacheHandlers) {
-            handler.invalidate(entry);
+        notifyHandlers(entry);
+        if (relay != null) {
+            relay.publish(event(InvalidationEvent.Kind.ENTRY, entry.getWebsite(), entry.getId()));
         }
     }
     
@@ -207,8 +246,9 @@ public final class CacheManager {
     public static void invalidate(Weblog website) {
         
         log.debug("invalidating website = "+website.getHandle());
-        for (CacheHandler handler : cacheHandlers) {
-            handler.invalidate(website);
+        notifyHandlers(website);
+        if (relay != null) {
+            relay.publish(event(InvalidationEvent.Kind.WEBLOG, website, null));
         }
     }
     
@@ -216,8 +256,9 @@ public final class CacheManager {
     public static void invalidate(WeblogBookmark bookmark) {
         
         log.debug("invalidating bookmark = "+bookmark.getId());
-        for (CacheHandler handler : cacheHandlers) {
-            handler.invalidate(bookmark);
+        notifyHandlers(bookmark);
+        if (relay != null) {
+            relay.publish(event(InvalidationEvent.Kind.BOOKMARK, bookmark.getWebsite(), bookmark.getId()));
         }
     }
     
@@ -225,8 +266,9 @@ public final class CacheManager {
     public static void invalidate(WeblogBookmarkFolder folder) {
         
         log.debug("invalidating folder = "+folder.getId());
-        for (CacheHandler handler : cacheHandlers) {
-            handler.invalidate(folder);
+        notifyHandlers(folder);
+        if (relay != null) {
+            relay.publish(event(InvalidationEvent.Kind.FOLDER, folder.getWeblog(), folder.getId()));
         }
     }
     
@@ -234,8 +276,12 @@ public final class CacheManager {
     public static void invalidate(WeblogEntryComment comment) {
         
         log.debug("invalidating comment = "+comment.getId());
-        for (CacheHandler handler : cacheHandlers) {
-            handler.invalidate(comment);
+        notifyHandlers(comment);
+        if (relay != null) {
+            WeblogEntry entry = comment.getWeblogEntry();
+            Weblog weblog = entry.getWebsite();
+            relay.publish(new InvalidationEvent(InvalidationEvent.Kind.COMMENT, weblog.getId(),
+                    weblog.getHandle(), comment.getId(), entry.getId(), entry.getAnchor()));
         }
     }
     
@@ -243,8 +289,9 @@ public final class CacheManager {
     public static void invalidate(User user) {
         
         log.debug("invalidating user = "+user.getUserName());
-        for (CacheHandler handler : cacheHandlers) {
-            handler.invalidate(user);
+        notifyHandlers(user);
+        if (relay != null) {
+            relay.publish(new InvalidationEvent(InvalidationEvent.Kind.USER, null, null, user.getUserName()));
         }
     }
     
@@ -252,19 +299,170 @@ public final class CacheManager {
     public static void invalidate(WeblogCategory category) {
         
         log.debug("invalidating category = " + category.getId());
-        for (CacheHandler handler : cacheHandlers) {
-            handler.invalidate(category);
+        notifyHandlers(category);
+        if (relay != null) {
+            relay.publish(event(InvalidationEvent.Kind.CATEGORY, category.getWeblog(), category.getId()));
         }
     }
     
     
     public static void invalidate(WeblogTemplate template) {
         log.debug("invalidating template = " + template.getId());
+        notifyHandlers(template);
+        if (relay != null) {
+            relay.publish(event(InvalidationEvent.Kind.TEMPLATE, template.getWeblog(), template.getId()));
+        }
+    }
+
+    
+    private static void notifyHandlers(WeblogEntry entry) {
+        for (CacheHandler handler : cacheHandlers) {
+            handler.invalidate(entry);
+        }
+    }
+    
+    
+    private static void notifyHandlers(Weblog website) {
+        for (CacheHandler handler : cacheHandlers) {
+            handler.invalidate(website);
+        }
+    }
+    
+    
+    private static void notifyHandlers(WeblogBookmark bookmark) {
+        for (CacheHandler handler : cacheHandlers) {
+            handler.invalidate(bookmark);
+        }
+    }
+    
+    
+    private static void notifyHandlers(WeblogBookmarkFolder folder) {
+        for (CacheHandler handler : cacheHandlers) {
+            handler.invalidate(folder);
+        }
+    }
+    
+    
+    private static void notifyHandlers(WeblogEntryComment comment) {
+        for (CacheHandler handler : cacheHandlers) {
+            handler.invalidate(comment);
+        }
+    }
+    
+    
+    private static void notifyHandlers(User user) {
+        for (CacheHandler handler : cacheHandlers) {
+            handler.invalidate(user);
+        }
+    }
+    
+    
+    private static void notifyHandlers(WeblogCategory category) {
+        for (CacheHandler handler : cacheHandlers) {
+            handler.invalidate(category);
+        }
+    }
+    
+    
+    private static void notifyHandlers(WeblogTemplate template) {
         for (CacheHandler handler : cacheHandlers) {
             handler.invalidate(template);
         }
     }
-
+    
+    
+    private static InvalidationEvent event(InvalidationEvent.Kind kind, Weblog weblog, String objectId) {
+        return new InvalidationEvent(kind, weblog.getId(), weblog.getHandle(), objectId);
+    }
+    
+    
+    /**
+     * Pass an invalidation received from another cluster member to the local
+     * handlers, using placeholder objects which carry just the ids handlers
+     * need.
+     */
+    private static void applyRemote(InvalidationEvent event) {
+        
+        log.debug("invalidating from cluster = "+event);
+        
+        Weblog weblog = new Weblog();
+        weblog.setId(event.getWeblogId());
+        weblog.setHandle(event.getWeblogHandle());
+        
+        switch (event.getKind()) {
+            case ENTRY: {
+                WeblogEntry entry = new WeblogEntry();
+                entry.setId(event.getObjectId());
+                entry.setWebsite(weblog);
+                notifyHandlers(entry);
+                break;
+            }
+            case WEBLOG:
+                notifyHandlers(weblog);
+                break;
+            case BOOKMARK: {
+                WeblogBookmarkFolder folder = new WeblogBookmarkFolder();
+                folder.setWeblog(weblog);
+                WeblogBookmark bookmark = new WeblogBookmark();
+                bookmark.setId(event.getObjectId());
+                bookmark.setFolder(folder);
+                notifyHandlers(bookmark);
+                break;
+            }
+            case FOLDER: {
+                WeblogBookmarkFolder folder = new WeblogBookmarkFolder();
+                folder.setId(event.getObjectId());
+                folder.setWeblog(weblog);
+                notifyHandlers(folder);
+                break;
+            }
+            case COMMENT: {
+                WeblogEntry entry = new WeblogEntry();
+                // members not yet upgraded don't send the entry
+                if (event.getEntryId() != null) {
+                    entry.setId(event.getEntryId());
+                    entry.setAnchor(event.getEntryAnchor());
+                }
+                entry.setWebsite(weblog);
+                WeblogEntryComment comment = new WeblogEntryComment();
+                comment.setId(event.getObjectId());
+                comment.setWeblogEntry(entry);
+                notifyHandlers(comment);
+                break;
+            }
+            case USER: {
+                User user = new User();
+                user.setUserName(event.getObjectId());
+                notifyHandlers(user);
+                break;
+            }
+            case CATEGORY: {
+                WeblogCategory category = new WeblogCategory();
+                category.setId(event.getObjectId());
+                category.setWeblog(weblog);
+                notifyHandlers(category);
+                break;
+            }
+            case TEMPLATE: {
+                WeblogTemplate template = new WeblogTemplate();
+                template.setId(event.getObjectId());
+                template.setWeblog(weblog);
+                notifyHandlers(template);
+                break;
+            }
+            default:
+                log.warn("Unknown invalidation "+event);
+        }
+    }
+    
+    
+    /**
+     * Whether invalidations are relayed to other cluster members.
+     */
+    public static boolean isClustered() {
+        return relay != null;
+    }
+    
     
     /**
      * Flush the entire cache system.
@@ -308,7 +506,9 @@ public final class CacheManager {
      * Place to do any cleanup tasks for cache system.
      */
     public static void shutdown() {
-        // no-op
+        if (relay != null) {
+            relay.shutdown();
+        }
     }
     
 }
@@ -21,6 +21,7 @@ package org.apache.roller.weblogger.util.cache;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.roller.util.RollerConstants;
+import org.apache.roller.weblogger.util.RenderProfiler;
 
 
 /**
@@ -85,6 +86,7 @@ public class ExpiringLRUCacheImpl extends LRUCacheImpl {
             if (value == null) {
                 log.debug("EXPIRED ["+key+"]");
                 hits--;
+                RenderProfiler.recordCacheExpired();
                 super.remove(key);
             }
         }
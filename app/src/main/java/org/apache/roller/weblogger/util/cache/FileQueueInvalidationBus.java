@@ -0,0 +1,295 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.util.cache;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.weblogger.config.WebloggerConfig;
+
+
+/**
+ * An invalidation bus for cluster members which share a directory, such as
+ * several instances on one host or on a shared volume.
+ *
+ * Each member appends its batches as lines to its own queue file in the
+ * directory and polls the files of the other members for new lines.  Queue
+ * files are rolled when they reach maxBytes and rolled files are deleted a
+ * minute later, once every reader is done with them.  Files are left in
+ * place at shutdown so that the others can finish reading them, and removed
+ * when a member with the same node id starts again.  A member only reads
+ * what was written to the files it finds at start after it started.
+ *
+ * Configured with the cache.invalidation.file.* properties.
+ */
+public class FileQueueInvalidationBus implements InvalidationBus {
+    
+    private static final Log log = LogFactory.getLog(FileQueueInvalidationBus.class);
+    
+    private static final String SUFFIX = ".queue";
+    
+    // how long rolled queue files are kept for readers
+    private static final long ROLLED_RETENTION = 60000;
+    
+    private final Path dir;
+    private final long pollInterval;
+    private final long maxBytes;
+    
+    private String prefix = null;
+    private Path current = null;
+    private long generation = 0;
+    private FileChannel out = null;
+    
+    // rolled queue files, by the time they were rolled
+    private final Map<Path, Long> rolled = new LinkedHashMap<>();
+    
+    // read position in each queue file of the other members
+    private final Map<Path, Long> offsets = new HashMap<>();
+    
+    private Consumer<List<InvalidationEvent>> receiver = null;
+    private ScheduledExecutorService poller = null;
+    
+    
+    public FileQueueInvalidationBus() {
+        this(Paths.get(dirProperty()),
+                WebloggerConfig.getIntProperty("cache.invalidation.file.pollInterval", 100),
+                WebloggerConfig.getIntProperty("cache.invalidation.file.maxBytes", 1048576));
+    }
+    
+    /**
+     * @param dir Directory shared by the cluster members.
+     * @param pollInterval Milliseconds between reads of the other queues.
+     * @param maxBytes Size at which a queue file is rolled.
+     */
+    public FileQueueInvalidationBus(Path dir, long pollInterval, long maxBytes) {
+        this.dir = dir;
+        this.pollInterval = pollInterval;
+        this.maxBytes = maxBytes;
+    }
+    
+    private static String dirProperty() {
+        String dir = WebloggerConfig.getProperty("cache.invalidation.file.dir");
+        if (StringUtils.isBlank(dir)) {
+            throw new IllegalStateException("cache.invalidation.file.dir is not set");
+        }
+        return dir;
+    }
+    
+    
+    @Override
+    public void start(String nodeId, Consumer<List<InvalidationEvent>> receiver) throws IOException {
+        this.receiver = receiver;
+        this.prefix = nodeId.replaceAll("[^A-Za-z0-9_-]", "_") + ".";
+        Files.createDirectories(dir);
+        
+        // left behind by our previous run
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, prefix + "*" + SUFFIX)) {
+            for (Path file : stream) {
+                Files.deleteIfExists(file);
+            }
+        }
+        
+        // skip what the others wrote before we started
+        synchronized (offsets) {
+            for (Path file : queueFiles()) {
+                offsets.put(file, Files.size(file));
+            }
+        }
+        synchronized (this) {
+            roll();
+        }
+        
+        poller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "FileQueueInvalidationBus");
+            thread.setDaemon(true);
+            return thread;
+        });
+        poller.scheduleWithFixedDelay(this::pollQuietly, pollInterval, pollInterval,
+                TimeUnit.MILLISECONDS);
+    }
+    
+    
+    @Override
+    public synchronized void publish(List<InvalidationEvent> events) {
+        if (out == null) {
+            return;
+        }
+        StringBuilder lines = new StringBuilder();
+        for (InvalidationEvent event : events) {
+            lines.append(event.toLine()).append('\n');
+        }
+        try {
+            // one write, so readers see whole batches most of the time
+            ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            if (out.size() >= maxBytes) {
+                roll();
+            }
+        } catch (IOException ex) {
+            log.error("Error writing cache invalidations to " + current, ex);
+        }
+    }
+    
+    
+    // start a new queue file, dropping expired rolled ones
+    private void roll() throws IOException {
+        long now = System.currentTimeMillis();
+        if (out != null) {
+            out.close();
+            rolled.put(current, now);
+        }
+        Iterator<Map.Entry<Path, Long>> expired = rolled.entrySet().iterator();
+        while (expired.hasNext()) {
+            Map.Entry<Path, Long> file = expired.next();
+            if (now - file.getValue() < ROLLED_RETENTION) {
+                break;
+            }
+            Files.deleteIfExists(file.getKey());
+            expired.remove();
+        }
+        
+        // generations sort by name, so readers go through them in order
+        generation = Math.max(now, generation + 1);
+        current = dir.resolve(String.format("%s%016d%s", prefix, generation, SUFFIX));
+        out = FileChannel.open(current, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+    
+    
+    /**
+     * Read what the other members wrote since the last poll.
+     */
+    void poll() throws IOException {
+        synchronized (offsets) {
+            List<Path> files = queueFiles();
+            offsets.keySet().retainAll(files);
+            for (Path file : files) {
+                // new files are read from the start
+                long offset = offsets.getOrDefault(file, 0L);
+                offsets.put(file, read(file, offset));
+            }
+        }
+    }
+    
+    private void pollQuietly() {
+        try {
+            poll();
+        } catch (IOException | RuntimeException ex) {
+            log.error("Error reading cache invalidations from " + dir, ex);
+        }
+    }
+    
+    
+    // deliver the complete lines after offset, returns the new offset
+    private long read(Path file, long offset) throws IOException {
+        byte[] bytes;
+        try (RandomAccessFile in = new RandomAccessFile(file.toFile(), "r")) {
+            long length = in.length();
+            if (length <= offset) {
+                return offset;
+            }
+            bytes = new byte[(int) Math.min(length - offset, Integer.MAX_VALUE)];
+            in.seek(offset);
+            in.readFully(bytes);
+        } catch (FileNotFoundException ex) {
+            // rolled away under us
+            return offset;
+        }
+        
+        int end = bytes.length;
+        while (end > 0 && bytes[end - 1] != '\n') {
+            end--;
+        }
+        if (end == 0) {
+            return offset;
+        }
+        
+        List<InvalidationEvent> events = new ArrayList<>();
+        for (String line : new String(bytes, 0, end, StandardCharsets.UTF_8).split("\n")) {
+            InvalidationEvent event = InvalidationEvent.fromLine(line);
+            if (event != null) {
+                events.add(event);
+            } else if (!line.isEmpty()) {
+                log.warn("Ignoring invalid cache invalidation in " + file + ": " + line);
+            }
+        }
+        if (!events.isEmpty()) {
+            receiver.accept(events);
+        }
+        return offset + end;
+    }
+    
+    
+    // queue files of the other members, oldest generation first
+    private List<Path> queueFiles() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            for (Path file : stream) {
+                if (!file.getFileName().toString().startsWith(prefix)) {
+                    files.add(file);
+                }
+            }
+        }
+        files.sort(null);
+        return files;
+    }
+    
+    
+    @Override
+    public void shutdown() {
+        if (poller != null) {
+            poller.shutdownNow();
+        }
+        synchronized (this) {
+            try {
+                if (out != null) {
+                    out.close();
+                    out = null;
+                }
+            } catch (IOException ex) {
+                log.warn("Error closing " + current, ex);
+            }
+        }
+    }
+    
+}
@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.util.cache;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Consumer;
+
+
+/**
+ * Transport which carries cache invalidations between the members of a
+ * cluster.
+ *
+ * Implementations are chosen with the cache.invalidation.bus property and
+ * are driven by an {@link InvalidationRelay}, which takes care of batching,
+ * coalescing and duplicate suppression.  A bus only has to deliver the
+ * batches published by every other member, preserving the order of each
+ * member's batches.  It may deliver a batch more than once, and may also
+ * deliver a member its own batches.
+ */
+public interface InvalidationBus {
+    
+    /**
+     * Start sending and receiving.
+     *
+     * @param nodeId Name of this cluster member.
+     * @param receiver Called with each batch of events received.
+     */
+    void start(String nodeId, Consumer<List<InvalidationEvent>> receiver) throws IOException;
+    
+    /**
+     * Send a batch of events to the other members.
+     */
+    void publish(List<InvalidationEvent> events);
+    
+    /**
+     * Stop sending and receiving.
+     */
+    void shutdown();
+    
+}
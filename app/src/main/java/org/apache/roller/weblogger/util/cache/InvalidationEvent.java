@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.util.cache;
+
+import java.util.Objects;
+
+
+/**
+ * A compact description of an object invalidation, as sent between the
+ * members of a cluster by an {@link InvalidationBus}.
+ *
+ * An event names the kind of object which changed, the weblog it belongs to
+ * and the object's id, plus the entry a comment belongs to, which is enough
+ * for cache handlers to do their work.
+ * Events published by a relay also carry their origin and a sequence number
+ * so that receivers can drop duplicates.  Two events are equal if they
+ * describe the same invalidation, whatever their origin.
+ */
+public final class InvalidationEvent {
+    
+    public enum Kind { ENTRY, WEBLOG, BOOKMARK, FOLDER, COMMENT, USER, CATEGORY, TEMPLATE }
+    
+    private static final String NONE = "-";
+    
+    private final Kind kind;
+    private final String weblogId;
+    private final String weblogHandle;
+    private final String objectId;
+    private final String entryId;
+    private final String entryAnchor;
+    private final String origin;
+    private final long sequence;
+    
+    
+    public InvalidationEvent(Kind kind, String weblogId, String weblogHandle, String objectId) {
+        this(kind, weblogId, weblogHandle, objectId, null, null, null, 0);
+    }
+    
+    public InvalidationEvent(Kind kind, String weblogId, String weblogHandle, String objectId,
+            String entryId, String entryAnchor) {
+        this(kind, weblogId, weblogHandle, objectId, entryId, entryAnchor, null, 0);
+    }
+    
+    private InvalidationEvent(Kind kind, String weblogId, String weblogHandle, String objectId,
+            String entryId, String entryAnchor, String origin, long sequence) {
+        this.kind = Objects.requireNonNull(kind);
+        this.weblogId = weblogId;
+        this.weblogHandle = weblogHandle;
+        this.objectId = objectId;
+        this.entryId = entryId;
+        this.entryAnchor = entryAnchor;
+        this.origin = origin;
+        this.sequence = sequence;
+    }
+    
+    
+    /**
+     * Copy of this event stamped with its origin and sequence number.
+     */
+    InvalidationEvent withOrigin(String origin, long sequence) {
+        return new InvalidationEvent(kind, weblogId, weblogHandle, objectId,
+                entryId, entryAnchor, origin, sequence);
+    }
+    
+    
+    public Kind getKind() {
+        return kind;
+    }
+    
+    public String getWeblogId() {
+        return weblogId;
+    }
+    
+    public String getWeblogHandle() {
+        return weblogHandle;
+    }
+    
+    /**
+     * Id of the changed object, or user name for user invalidations.
+     */
+    public String getObjectId() {
+        return objectId;
+    }
+    
+    /**
+     * Id of the entry a changed comment belongs to.
+     */
+    public String getEntryId() {
+        return entryId;
+    }
+    
+    /**
+     * Anchor of the entry a changed comment belongs to.
+     */
+    public String getEntryAnchor() {
+        return entryAnchor;
+    }
+    
+    public String getOrigin() {
+        return origin;
+    }
+    
+    public long getSequence() {
+        return sequence;
+    }
+    
+    
+    /**
+     * Format as a single line of tab separated fields, for transports which
+     * send text.
+     */
+    public String toLine() {
+        return field(origin) + '\t' + sequence + '\t' + kind + '\t'
+                + field(weblogId) + '\t' + field(weblogHandle) + '\t' + field(objectId)
+                + '\t' + field(entryId) + '\t' + field(entryAnchor);
+    }
+    
+    /**
+     * Parse a line written by {@link #toLine()}.
+     *
+     * @return The event, or null if the line isn't a valid event.
+     */
+    public static InvalidationEvent fromLine(String line) {
+        String[] fields = line.split("\t", -1);
+        // lines without the entry fields come from members not yet upgraded
+        if (fields.length != 6 && fields.length != 8) {
+            return null;
+        }
+        try {
+            return new InvalidationEvent(Kind.valueOf(fields[2]), value(fields[3]),
+                    value(fields[4]), value(fields[5]),
+                    fields.length > 6 ? value(fields[6]) : null,
+                    fields.length > 7 ? value(fields[7]) : null,
+                    value(fields[0]), Long.parseLong(fields[1]));
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+    
+    private static String field(String value) {
+        return value != null ? value : NONE;
+    }
+    
+    private static String value(String field) {
+        return NONE.equals(field) ? null : field;
+    }
+    
+    
+    @Override
+    public boolean equals(Object other) {
+        if (other == this) {
+            return true;
+        }
+        if (!(other instanceof InvalidationEvent)) {
+            return false;
+        }
+        InvalidationEvent o = (InvalidationEvent) other;
+        return kind == o.kind && Objects.equals(weblogId, o.weblogId)
+                && Objects.equals(weblogHandle, o.weblogHandle) && Objects.equals(objectId, o.objectId)
+                && Objects.equals(entryId, o.entryId) && Objects.equals(entryAnchor, o.entryAnchor);
+    }
+    
+    @Override
+    public int hashCode() {
+        return Objects.hash(kind, weblogId, weblogHandle, objectId, entryId, entryAnchor);
+    }
+    
+    @Override
+    public String toString() {
+        return toLine();
+    }
+    
+}
@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.util.cache;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+
+/**
+ * Sends local invalidations to the other members of a cluster over an
+ * {@link InvalidationBus} and applies the invalidations they send.
+ *
+ * Outgoing events are collected and published in batches every
+ * batchInterval milliseconds, repeated invalidations of the same object
+ * within a batch being sent once.  Every event is stamped with this
+ * member's origin, which changes with each start, and a sequence number.
+ * Incoming events from a given origin are applied in sequence order, events
+ * which were already seen are dropped and repeated invalidations within a
+ * batch are applied once.
+ */
+public class InvalidationRelay {
+    
+    private static final Log log = LogFactory.getLog(InvalidationRelay.class);
+    
+    private final InvalidationBus bus;
+    private final String nodeId;
+    private final String origin;
+    private final Consumer<InvalidationEvent> applier;
+    private final long batchInterval;
+    
+    private final Set<InvalidationEvent> pending = new LinkedHashSet<>();
+    private long sequence = 0;
+    
+    // last sequence number applied for each origin
+    private final Map<String, Long> lastApplied = new HashMap<>();
+    
+    private ScheduledExecutorService flusher = null;
+    
+    private volatile long published = 0;
+    private volatile long applied = 0;
+    private volatile long dropped = 0;
+    
+    
+    /**
+     * @param bus Transport to use.
+     * @param nodeId Name of this cluster member.
+     * @param applier Called with each event received from another member.
+     * @param batchInterval Milliseconds between batches.
+     */
+    public InvalidationRelay(InvalidationBus bus, String nodeId,
+            Consumer<InvalidationEvent> applier, long batchInterval) {
+        this.bus = bus;
+        this.nodeId = nodeId;
+        this.origin = nodeId + "@" + Long.toString(System.currentTimeMillis(), 36);
+        this.applier = applier;
+        this.batchInterval = batchInterval;
+    }
+    
+    
+    public void start() throws IOException {
+        bus.start(nodeId, this::receive);
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "InvalidationRelay");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, batchInterval, batchInterval,
+                TimeUnit.MILLISECONDS);
+        log.info("Relaying cache invalidations as " + origin + " using " + bus.getClass().getName());
+    }
+    
+    
+    /**
+     * Queue an event for the next batch.
+     */
+    public void publish(InvalidationEvent event) {
+        synchronized (pending) {
+            pending.add(event);
+        }
+    }
+    
+    
+    /**
+     * Publish the queued events now.
+     */
+    public void flush() {
+        List<InvalidationEvent> batch;
+        synchronized (pending) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = new ArrayList<>(pending.size());
+            for (InvalidationEvent event : pending) {
+                batch.add(event.withOrigin(origin, ++sequence));
+            }
+            pending.clear();
+            // publish while holding the lock so that batches go out in order
+            bus.publish(batch);
+        }
+        published += batch.size();
+    }
+    
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException ex) {
+            log.error("Error publishing cache invalidations", ex);
+        }
+    }
+    
+    
+    /**
+     * Apply a batch of events received from the bus.
+     */
+    void receive(List<InvalidationEvent> events) {
+        Set<InvalidationEvent> batch = new LinkedHashSet<>();
+        synchronized (lastApplied) {
+            for (InvalidationEvent event : events) {
+                if (event.getOrigin() == null || origin.equals(event.getOrigin())) {
+                    continue;
+                }
+                Long last = lastApplied.get(event.getOrigin());
+                if (last != null && event.getSequence() <= last) {
+                    dropped++;
+                    continue;
+                }
+                lastApplied.put(event.getOrigin(), event.getSequence());
+                if (!batch.add(event)) {
+                    dropped++;
+                }
+            }
+            
+            for (InvalidationEvent event : batch) {
+                try {
+                    applier.accept(event);
+                } catch (RuntimeException ex) {
+                    log.error("Error applying cache invalidation " + event, ex);
+                }
+                applied++;
+            }
+        }
+    }
+    
+    
+    public void shutdown() {
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+        flushQuietly();
+        bus.shutdown();
+    }
+    
+    
+    /**
+     * Origin stamped on the events of this member.
+     */
+    public String getOrigin() {
+        return origin;
+    }
+    
+    public long getPublishedCount() {
+        return published;
+    }
+    
+    public long getAppliedCount() {
+        return applied;
+    }
+    
+    /**
+     * Number of received events dropped as duplicates.
+     */
+    public long getDroppedCount() {
+        return dropped;
+    }
+    
+}
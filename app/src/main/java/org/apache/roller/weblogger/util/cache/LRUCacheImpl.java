@@ -23,6 +23,7 @@ import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import org.apache.roller.util.RollerConstants;
+import org.apache.roller.weblogger.util.RenderProfiler;
 
 
 /**
@@ -85,6 +86,7 @@ public class LRUCacheImpl implements Cache {
         } else {
             hits++;
         }
+        RenderProfiler.recordCacheLookup(obj != null);
         
         return obj;
     }
@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.util.cache;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.function.Consumer;
+
+
+/**
+ * An invalidation bus which connects all the buses started in the same JVM,
+ * for testing and for running several Roller instances in one container.
+ */
+public class LoopbackInvalidationBus implements InvalidationBus {
+    
+    private static final Set<LoopbackInvalidationBus> BUSES = new CopyOnWriteArraySet<>();
+    
+    private volatile Consumer<List<InvalidationEvent>> receiver = null;
+    
+    
+    @Override
+    public void start(String nodeId, Consumer<List<InvalidationEvent>> receiver) {
+        this.receiver = receiver;
+        BUSES.add(this);
+    }
+    
+    @Override
+    public void publish(List<InvalidationEvent> events) {
+        List<InvalidationEvent> batch = List.copyOf(events);
+        for (LoopbackInvalidationBus bus : BUSES) {
+            Consumer<List<InvalidationEvent>> target = bus.receiver;
+            if (bus != this && target != null) {
+                target.accept(batch);
+            }
+        }
+    }
+    
+    @Override
+    public void shutdown() {
+        BUSES.remove(this);
+        receiver = null;
+    }
+    
+}
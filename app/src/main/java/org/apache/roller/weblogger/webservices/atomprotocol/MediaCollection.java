@@ -97,7 +97,6 @@ public class MediaCollection {
             String title = entry.getTitle() != null ? entry.getTitle() : slug;
             
             // authenticated client posted a weblog entry
-            File tempFile = null;
             String handle = pathInfo[0];
             MediaFileManager fileMgr = roller.getMediaFileManager();
             Weblog website = WebloggerFactory.getWeblogger().getWeblogManager().getWeblogByHandle(handle);
@@ -105,15 +104,9 @@ public class MediaCollection {
                 throw new AtomNotAuthorizedException("Not authorized to edit weblog: " + handle);
             }
             if (pathInfo.length > 1) {
-                // Save to temp file
                 String fileName = createFileName(website, 
                     (slug != null) ? slug : Utilities.replaceNonAlphanumeric(title,' '), contentType);
                 try {
-                    tempFile = File.createTempFile(fileName, "tmp");
-                    FileOutputStream fos = new FileOutputStream(tempFile);
-                    Utilities.copyInputToOutput(is, fos);
-                    fos.close();
-                                        
                     // Parse pathinfo to determine file path
                     String path = filePathFromPathInfo(pathInfo);
                     String justPath = path;
@@ -129,26 +122,22 @@ public class MediaCollection {
                         throw new AtomException("Duplicate file name");
                     }
 
-                    FileInputStream fis = new FileInputStream(tempFile);
-
+                    // stream the request body straight into storage
                     MediaFile mf = new MediaFile();
                     mf.setDirectory(mdir);
                     mf.setWeblog(website);
                     mf.setName(fileName);
                     mf.setOriginalPath(justPath);
                     mf.setContentType(contentType);
-                    mf.setInputStream(fis);
-                    mf.setLength(tempFile.length());
+                    mf.setInputStream(is);
 
                     RollerMessages errors = new RollerMessages();
-                    fileMgr.createMediaFile(website, mf, errors);
+                    fileMgr.createMediaFileFromStream(website, mf, errors);
                     if (errors.getErrorCount() > 0) {
                         throw new AtomException(errors.toString());
                     }
 
                     roller.flush();
-                    
-                    fis.close();
                                       
                     MediaFile stored = fileMgr.getMediaFile(mf.getId());
                     Entry mediaEntry = createAtomResourceEntry(website, stored);
@@ -164,10 +153,6 @@ public class MediaCollection {
                 } catch (FileIOException fie) {
                     throw new AtomException(
                         "File upload disabled, over-quota or other error", fie);
-                } finally {
-                    if (tempFile != null) {
-                        tempFile.delete();
-                    }
                 }
             }
             throw new AtomException("Error saving media entry");
@@ -44,6 +44,7 @@ drop table roller_oauthaccessor;
 
 -- core services tables
 drop table roller_hitcounts;
+drop table roller_hitrollup;
 drop table roller_comment;
 drop table roller_weblogentrytag;
 drop table roller_weblogentrytagagg;
@@ -50,3 +50,66 @@
         <br>
     </s:if>
 </s:iterator>
+
+<s:if test="!throttleStats.isEmpty">
+    <p class="subtitle"><s:text name="cacheInfo.throttles" />
+
+    <s:iterator var="throttle" value="throttleStats">
+        <table class="table table-bordered">
+            <tr>
+                <th colspan="2"><s:property value="#throttle.key"/></th>
+            </tr>
+
+            <s:iterator var="prop" value="#throttle.value">
+                <tr>
+                    <td><s:property value="#prop.key"/></td>
+                    <td><s:property value="#prop.value"/></td>
+                </tr>
+            </s:iterator>
+        </table>
+
+        <br>
+    </s:iterator>
+</s:if>
+
+<s:if test="!renderStats.isEmpty">
+    <p class="subtitle"><s:text name="cacheInfo.rendering" />
+
+    <s:iterator var="render" value="renderStats">
+        <table class="table table-bordered">
+            <tr>
+                <th colspan="2"><s:property value="#render.key"/></th>
+            </tr>
+
+            <s:iterator var="prop" value="#render.value">
+                <tr>
+                    <td><s:property value="#prop.key"/></td>
+                    <td><s:property value="#prop.value"/></td>
+                </tr>
+            </s:iterator>
+        </table>
+
+        <br>
+    </s:iterator>
+</s:if>
+
+<s:if test="!renderingStats.isEmpty">
+    <p class="subtitle"><s:text name="cacheInfo.coalescing" />
+
+    <s:iterator var="inFlight" value="renderingStats">
+        <table class="table table-bordered">
+            <tr>
+                <th colspan="2"><s:property value="#inFlight.key"/></th>
+            </tr>
+
+            <s:iterator var="prop" value="#inFlight.value">
+                <tr>
+                    <td><s:property value="#prop.key"/></td>
+                    <td><s:property value="#prop.value"/></td>
+                </tr>
+            </s:iterator>
+        </table>
+
+        <br>
+    </s:iterator>
+</s:if>
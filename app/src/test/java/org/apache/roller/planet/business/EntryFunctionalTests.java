@@ -29,6 +29,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.util.Date;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
@@ -114,6 +115,15 @@ public class EntryFunctionalTests  {
         
         // by group with timeframe constraint
         assertEquals(0, mgr.getEntries(group, new Date(), null, 0, 10).size());
+        
+        // by group after a given entry
+        List<SubscriptionEntry> entries = mgr.getEntries(group, 0, 10);
+        assertEquals(entries.subList(1, 3), mgr.getEntries(group, entries.get(0), 10));
+        assertEquals(entries.subList(2, 3), mgr.getEntries(group, entries.get(1), 10));
+        
+        // by group after re-reading the newest entries of a subscription
+        mgr.refreshTimeline(sub);
+        assertEquals(entries, mgr.getEntries(group, 0, 10));
     }
     
     @Test
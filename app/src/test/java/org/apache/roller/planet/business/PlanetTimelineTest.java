@@ -0,0 +1,236 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.planet.business;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.planet.pojos.SubscriptionEntry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Test merging of subscription timelines against a sorted list of entries.
+ */
+public class PlanetTimelineTest {
+    
+    private static final Log log = LogFactory.getLog(PlanetTimelineTest.class);
+    
+    private static final Comparator<SubscriptionEntry> NEWEST_FIRST =
+            Comparator.comparing(SubscriptionEntry::getPubTime).reversed()
+                    .thenComparing(Comparator.comparing(SubscriptionEntry::getId).reversed());
+    
+    
+    @Test
+    public void testMergePages() {
+        
+        List<String> subIds = new ArrayList<>();
+        List<SubscriptionEntry> all = new ArrayList<>();
+        PlanetTimeline timeline = setupTimeline(10, 20, 1000, subIds, all);
+        
+        List<String> expected = ids(all);
+        
+        // offset pages
+        assertEquals(expected.subList(0, 15), timeline.merge(subIds, null, null, null, 0, 15));
+        assertEquals(expected.subList(15, 30), timeline.merge(subIds, null, null, null, 15, 15));
+        
+        // cursor pages
+        SubscriptionEntry last = all.get(29);
+        assertEquals(expected.subList(30, 45),
+                timeline.merge(subIds, PlanetTimeline.Cursor.after(last), null, null, 0, 15));
+        
+        // everything fits, so all of it can be paged through
+        assertEquals(expected, timeline.merge(subIds, null, null, null, 0, 1000));
+        assertTrue(timeline.merge(subIds, null, null, null, 200, 10).isEmpty());
+    }
+    
+    
+    @Test
+    public void testMergeDateRange() {
+        
+        List<String> subIds = new ArrayList<>();
+        List<SubscriptionEntry> all = new ArrayList<>();
+        PlanetTimeline timeline = setupTimeline(5, 30, 1000, subIds, all);
+        
+        Date start = all.get(100).getPubTime();
+        Date end = all.get(20).getPubTime();
+        List<String> expected = all.stream()
+                .filter(e -> e.getPubTime().after(start) && e.getPubTime().before(end))
+                .map(SubscriptionEntry::getId)
+                .collect(Collectors.toList());
+        
+        assertEquals(expected, timeline.merge(subIds, null, start, end, 0, 1000));
+    }
+    
+    
+    @Test
+    public void testMergeBeyondIndex() {
+        
+        List<String> subIds = new ArrayList<>();
+        List<SubscriptionEntry> all = new ArrayList<>();
+        PlanetTimeline timeline = setupTimeline(4, 50, 10, subIds, all);
+        
+        // the newest entries come from the index
+        assertEquals(ids(all).subList(0, 10), timeline.merge(subIds, null, null, null, 0, 10));
+        
+        // but deep history can't
+        assertNull(timeline.merge(subIds, null, null, null, 0, 100));
+        assertNull(timeline.merge(subIds, null, null, null, 60, 10));
+        
+        // unless it is all out of range anyway
+        Date start = all.get(5).getPubTime();
+        assertEquals(ids(all).subList(0, 5), timeline.merge(subIds, null, start, null, 0, 100));
+        
+        // nor can missing subscriptions
+        timeline.invalidate(subIds.get(0));
+        assertFalse(timeline.contains(subIds.get(0)));
+        assertNull(timeline.merge(subIds, null, null, null, 0, 10));
+    }
+    
+    
+    @Test
+    public void testLoad() {
+        
+        PlanetTimeline timeline = new PlanetTimeline(2, 60000);
+        Date now = new Date();
+        
+        List<String> ids = List.of("c", "b", "a");
+        List<Date> pubTimes = List.of(now, new Date(now.getTime() - 1000), new Date(now.getTime() - 2000));
+        
+        // entries read before a change of their subscription are dropped
+        long generation = timeline.getGeneration();
+        timeline.invalidate("sub");
+        timeline.load("sub", ids, pubTimes, generation);
+        assertFalse(timeline.contains("sub"));
+        
+        generation = timeline.getGeneration();
+        timeline.clear();
+        timeline.load("sub", ids, pubTimes, generation);
+        assertFalse(timeline.contains("sub"));
+        
+        // but not those read before a change of another subscription
+        generation = timeline.getGeneration();
+        timeline.invalidate("other");
+        timeline.load("sub", ids, pubTimes, generation);
+        assertTrue(timeline.contains("sub"));
+        assertEquals(List.of("c", "b"), timeline.merge(List.of("sub"), null, null, null, 0, 2));
+        assertNull(timeline.merge(List.of("sub"), null, null, null, 0, 3));
+    }
+    
+    
+    /**
+     * Page through 1M entries of 500 subscriptions, run with -Droller.benchmark=true
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "roller.benchmark", matches = "true")
+    public void testMergeBenchmark() {
+        
+        List<String> subIds = new ArrayList<>();
+        List<SubscriptionEntry> all = new ArrayList<>();
+        long startTime = System.currentTimeMillis();
+        PlanetTimeline timeline = setupTimeline(500, 2000, 100, subIds, all);
+        log.info("Indexed " + all.size() + " entries in "
+                + (System.currentTimeMillis() - startTime) + " ms");
+        
+        List<String> expected = ids(all);
+        int pages = 1000;
+        
+        startTime = System.currentTimeMillis();
+        for (int i = 0; i < pages; i++) {
+            timeline.merge(subIds, null, null, null, (i % 10) * 30, 30);
+        }
+        long elapsed = System.currentTimeMillis() - startTime;
+        log.info("Merged " + pages + " offset pages in " + elapsed + " ms");
+        
+        startTime = System.currentTimeMillis();
+        PlanetTimeline.Cursor cursor = null;
+        List<String> paged = new ArrayList<>();
+        for (int i = 0; i < pages; i++) {
+            List<String> page = timeline.merge(subIds, cursor, null, null, 0, 30);
+            if (page == null || page.isEmpty()) {
+                break;
+            }
+            paged.addAll(page);
+            SubscriptionEntry last = all.get(paged.size() - 1);
+            cursor = PlanetTimeline.Cursor.after(last);
+        }
+        elapsed = System.currentTimeMillis() - startTime;
+        log.info("Merged " + paged.size() / 30 + " cursor pages in " + elapsed + " ms");
+        
+        assertEquals(expected.subList(0, paged.size()), paged);
+        
+        // compare with sorting everything, which is what the database does
+        startTime = System.currentTimeMillis();
+        for (int i = 0; i < 10; i++) {
+            List<SubscriptionEntry> sorted = new ArrayList<>(all);
+            sorted.sort(NEWEST_FIRST);
+        }
+        log.info("Sorted all entries 10 times in " + (System.currentTimeMillis() - startTime) + " ms");
+    }
+    
+    
+    /**
+     * Index entries of a number of subscriptions, returning all entries
+     * sorted newest first.
+     */
+    private static PlanetTimeline setupTimeline(int subs, int entriesPerSub, int indexed,
+            List<String> subIds, List<SubscriptionEntry> all) {
+        
+        PlanetTimeline timeline = new PlanetTimeline(indexed, 60000);
+        Random random = new Random(42);
+        long now = System.currentTimeMillis();
+        
+        for (int s = 0; s < subs; s++) {
+            String subId = String.format("sub%04d", s);
+            subIds.add(subId);
+            
+            List<SubscriptionEntry> entries = new ArrayList<>(entriesPerSub);
+            for (int e = 0; e < entriesPerSub; e++) {
+                SubscriptionEntry entry = new SubscriptionEntry();
+                entry.setId(String.format("%s-%06d", subId, e));
+                // coarse times so that some entries share them
+                entry.setPubTime(new Timestamp(now - random.nextInt(100000) * 1000L));
+                entries.add(entry);
+            }
+            timeline.update(subId, entries);
+            all.addAll(entries);
+        }
+        
+        all.sort(NEWEST_FIRST);
+        return timeline;
+    }
+    
+    private static List<String> ids(List<SubscriptionEntry> entries) {
+        return entries.stream().map(SubscriptionEntry::getId).collect(Collectors.toList());
+    }
+    
+}
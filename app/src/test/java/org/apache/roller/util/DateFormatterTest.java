@@ -0,0 +1,292 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.util;
+
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.function.Function;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Test cached date formats against SimpleDateFormat.
+ */
+public class DateFormatterTest {
+
+    private static final Log log = LogFactory.getLog(DateFormatterTest.class);
+
+    private static final String[] PATTERNS = {
+        "yyyyMMdd", "yyyyMM", "yyyy-MM-dd", "dd.MM.yyyy", "d.M.yy",
+        "yyyy-MM-dd HH:mm:ss.SSS", "dd.MM.yyyy HH:mm:ss",
+        "EEE, d MMM yyyy HH:mm:ss Z", "EEEE MMMM dd, yyyy", "MMMM dd, yyyy",
+        "MMM yyyy", "MMMM", "LLLL yyyy", "EEEE", "d. MMMM yyyy", "dd",
+        "h:mm a", "hh:mm:ss a z", "zzzz", "'Posted' EEE 'at' K:mm a",
+        "k:mm", "D", "S", "SSSSS", "yyyy-MM-dd'T'HH:mm:ssXXX", "X", "XX",
+        "G yyyy", "GGGG", "ww yyyy", "YYYY", "u", "F", "'['dd'] {MM} #'yy''",
+        "yyyy年M月d日" };
+
+    private static final Locale[] LOCALES = {
+        Locale.US, Locale.ENGLISH, Locale.UK, Locale.GERMANY, Locale.FRANCE,
+        Locale.JAPAN, Locale.CHINA, Locale.KOREA, new Locale("ru"), new Locale("pl"),
+        new Locale("ar", "EG"), new Locale("th", "TH"), new Locale("ja", "JP", "JP"),
+        new Locale("hi", "IN"), new Locale("fa"), new Locale("es"),
+        new Locale("pt", "BR"), new Locale("tr") };
+
+    private static final String[] ZONES = {
+        "UTC", "America/New_York", "Asia/Kolkata", "Australia/Adelaide",
+        "America/St_Johns", "Pacific/Chatham", "Asia/Kathmandu",
+        "America/Sao_Paulo", "Europe/Berlin", "GMT-05:30" };
+
+    private static final long[] DATES = {
+        0L,
+        1792361776123L,     // 2026-10-18T22:16:16.123Z
+        951782400000L,      // 2000-02-29T00:00:00Z
+        946684799999L,      // 1999-12-31T23:59:59.999Z
+        1772955000000L,     // 2026-03-08T07:30:00Z, New York springs forward
+        1793511000000L,     // 2026-11-01T05:30:00Z, New York falls back
+        -2208988800000L,    // 1900-01-01T00:00:00Z, local mean time offsets
+        -11826633600000L,   // 1595-03-25T16:00:00Z
+        -15000000000000L,   // 1494, before the Gregorian calendar
+        253402300799000L,   // 9999-12-31T23:59:59Z
+        253402387200000L    // 10000-01-01T00:00:00Z, a day later in UTC-
+    };
+
+
+    /**
+     * Every pattern formats the same as SimpleDateFormat, in every locale
+     * and time zone.
+     */
+    @Test
+    public void testMatchesSimpleDateFormat() throws Exception {
+        for (String pattern : PATTERNS) {
+            for (Locale locale : LOCALES) {
+                for (String zoneId : ZONES) {
+                    TimeZone zone = TimeZone.getTimeZone(zoneId);
+                    SimpleDateFormat expected = new SimpleDateFormat(pattern, locale);
+                    expected.setTimeZone(zone);
+                    DateFormatter formatter = DateFormatter.getInstance(pattern, locale, zone);
+                    for (long date : DATES) {
+                        assertEquals(expected.format(new Date(date)),
+                                formatter.format(new Date(date)),
+                                pattern + " in " + locale + " " + zoneId + " at " + date);
+                    }
+                }
+            }
+        }
+    }
+
+
+    @Test
+    public void testRfc822() {
+        Date date = new Date(1792361776123L);
+        assertEquals("Sun, 18 Oct 2026 22:16:16 +0000",
+                DateFormatter.getRfc822(TimeZone.getTimeZone("UTC")).format(date));
+        assertEquals("Sun, 18 Oct 2026 18:16:16 -0400",
+                DateFormatter.getRfc822(TimeZone.getTimeZone("America/New_York")).format(date));
+        assertEquals("Mon, 19 Oct 2026 03:46:16 +0530",
+                DateFormatter.getRfc822(TimeZone.getTimeZone("Asia/Kolkata")).format(date));
+        assertEquals("Mon, 19 Oct 2026 00:16:16 +0200",
+                DateFormatter.getRfc822(TimeZone.getTimeZone("Europe/Berlin")).format(date));
+    }
+
+
+    @Test
+    public void testIso8601() {
+        Date date = new Date(1792361776123L);
+        assertEquals("2026-10-18T22:16:16+00:00",
+                DateFormatter.getIso8601(TimeZone.getTimeZone("UTC")).format(date));
+        assertEquals("2026-10-18T18:16:16-04:00",
+                DateFormatter.getIso8601(TimeZone.getTimeZone("America/New_York")).format(date));
+        assertEquals("2026-10-19T03:46:16+05:30",
+                DateFormatter.getIso8601(TimeZone.getTimeZone("Asia/Kolkata")).format(date));
+        assertEquals("2026-10-18T19:46:16-02:30",
+                DateFormatter.getIso8601(TimeZone.getTimeZone("America/St_Johns")).format(date));
+        assertEquals("", DateFormatter.getIso8601(null).format(null));
+    }
+
+
+    @Test
+    public void testFormatToAppendable() throws Exception {
+        Date date = new Date(1792361776123L);
+        TimeZone zone = TimeZone.getTimeZone("Asia/Kathmandu");
+
+        StringBuilder sb = new StringBuilder("<b>");
+        DateFormatter.getInstance("yyyy-MM-dd HH:mm", Locale.US, zone).formatTo(date, sb);
+        assertEquals("<b>2026-10-19 04:01", sb.toString());
+
+        StringWriter writer = new StringWriter();
+        DateFormatter.getInstance("EEEE d. MMMM", Locale.GERMANY, zone).formatTo(date, writer);
+        assertEquals("Montag 19. Oktober", writer.toString());
+    }
+
+
+    /**
+     * Numeric patterns parse leniently, the same as SimpleDateFormat.
+     */
+    @Test
+    public void testParse() throws Exception {
+        String[][] values = {
+            { "yyyyMMdd", "20261018", "20000229", "20261340", "20260230", "00010101", "15000101" },
+            { "yyyyMM", "202610", "202613", "199912" },
+            { "yyyy/MM/dd HH:mm:ss", "2026/10/18 22:16:16", "2026/03/08 02:30:00",
+                "2026/11/01 01:30:00", "2026/10/18 25:61:61 trailing" },
+            { "dd.MM.yy", "18.10.26", "01.01.99" } };
+
+        for (String[] row : values) {
+            for (Locale locale : new Locale[] { Locale.US, Locale.GERMANY, new Locale("th", "TH") }) {
+                for (String zoneId : ZONES) {
+                    TimeZone zone = TimeZone.getTimeZone(zoneId);
+                    SimpleDateFormat expected = new SimpleDateFormat(row[0], locale);
+                    expected.setTimeZone(zone);
+                    DateFormatter formatter = DateFormatter.getInstance(row[0], locale, zone);
+                    for (int i = 1; i < row.length; i++) {
+                        assertEquals(expected.parse(row[i]), formatter.parse(row[i]),
+                                row[0] + " " + row[i] + " in " + locale + " " + zoneId);
+                    }
+                }
+            }
+        }
+
+        assertEquals(new Date(1792361776000L), DateFormatter.getRfc822(null)
+                .parse("Sun, 18 Oct 2026 22:16:16 +0000"));
+        assertEquals(new Date(1792361776000L), DateFormatter.getIso8601(null)
+                .parse("2026-10-18T18:16:16-04:00"));
+
+        DateFormatter formatter = DateFormatter.getInstance("yyyyMMdd", Locale.US, null);
+        assertThrows(ParseException.class, () -> formatter.parse("2026-10-18"));
+        assertThrows(ParseException.class, () -> formatter.parse(""));
+    }
+
+
+    @Test
+    public void testCached() {
+        TimeZone zone = TimeZone.getTimeZone("Europe/Berlin");
+        assertSame(DateFormatter.getInstance("dd.MM.yyyy", Locale.GERMANY, zone),
+                DateFormatter.getInstance("dd.MM.yyyy", Locale.GERMANY, TimeZone.getTimeZone("Europe/Berlin")));
+        assertThrows(IllegalArgumentException.class,
+                () -> DateFormatter.getInstance("yyyy-qq", Locale.US, zone));
+        assertThrows(IllegalArgumentException.class,
+                () -> DateFormatter.getInstance("yyyy 'unterminated", Locale.US, zone));
+    }
+
+
+    @Test
+    public void testDateUtil() throws Exception {
+        TimeZone defaultZone = TimeZone.getDefault();
+        try {
+            TimeZone.setDefault(TimeZone.getTimeZone("America/New_York"));
+            Date date = new Date(1792361776123L);
+            assertEquals("Sun, 18 Oct 2026 18:16:16 -0400", DateUtil.formatRfc822(date));
+            assertEquals("2026-10-18T18:16:16-04:00", DateUtil.formatIso8601(date));
+            assertEquals("2026-10-18", DateUtil.formatIso8601Day(date));
+            assertEquals("20261018", DateUtil.format8chars(date));
+            assertEquals("20261019", DateUtil.format8chars(date, TimeZone.getTimeZone("Asia/Tokyo")));
+            assertEquals("202610", DateUtil.format6chars(date));
+            assertEquals("2026-10-18 18:16:16.123", DateUtil.defaultTimestamp(date));
+            assertEquals("18.10.2026 18:16:16", DateUtil.friendlyTimestamp(date));
+            assertEquals("18.10.26", DateUtil.minimalDate(date));
+            assertEquals("18.10.2026", DateUtil.fullDate(date));
+            assertEquals("", DateUtil.formatIso8601(null));
+            assertEquals(new SimpleDateFormat("yyyy/MM/dd HH:mm:ss").parse("2026/10/18 18:16:16"),
+                    DateUtil.parse("2026/10/18 18:16:16", "yyyy/MM/dd HH:mm:ss"));
+        } finally {
+            TimeZone.setDefault(defaultZone);
+        }
+    }
+
+
+    /**
+     * Compare a new SimpleDateFormat per call, as DateUtil used to, against
+     * the cached formats.  Run with -Droller.benchmark=true
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "roller.benchmark", matches = "true")
+    public void testFormatBenchmark() throws Exception {
+
+        TimeZone zone = TimeZone.getTimeZone("America/New_York");
+        String[][] formats = {
+            { "EEE, d MMM yyyy HH:mm:ss Z", "en_US" },
+            { "yyyy-MM-dd'T'HH:mm:ssZ", "en_US" },
+            { "yyyyMMdd", "en_US" },
+            { "EEEE MMMM dd, yyyy", "en_US" },
+            { "EEEE, d. MMMM yyyy", "de_DE" } };
+
+        StringBuilder sb = new StringBuilder(64);
+        for (String[] format : formats) {
+            String pattern = format[0];
+            Locale locale = Locale.forLanguageTag(format[1].replace('_', '-'));
+            DateFormatter formatter = DateFormatter.getInstance(pattern, locale, zone);
+
+            measure(pattern + " " + locale + " SimpleDateFormat", date -> {
+                SimpleDateFormat sdf = new SimpleDateFormat(pattern, locale);
+                sdf.setTimeZone(zone);
+                return sdf.format(date);
+            });
+            measure(pattern + " " + locale + " DateFormatter.format", formatter::format);
+            measure(pattern + " " + locale + " DateFormatter.formatTo", date -> {
+                sb.setLength(0);
+                try {
+                    formatter.formatTo(date, sb);
+                } catch (java.io.IOException e) {
+                    throw new IllegalStateException(e);
+                }
+                return sb;
+            });
+        }
+    }
+
+
+    private static void measure(String name, Function<Date, Object> format) {
+
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        int iterations = 200000;
+        Date date = new Date(1792361776123L);
+        long sink = 0;
+
+        // the first pass warms up
+        for (int pass = 0; pass < 2; pass++) {
+            long bytes = threads.getThreadAllocatedBytes(thread);
+            long startTime = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                date.setTime(1792361776123L + i * 1000L);
+                sink += format.apply(date).hashCode();
+            }
+            long nanos = System.nanoTime() - startTime;
+            bytes = threads.getThreadAllocatedBytes(thread) - bytes;
+            if (pass == 1) {
+                log.info(name + ": " + (nanos / iterations) + " ns/op, "
+                        + (bytes / iterations) + " bytes/op (" + (sink & 1) + ")");
+            }
+        }
+    }
+
+}
@@ -28,10 +28,19 @@ import org.apache.roller.weblogger.util.RollerMessages;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.util.Map;
 
+import org.apache.commons.codec.binary.Hex;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -56,6 +65,7 @@ public class FileContentManagerTest  {
         PropertiesManager pmgr = WebloggerFactory.getWeblogger().getPropertiesManager();
         Map<String, RuntimeConfigProperty> config = pmgr.getProperties();
         config.get("uploads.dir.maxsize").setValue("30000");
+        config.get("uploads.file.maxsize").setValue("2.00");
         config.get("uploads.types.forbid").setValue("");
         config.get("uploads.types.allowed").setValue("");
         config.get("uploads.enabled").setValue("true");
@@ -118,6 +128,17 @@ public class FileContentManagerTest  {
             assertTrue(true, "Exception thrown for non-existant file as expected");
         }
 
+        // store a file again and delete all of the weblog's files
+        is = getClass().getResourceAsStream("/bookmarks.opml");
+        fmgr.saveFileContent(testWeblog, "bookmarks-file-id", is);
+        fmgr.deleteAllFiles(testWeblog);
+        try {
+            fmgr.getFileContent(testWeblog, "bookmarks-file-id");
+            assertTrue(false, "Non-existant file retrieved without any exception");
+        } catch (FileNotFoundException e) {
+            assertTrue(true, "Exception thrown for non-existant file as expected");
+        }
+
         TestUtils.endSession(true);
         TestUtils.teardownWeblog(testWeblog.getId());
         TestUtils.teardownUser(testUser.getUserName());
@@ -183,4 +204,205 @@ public class FileContentManagerTest  {
         TestUtils.teardownWeblog(testWeblog.getId());
         TestUtils.teardownUser(testUser.getUserName());
     }
+
+    /**
+     * Test streaming a large upload, which takes no more memory than a
+     * small one.  Run with -DargLine=-Xmx48m to check.
+     */
+    @Test
+    public void testStreamedSave() throws Exception {
+
+        testUser = TestUtils.setupUser("FCMTest_userName3");
+        testWeblog = TestUtils.setupWeblog("FCMTest_handle3", testUser);
+        TestUtils.endSession(true);
+
+        setLimits("1000", "2000");
+        FileContentManager fmgr = WebloggerFactory.getWeblogger().getFileContentManager();
+
+        long length = 300L * 1024 * 1024;
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        RollerMessages msgs = new RollerMessages();
+        StoredFileContent stored = fmgr.saveFileContent(testWeblog, "big-file-id", "big.bin",
+                "application/octet-stream",
+                new DigestInputStream(new GeneratedInputStream(length), digest), msgs);
+
+        assertEquals(0, msgs.getErrorCount());
+        assertEquals(length, stored.getLength());
+        assertEquals(Hex.encodeHexString(digest.digest()), stored.getContentHash());
+        assertEquals(-1, stored.getWidth());
+        assertEquals(length, fmgr.getFileContent(testWeblog, "big-file-id").getLength());
+
+        fmgr.deleteAllFiles(testWeblog);
+        TestUtils.teardownWeblog(testWeblog.getId());
+        TestUtils.teardownUser(testUser.getUserName());
+        TestUtils.endSession(true);
+    }
+
+    /**
+     * Test that uploads over the file size limit or the quota are abandoned
+     * as soon as they go over.
+     */
+    @Test
+    public void testStreamedSaveLimits() throws Exception {
+
+        testUser = TestUtils.setupUser("FCMTest_userName4");
+        testWeblog = TestUtils.setupWeblog("FCMTest_handle4", testUser);
+        TestUtils.endSession(true);
+
+        FileContentManager fmgr = WebloggerFactory.getWeblogger().getFileContentManager();
+
+        // an endless upload stops at the file size limit
+        setLimits("1", "2000");
+        GeneratedInputStream endless = new GeneratedInputStream(-1);
+        RollerMessages msgs = new RollerMessages();
+        assertNull(fmgr.saveFileContent(testWeblog, "endless-file-id", "endless.bin",
+                "application/octet-stream", endless, msgs));
+        assertEquals(1, msgs.getErrorCount());
+        assertTrue(endless.getCount() < 2 * 1024 * 1024);
+
+        // and at the quota
+        setLimits("4", "1");
+        endless = new GeneratedInputStream(-1);
+        msgs = new RollerMessages();
+        assertNull(fmgr.saveFileContent(testWeblog, "endless-file-id", "endless.bin",
+                "application/octet-stream", endless, msgs));
+        assertEquals(1, msgs.getErrorCount());
+        assertTrue(endless.getCount() < 2 * 1024 * 1024);
+
+        // nothing is left behind
+        try {
+            fmgr.getFileContent(testWeblog, "endless-file-id");
+            fail("Abandoned upload was saved");
+        } catch (FileNotFoundException e) {
+            // expected
+        }
+        assertFalse(fmgr.overQuota(testWeblog));
+
+        // type checks come before reading anything
+        setLimits("4", "2000");
+        PropertiesManager pmgr = WebloggerFactory.getWeblogger().getPropertiesManager();
+        Map<String, RuntimeConfigProperty> config = pmgr.getProperties();
+        config.get("uploads.types.forbid").setValue("bin");
+        pmgr.saveProperties(config);
+        TestUtils.endSession(true);
+        endless = new GeneratedInputStream(-1);
+        msgs = new RollerMessages();
+        assertNull(fmgr.saveFileContent(testWeblog, "endless-file-id", "endless.bin",
+                "application/octet-stream", endless, msgs));
+        assertEquals(0, endless.getCount());
+
+        TestUtils.teardownWeblog(testWeblog.getId());
+        TestUtils.teardownUser(testUser.getUserName());
+        TestUtils.endSession(true);
+    }
+
+    /**
+     * Compare streaming an upload with copying it to a temporary file first,
+     * run with -Droller.benchmark=true
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "roller.benchmark", matches = "true")
+    public void testStreamedSaveBenchmark() throws Exception {
+
+        testUser = TestUtils.setupUser("FCMTest_userName5");
+        testWeblog = TestUtils.setupWeblog("FCMTest_handle5", testUser);
+        TestUtils.endSession(true);
+
+        setLimits("1000", "30000");
+        FileContentManager fmgr = WebloggerFactory.getWeblogger().getFileContentManager();
+        long length = 256L * 1024 * 1024;
+        int runs = 5;
+
+        long startTime = System.currentTimeMillis();
+        for (int i = 0; i < runs; i++) {
+            // what uploads used to do: temp file, checks, copy, then decode
+            File tempFile = File.createTempFile("upload", "tmp");
+            try {
+                try (OutputStream os = new FileOutputStream(tempFile)) {
+                    new GeneratedInputStream(length).transferTo(os);
+                }
+                assertTrue(fmgr.canSave(testWeblog, "big.bin", "application/octet-stream",
+                        tempFile.length(), new RollerMessages()));
+                try (InputStream is = new FileInputStream(tempFile)) {
+                    fmgr.saveFileContent(testWeblog, "copied-file-id", is);
+                }
+                try (InputStream is = fmgr.getFileContent(testWeblog, "copied-file-id").getInputStream()) {
+                    is.transferTo(OutputStream.nullOutputStream());
+                }
+            } finally {
+                tempFile.delete();
+            }
+        }
+        long copied = System.currentTimeMillis() - startTime;
+
+        startTime = System.currentTimeMillis();
+        for (int i = 0; i < runs; i++) {
+            assertNotNull(fmgr.saveFileContent(testWeblog, "streamed-file-id", "big.bin",
+                    "application/octet-stream", new GeneratedInputStream(length), new RollerMessages()));
+        }
+        long streamed = System.currentTimeMillis() - startTime;
+
+        long mb = runs * length / (1024 * 1024);
+        log.info("Copied " + mb + " MB in " + copied + " ms, " + (mb * 1000 / copied) + " MB/s");
+        log.info("Streamed " + mb + " MB in " + streamed + " ms, " + (mb * 1000 / streamed) + " MB/s");
+
+        fmgr.deleteAllFiles(testWeblog);
+        TestUtils.teardownWeblog(testWeblog.getId());
+        TestUtils.teardownUser(testUser.getUserName());
+        TestUtils.endSession(true);
+    }
+
+    private static void setLimits(String maxFileMB, String maxDirMB) throws Exception {
+        PropertiesManager pmgr = WebloggerFactory.getWeblogger().getPropertiesManager();
+        Map<String, RuntimeConfigProperty> config = pmgr.getProperties();
+        config.get("uploads.enabled").setValue("true");
+        config.get("uploads.types.allowed").setValue("");
+        config.get("uploads.types.forbid").setValue("");
+        config.get("uploads.file.maxsize").setValue(maxFileMB);
+        config.get("uploads.dir.maxsize").setValue(maxDirMB);
+        pmgr.saveProperties(config);
+        TestUtils.endSession(true);
+    }
+
+    /**
+     * Stream of made up content, which is never held in memory.
+     */
+    private static class GeneratedInputStream extends InputStream {
+
+        private final long length;
+        private long count = 0;
+
+        /**
+         * @param length Number of bytes, or -1 for an endless stream.
+         */
+        GeneratedInputStream(long length) {
+            this.length = length;
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        @Override
+        public int read() {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (length >= 0) {
+                if (count >= length) {
+                    return -1;
+                }
+                len = (int) Math.min(len, length - count);
+            }
+            for (int i = 0; i < len; i++) {
+                long pos = count + i;
+                b[off + i] = (byte) (pos ^ (pos >>> 11) ^ (pos >>> 23));
+            }
+            count += len;
+            return len;
+        }
+    }
 }
@@ -20,7 +20,11 @@ package org.apache.roller.weblogger.business;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.roller.util.DateUtil;
+import org.apache.roller.util.RollerConstants;
 import org.apache.roller.weblogger.TestUtils;
+import org.apache.roller.weblogger.business.jpa.JPAWeblogEntryManagerImpl;
+import org.apache.roller.weblogger.pojos.StatCount;
 import org.apache.roller.weblogger.pojos.User;
 import org.apache.roller.weblogger.pojos.Weblog;
 import org.apache.roller.weblogger.pojos.WeblogHitCount;
@@ -28,8 +32,11 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -307,4 +314,122 @@ public class HitCountTest  {
         TestUtils.teardownWeblog(blog3.getId());
     }
 
+
+
+    /**
+     * Test recording, ranking and downsampling of hourly hit rollups.
+     */
+    @Test
+    public void testHitRollups() throws Exception {
+        
+        WeblogEntryManager mgr = WebloggerFactory.getWeblogger().getWeblogEntryManager();
+        
+        testUser = TestUtils.getManagedUser(testUser);
+        Weblog blog1 = TestUtils.setupWeblog("hitRollupTest1", testUser);
+        Weblog blog2 = TestUtils.setupWeblog("hitRollupTest2", testUser);
+        TestUtils.endSession(true);
+        
+        Date now = new Date();
+        Date oldDay = DateUtil.getStartOfDay(JPAWeblogEntryManagerImpl.getStartDateNow(10));
+        
+        try {
+            blog1 = TestUtils.getManagedWebsite(blog1);
+            blog2 = TestUtils.getManagedWebsite(blog2);
+            mgr.incrementHourlyHitCount(blog1, now, 2);
+            mgr.incrementHourlyHitCount(blog2, now, 5);
+            mgr.incrementHourlyHitCount(blog2, new Date(oldDay.getTime() + RollerConstants.HOUR_IN_MS), 3);
+            mgr.incrementHourlyHitCount(blog2, new Date(oldDay.getTime() + 2 * RollerConstants.HOUR_IN_MS), 4);
+            TestUtils.endSession(true);
+            
+            // later hits in the same hour go to the same rollup
+            mgr.incrementHourlyHitCount(TestUtils.getManagedWebsite(blog1), now, 1);
+            TestUtils.endSession(true);
+            
+            // the last day only sees the current hour
+            Map<String, Long> hits = getHits(mgr.getHotWeblogs(
+                    JPAWeblogEntryManagerImpl.getStartDateNow(1), null, 0, -1));
+            assertEquals(Long.valueOf(3), hits.get("hitRollupTest1"));
+            assertEquals(Long.valueOf(5), hits.get("hitRollupTest2"));
+            
+            // a longer window includes the older hours too
+            Date monthAgo = JPAWeblogEntryManagerImpl.getStartDateNow(30);
+            List<StatCount> hotBlogs = mgr.getHotWeblogs(monthAgo, null, 0, -1);
+            hits = getHits(hotBlogs);
+            assertEquals(Long.valueOf(12), hits.get("hitRollupTest2"));
+            assertTrue(indexOf(hotBlogs, "hitRollupTest2") < indexOf(hotBlogs, "hitRollupTest1"));
+            
+            // downsampling old hours into days doesn't change the totals
+            mgr.rollupHitCounts(JPAWeblogEntryManagerImpl.getStartDateNow(7),
+                    JPAWeblogEntryManagerImpl.getStartDateNow(400));
+            TestUtils.endSession(true);
+            hits = getHits(mgr.getHotWeblogs(monthAgo, null, 0, -1));
+            assertEquals(Long.valueOf(12), hits.get("hitRollupTest2"));
+            assertEquals(Long.valueOf(3), hits.get("hitRollupTest1"));
+            
+            // downsampling again is a no-op
+            mgr.rollupHitCounts(JPAWeblogEntryManagerImpl.getStartDateNow(7),
+                    JPAWeblogEntryManagerImpl.getStartDateNow(400));
+            TestUtils.endSession(true);
+            hits = getHits(mgr.getHotWeblogs(monthAgo, null, 0, -1));
+            assertEquals(Long.valueOf(12), hits.get("hitRollupTest2"));
+            
+            // and expired days are dropped
+            mgr.rollupHitCounts(JPAWeblogEntryManagerImpl.getStartDateNow(7),
+                    JPAWeblogEntryManagerImpl.getStartDateNow(5));
+            TestUtils.endSession(true);
+            hits = getHits(mgr.getHotWeblogs(monthAgo, null, 0, -1));
+            assertEquals(Long.valueOf(5), hits.get("hitRollupTest2"));
+            
+        } finally {
+            TestUtils.teardownWeblog(blog1.getId());
+            TestUtils.teardownWeblog(blog2.getId());
+        }
+    }
+    
+    private static Map<String, Long> getHits(List<StatCount> stats) {
+        Map<String, Long> hits = new HashMap<>();
+        for (StatCount stat : stats) {
+            hits.put(stat.getSubjectNameShort(), stat.getCount());
+        }
+        return hits;
+    }
+    
+    private static int indexOf(List<StatCount> stats, String handle) {
+        for (int i = 0; i < stats.size(); i++) {
+            if (handle.equals(stats.get(i).getSubjectNameShort())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+
+    /**
+     * Test tracking and decay of the most visited pages of a weblog.
+     */
+    @Test
+    public void testHotPages() throws Exception {
+
+        HitCountQueue queue = HitCountQueue.getInstance();
+        String handle = testWeblog.getHandle();
+
+        for (int i = 0; i < 4; i++) {
+            queue.processPageHit(handle, "/roller-ui/rendering/page/" + handle);
+        }
+        for (int i = 0; i < 20; i++) {
+            queue.processPageHit(handle, "/roller-ui/rendering/page/" + handle + "/entry/a");
+        }
+
+        List<String> hotPages = queue.getHotPages(handle, 10);
+        assertEquals(2, hotPages.size());
+        assertEquals("/roller-ui/rendering/page/" + handle + "/entry/a", hotPages.get(0));
+        assertEquals(1, queue.getHotPages(handle, 1).size());
+
+        // counts halve on each decay, pages fall out once they reach zero
+        for (int i = 0; i < 5; i++) {
+            queue.decayPageHits();
+        }
+        assertTrue(queue.getHotPages(handle, 10).isEmpty());
+    }
+
 }
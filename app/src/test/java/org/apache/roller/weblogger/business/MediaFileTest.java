@@ -29,7 +29,10 @@ import org.apache.roller.weblogger.pojos.MediaFileFilter.SizeFilterType;
 import org.apache.roller.weblogger.util.RollerMessages;
 import org.junit.jupiter.api.Test;
 
+import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.InputStream;
+import javax.imageio.ImageIO;
 import java.sql.Timestamp;
 import java.util.*;
 import org.junit.jupiter.api.BeforeEach;
@@ -387,6 +390,73 @@ public class MediaFileTest  {
         TestUtils.teardownUser(testUser.getUserName());
     }
 
+    /**
+     * Test creation of media files streamed from an upload, identical ones
+     * sharing content.
+     */
+    @Test
+    public void testCreateMediaFileFromStream() throws Exception {
+
+        User testUser = TestUtils.setupUser("mediaFileTestUser13");
+        Weblog testWeblog = TestUtils.setupWeblog("mediaFileTestWeblog13", testUser);
+
+        MediaFileManager mfMgr = WebloggerFactory.getWeblogger()
+                .getMediaFileManager();
+        MediaFileDirectory rootDirectory = mfMgr
+                .getDefaultMediaFileDirectory(testWeblog);
+        TestUtils.endSession(true);
+
+        BufferedImage image = ImageIO.read(getClass().getResourceAsStream(TEST_IMAGE));
+        long length;
+        try (InputStream is = getClass().getResourceAsStream(TEST_IMAGE)) {
+            length = is.readAllBytes().length;
+        }
+
+        String[] ids = new String[2];
+        for (int i = 0; i < ids.length; i++) {
+            testWeblog = TestUtils.getManagedWebsite(testWeblog);
+            rootDirectory = mfMgr.getMediaFileDirectory(rootDirectory.getId());
+
+            MediaFile mediaFile = new MediaFile();
+            mediaFile.setName("streamed" + i + ".jpg");
+            mediaFile.setDirectory(rootDirectory);
+            mediaFile.setWeblog(testWeblog);
+            mediaFile.setContentType("image/jpeg");
+            mediaFile.setInputStream(getClass().getResourceAsStream(TEST_IMAGE));
+            rootDirectory.getMediaFiles().add(mediaFile);
+
+            RollerMessages errors = new RollerMessages();
+            mfMgr.createMediaFileFromStream(testWeblog, mediaFile, errors);
+            assertEquals(0, errors.getErrorCount());
+            ids[i] = mediaFile.getId();
+            TestUtils.endSession(true);
+        }
+
+        MediaFile first = mfMgr.getMediaFile(ids[0], true);
+        MediaFile second = mfMgr.getMediaFile(ids[1], true);
+        assertEquals(length, first.getLength());
+        assertEquals(image.getWidth(), first.getWidth());
+        assertEquals(image.getHeight(), first.getHeight());
+        assertNotNull(first.getContentHash());
+        assertEquals(first.getContentHash(), second.getContentHash());
+        assertEquals(image.getWidth(), second.getWidth());
+        assertNotNull(second.getThumbnailInputStream());
+
+        // removing one leaves the other intact
+        testWeblog = TestUtils.getManagedWebsite(testWeblog);
+        mfMgr.removeMediaFile(testWeblog, first);
+        TestUtils.endSession(true);
+        second = mfMgr.getMediaFile(ids[1], true);
+        try (InputStream is = second.getInputStream()) {
+            assertEquals(length, is.readAllBytes().length);
+        }
+        second.getThumbnailInputStream().close();
+
+        TestUtils.endSession(true);
+        TestUtils.teardownWeblog(testWeblog.getId());
+        TestUtils.teardownUser(testUser.getUserName());
+    }
+
     /**
      * Test searching media file.
      */
@@ -20,6 +20,8 @@ package org.apache.roller.weblogger.business;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.roller.weblogger.TestUtils;
+import org.apache.roller.weblogger.business.jpa.StatementCounter;
+import org.apache.roller.weblogger.pojos.GlobalPermission;
 import org.apache.roller.weblogger.pojos.User;
 import org.apache.roller.weblogger.pojos.Weblog;
 import org.apache.roller.weblogger.pojos.WeblogPermission;
@@ -319,4 +321,74 @@ public class PermissionTest  {
         TestUtils.endSession(true);
         log.info("END");
     }
+    
+    
+    /**
+     * Tests that permission checks read a user's permissions once per
+     * request, and see changes made during the request.
+     */
+    @Test
+    public void testPermissionCheckQueries() throws Exception {
+        
+        log.info("BEGIN");
+        
+        // we need a second user for this test, who isn't a global admin
+        User testUser2 = TestUtils.setupUser("permCheckUser");
+        UserManager umgr = WebloggerFactory.getWeblogger().getUserManager();
+        umgr.grantWeblogPermission(TestUtils.getManagedWebsite(testWeblog), testUser2,
+                List.of(WeblogPermission.POST, WeblogPermission.ADMIN));
+        TestUtils.endSession(true);
+        
+        try {
+            User user = TestUtils.getManagedUser(testUser2);
+            Weblog weblog = TestUtils.getManagedWebsite(testWeblog);
+        
+            WeblogPermission post = new WeblogPermission(weblog, user, WeblogPermission.POST);
+            WeblogPermission admin = new WeblogPermission(weblog, user, WeblogPermission.ADMIN);
+            GlobalPermission globalWeblog = new GlobalPermission(Collections.singletonList(GlobalPermission.WEBLOG));
+            GlobalPermission globalAdmin = new GlobalPermission(Collections.singletonList(GlobalPermission.ADMIN));
+            GlobalPermission globalLogin = new GlobalPermission(Collections.singletonList(GlobalPermission.LOGIN));
+        
+            StatementCounter.start();
+            int statements;
+            try {
+                for (int i = 0; i < 50; i++) {
+                    assertTrue(umgr.checkPermission(post, user));
+                    assertTrue(umgr.checkPermission(admin, user));
+                    assertTrue(umgr.checkPermission(globalWeblog, user));
+                    assertFalse(umgr.checkPermission(globalAdmin, user));
+                    assertTrue(umgr.checkPermission(globalLogin, user));
+                }
+            } finally {
+                statements = StatementCounter.stop();
+            }
+            assertTrue(statements <= 2, "Permission checks took " + statements + " statements");
+        
+            // changes are seen within the same request
+            umgr.revokeWeblogPermission(weblog, user, Collections.singletonList(WeblogPermission.ADMIN));
+            umgr.grantRole("admin", user);
+            WebloggerFactory.getWeblogger().flush();
+        
+            assertTrue(umgr.checkPermission(post, user));
+            assertTrue(umgr.checkPermission(globalAdmin, user));
+        
+            umgr.revokeRole("admin", user);
+            WebloggerFactory.getWeblogger().flush();
+            assertFalse(umgr.checkPermission(globalAdmin, user));
+            assertFalse(umgr.checkPermission(admin, user));
+            TestUtils.endSession(true);
+        
+            // and by the next one
+            user = TestUtils.getManagedUser(testUser2);
+            assertFalse(umgr.checkPermission(globalAdmin, user));
+            assertFalse(umgr.checkPermission(admin, user));
+            assertTrue(umgr.checkPermission(post, user));
+        } finally {
+            // cleanup the extra test user
+            TestUtils.endSession(false);
+            TestUtils.teardownUser(testUser2.getUserName());
+            TestUtils.endSession(true);
+        }
+        log.info("END");
+    }
 }
@@ -21,6 +21,7 @@ package org.apache.roller.weblogger.business;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.roller.weblogger.TestUtils;
+import org.apache.roller.weblogger.pojos.Weblog;
 import org.apache.roller.weblogger.pojos.RuntimeConfigProperty;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -92,4 +93,44 @@ public class PropertiesTest  {
         assertEquals("blahblah", props.get("site.description").getValue());
     }
     
+    
+    @Test
+    public void testWeblogURLFollowsSiteURL() throws Exception {
+        
+        PropertiesManager mgr = WebloggerFactory.getWeblogger().getPropertiesManager();
+        URLStrategy urlStrategy = WebloggerFactory.getWeblogger().getUrlStrategy();
+        
+        Weblog weblog = new Weblog();
+        weblog.setHandle("urltest");
+        
+        RuntimeConfigProperty prop = mgr.getProperty("site.absoluteurl");
+        String oldValue = prop.getValue();
+        try {
+            prop.setValue("http://one.example.com/roller");
+            mgr.saveProperty(prop);
+            TestUtils.endSession(true);
+            
+            assertEquals("http://one.example.com/roller/urltest/",
+                    urlStrategy.getWeblogURL(weblog, null, true));
+            assertEquals("http://one.example.com/roller/urltest/en/entry/a+b",
+                    urlStrategy.getWeblogEntryURL(weblog, "en", "a b", true));
+            
+            // a saved property change must not leave stale prefixes behind
+            prop = mgr.getProperty("site.absoluteurl");
+            prop.setValue("http://two.example.com/roller");
+            mgr.saveProperty(prop);
+            TestUtils.endSession(true);
+            
+            assertEquals("http://two.example.com/roller/urltest/",
+                    urlStrategy.getWeblogURL(weblog, null, true));
+            assertEquals("http://two.example.com/roller/urltest/en/entry/a+b",
+                    urlStrategy.getWeblogEntryURL(weblog, "en", "a b", true));
+        } finally {
+            prop = mgr.getProperty("site.absoluteurl");
+            prop.setValue(oldValue);
+            mgr.saveProperty(prop);
+            TestUtils.endSession(true);
+        }
+    }
+    
 }
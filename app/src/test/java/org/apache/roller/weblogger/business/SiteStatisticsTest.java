@@ -0,0 +1,381 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.business;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.weblogger.TestUtils;
+import org.apache.roller.weblogger.pojos.User;
+import org.apache.roller.weblogger.pojos.Weblog;
+import org.apache.roller.weblogger.pojos.WeblogEntry;
+import org.apache.roller.weblogger.pojos.WeblogEntry.PubStatus;
+import org.apache.roller.weblogger.pojos.WeblogEntryComment;
+import org.apache.roller.weblogger.pojos.WeblogEntryComment.ApprovalStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Test that the site statistics kept up to date incrementally match what is
+ * computed from the database.
+ */
+public class SiteStatisticsTest {
+    
+    public static Log log = LogFactory.getLog(SiteStatisticsTest.class);
+    
+    private static final PubStatus[] ENTRY_STATUSES = {
+        PubStatus.PUBLISHED, PubStatus.DRAFT, PubStatus.PENDING };
+    
+    private static final ApprovalStatus[] COMMENT_STATUSES = {
+        ApprovalStatus.APPROVED, ApprovalStatus.PENDING, ApprovalStatus.SPAM };
+    
+    // objects created by a test, which are removed afterwards
+    private final List<String> userNames = new ArrayList<>();
+    private final List<String> creators = new ArrayList<>();
+    private final List<String> weblogIds = new ArrayList<>();
+    private final Map<String, String> entryWeblogs = new HashMap<>();
+    private final Map<String, String> commentEntries = new HashMap<>();
+    
+    private int created = 0;
+    
+    
+    @BeforeEach
+    public void setUp() throws Exception {
+        TestUtils.setupWeblogger();
+        
+        // start from what's in the database, whatever earlier tests did
+        SiteStatistics.getInstance().refresh();
+        TestUtils.endSession(true);
+    }
+    
+    @AfterEach
+    public void tearDown() throws Exception {
+        for (String id : new ArrayList<>(weblogIds)) {
+            TestUtils.teardownWeblog(id);
+        }
+        for (String userName : userNames) {
+            TestUtils.teardownUser(userName);
+        }
+        TestUtils.endSession(true);
+    }
+    
+    
+    /**
+     * Apply random sequences of changes and compare the statistics with the
+     * database after each one.
+     */
+    @Test
+    public void testRandomizedMutations() throws Exception {
+        
+        long seed = System.currentTimeMillis();
+        log.info("Random seed " + seed);
+        Random random = new Random(seed);
+        
+        for (int i = 0; i < 3; i++) {
+            addUser(random);
+        }
+        
+        for (int step = 0; step < 200; step++) {
+            int op = random.nextInt(14);
+            log.debug("step " + step + ", operation " + op);
+            switch (op) {
+                case 0:
+                    addUser(random);
+                    break;
+                case 1:
+                    toggleUser(random);
+                    break;
+                case 2:
+                    removeUser(random);
+                    break;
+                case 3:
+                    addWeblog(random);
+                    break;
+                case 4:
+                    removeWeblog(random);
+                    break;
+                case 5:
+                case 6:
+                    addEntry(random);
+                    break;
+                case 7:
+                    changeEntry(random);
+                    break;
+                case 8:
+                    removeEntry(random);
+                    break;
+                case 9:
+                case 10:
+                    addComment(random);
+                    break;
+                case 11:
+                    changeComment(random);
+                    break;
+                case 12:
+                    removeComment(random);
+                    break;
+                default:
+                    changeAndRollBack(random);
+                    break;
+            }
+            assertMatchesDatabase("step " + step + ", operation " + op + ", seed " + seed);
+        }
+    }
+    
+    
+    /**
+     * Changes which are rolled back don't count.
+     */
+    @Test
+    public void testRollback() throws Exception {
+        
+        Random random = new Random(42);
+        while (weblogIds.isEmpty()) {
+            addUser(random);
+            addWeblog(random);
+        }
+        addEntry(random);
+        assertMatchesDatabase("setup");
+        
+        SiteStatistics.Snapshot before = SiteStatistics.getInstance().getSnapshot();
+        WeblogEntryManager emgr = WebloggerFactory.getWeblogger().getWeblogEntryManager();
+        WeblogEntry entry = emgr.getWeblogEntry(entryWeblogs.keySet().iterator().next());
+        emgr.removeWeblogEntry(entry);
+        TestUtils.endSession(false);
+        
+        SiteStatistics.Snapshot after = SiteStatistics.getInstance().getSnapshot();
+        assertEquals(before.getEntryCount(), after.getEntryCount());
+        assertMatchesDatabase("rollback");
+    }
+    
+    
+    /**
+     * Letter maps have an entry for every letter.
+     */
+    @Test
+    public void testLetterMaps() throws Exception {
+        
+        addUser(new Random(7));
+        Map<String, Long> letters = SiteStatistics.getInstance().getSnapshot().getUserNameLetterMap();
+        assertEquals(26, letters.size());
+        assertTrue(letters.containsKey("A"));
+        assertTrue(letters.containsKey("Z"));
+        assertMatchesDatabase("letters");
+    }
+    
+    
+    private void assertMatchesDatabase(String message) throws Exception {
+        Weblogger roller = WebloggerFactory.getWeblogger();
+        SiteStatistics.Snapshot snapshot = SiteStatistics.getInstance().getSnapshot();
+        assertEquals(roller.getWeblogManager().getWeblogCount(), snapshot.getWeblogCount(), message);
+        assertEquals(roller.getUserManager().getUserCount(), snapshot.getUserCount(), message);
+        assertEquals(roller.getWeblogEntryManager().getEntryCount(), snapshot.getEntryCount(), message);
+        assertEquals(roller.getWeblogEntryManager().getCommentCount(), snapshot.getCommentCount(), message);
+        assertEquals(roller.getWeblogManager().getWeblogHandleLetterMap(),
+                snapshot.getWeblogHandleLetterMap(), message);
+        assertEquals(roller.getUserManager().getUserNameLetterMap(),
+                snapshot.getUserNameLetterMap(), message);
+        TestUtils.endSession(false);
+    }
+    
+    
+    // names starting with any letter, or a digit which isn't counted
+    private String randomName(Random random, String prefix) {
+        String first = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+        return first.charAt(random.nextInt(first.length())) + prefix + (created++)
+                + "x" + System.nanoTime();
+    }
+    
+    private <T> T pick(Random random, List<T> list) {
+        return list.isEmpty() ? null : list.get(random.nextInt(list.size()));
+    }
+    
+    private void addUser(Random random) throws Exception {
+        User user = new User();
+        user.setUserName(randomName(random, "statsUser"));
+        user.setPassword("password");
+        user.setScreenName("Stats User");
+        user.setFullName("Stats User");
+        user.setEmailAddress("StatsUser@dev.null");
+        user.setLocale("en_US");
+        user.setTimeZone("America/Los_Angeles");
+        user.setDateCreated(new java.util.Date());
+        user.setEnabled(random.nextBoolean());
+        WebloggerFactory.getWeblogger().getUserManager().addUser(user);
+        TestUtils.endSession(true);
+        userNames.add(user.getUserName());
+    }
+    
+    // weblog permissions of disabled or removed users can't be revoked, so
+    // users who created weblogs are left alone
+    private String pickNonCreator(Random random) {
+        List<String> candidates = new ArrayList<>(userNames);
+        candidates.removeAll(creators);
+        return pick(random, candidates);
+    }
+    
+    private void toggleUser(Random random) throws Exception {
+        String userName = pickNonCreator(random);
+        if (userName != null) {
+            UserManager umgr = WebloggerFactory.getWeblogger().getUserManager();
+            User user = umgr.getUserByUserName(userName, null);
+            user.setEnabled(!user.getEnabled());
+            umgr.saveUser(user);
+            TestUtils.endSession(true);
+        }
+    }
+    
+    private void removeUser(Random random) throws Exception {
+        String userName = pickNonCreator(random);
+        if (userName != null) {
+            TestUtils.teardownUser(userName);
+            TestUtils.endSession(true);
+            userNames.remove(userName);
+        }
+    }
+    
+    private void addWeblog(Random random) throws Exception {
+        // weblogs are created by enabled users
+        User user = WebloggerFactory.getWeblogger().getUserManager().getUserByUserName(
+                pick(random, userNames), null);
+        if (!user.getEnabled()) {
+            return;
+        }
+        Weblog weblog = TestUtils.setupWeblog(randomName(random, "stats"), user);
+        TestUtils.endSession(true);
+        weblogIds.add(weblog.getId());
+        if (!creators.contains(user.getUserName())) {
+            creators.add(user.getUserName());
+        }
+    }
+    
+    private void removeWeblog(Random random) throws Exception {
+        String id = pick(random, weblogIds);
+        if (id != null) {
+            TestUtils.teardownWeblog(id);
+            TestUtils.endSession(true);
+            weblogIds.remove(id);
+            entryWeblogs.values().removeIf(id::equals);
+            commentEntries.values().removeIf(entryId -> !entryWeblogs.containsKey(entryId));
+        }
+    }
+    
+    private void addEntry(Random random) throws Exception {
+        String weblogId = pick(random, weblogIds);
+        if (weblogId == null) {
+            return;
+        }
+        Weblogger roller = WebloggerFactory.getWeblogger();
+        Weblog weblog = roller.getWeblogManager().getWeblog(weblogId);
+        User user = roller.getUserManager().getUserByUserName(pick(random, creators), null);
+        WeblogEntry entry = TestUtils.setupWeblogEntry("stats" + (created++),
+                weblog.getWeblogCategories().iterator().next(),
+                ENTRY_STATUSES[random.nextInt(ENTRY_STATUSES.length)], weblog, user);
+        TestUtils.endSession(true);
+        entryWeblogs.put(entry.getId(), weblogId);
+    }
+    
+    private void changeEntry(Random random) throws Exception {
+        String id = pick(random, new ArrayList<>(entryWeblogs.keySet()));
+        if (id != null) {
+            // sometimes change it twice before committing
+            WeblogEntryManager emgr = WebloggerFactory.getWeblogger().getWeblogEntryManager();
+            WeblogEntry entry = emgr.getWeblogEntry(id);
+            int changes = 1 + random.nextInt(2);
+            for (int i = 0; i < changes; i++) {
+                entry.setStatus(ENTRY_STATUSES[random.nextInt(ENTRY_STATUSES.length)]);
+                emgr.saveWeblogEntry(entry);
+            }
+            TestUtils.endSession(true);
+        }
+    }
+    
+    private void removeEntry(Random random) throws Exception {
+        String id = pick(random, new ArrayList<>(entryWeblogs.keySet()));
+        if (id != null) {
+            TestUtils.teardownWeblogEntry(id);
+            TestUtils.endSession(true);
+            entryWeblogs.remove(id);
+            commentEntries.values().removeIf(id::equals);
+        }
+    }
+    
+    private void addComment(Random random) throws Exception {
+        String entryId = pick(random, new ArrayList<>(entryWeblogs.keySet()));
+        if (entryId == null) {
+            return;
+        }
+        WeblogEntryManager emgr = WebloggerFactory.getWeblogger().getWeblogEntryManager();
+        WeblogEntry entry = emgr.getWeblogEntry(entryId);
+        WeblogEntryComment comment = TestUtils.setupComment("stats", entry);
+        comment.setStatus(COMMENT_STATUSES[random.nextInt(COMMENT_STATUSES.length)]);
+        emgr.saveComment(comment);
+        TestUtils.endSession(true);
+        commentEntries.put(comment.getId(), entryId);
+    }
+    
+    private void changeComment(Random random) throws Exception {
+        String id = pick(random, new ArrayList<>(commentEntries.keySet()));
+        if (id != null) {
+            WeblogEntryManager emgr = WebloggerFactory.getWeblogger().getWeblogEntryManager();
+            WeblogEntryComment comment = emgr.getComment(id);
+            comment.setStatus(COMMENT_STATUSES[random.nextInt(COMMENT_STATUSES.length)]);
+            emgr.saveComment(comment);
+            TestUtils.endSession(true);
+        }
+    }
+    
+    private void removeComment(Random random) throws Exception {
+        String id = pick(random, new ArrayList<>(commentEntries.keySet()));
+        if (id != null) {
+            TestUtils.teardownComment(id);
+            TestUtils.endSession(true);
+            commentEntries.remove(id);
+        }
+    }
+    
+    // make some changes and abandon them
+    private void changeAndRollBack(Random random) throws Exception {
+        Weblogger roller = WebloggerFactory.getWeblogger();
+        String entryId = pick(random, new ArrayList<>(entryWeblogs.keySet()));
+        if (entryId != null) {
+            WeblogEntry entry = roller.getWeblogEntryManager().getWeblogEntry(entryId);
+            entry.setStatus(ENTRY_STATUSES[random.nextInt(ENTRY_STATUSES.length)]);
+            roller.getWeblogEntryManager().saveWeblogEntry(entry);
+        }
+        String userName = pick(random, userNames);
+        if (userName != null) {
+            // rolled back, so creators may be changed too
+            User user = roller.getUserManager().getUserByUserName(userName, null);
+            user.setEnabled(!user.getEnabled());
+            roller.getUserManager().saveUser(user);
+        }
+        TestUtils.endSession(false);
+    }
+    
+}
@@ -20,12 +20,25 @@ package org.apache.roller.weblogger.business;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.roller.weblogger.TestUtils;
+import org.apache.roller.weblogger.business.startup.WebloggerStartup;
+import org.apache.roller.weblogger.pojos.MediaFile;
+import org.apache.roller.weblogger.pojos.MediaFileDirectory;
 import org.apache.roller.weblogger.pojos.User;
 import org.apache.roller.weblogger.pojos.Weblog;
+import org.apache.roller.weblogger.pojos.WeblogBookmark;
+import org.apache.roller.weblogger.pojos.WeblogBookmarkFolder;
+import org.apache.roller.weblogger.pojos.WeblogEntry;
+import org.apache.roller.weblogger.util.RollerMessages;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -229,5 +242,97 @@ public class WeblogTest  {
         log.info("END");
     }
     
-}
 
+    /**
+     * Test removing a weblog along with its entries, comments, tags, bookmarks,
+     * media files and hit counts.  Tests remove entries in batches of two, so
+     * the entries here take several batches.
+     */
+    @Test
+    public void testRemoveWeblogWithContents() throws Exception {
+
+        WeblogManager mgr = WebloggerFactory.getWeblogger().getWeblogManager();
+        WeblogEntryManager emgr = WebloggerFactory.getWeblogger().getWeblogEntryManager();
+        BookmarkManager bmgr = WebloggerFactory.getWeblogger().getBookmarkManager();
+        MediaFileManager mfMgr = WebloggerFactory.getWeblogger().getMediaFileManager();
+
+        Weblog weblog = TestUtils.setupWeblog("removeContentsWeblog", testUser);
+        MediaFileDirectory rootDirectory = mfMgr.getDefaultMediaFileDirectory(weblog);
+        TestUtils.endSession(true);
+
+        List<String> entryIds = new ArrayList<>();
+        List<String> commentIds = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            WeblogEntry entry = TestUtils.setupWeblogEntry("removeContentsEntry" + i,
+                    TestUtils.getManagedWebsite(weblog), testUser);
+            entry.addTag("removetag");
+            entry.putEntryAttribute("att", "value");
+            emgr.saveWeblogEntry(entry);
+            entryIds.add(entry.getId());
+            commentIds.add(TestUtils.setupComment("comment" + i, entry).getId());
+        }
+        TestUtils.endSession(true);
+
+        WeblogBookmarkFolder folder = TestUtils.setupFolder(
+                TestUtils.getManagedWebsite(weblog), "removeContentsFolder");
+        bmgr.saveBookmark(new WeblogBookmark(folder, "bookmark", "a bookmark",
+                "http://example.com", null, null));
+        TestUtils.setupHitCount(TestUtils.getManagedWebsite(weblog), 10);
+        emgr.incrementHourlyHitCount(TestUtils.getManagedWebsite(weblog), new Date(), 2);
+        TestUtils.endSession(true);
+
+        MediaFile mediaFile = new MediaFile();
+        mediaFile.setName("removeContents.jpg");
+        mediaFile.setLength(2000);
+        mediaFile.setDirectory(mfMgr.getMediaFileDirectory(rootDirectory.getId()));
+        mediaFile.setWeblog(TestUtils.getManagedWebsite(weblog));
+        mediaFile.setInputStream(getClass().getResourceAsStream(MediaFileTest.TEST_IMAGE));
+        mediaFile.setContentType("image/jpeg");
+        mediaFile.setTagsAsString("removetag");
+        mfMgr.createMediaFile(TestUtils.getManagedWebsite(weblog), mediaFile, new RollerMessages());
+        TestUtils.endSession(true);
+
+        mgr.removeWeblog(TestUtils.getManagedWebsite(weblog));
+        TestUtils.endSession(true);
+
+        assertNull(mgr.getWeblog(weblog.getId()));
+        assertNull(mgr.getWeblogByHandle("removeContentsWeblog"));
+        for (String entryId : entryIds) {
+            assertNull(emgr.getWeblogEntry(entryId));
+        }
+        for (String commentId : commentIds) {
+            assertNull(emgr.getComment(commentId));
+        }
+
+        try (Connection con = WebloggerStartup.getDatabaseProvider().getConnection()) {
+            String[] weblogTables = { "weblogentry", "roller_weblogentrytag",
+                    "roller_weblogentrytagagg", "weblogcategory", "bookmark_folder",
+                    "roller_mediafiledir", "roller_hitcounts", "roller_hitrollup",
+                    "weblog_custom_template", "autoping", "pingqueueentry" };
+            for (String table : weblogTables) {
+                assertEquals(0, countRows(con, table, "websiteid", weblog.getId()), table);
+            }
+            assertEquals(0, countRows(con, "roller_mediafile", "weblogid", weblog.getId()));
+            assertEquals(0, countRows(con, "roller_mediafiletag", "mediafile_id", mediaFile.getId()));
+            assertEquals(0, countRows(con, "bookmark", "folderid", folder.getId()));
+            for (String entryId : entryIds) {
+                assertEquals(0, countRows(con, "roller_comment", "entryid", entryId));
+                assertEquals(0, countRows(con, "entryattribute", "entryid", entryId));
+            }
+        }
+    }
+    
+    
+    private static int countRows(Connection con, String table, String column, String id)
+            throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement(
+                "select count(*) from " + table + " where " + column + " = ?")) {
+            ps.setString(1, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+}
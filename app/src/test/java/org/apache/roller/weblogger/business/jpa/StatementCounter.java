@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.business.jpa;
+
+import org.eclipse.persistence.sessions.Session;
+import org.eclipse.persistence.sessions.SessionEvent;
+import org.eclipse.persistence.sessions.SessionEventAdapter;
+
+/**
+ * Counts the SQL statements the calling thread sends to the database.
+ * Installed for tests via eclipselink.session-event-listener.
+ */
+public class StatementCounter extends SessionEventAdapter {
+
+    private static final ThreadLocal<int[]> COUNT = new ThreadLocal<>();
+
+    private static volatile Session session = null;
+
+    @Override
+    public void preLogin(SessionEvent event) {
+        session = event.getSession();
+    }
+
+    @Override
+    public void preExecuteCall(SessionEvent event) {
+        int[] count = COUNT.get();
+        if (count != null) {
+            count[0]++;
+        }
+    }
+
+    /**
+     * Start counting statements on this thread, from an empty shared cache
+     * so that everything read has to come from the database.
+     */
+    public static void start() {
+        if (session != null) {
+            session.getIdentityMapAccessor().initializeAllIdentityMaps();
+        }
+        COUNT.set(new int[1]);
+    }
+
+    /**
+     * Stop counting and return the number of statements since start().
+     */
+    public static int stop() {
+        int[] count = COUNT.get();
+        COUNT.remove();
+        return (count != null) ? count[0] : 0;
+    }
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.business.jpa;
+
+import java.util.List;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.weblogger.TestUtils;
+import org.apache.roller.weblogger.business.URLStrategy;
+import org.apache.roller.weblogger.business.WeblogEntryManager;
+import org.apache.roller.weblogger.business.WebloggerFactory;
+import org.apache.roller.weblogger.pojos.User;
+import org.apache.roller.weblogger.pojos.Weblog;
+import org.apache.roller.weblogger.pojos.WeblogEntry;
+import org.apache.roller.weblogger.pojos.WeblogEntry.PubStatus;
+import org.apache.roller.weblogger.pojos.WeblogEntrySearchCriteria;
+import org.apache.roller.weblogger.pojos.wrapper.WeblogEntryWrapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test that rendering a page of entries takes a fixed number of statements.
+ */
+public class WeblogEntryFetchPlanTest {
+
+    public static Log log = LogFactory.getLog(WeblogEntryFetchPlanTest.class);
+
+    private static final int ENTRIES = 20;
+
+    User testUser = null;
+    Weblog testWeblog = null;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+
+        // setup weblogger
+        TestUtils.setupWeblogger();
+
+        try {
+            testUser = TestUtils.setupUser("fetchPlanTestUser");
+            testWeblog = TestUtils.setupWeblog("fetchPlanTestWeblog", testUser);
+            TestUtils.endSession(true);
+
+            WeblogEntryManager mgr = WebloggerFactory.getWeblogger().getWeblogEntryManager();
+            for (int i = 0; i < ENTRIES; i++) {
+                WeblogEntry entry = TestUtils.setupWeblogEntry("fetchPlanEntry" + i,
+                        TestUtils.getManagedWebsite(testWeblog), testUser);
+                entry.addTag("tag" + i);
+                entry.addTag("common");
+                entry.putEntryAttribute("att", "value" + i);
+                mgr.saveWeblogEntry(entry);
+            }
+            TestUtils.endSession(true);
+        } catch (Exception ex) {
+            log.error(ex);
+            throw new Exception("Test setup failed", ex);
+        }
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+
+        try {
+            TestUtils.teardownWeblog(testWeblog.getId());
+            TestUtils.teardownUser(testUser.getUserName());
+            TestUtils.endSession(true);
+        } catch (Exception ex) {
+            log.error(ex);
+            throw new Exception("Test teardown failed", ex);
+        }
+    }
+
+    /**
+     * Read everything an entries page shows for each entry, and check that
+     * the statement count doesn't grow with the number of entries.
+     */
+    @Test
+    public void testEntriesPageStatementCount() throws Exception {
+
+        WeblogEntryManager mgr = WebloggerFactory.getWeblogger().getWeblogEntryManager();
+        URLStrategy urlStrategy = WebloggerFactory.getWeblogger().getUrlStrategy();
+        Weblog weblog = TestUtils.getManagedWebsite(testWeblog);
+
+        WeblogEntrySearchCriteria wesc = new WeblogEntrySearchCriteria();
+        wesc.setWeblog(weblog);
+        wesc.setStatus(PubStatus.PUBLISHED);
+        wesc.setMaxResults(ENTRIES);
+
+        StatementCounter.start();
+        int statements;
+        try {
+            List<WeblogEntry> entries = mgr.getWeblogEntries(wesc);
+            assertEquals(ENTRIES, entries.size());
+
+            for (WeblogEntry entry : entries) {
+                WeblogEntryWrapper wrapper = WeblogEntryWrapper.wrap(entry, urlStrategy);
+                assertNotNull(wrapper.getCategory().getName());
+                assertEquals(2, wrapper.getTags().size());
+                assertEquals(1, wrapper.getEntryAttributes().size());
+                assertEquals(testUser.getScreenName(), wrapper.getCreator().getScreenName());
+                assertEquals(testWeblog.getHandle(), wrapper.getWebsite().getHandle());
+            }
+        } finally {
+            statements = StatementCounter.stop();
+        }
+
+        log.info("Entries page took " + statements + " statements");
+        assertTrue(statements <= 10, "Entries page took " + statements + " statements");
+    }
+
+}
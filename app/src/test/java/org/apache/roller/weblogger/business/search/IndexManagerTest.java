@@ -26,10 +26,15 @@ import org.apache.roller.util.RollerConstants;
 import org.apache.roller.weblogger.TestUtils;
 import org.apache.roller.weblogger.business.WeblogEntryManager;
 import org.apache.roller.weblogger.business.WebloggerFactory;
+import org.apache.roller.weblogger.pojos.CommentSearchCriteria;
 import org.apache.roller.weblogger.pojos.User;
 import org.apache.roller.weblogger.pojos.Weblog;
 import org.apache.roller.weblogger.pojos.WeblogCategory;
 import org.apache.roller.weblogger.pojos.WeblogEntry;
+import org.apache.roller.weblogger.pojos.WeblogEntry.PubStatus;
+import org.apache.roller.weblogger.pojos.WeblogEntryComment;
+import org.apache.roller.weblogger.pojos.WeblogEntryComment.ApprovalStatus;
+import org.apache.roller.weblogger.pojos.WeblogEntrySearchCriteria;
 import org.instancio.Instancio;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -37,6 +42,8 @@ import org.junit.jupiter.api.Test;
 
 import static org.apache.roller.weblogger.ui.rendering.model.SearchResultsModel.RESULTS_PER_PAGE;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 
 /**
  * Test Search Manager business layer operations.
@@ -105,6 +112,121 @@ public class IndexManagerTest {
         }
     }
 
+    @Test
+    public void testPagingAndCacheInvalidation() throws Exception {
+
+        IndexManager indexManager = WebloggerFactory.getWeblogger().getIndexManager();
+        WeblogEntryManager entryManager = WebloggerFactory.getWeblogger().getWeblogEntryManager();
+
+        List<WeblogEntry> entries = createWeblogEntries(testWeblog, indexManager, entryManager);
+
+        try {
+            // newest first, one entry per page
+            SearchResultList result = indexManager.search("Enterprise",
+                testWeblog.getHandle(), null, testWeblog.getLocale(), 0, 1,
+                WebloggerFactory.getWeblogger().getUrlStrategy());
+            assertEquals(1, result.getResults().size());
+            assertEquals("A Piece of the Action", result.getResults().get(0).getTitle());
+
+            // facets count every hit, not just the page
+            assertEquals(2, result.getTotalHits());
+            assertEquals(Integer.valueOf(2), result.getCategoryCounts().get("general"));
+            assertEquals(Integer.valueOf(2), result.getWeblogCounts().get(testWeblog.getHandle()));
+            assertEquals(2, result.getMonthCounts().values().stream().mapToInt(Integer::intValue).sum());
+
+            result = indexManager.search("  Enterprise ",
+                testWeblog.getHandle(), null, testWeblog.getLocale(), 1, 1,
+                WebloggerFactory.getWeblogger().getUrlStrategy());
+            assertEquals(1, result.getResults().size());
+            assertEquals(1, result.getOffset());
+            assertEquals("The Tholian Web", result.getResults().get(0).getTitle());
+
+            // pages past the end wrap around to the first one
+            result = indexManager.search("Enterprise",
+                testWeblog.getHandle(), null, testWeblog.getLocale(), 5, 1,
+                WebloggerFactory.getWeblogger().getUrlStrategy());
+            assertEquals(0, result.getOffset());
+
+            // removing an entry from the index drops the cached pages
+            indexManager.removeEntryIndexOperation(TestUtils.getManagedWeblogEntry(entries.get(1)));
+            result = indexManager.search("Enterprise",
+                testWeblog.getHandle(), null, testWeblog.getLocale(), 0, RESULTS_PER_PAGE,
+                WebloggerFactory.getWeblogger().getUrlStrategy());
+            assertEquals(1, result.getResults().size());
+            assertEquals("The Tholian Web", result.getResults().get(0).getTitle());
+
+        } finally {
+            for (WeblogEntry entry : entries) {
+                indexManager.removeEntryIndexOperation(TestUtils.getManagedWeblogEntry(entry));
+            }
+            indexManager.removeWeblogIndex(testWeblog);
+        }
+    }
+
+    @Test
+    public void testEditorIndex() throws Exception {
+
+        IndexManager indexManager = WebloggerFactory.getWeblogger().getIndexManager();
+        WeblogEntryManager entryManager = WebloggerFactory.getWeblogger().getWeblogEntryManager();
+
+        // the editor index is rebuilt in the background on a fresh install
+        for (int i = 0; i < 60 && indexManager.searchEditorIndexEntries(testWeblog, "tribble") == null; i++) {
+            Thread.sleep(500);
+        }
+        assertNotNull(indexManager.searchEditorIndexEntries(testWeblog, "tribble"));
+
+        WeblogEntry draft = TestUtils.setupWeblogEntry("tribbles",
+            testWeblog.getWeblogCategory("General"), PubStatus.DRAFT, testWeblog, testUser);
+        draft.setText("The Trouble with Tribbles");
+        entryManager.saveWeblogEntry(draft);
+        WeblogEntryComment spam = TestUtils.setupComment("spam", draft);
+        spam.setContent("Quadrotriticale for sale");
+        spam.setStatus(ApprovalStatus.SPAM);
+        entryManager.saveComment(spam);
+        TestUtils.endSession(true);
+
+        // drafts are found by any part of their text, ignoring case
+        assertEquals(List.of(draft.getId()), indexManager.searchEditorIndexEntries(testWeblog, "tribble"));
+        assertEquals(List.of(draft.getId()), indexManager.searchEditorIndexEntries(testWeblog, "ouble with TRIB"));
+        assertEquals(0, indexManager.searchEditorIndexEntries(testWeblog, "Trouble tribble").size());
+        WeblogEntrySearchCriteria wesc = new WeblogEntrySearchCriteria();
+        wesc.setWeblog(testWeblog);
+        wesc.setText("rouble with Trib");
+        assertEquals(1, entryManager.getWeblogEntries(wesc).size());
+
+        // text shorter than a trigram is left to the database
+        assertNull(indexManager.searchEditorIndexEntries(testWeblog, "Tr"));
+
+        // comments are found by status as well
+        assertEquals(List.of(spam.getId()), indexManager.searchEditorIndexComments(
+            testWeblog, null, "quadrotriticale", ApprovalStatus.SPAM));
+        assertEquals(0, indexManager.searchEditorIndexComments(
+            testWeblog, null, "quadrotriticale", ApprovalStatus.APPROVED).size());
+        CommentSearchCriteria csc = new CommentSearchCriteria();
+        csc.setWeblog(testWeblog);
+        csc.setSearchText("quadro");
+        assertEquals(1, entryManager.getComments(csc).size());
+
+        assertEquals(1, entryManager.removeMatchingComments(
+            testWeblog, null, "quadrotriticale", null, null, null));
+        TestUtils.endSession(true);
+        assertEquals(0, indexManager.searchEditorIndexComments(
+            testWeblog, null, "quadrotriticale", null).size());
+
+        // changes are indexed only once they are committed
+        draft = TestUtils.getManagedWeblogEntry(draft);
+        draft.setText("The Trouble with Klingons");
+        entryManager.saveWeblogEntry(draft);
+        assertEquals(0, indexManager.searchEditorIndexEntries(testWeblog, "klingon").size());
+        TestUtils.endSession(false);
+        assertEquals(0, indexManager.searchEditorIndexEntries(testWeblog, "klingon").size());
+        assertEquals(List.of(draft.getId()), indexManager.searchEditorIndexEntries(testWeblog, "tribble"));
+
+        TestUtils.teardownWeblogEntry(draft.getId());
+        TestUtils.endSession(true);
+        assertEquals(0, indexManager.searchEditorIndexEntries(testWeblog, "tribble").size());
+    }
+
     /**
      * Create some weblog entries, two with some Star Trek content
      */
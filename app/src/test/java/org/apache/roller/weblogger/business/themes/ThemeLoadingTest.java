@@ -0,0 +1,257 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.business.themes;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.weblogger.pojos.TemplateRendition.RenditionType;
+import org.apache.roller.weblogger.pojos.ThemeTemplate;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Test loading shared themes from generated theme directories.
+ */
+public class ThemeLoadingTest {
+    
+    private static final Log log = LogFactory.getLog(ThemeLoadingTest.class);
+    
+    @TempDir
+    Path themesDir;
+    
+    
+    @Test
+    public void testLoadThemes() throws Exception {
+        
+        String[] names = generateThemes(5, 3, 100);
+        
+        // a directory without a descriptor isn't a theme
+        Files.createDirectory(themesDir.resolve("notatheme"));
+        String[] all = Stream.concat(Stream.of(names), Stream.of("notatheme")).toArray(String[]::new);
+        
+        Map<String, SharedTheme> themes = ThemeManagerImpl.loadThemesFromDisk(themesDir.toString(), all, 4);
+        assertEquals(5, themes.size());
+        assertNull(themes.get("notatheme"));
+        
+        SharedTheme theme = themes.get("theme3");
+        assertEquals("theme3", theme.getId());
+        // templates include the stylesheet
+        assertEquals(4, theme.getTemplates().size());
+        assertEquals(2, theme.getResources().size());
+        assertNotNull(theme.getStylesheet());
+        assertNotNull(theme.getDefaultTemplate());
+    }
+    
+    
+    @Test
+    public void testTemplatesReadOnFirstUse() throws Exception {
+        
+        String[] names = generateThemes(1, 2, 100);
+        Map<String, SharedTheme> themes = ThemeManagerImpl.loadThemesFromDisk(themesDir.toString(), names, 1);
+        ThemeTemplate template = themes.get("theme0").getTemplateByName("template1");
+        
+        SharedThemeTemplateCache.clear();
+        assertEquals(0, SharedThemeTemplateCache.size());
+        
+        String expected = Files.readString(themesDir.resolve("theme0/template1.vm"));
+        assertEquals(expected, template.getTemplateRendition(RenditionType.STANDARD).getTemplate());
+        assertEquals(expected, ((SharedThemeTemplate) template).getContents());
+        assertEquals(1, SharedThemeTemplateCache.size());
+        
+        // contents that can't be read are empty, as before
+        Files.delete(themesDir.resolve("theme0/template0.vm"));
+        assertEquals("", themes.get("theme0").getTemplateByName("template0")
+                .getTemplateRendition(RenditionType.STANDARD).getTemplate());
+    }
+    
+    
+    @Test
+    public void testTemplateChangedSinceLoad() throws Exception {
+        
+        String[] names = generateThemes(1, 1, 10);
+        Map<String, SharedTheme> themes = ThemeManagerImpl.loadThemesFromDisk(themesDir.toString(), names, 1);
+        ThemeTemplate template = themes.get("theme0").getTemplateByName("template0");
+        SharedThemeTemplateCache.clear();
+        
+        Path file = themesDir.resolve("theme0/template0.vm");
+        Files.writeString(file, "changed");
+        file.toFile().setLastModified(file.toFile().lastModified() + 10000);
+        
+        BlockingQueue<File> changed = new LinkedBlockingQueue<>();
+        SharedThemeTemplateCache.setChangeListener(changed::add);
+        try {
+            // the theme is reloaded rather than caching new contents as the old version
+            assertEquals("changed", template.getTemplateRendition(RenditionType.STANDARD).getTemplate());
+            assertEquals(file.toFile(), changed.poll());
+            
+            Map<String, SharedTheme> reloaded = ThemeManagerImpl.loadThemesFromDisk(themesDir.toString(), names, 1);
+            assertEquals("changed", reloaded.get("theme0").getTemplateByName("template0")
+                    .getTemplateRendition(RenditionType.STANDARD).getTemplate());
+            assertNull(changed.poll());
+            assertEquals(1, SharedThemeTemplateCache.size());
+        } finally {
+            SharedThemeTemplateCache.setChangeListener(null);
+        }
+    }
+    
+    
+    @Test
+    public void testWatcher() throws Exception {
+        
+        generateThemes(2, 1, 10);
+        Files.createDirectory(themesDir.resolve("theme0/sub"));
+        
+        BlockingQueue<String> changed = new LinkedBlockingQueue<>();
+        ThemeDirWatcher watcher = new ThemeDirWatcher(themesDir, changed::add, 200);
+        watcher.watch("theme0");
+        watcher.watch("theme1");
+        watcher.start();
+        try {
+            // changes in a theme, including its subdirectories
+            Files.writeString(themesDir.resolve("theme0/sub/new.css"), "body {}");
+            Files.writeString(themesDir.resolve("theme0/template0.vm"), "changed");
+            assertEquals("theme0", changed.poll(10, TimeUnit.SECONDS));
+            
+            // new themes
+            generateTheme("theme2", 1, 10);
+            assertEquals("theme2", changed.poll(10, TimeUnit.SECONDS));
+            
+            // are each reported once
+            assertNull(changed.poll(1, TimeUnit.SECONDS));
+        } finally {
+            watcher.shutdown();
+        }
+    }
+    
+    
+    /**
+     * Load 200 generated themes, run with -Droller.benchmark=true
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "roller.benchmark", matches = "true")
+    public void testLoadBenchmark() throws Exception {
+        
+        String[] names = generateThemes(200, 20, 20000);
+        int threads = Runtime.getRuntime().availableProcessors();
+        
+        // what startup used to do: read every template file up front
+        long startTime = System.currentTimeMillis();
+        long bytes = 0;
+        try (Stream<Path> files = Files.walk(themesDir)) {
+            for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                bytes += Files.readString(file).length();
+            }
+        }
+        log.info("Read " + bytes + " chars of theme files in "
+                + (System.currentTimeMillis() - startTime) + " ms");
+        
+        startTime = System.currentTimeMillis();
+        Map<String, SharedTheme> themes = ThemeManagerImpl.loadThemesFromDisk(themesDir.toString(), names, 1);
+        log.info("Loaded " + themes.size() + " themes with 1 thread in "
+                + (System.currentTimeMillis() - startTime) + " ms");
+        
+        startTime = System.currentTimeMillis();
+        themes = ThemeManagerImpl.loadThemesFromDisk(themesDir.toString(), names, threads);
+        log.info("Loaded " + themes.size() + " themes with " + threads + " threads in "
+                + (System.currentTimeMillis() - startTime) + " ms");
+        assertEquals(200, themes.size());
+        
+        startTime = System.currentTimeMillis();
+        for (SharedTheme theme : themes.values()) {
+            assertTrue(theme.getDefaultTemplate()
+                    .getTemplateRendition(RenditionType.STANDARD).getTemplate().length() > 0);
+        }
+        log.info("Read the default template of each theme in "
+                + (System.currentTimeMillis() - startTime) + " ms");
+    }
+    
+    
+    private String[] generateThemes(int count, int templates, int templateSize) throws IOException {
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = "theme" + i;
+            generateTheme(names[i], templates, templateSize);
+        }
+        return names;
+    }
+    
+    /**
+     * Write a theme with a stylesheet, templates and two resources.
+     */
+    private void generateTheme(String name, int templates, int templateSize) throws IOException {
+        
+        Path dir = themesDir.resolve(name);
+        Files.createDirectories(dir.resolve("images"));
+        
+        StringBuilder xml = new StringBuilder();
+        xml.append("<weblogtheme>\n");
+        xml.append("<id>").append(name).append("</id>\n");
+        xml.append("<name>").append(name).append("</name>\n");
+        xml.append("<author>Roller</author>\n");
+        xml.append("<preview-image path=\"preview.png\" />\n");
+        xml.append("<stylesheet><name>").append(name).append(".css</name><link>")
+                .append(name).append(".css</link><rendition><contentsFile>")
+                .append(name).append(".css</contentsFile><templateLanguage>velocity</templateLanguage>")
+                .append("</rendition></stylesheet>\n");
+        xml.append("<resource path=\"preview.png\" />\n");
+        xml.append("<resource path=\"images/bg.png\" />\n");
+        for (int i = 0; i < templates; i++) {
+            String action = (i == 0) ? "weblog" : "custom";
+            xml.append("<template action=\"").append(action).append("\"><name>template").append(i)
+                    .append("</name><link>template").append(i).append("</link>")
+                    .append("<rendition><contentsFile>template").append(i)
+                    .append(".vm</contentsFile><templateLanguage>velocity</templateLanguage>")
+                    .append("</rendition></template>\n");
+        }
+        xml.append("</weblogtheme>\n");
+        Files.writeString(dir.resolve("theme.xml"), xml);
+        
+        Files.write(dir.resolve("preview.png"), new byte[100]);
+        Files.write(dir.resolve("images/bg.png"), new byte[100]);
+        Files.writeString(dir.resolve(name + ".css"), "body { color: black; }\n");
+        
+        String line = "<p>$model.weblog.name</p>\n";
+        for (int i = 0; i < templates; i++) {
+            StringBuilder contents = new StringBuilder("## template" + i + " of " + name + "\n");
+            while (contents.length() < templateSize) {
+                contents.append(line);
+            }
+            Files.writeString(dir.resolve("template" + i + ".vm"), contents, StandardCharsets.UTF_8);
+        }
+    }
+    
+}
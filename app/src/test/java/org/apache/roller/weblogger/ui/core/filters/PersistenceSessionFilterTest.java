@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.ui.core.filters;
+
+import javax.servlet.http.HttpServletRequest;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+
+public class PersistenceSessionFilterTest {
+
+    @Test
+    public void testStaticResources() {
+        assertTrue(isStaticResource("", "/favicon.svg"));
+        assertTrue(isStaticResource("", "/robots.txt"));
+        assertTrue(isStaticResource("", "/roller-ui/styles/roller.css"));
+        assertTrue(isStaticResource("/roller", "/roller/favicon-feed.svg"));
+        assertTrue(isStaticResource("/roller", "/roller/themes/basic/style.css"));
+    }
+
+    @Test
+    public void testWeblogPagesAreNotStatic() {
+        assertFalse(isStaticResource("", "/faviconfans/"));
+        assertFalse(isStaticResource("", "/faviconfans/entry/favicon.svg"));
+        assertFalse(isStaticResource("", "/robots.txt2"));
+        assertFalse(isStaticResource("", "/imagesweblog/feed/entries/atom"));
+        assertFalse(isStaticResource("/roller", "/roller/roller-ui/login.rol"));
+    }
+
+    private static boolean isStaticResource(String contextPath, String uri) {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getContextPath()).thenReturn(contextPath);
+        when(request.getRequestURI()).thenReturn(uri);
+        return PersistenceSessionFilter.isStaticResource(request);
+    }
+
+}
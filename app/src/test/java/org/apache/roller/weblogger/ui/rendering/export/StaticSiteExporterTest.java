@@ -0,0 +1,299 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.ui.rendering.export;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.jsp.JspFactory;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.util.DateUtil;
+import org.apache.roller.weblogger.TestUtils;
+import org.apache.roller.weblogger.pojos.User;
+import org.apache.roller.weblogger.pojos.Weblog;
+import org.apache.roller.weblogger.pojos.WeblogEntry;
+import org.apache.roller.weblogger.ui.core.RollerContext;
+import org.apache.roller.weblogger.ui.rendering.servlets.FeedServlet;
+import org.apache.roller.weblogger.ui.rendering.servlets.PageServlet;
+import org.apache.roller.weblogger.util.cache.CacheManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test static export against pages rendered for live requests.
+ */
+class StaticSiteExporterTest {
+    
+    private static final Log log = LogFactory.getLog(StaticSiteExporterTest.class);
+    
+    private static final Path WEBAPP = Paths.get("src/main/webapp");
+    
+    private User testUser = null;
+    private Weblog testWeblog = null;
+    private WeblogEntry testEntry = null;
+    
+    @TempDir
+    Path outputDir;
+    
+    
+    @BeforeEach
+    public void setUp() throws Exception {
+        TestUtils.setupWeblogger();
+        setupServletContext();
+        try {
+            testUser = TestUtils.setupUser("exportuser");
+            testWeblog = TestUtils.setupWeblog("exportweblog", testUser);
+            testEntry = TestUtils.setupWeblogEntry("exported", testWeblog, testUser);
+            TestUtils.endSession(true);
+        } catch (Exception ex) {
+            log.error("ERROR in test setup", ex);
+            throw new Exception("Test setup failed", ex);
+        }
+    }
+    
+    
+    @AfterEach
+    public void tearDown() throws Exception {
+        try {
+            if (testWeblog != null) {
+                TestUtils.teardownWeblog(testWeblog.getId());
+            }
+            TestUtils.teardownUser(testUser.getUserName());
+            TestUtils.endSession(true);
+        } catch (Exception ex) {
+            log.error("ERROR in test teardown", ex);
+            throw new Exception("Test teardown failed", ex);
+        }
+    }
+    
+    
+    /**
+     * Exported files match what the servlets send for live requests.
+     */
+    @Test
+    void testExportMatchesLiveResponses() throws Exception {
+        
+        StaticSiteExporter exporter = new StaticSiteExporter(outputDir);
+        Weblog weblog = TestUtils.getManagedWebsite(testWeblog);
+        WeblogEntry entry = TestUtils.getManagedWeblogEntry(testEntry);
+        
+        int count = exporter.exportWeblog(weblog);
+        assertTrue(count > 0);
+        
+        Set<String> paths = exporter.getEntryPaths(entry);
+        assertTrue(paths.contains("/exportweblog/entry/exported"));
+        assertTrue(paths.contains("/exportweblog/"));
+        assertTrue(paths.contains("/exportweblog/feed/entries/atom"));
+        
+        // render again without the cache, as for a visitor
+        CacheManager.clear();
+        HttpServlet pageServlet = initServlet(new PageServlet());
+        HttpServlet feedServlet = initServlet(new FeedServlet());
+        
+        assertMatchesLive(exporter, pageServlet, "/roller-ui/rendering/page",
+                "/exportweblog/entry/exported", "/exportweblog/entry/exported/index.html");
+        assertMatchesLive(exporter, pageServlet, "/roller-ui/rendering/page",
+                "/exportweblog", "/exportweblog/index.html");
+        
+        // the sidebar of the basic theme has a calendar, which links the entry
+        String frontPage = new String(Files.readAllBytes(outputDir.resolve("exportweblog/index.html")),
+                StandardCharsets.UTF_8);
+        assertTrue(frontPage.contains("class=\"hCalendarTable\""), "calendar is rendered");
+        assertTrue(frontPage.contains("/exportweblog/date/"
+                + DateUtil.format8chars(entry.getPubTime(), weblog.getTimeZoneInstance()) + "\""),
+                "calendar links the day of the entry");
+        assertMatchesLive(exporter, feedServlet, "/roller-ui/rendering/feed",
+                "/exportweblog/entries/atom", "/exportweblog/feed/entries/atom/index.xml");
+        
+        // unknown pages are not written
+        assertFalse(exporter.export("/exportweblog/entry/missing"));
+        assertFalse(Files.exists(outputDir.resolve("exportweblog/entry/missing")));
+    }
+    
+    
+    /**
+     * Publishing an entry writes out only the pages it appears on, and
+     * unpublishing it removes its permalink.
+     */
+    @Test
+    void testExportEntry() throws Exception {
+        
+        StaticSiteExporter exporter = new StaticSiteExporter(outputDir);
+        exporter.exportWeblog(TestUtils.getManagedWebsite(testWeblog));
+        
+        WeblogEntry entry = TestUtils.setupWeblogEntry("published", testWeblog, testUser);
+        TestUtils.endSession(true);
+        
+        Set<String> rendered = exporter.exportEntry(entry.getId());
+        assertEquals(exporter.getEntryPaths(TestUtils.getManagedWeblogEntry(entry)), rendered);
+        assertFalse(rendered.contains("/exportweblog/entry/exported"));
+        
+        Path permalink = outputDir.resolve("exportweblog/entry/published/index.html");
+        assertTrue(Files.exists(permalink));
+        assertTrue(new String(Files.readAllBytes(outputDir.resolve("exportweblog/index.html")),
+                StandardCharsets.UTF_8).contains("entry/published"));
+        
+        TestUtils.teardownWeblogEntry(entry.getId());
+        TestUtils.endSession(true);
+        CacheManager.clear();
+        
+        rendered = exporter.exportEntry(entry.getId());
+        assertTrue(rendered.contains("/exportweblog/entry/published"));
+        assertFalse(Files.exists(permalink));
+        assertFalse(Files.exists(permalink.resolveSibling("index.html.gz")));
+    }
+    
+    
+    /**
+     * Deleting a weblog removes its exported files on the next run.
+     */
+    @Test
+    void testExportDeletedWeblog() throws Exception {
+        
+        StaticSiteExporter exporter = new StaticSiteExporter(outputDir);
+        exporter.exportChanges();
+        
+        Path root = outputDir.resolve("exportweblog");
+        assertTrue(Files.exists(root.resolve("entry/exported/index.html")));
+        assertFalse(exporter.getExportedPaths(testEntry.getId()).isEmpty());
+        
+        TestUtils.teardownWeblog(testWeblog.getId());
+        TestUtils.endSession(true);
+        exporter.invalidate(testWeblog);
+        testWeblog = null;
+        
+        exporter.exportChanges();
+        assertFalse(Files.exists(root));
+        assertTrue(exporter.getExportedPaths(testEntry.getId()).isEmpty());
+    }
+    
+    
+    // compare an exported file and its gzip variant with a live response
+    private void assertMatchesLive(StaticSiteExporter exporter, HttpServlet servlet,
+            String servletPath, String pathInfo, String file) throws Exception {
+        
+        byte[] live = renderLive(servlet, servletPath, pathInfo);
+        byte[] exported = Files.readAllBytes(outputDir.resolve(file.substring(1)));
+        assertTrue(live.length > 0, file);
+        assertArrayEquals(live, exported, file);
+        
+        try (InputStream in = new GZIPInputStream(
+                Files.newInputStream(outputDir.resolve(file.substring(1) + ".gz")))) {
+            assertArrayEquals(exported, in.readAllBytes(), file + ".gz");
+        }
+    }
+    
+    
+    private static byte[] renderLive(HttpServlet servlet, String servletPath, String pathInfo)
+            throws Exception {
+        
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getMethod()).thenReturn("GET");
+        when(request.getServletPath()).thenReturn(servletPath);
+        when(request.getPathInfo()).thenReturn(pathInfo);
+        when(request.getRequestURI()).thenReturn(servletPath + pathInfo);
+        when(request.getRequestURL()).thenReturn(new StringBuffer("http://localhost" + servletPath + pathInfo));
+        when(request.getDateHeader(anyString())).thenReturn(-1L);
+        when(request.getLocale()).thenReturn(java.util.Locale.getDefault());
+        when(request.getParameterMap()).thenReturn(Collections.emptyMap());
+        when(request.getHeaderNames()).thenReturn(Collections.emptyEnumeration());
+        
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        ServletOutputStream out = new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                content.write(b);
+            }
+            
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+            
+            @Override
+            public void setWriteListener(WriteListener listener) {
+            }
+        };
+        PrintWriter writer = new PrintWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(response.getOutputStream()).thenReturn(out);
+        when(response.getWriter()).thenReturn(writer);
+        
+        servlet.service(request, response);
+        writer.flush();
+        return content.toByteArray();
+    }
+    
+    
+    private static HttpServlet initServlet(HttpServlet servlet) throws Exception {
+        ServletConfig config = mock(ServletConfig.class);
+        when(config.getServletContext()).thenReturn(RollerContext.getServletContext());
+        when(config.getInitParameterNames()).thenReturn(Collections.emptyEnumeration());
+        servlet.init(config);
+        return servlet;
+    }
+    
+    
+    // servlet context serving the webapp sources, and a JSP factory
+    private static void setupServletContext() throws Exception {
+        
+        ServletContext context = mock(ServletContext.class);
+        when(context.getResourceAsStream(anyString())).thenAnswer(invocation -> {
+            Path file = WEBAPP.resolve(invocation.<String>getArgument(0).replaceFirst("^/", ""));
+            return Files.isRegularFile(file) ? Files.newInputStream(file) : null;
+        });
+        
+        Field field = RollerContext.class.getDeclaredField("servletContext");
+        field.setAccessible(true);
+        field.set(null, context);
+        
+        // the JSP factory of the container, no page model uses its page context
+        JspFactory.setDefaultFactory(mock(JspFactory.class));
+    }
+    
+}
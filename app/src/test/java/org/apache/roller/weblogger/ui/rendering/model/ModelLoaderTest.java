@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.ui.rendering.model;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.roller.weblogger.WebloggerException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ModelLoaderTest {
+
+    @Test
+    void sharedModelsAreReused() throws Exception {
+        Map<String, Object> first = new HashMap<>();
+        Map<String, Object> second = new HashMap<>();
+
+        ModelLoader.loadModels(ConfigModel.class.getName(), first, Collections.emptyMap(), true);
+        ModelLoader.loadModels(ConfigModel.class.getName(), second, Collections.emptyMap(), true);
+
+        assertTrue(first.get("config") instanceof ConfigModel);
+        assertSame(first.get("config"), second.get("config"));
+    }
+
+    @Test
+    void unknownModelFailsWhenRequested() {
+        assertThrows(WebloggerException.class, () -> ModelLoader.loadModels(
+                "org.example.DoesNotExist", new HashMap<>(), Collections.emptyMap(), true));
+    }
+
+    @Test
+    void unknownModelIsSkippedOtherwise() throws Exception {
+        Map<String, Object> models = new HashMap<>();
+        ModelLoader.loadModels("org.example.DoesNotExist," + ConfigModel.class.getName(),
+                models, Collections.emptyMap(), false);
+
+        assertTrue(models.containsKey("config"));
+        assertEquals(1, models.size());
+    }
+
+}
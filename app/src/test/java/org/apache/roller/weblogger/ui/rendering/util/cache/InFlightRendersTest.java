@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.ui.rendering.util.cache;
+
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.roller.weblogger.util.cache.CachedContent;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class InFlightRendersTest {
+
+    @Test
+    void onlyOneRequestRendersAKey() {
+        InFlightRenders inFlight = new InFlightRenders("test", 1000);
+
+        InFlightRenders.Render render = inFlight.begin("key");
+        assertNotNull(render);
+        assertNull(inFlight.begin("key"));
+        assertNotNull(inFlight.begin("other"));
+
+        render.complete(null);
+        assertFalse(inFlight.isRendering("key"));
+        assertNotNull(inFlight.begin("key"));
+    }
+
+    @Test
+    void waitersGetTheRenderedContent() throws Exception {
+        InFlightRenders inFlight = new InFlightRenders("test", 10000);
+        InFlightRenders.Render render = inFlight.begin("key");
+
+        AtomicReference<CachedContent> awaited = new AtomicReference<>();
+        Thread waiter = new Thread(() -> awaited.set(inFlight.await("key")));
+        waiter.start();
+
+        // only complete once the waiter is actually waiting
+        while (waiter.getState() != Thread.State.TIMED_WAITING) {
+            Thread.sleep(1);
+        }
+
+        CachedContent content = new CachedContent(16);
+        render.complete(content);
+        waiter.join(5000);
+
+        assertSame(content, awaited.get());
+        assertEquals(1, inFlight.getCoalescedCount());
+    }
+
+    @Test
+    void waitersGiveUpAfterTimeout() {
+        InFlightRenders inFlight = new InFlightRenders("test", 10);
+        InFlightRenders.Render render = inFlight.begin("key");
+
+        assertNull(inFlight.await("key"));
+        assertEquals(1, inFlight.getTimedOutCount());
+
+        // failed renders leave waiters to render themselves
+        render.complete(null);
+        assertNull(inFlight.await("key"));
+        assertEquals(0, inFlight.getCoalescedCount());
+    }
+
+}
@@ -0,0 +1,525 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.ui.rendering.util.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.Principal;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import javax.servlet.RequestDispatcher;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import javax.servlet.jsp.JspFactory;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.weblogger.TestUtils;
+import org.apache.roller.weblogger.business.WebloggerFactory;
+import org.apache.roller.weblogger.pojos.User;
+import org.apache.roller.weblogger.pojos.Weblog;
+import org.apache.roller.weblogger.ui.core.RollerContext;
+import org.apache.roller.weblogger.ui.rendering.servlets.PageServlet;
+import org.apache.roller.weblogger.util.cache.CacheManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test answering cached pages from the front door against the page servlet.
+ */
+class WeblogCacheFrontDoorTest {
+
+    private static final Log log = LogFactory.getLog(WeblogCacheFrontDoorTest.class);
+
+    private static final Path WEBAPP = Paths.get("src/main/webapp");
+    private static final String PAGE_SERVLET = "/roller-ui/rendering/page";
+
+    private User testUser = null;
+    private Weblog testWeblog = null;
+    private HttpServlet pageServlet = null;
+    private final WeblogCacheFrontDoor frontDoor = WeblogCacheFrontDoor.getInstance();
+
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        TestUtils.setupWeblogger();
+        setupServletContext();
+        try {
+            testUser = TestUtils.setupUser("frontdooruser");
+            testWeblog = TestUtils.setupWeblog("frontdoorweblog", testUser);
+            TestUtils.setupWeblogEntry("frontdoorentry", testWeblog, testUser);
+            TestUtils.endSession(true);
+        } catch (Exception ex) {
+            log.error("ERROR in test setup", ex);
+            throw new Exception("Test setup failed", ex);
+        }
+        CacheManager.clear();
+        pageServlet = initServlet(new PageServlet());
+    }
+
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        try {
+            TestUtils.teardownWeblog(testWeblog.getId());
+            TestUtils.teardownUser(testUser.getUserName());
+            TestUtils.endSession(true);
+        } catch (Exception ex) {
+            log.error("ERROR in test teardown", ex);
+            throw new Exception("Test teardown failed", ex);
+        }
+    }
+
+
+    /**
+     * Once the servlet has served a page, the front door answers the same
+     * url with the same content until the weblog changes.
+     */
+    @Test
+    void testServesPagesRenderedByServlet() throws Exception {
+
+        Response first = new Response();
+        assertFalse(frontDoor.serve(request("/frontdoorweblog/entry/frontdoorentry"), first));
+
+        // the servlet renders the page, and records its route
+        pageServlet.service(forwarded("/frontdoorweblog/entry/frontdoorentry"), first);
+        assertTrue(first.content.size() > 0);
+
+        Response second = new Response();
+        assertTrue(frontDoor.serve(request("/frontdoorweblog/entry/frontdoorentry"), second));
+        assertArrayEquals(first.content.toByteArray(), second.content.toByteArray());
+        assertEquals(TestUtils.getManagedWebsite(testWeblog).getLastModified().getTime(),
+                (long) second.dateHeaders.get("Last-Modified"));
+
+        // other urls aren't known yet
+        assertFalse(frontDoor.serve(request("/frontdoorweblog/"), new Response()));
+
+        // changing the weblog sends requests back to the servlet
+        Thread.sleep(10);
+        Weblog weblog = TestUtils.getManagedWebsite(testWeblog);
+        weblog.setTagline("changed by the front door test");
+        WebloggerFactory.getWeblogger().getWeblogManager().saveWeblog(weblog);
+        TestUtils.endSession(true);
+        CacheManager.invalidate(weblog);
+        assertFalse(frontDoor.serve(request("/frontdoorweblog/entry/frontdoorentry"), new Response()));
+
+        // the servlet serves the stale page while it's refreshed in the background
+        Response third = new Response();
+        pageServlet.service(forwarded("/frontdoorweblog/entry/frontdoorentry"), third);
+        assertArrayEquals(first.content.toByteArray(), third.content.toByteArray());
+
+        boolean refreshed = false;
+        for (int i = 0; i < 100 && !refreshed; i++) {
+            Thread.sleep(100);
+            refreshed = frontDoor.serve(request("/frontdoorweblog/entry/frontdoorentry"), new Response());
+        }
+        assertTrue(refreshed);
+    }
+
+
+    /**
+     * Conditional requests for unchanged pages get a 304.
+     */
+    @Test
+    void testNotModified() throws Exception {
+
+        pageServlet.service(forwarded("/frontdoorweblog/"), new Response());
+
+        long lastModified = TestUtils.getManagedWebsite(testWeblog).getLastModified().getTime();
+        Request request = request("/frontdoorweblog/");
+        request.dateHeaders.put("If-Modified-Since", lastModified + 1000);
+
+        Response response = new Response();
+        assertTrue(frontDoor.serve(request, response));
+        assertEquals(HttpServletResponse.SC_NOT_MODIFIED, response.status);
+        assertEquals(0, response.content.size());
+    }
+
+
+    /**
+     * Logged in users, posts and requests skipping the cache go to the servlet.
+     */
+    @Test
+    void testOnlyAnonymousGets() throws Exception {
+
+        pageServlet.service(forwarded("/frontdoorweblog/"), new Response());
+        assertTrue(frontDoor.serve(request("/frontdoorweblog/"), new Response()));
+
+        Request loggedIn = request("/frontdoorweblog/");
+        loggedIn.principal = () -> "frontdooruser";
+        assertFalse(frontDoor.serve(loggedIn, new Response()));
+
+        Request post = request("/frontdoorweblog/");
+        post.method = "POST";
+        assertFalse(frontDoor.serve(post, new Response()));
+
+        Request skipCache = request("/frontdoorweblog/");
+        skipCache.parameters.put("skipCache", "true");
+        assertFalse(frontDoor.serve(skipCache, new Response()));
+
+        // other hosts may map the url to another weblog
+        Request otherHost = request("/frontdoorweblog/");
+        otherHost.headers.put("Host", "otherhost");
+        assertFalse(frontDoor.serve(otherHost, new Response()));
+    }
+
+
+    /**
+     * A servlet which looked up the weblog before it was invalidated doesn't
+     * record the old last modified time.
+     */
+    @Test
+    void testInvalidationDuringRequest() throws Exception {
+
+        long generation = frontDoor.getGeneration();
+        CacheManager.invalidate(TestUtils.getManagedWebsite(testWeblog));
+
+        frontDoor.recordPage(forwarded("/frontdoorweblog/"), generation,
+                "frontdoorweblog", false, "key", System.currentTimeMillis(), true);
+        assertFalse(frontDoor.serve(request("/frontdoorweblog/"), new Response()));
+    }
+
+
+    /**
+     * Compare cache hits through the page servlet, with the persistence
+     * session released after each as the filter does, against the front
+     * door.  Run with -Droller.benchmark=true
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "roller.benchmark", matches = "true")
+    void testCacheHitBenchmark() throws Exception {
+
+        int requests = 20000;
+        HttpServletRequest forwarded = forwarded("/frontdoorweblog/");
+        HttpServletRequest request = request("/frontdoorweblog/");
+        Response response = new Response(false);
+        pageServlet.service(forwarded, response);
+
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        // the first pass warms up
+        for (int pass = 0; pass < 2; pass++) {
+            long bytes = threads.getThreadAllocatedBytes(thread);
+            long startTime = System.nanoTime();
+            for (int i = 0; i < requests; i++) {
+                pageServlet.service(forwarded, response);
+                WebloggerFactory.getWeblogger().release();
+            }
+            long servletNanos = System.nanoTime() - startTime;
+            long servletBytes = threads.getThreadAllocatedBytes(thread) - bytes;
+
+            bytes = threads.getThreadAllocatedBytes(thread);
+            startTime = System.nanoTime();
+            for (int i = 0; i < requests; i++) {
+                assertTrue(frontDoor.serve(request, response));
+            }
+            long frontDoorNanos = System.nanoTime() - startTime;
+            long frontDoorBytes = threads.getThreadAllocatedBytes(thread) - bytes;
+
+            if (pass == 0) {
+                continue;
+            }
+            log.info("Servlet cache hits: " + (requests * 1000000000L / servletNanos)
+                    + " req/s, " + (servletBytes / requests) + " bytes/req");
+            log.info("Front door cache hits: " + (requests * 1000000000L / frontDoorNanos)
+                    + " req/s, " + (frontDoorBytes / requests) + " bytes/req");
+        }
+    }
+
+
+    // an anonymous GET for the given url, as sent by a visitor
+    private static Request request(String uri) {
+        Request request = new Request();
+        request.uri = uri;
+        request.headers.put("Host", "localhost");
+        return request;
+    }
+
+
+    // the same request forwarded to the page servlet by the request mapper
+    private static Request forwarded(String uri) {
+        Request request = request(uri);
+        request.pathInfo = uri.endsWith("/") ? uri.substring(0, uri.length() - 1) : uri;
+        request.servletPath = PAGE_SERVLET;
+        request.uri = PAGE_SERVLET + request.pathInfo;
+        request.setAttribute(RequestDispatcher.FORWARD_REQUEST_URI, uri);
+        return request;
+    }
+
+
+    /**
+     * Plain request, mocks record too much for the benchmark.
+     */
+    private static class Request extends HttpServletRequestWrapper {
+
+        private String method = "GET";
+        private String uri = null;
+        private String servletPath = null;
+        private String pathInfo = null;
+        private Principal principal = null;
+        private final Map<String, String> headers = new HashMap<>();
+        private final Map<String, String> parameters = new HashMap<>();
+        private final Map<String, Long> dateHeaders = new HashMap<>();
+        private final Map<String, Object> attributes = new HashMap<>();
+
+        Request() {
+            super(mock(HttpServletRequest.class));
+        }
+
+        @Override
+        public String getMethod() {
+            return method;
+        }
+
+        @Override
+        public String getRequestURI() {
+            return uri;
+        }
+
+        @Override
+        public StringBuffer getRequestURL() {
+            return new StringBuffer("http://localhost").append(uri);
+        }
+
+        @Override
+        public String getContextPath() {
+            return "";
+        }
+
+        @Override
+        public String getServletPath() {
+            return servletPath;
+        }
+
+        @Override
+        public String getPathInfo() {
+            return pathInfo;
+        }
+
+        @Override
+        public String getQueryString() {
+            return null;
+        }
+
+        @Override
+        public String getServerName() {
+            return "localhost";
+        }
+
+        @Override
+        public String getRemoteAddr() {
+            return "127.0.0.1";
+        }
+
+        @Override
+        public Principal getUserPrincipal() {
+            return principal;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return headers.get(name);
+        }
+
+        @Override
+        public Enumeration<String> getHeaderNames() {
+            return Collections.enumeration(headers.keySet());
+        }
+
+        @Override
+        public long getDateHeader(String name) {
+            return dateHeaders.getOrDefault(name, -1L);
+        }
+
+        @Override
+        public Cookie[] getCookies() {
+            return null;
+        }
+
+        @Override
+        public String getParameter(String name) {
+            return parameters.get(name);
+        }
+
+        @Override
+        public Map<String, String[]> getParameterMap() {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public Locale getLocale() {
+            return Locale.getDefault();
+        }
+
+        @Override
+        public Object getAttribute(String name) {
+            return attributes.get(name);
+        }
+
+        @Override
+        public void setAttribute(String name, Object value) {
+            attributes.put(name, value);
+        }
+
+        @Override
+        public void removeAttribute(String name) {
+            attributes.remove(name);
+        }
+    }
+
+
+    /**
+     * Plain response, keeping what the tests look at.
+     */
+    private static class Response extends HttpServletResponseWrapper {
+
+        private final ByteArrayOutputStream content = new ByteArrayOutputStream();
+        private final Map<String, Long> dateHeaders = new HashMap<>();
+        private final boolean keepContent;
+        private int status = HttpServletResponse.SC_OK;
+
+        Response() {
+            this(true);
+        }
+
+        // responses which don't keep their content, for benchmarks
+        Response(boolean keepContent) {
+            super(mock(HttpServletResponse.class));
+            this.keepContent = keepContent;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            return new ServletOutputStream() {
+                @Override
+                public void write(int b) {
+                    if (keepContent) {
+                        content.write(b);
+                    }
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                    if (keepContent) {
+                        content.write(b, off, len);
+                    }
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setWriteListener(WriteListener listener) {
+                }
+            };
+        }
+
+        @Override
+        public void setStatus(int status) {
+            this.status = status;
+        }
+
+        @Override
+        public void sendError(int status) {
+            this.status = status;
+        }
+
+        @Override
+        public void setDateHeader(String name, long date) {
+            dateHeaders.put(name, date);
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+        }
+
+        @Override
+        public void setContentType(String type) {
+        }
+
+        @Override
+        public void setContentLength(int length) {
+        }
+
+        @Override
+        public boolean isCommitted() {
+            return false;
+        }
+
+        @Override
+        public void reset() {
+        }
+    }
+
+
+    private static HttpServlet initServlet(HttpServlet servlet) throws Exception {
+        ServletConfig config = mock(ServletConfig.class);
+        when(config.getServletContext()).thenReturn(RollerContext.getServletContext());
+        when(config.getInitParameterNames()).thenReturn(Collections.emptyEnumeration());
+        servlet.init(config);
+        return servlet;
+    }
+
+
+    // servlet context serving the webapp sources, and a JSP factory
+    private static void setupServletContext() throws Exception {
+
+        ServletContext context = mock(ServletContext.class);
+        when(context.getResourceAsStream(anyString())).thenAnswer(invocation -> {
+            Path file = WEBAPP.resolve(invocation.<String>getArgument(0).replaceFirst("^/", ""));
+            return Files.isRegularFile(file) ? Files.newInputStream(file) : null;
+        });
+
+        Field field = RollerContext.class.getDeclaredField("servletContext");
+        field.setAccessible(true);
+        field.set(null, context);
+
+        // no page context, the calendar isn't used by the test theme
+        JspFactory.setDefaultFactory(mock(JspFactory.class));
+    }
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BannedwordslistMatcherTest {
+
+    private static final String RULES = String.join("\n",
+            "# comment",
+            "viagra",
+            "cheap pills",
+            "he",
+            "she",
+            "hers",
+            "-pharma",
+            "casino.example",
+            "[unbalanced",
+            "(?i)poker[0-9]+",
+            "(online|internet)-?(loans?)");
+
+    private static final String[] INPUTS = {
+            "", "VIAGRA for sale", "viagras", "nonviagra", "Buy cheap pills now",
+            "cheap  pills", "ushers", "her", "she said", "big-pharma", "-pharma",
+            "casinoXexample", "casino.example.com", "a [unbalanced rule",
+            "POKER123", "poker", "internet-loan", "onlineloans", "nothing to see"
+    };
+
+    @Test
+    void matchesLikeIndividualRules() {
+        List<String> stringRules = new ArrayList<>();
+        List<Pattern> regexRules = new ArrayList<>();
+        Bannedwordslist.populateSpamRules(RULES, stringRules, regexRules, null);
+
+        BannedwordslistMatcher matcher = BannedwordslistMatcher.compile(stringRules, regexRules);
+        for (String input : INPUTS) {
+            assertEquals(matchesOneByOne(input, stringRules, regexRules), matcher.matches(input),
+                    "unexpected result for '" + input + "'");
+        }
+    }
+
+    @Test
+    void literalsRespectWordBoundaries() {
+        BannedwordslistMatcher matcher = BannedwordslistMatcher.compile(
+                List.of("he", "she", "hers"), List.of());
+        assertTrue(matcher.matches("and she left"));
+        assertTrue(matcher.matches("HERS"));
+        assertFalse(matcher.matches("ushers"));
+        assertFalse(matcher.matches("there"));
+    }
+
+    @Test
+    void emptyRulesMatchNothing() {
+        BannedwordslistMatcher matcher = BannedwordslistMatcher.compile(null, null);
+        assertTrue(matcher.isEmpty());
+        assertFalse(matcher.matches("anything"));
+    }
+
+    /** The matching rules as they were applied before rules were compiled. */
+    private static boolean matchesOneByOne(String str, List<String> stringRules, List<Pattern> regexRules) {
+        if (str.isEmpty()) {
+            return false;
+        }
+        for (String rule : stringRules) {
+            try {
+                if (Pattern.compile("\\b(" + rule + ")\\b", Pattern.CASE_INSENSITIVE).matcher(str).find()) {
+                    return true;
+                }
+            } catch (PatternSyntaxException e) {
+                if (str.contains(rule)) {
+                    return true;
+                }
+            }
+        }
+        for (Pattern pattern : regexRules) {
+            if (pattern.matcher(str).find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
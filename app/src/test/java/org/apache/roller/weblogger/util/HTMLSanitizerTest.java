@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.util;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Checks the single pass HTMLSanitizer against the original implementation.
+ */
+class HTMLSanitizerTest {
+
+    private static final String[] SAMPLES = {
+            "",
+            "plain text with \"quotes\" and 'apostrophes'\nand\r\nline\ffeeds",
+            "<p>Hello <b>world</b></p>",
+            "<p>unclosed <i>tags <b>everywhere",
+            "</b>close without open",
+            "<script>alert('x')</script>after",
+            "<SCRIPT SRC=http://example.com/x.js></SCRIPT>",
+            "<a href=\"http://example.com/\">link</a>",
+            "<a href=\"javascript:alert(1)\">bad link</a>",
+            "<a href=\"mailto:someone@example.com?subject=hi\">mail</a>",
+            "<a href=\"mailto:nobody\">mail</a>",
+            "<img src=\"https://example.com/a.png\" width=\"100\" height=\"50%\">",
+            "<img src=\"data:image/png;base64,xyz\">",
+            "<img src=\"http://example.com/a.png\" width=\"wide\" onerror=\"alert(1)\"/>",
+            "<div style=\"color:red; background: url('http://example.com/a.png'); width: expression(alert(1))\">x</div>",
+            "<div style=\"background: url('javascript:alert(1)')\">x</div>",
+            "<span class=\"a<b>\" title=\"it's\nmultiline\">x</span>",
+            "<div onclick=\"evil()\" id=\"d1\">x</div>",
+            "<table><tr><td>cell</td></tr></table>",
+            "<tr><td>no table</td></tr>",
+            "<table><td>no row</td></table>",
+            "<!-- a comment --> text <!-- unterminated",
+            "<a <!-- tricky --> >",
+            "<unknown attr=\"1\">text</unknown>",
+            "<b>bold<i>both</b>italic</i>",
+            "< not a tag > & < /nope>",
+            "<p\nclass=\"x\">multi\nline</p>",
+            "<br><hr/><br/>",
+            "<embed src=\"http://example.com/x.swf\">",
+            "<form action=\"x\"><input type=\"text\"></form>",
+            "trailing <",
+            "<<b>>double<</b>>",
+            "<a title=\"x\ny\" <b>tag after a line break</b>",
+            "<p class=\"a\u2028b\">separator</p><p\r\n>crlf</p >",
+            "</b <i>close then open</i></ b></i\n>",
+            "<div id=x title = \"t\" =\"e\" data-x=\"1\" rel=\"open>",
+            "<img src=\"http://example.com/a.png\" width=\"10%%\" height=\"\">",
+            "<img src=\"http://example.com/a.png\" width=\"007\" height=\"5\n\">",
+            "<div style=\"color:;margin: ;padding:  ;a:b;^c:d;e :f\">x</div>",
+            "<div style=\"x: url('http://example.com/a') url('javascript:x')\">x</div>",
+            "<div style=\"x: url('javascript:x')\nurl('http://example.com/a')\">x</div>",
+            "<div style=\"x:a\nURL ( \"http://example.com/a\")\">x</div>",
+            "<div style=\"x:curl('javascript:x');y:_ url('javascript:y')\">x</div>",
+            "<div style=\"x:url('a)b');y:url(');z:url('')\">x</div>",
+            "<div style=\"x:eval (1);y:evaluate(2);z:Expression(3)\">x</div>",
+    };
+
+    // word boundaries next to letters outside ASCII, which java.util.regex
+    // stopped treating as word characters in Java 19
+    private static final String[] UNICODE_SAMPLES = {
+            "<b\u00e9>accent</b\u00e9><b_\u0301>mark</b_\u0301><i\u0301>x</i>",
+            "<div style=\"x:\u00e9url('javascript:x');y:\u00e9\u0301 url('javascript:y')\">x</div>",
+    };
+
+    private static final String[] FRAGMENTS = {
+            "<p>", "</p>", "<b>", "</b>", "<i>", "</i>", "<table>", "</table>", "<tr>", "</tr>",
+            "<td>", "</td>", "<a href=\"http://example.com/\">", "<a href=\"bad\">", "</a>",
+            "<img src=\"http://example.com/i.png\">", "<img src=\"x\">", "<script>", "</script>",
+            "<!--", "-->", "<", ">", "\"", "'", "\n", "\r", "\f", "text", " ", "&amp;",
+            "<div style=\"color:red;\">", "</div>", "<span onclick=\"x\">", "</span>", "<br>",
+            "<x-custom>", "</x-custom>", "<p class=\"c\" width=\"10\">", "<hr/>", "</br>",
+            "<p ", "</p ", "<b/", "\u2028", "style=\"", "a:b", ";", "url('",
+            "http://example.com/u')", "<div ", "title=\"x\"", "=", "/>"
+    };
+
+    @Test
+    void matchesOriginalImplementationOnSamples() {
+        for (String html : SAMPLES) {
+            assertSameResult(html);
+        }
+    }
+
+    @Test
+    void matchesOriginalImplementationOnUnicodeSamples() {
+        assumeTrue(Runtime.version().feature() < 19, "word boundaries changed in Java 19");
+        for (String html : UNICODE_SAMPLES) {
+            assertSameResult(html);
+        }
+    }
+
+    @Test
+    void matchesOriginalImplementationOnRandomInput() {
+        Random random = new Random(20231018L);
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder html = new StringBuilder();
+            int count = random.nextInt(30);
+            for (int j = 0; j < count; j++) {
+                html.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+            }
+            assertSameResult(html.toString());
+        }
+    }
+
+    @Test
+    void matchesOriginalImplementationWithCustomTags() {
+        Pattern allowed = Pattern.compile("^(b|i|p)$");
+        Pattern forbidden = Pattern.compile("script");
+        for (String html : SAMPLES) {
+            HTMLSanitizer.SanitizeResult expected = toResult(
+                    LegacyHTMLSanitizer.sanitizer(html, allowed, forbidden));
+            assertResult(expected, HTMLSanitizer.sanitizer(html, allowed, forbidden), html);
+        }
+    }
+
+    @Test
+    void encodesAndValidates() {
+        assertTrue(HTMLSanitizer.isSanitized("<p>fine</p>"));
+        assertFalse(HTMLSanitizer.isSanitized("<script>bad</script>"));
+        assertEquals("a&lt;b&gt;<br>&quot;c&#39; ", HTMLSanitizer.encode("a<b>\n\"c'\r"));
+    }
+
+    private static void assertSameResult(String html) {
+        HTMLSanitizer.SanitizeResult expected = toResult(LegacyHTMLSanitizer.sanitizer(html));
+        assertResult(expected, HTMLSanitizer.sanitizer(html), html);
+
+        // the shortcuts only build the output they return
+        assertEquals(expected.html, HTMLSanitizer.sanitize(html), "sanitize for: " + html);
+        assertEquals(expected.text, HTMLSanitizer.getText(html), "getText for: " + html);
+        assertEquals(expected.isValid, HTMLSanitizer.isSanitized(html), "isSanitized for: " + html);
+    }
+
+    private static void assertResult(HTMLSanitizer.SanitizeResult expected,
+            HTMLSanitizer.SanitizeResult actual, String html) {
+        assertEquals(expected.html, actual.html, "html for: " + html);
+        assertEquals(expected.text, actual.text, "text for: " + html);
+        assertEquals(expected.val, actual.val, "val for: " + html);
+        assertEquals(expected.isValid, actual.isValid, "isValid for: " + html);
+        assertEquals(expected.invalidTags, actual.invalidTags, "invalidTags for: " + html);
+    }
+
+    private static HTMLSanitizer.SanitizeResult toResult(LegacyHTMLSanitizer.LegacySanitizeResult legacy) {
+        HTMLSanitizer.SanitizeResult result = new HTMLSanitizer.SanitizeResult();
+        result.html = legacy.html;
+        result.text = legacy.text;
+        result.val = legacy.val;
+        result.isValid = legacy.isValid;
+        result.invalidTags = new ArrayList<>(legacy.invalidTags);
+        return result;
+    }
+
+}
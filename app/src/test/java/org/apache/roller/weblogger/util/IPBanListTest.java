@@ -18,6 +18,7 @@
 
 package org.apache.roller.weblogger.util;
 
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -27,12 +28,15 @@ import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.List;
-import org.junit.jupiter.api.Disabled;
+import java.util.function.BooleanSupplier;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
 
 class IPBanListTest {
 
@@ -48,6 +52,11 @@ class IPBanListTest {
         ipBanList = new IPBanList(() -> ipBanListPath.toAbsolutePath().toString());
     }
 
+    @AfterEach
+    void tearDown() {
+        ipBanList.shutdown();
+    }
+
     @Test
     @DisplayName("addBanned() adds the given IP address to the file")
     void addBannedAddsToFile() {
@@ -88,15 +97,92 @@ class IPBanListTest {
         assertFalse(ipBanList.isBanned(null));
     }
 
-    @Disabled
     @Test
     @DisplayName("isBanned() reads the file if needed")
-    void isBanned4() {
+    void isBanned4() throws InterruptedException {
         writeIpBanList("10.0.0.1");
-        try { // work around for intermittently failing test
-            Thread.sleep(500);
-        } catch (InterruptedException ignored) {}
+        await(() -> ipBanList.isBanned("10.0.0.1"));
+    }
+
+    @Test
+    @DisplayName("the list is reloaded when the file is replaced")
+    void reloadsChangedFile() throws IOException, InterruptedException {
+        writeIpBanList("10.0.0.1\n10.1.0.0/16");
+        await(() -> ipBanList.isBanned("10.1.2.3"));
+
+        // write the new list next to the file and move it in place
+        Path replacement = tmpDir.resolve("ipbanlist.new");
+        Files.writeString(replacement, "10.0.0.2\n");
+        Files.move(replacement, ipBanListPath, StandardCopyOption.REPLACE_EXISTING);
+        await(() -> ipBanList.isBanned("10.0.0.2"));
+        assertFalse(ipBanList.isBanned("10.0.0.1"));
+        assertFalse(ipBanList.isBanned("10.1.2.3"));
+    }
+
+    @Test
+    @DisplayName("isBanned() matches addresses inside banned CIDR blocks")
+    void isBannedCidr() throws IOException {
+        Files.writeString(ipBanListPath, "# subnets\n192.168.4.0/22\n2001:db8::/32\n10.0.0.7\n");
+        ipBanList.shutdown();
+        ipBanList = new IPBanList(() -> ipBanListPath.toAbsolutePath().toString());
+
+        assertTrue(ipBanList.isBanned("192.168.4.1"));
+        assertTrue(ipBanList.isBanned("192.168.7.255"));
+        assertFalse(ipBanList.isBanned("192.168.8.0"));
+        assertTrue(ipBanList.isBanned("2001:db8:1234::1"));
+        assertFalse(ipBanList.isBanned("2001:db9::1"));
+        assertTrue(ipBanList.isBanned("10.0.0.7"));
+        assertTrue(ipBanList.isBanned("::ffff:10.0.0.7"));
+        assertFalse(ipBanList.isBanned("10.0.0.8"));
+        assertFalse(ipBanList.isBanned("not-an-ip"));
+    }
+
+    @Test
+    @DisplayName("addBanned() takes effect immediately")
+    void addBannedIsImmediate() {
+        ipBanList.addBannedIp("10.0.0.1");
         assertTrue(ipBanList.isBanned("10.0.0.1"));
+        assertFalse(ipBanList.isBanned("10.0.0.2"));
+    }
+
+    @Test
+    @DisplayName("IPv6 entries are parsed as literals, never looked up")
+    void ipv6Literals() {
+        IPAddressTrie trie = IPAddressTrie.EMPTY
+                .with("2001:db8::1")
+                .with("[fe80::1:2]")
+                .with("1:2:3:4:5:6:7:8")
+                .with("1:2:3:4:5:6:7::")
+                .with("::")
+                .with("::ffff:192.0.2.1")
+                .with("64:ff9b::198.51.100.7");
+
+        assertTrue(trie.contains("2001:DB8:0:0:0:0:0:1"));
+        assertTrue(trie.contains("fe80:0::1:2"));
+        assertTrue(trie.contains("1:2:3:4:5:6:7:8"));
+        assertTrue(trie.contains("1:2:3:4:5:6:7:0"));
+        assertTrue(trie.contains("0:0:0:0:0:0:0:0"));
+        assertTrue(trie.contains("192.0.2.1"));
+        assertTrue(trie.contains("64:ff9b::c633:6407"));
+        assertFalse(trie.contains("2001:db8::2"));
+
+        for (String invalid : new String[] {
+                "localhost:80", "example.com:", ":", ":::", "1::2::3", ":1:2:3:4:5:6:7", "1:2:3:4:5:6:7:",
+                "1:2:3:4:5:6:7:8:9", "1:2:3:4:5:6:7:8::", "12345::", "g::1", "1.2.3.4::", "::1.2.3",
+                "1:2:3:4:5:6:7:1.2.3.4", "fe80::1%eth0", "\uff11::1"}) {
+            assertFalse(trie.contains(invalid), invalid);
+            assertThrows(IllegalArgumentException.class, () -> IPAddressTrie.EMPTY.with(invalid), invalid);
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long end = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > end) {
+                fail("Timed out waiting for the banned ips file to be reloaded");
+            }
+            Thread.sleep(10);
+        }
     }
 
     private void writeIpBanList(String ipAddress) {
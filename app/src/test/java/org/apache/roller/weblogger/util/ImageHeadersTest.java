@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.util;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import javax.imageio.ImageIO;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Test reading image dimensions from file headers.
+ */
+public class ImageHeadersTest {
+    
+    @Test
+    public void testImageIOFormats() throws Exception {
+        for (String format : new String[] { "png", "gif", "jpeg", "bmp" }) {
+            byte[] image = write(format, 321, 123);
+            assertArrayEquals(new int[] { 321, 123 },
+                    ImageHeaders.getDimensions(image, image.length), format);
+        }
+    }
+    
+    
+    @Test
+    public void testWebp() {
+        // lossless bitstream header of a 300x200 image
+        byte[] header = {
+            'R', 'I', 'F', 'F', 0, 0, 0, 0, 'W', 'E', 'B', 'P',
+            'V', 'P', '8', 'L', 0, 0, 0, 0, 0x2F, 0x2B, (byte) 0xC1, 0x31, 0x00 };
+        assertArrayEquals(new int[] { 300, 200 }, ImageHeaders.getDimensions(header, header.length));
+    }
+    
+    
+    @Test
+    public void testUnknown() throws Exception {
+        byte[] text = "GIF8 is not enough".getBytes("US-ASCII");
+        assertNull(ImageHeaders.getDimensions(text, 4));
+        
+        byte[] image = write("png", 10, 10);
+        assertNull(ImageHeaders.getDimensions(image, 12));
+        
+        // a jpeg whose frame header was cut off
+        image = write("jpeg", 10, 10);
+        int frame = 2;
+        while (!((image[frame] & 0xFF) == 0xFF && (image[frame + 1] & 0xFF) == 0xC0)) {
+            frame++;
+        }
+        assertNull(ImageHeaders.getDimensions(Arrays.copyOf(image, frame + 4), frame + 4));
+    }
+    
+    
+    private static byte[] write(String format, int width, int height) throws Exception {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, format, out);
+        return out.toByteArray();
+    }
+    
+}
@@ -18,13 +18,91 @@
 
 package org.apache.roller.weblogger.util;
 
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * Test linkback extractor.
  */
 public class LinkbackExtractorTest  {
 
+    private static final String ENTRY_URL = "http://example.com/roller/blog/entry/hello";
+    private static final String LINKING_PAGE = "<html><head><title>Linking page</title></head>"
+            + "<body><p>Read <a href=\"" + ENTRY_URL + "\">this entry</a> now</p></body></html>";
+    
+    private HttpServer server;
+    private ExecutorService executor;
+    private String baseURL;
+    
+    @BeforeEach
+    public void setUp() throws Exception {
+        executor = Executors.newCachedThreadPool();
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(executor);
+        
+        server.createContext("/linking", exchange -> respond(exchange, LINKING_PAGE));
+        
+        // never answers within the test timeout
+        server.createContext("/stall", exchange -> {
+            sleep(5000);
+            respond(exchange, LINKING_PAGE);
+        });
+        
+        // sends the page a few bytes at a time
+        server.createContext("/trickle", exchange -> {
+            byte[] page = LINKING_PAGE.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, page.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                for (int i = 0; i < page.length; i += 4) {
+                    out.write(page, i, Math.min(4, page.length - i));
+                    out.flush();
+                    sleep(100);
+                }
+            } catch (IOException ignored) {
+                // client gave up
+            }
+        });
+        
+        // links back only after a megabyte of filler
+        server.createContext("/huge", exchange -> {
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write("<html><head><title>Huge page</title></head><body>".getBytes(StandardCharsets.UTF_8));
+                byte[] filler = "<p>filler filler filler filler</p>\n".getBytes(StandardCharsets.UTF_8);
+                for (int i = 0; i < 1024 * 1024 / filler.length; i++) {
+                    out.write(filler);
+                }
+                out.write(LINKING_PAGE.getBytes(StandardCharsets.UTF_8));
+            } catch (IOException ignored) {
+                // client stopped reading
+            }
+        });
+        
+        server.start();
+        baseURL = "http://localhost:" + server.getAddress().getPort();
+    }
+    
+    @AfterEach
+    public void tearDown() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
     public void testLinkbackExtractor() throws Exception {
         String[][] testrefs = new String[][]
         {
@@ -48,5 +126,69 @@ public class LinkbackExtractorTest  {
         // todo: le.getPermalink() and le.getExcerpt() working
     }
 
+    @Test
+    public void testLinkingPage() {
+        LinkbackExtractor le = new LinkbackExtractor(baseURL + "/linking", ENTRY_URL, 2000, 65536);
+        assertEquals("Linking page", le.getTitle());
+        assertNotNull(le.getExcerpt());
+        assertTrue(le.getExcerpt().contains("this entry"));
+        
+        le = new LinkbackExtractor(baseURL + "/linking", "http://example.com/roller/blog/entry/other", 2000, 65536);
+        assertNull(le.getExcerpt());
+    }
+
+    @Test
+    public void testStallingPage() {
+        long start = System.currentTimeMillis();
+        LinkbackExtractor le = new LinkbackExtractor(baseURL + "/stall", ENTRY_URL, 500, 65536);
+        assertNull(le.getExcerpt());
+        assertTrue(System.currentTimeMillis() - start < 3000);
+    }
+
+    @Test
+    public void testTricklingPage() {
+        // the whole page takes seconds to arrive, well past the timeout
+        long start = System.currentTimeMillis();
+        LinkbackExtractor le = new LinkbackExtractor(baseURL + "/trickle", ENTRY_URL, 500, 65536);
+        assertNull(le.getExcerpt());
+        assertTrue(System.currentTimeMillis() - start < 3000);
+    }
+
+    @Test
+    public void testOversizedPage() {
+        // only the first bytes are read, which don't link back
+        LinkbackExtractor le = new LinkbackExtractor(baseURL + "/huge", ENTRY_URL, 5000, 65536);
+        assertEquals("Huge page", le.getTitle());
+        assertNull(le.getExcerpt());
+        
+        // with a big enough limit the link is found
+        le = new LinkbackExtractor(baseURL + "/huge", ENTRY_URL, 5000, 2 * 1024 * 1024);
+        assertNotNull(le.getExcerpt());
+    }
+
+    @Test
+    public void testBadURLs() {
+        assertNull(new LinkbackExtractor("file:///etc/passwd", ENTRY_URL, 500, 65536).getExcerpt());
+        assertNull(new LinkbackExtractor("not a url", ENTRY_URL, 500, 65536).getExcerpt());
+    }
+    
+    private static void respond(HttpExchange exchange, String page) throws IOException {
+        byte[] bytes = page.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "text/html; charset=UTF-8");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        } catch (IOException ignored) {
+            // client gave up
+        }
+    }
+    
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
     
 }
@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimiterTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000L);
+    private RateLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        limiter = new RateLimiter("test", 3, 1000, 10, now::get);
+    }
+
+    @Test
+    void rejectsHitsOverThreshold() {
+        assertFalse(limiter.processHit("10.0.0.1"));
+        assertFalse(limiter.processHit("10.0.0.1"));
+        assertFalse(limiter.processHit("10.0.0.1"));
+        assertTrue(limiter.processHit("10.0.0.1"));
+        assertFalse(limiter.processHit("10.0.0.2"));
+        assertEquals(1, limiter.getRejectedCount());
+    }
+
+    @Test
+    void clientsAreCountedPerWeblog() {
+        for (int i = 0; i < 3; i++) {
+            assertFalse(limiter.processHit("10.0.0.1", "blog1"));
+        }
+        assertTrue(limiter.processHit("10.0.0.1", "blog1"));
+        assertFalse(limiter.processHit("10.0.0.1", "blog2"));
+    }
+
+    @Test
+    void windowSlides() {
+        for (int i = 0; i < 3; i++) {
+            limiter.processHit("10.0.0.1");
+        }
+
+        // a quarter into the next window, most of the previous hits still count
+        now.addAndGet(1250);
+        assertTrue(limiter.processHit("10.0.0.1"));
+
+        // two windows later nothing from before counts
+        now.addAndGet(2000);
+        assertFalse(limiter.processHit("10.0.0.1"));
+    }
+
+    @Test
+    void numberOfClientsIsBounded() {
+        for (int i = 0; i < 100; i++) {
+            limiter.processHit("10.0.0." + i);
+        }
+        assertTrue((Integer) limiter.getLimiterStats().get("clients") <= 10);
+    }
+
+    @Test
+    void clientsAreEvictedInBulk() {
+        for (int i = 0; i < 10; i++) {
+            limiter.processHit("10.0.0." + i);
+        }
+        assertEquals(10, limiter.getLimiterStats().get("clients"));
+
+        // a quarter of the active clients make room for the new one
+        limiter.processHit("10.0.1.0");
+        assertEquals(9, limiter.getLimiterStats().get("clients"));
+
+        // so the next one doesn't need to evict anything
+        limiter.processHit("10.0.1.1");
+        assertEquals(10, limiter.getLimiterStats().get("clients"));
+    }
+
+}
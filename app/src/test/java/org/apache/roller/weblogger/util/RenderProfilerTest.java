@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.util;
+
+import jakarta.persistence.TypedQuery;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RenderProfilerTest {
+
+    @AfterEach
+    void tearDown() {
+        RenderProfiler profile = RenderProfiler.current();
+        if (profile != null) {
+            profile.finish();
+        }
+        RenderProfiler.configure(false, 1000);
+    }
+
+    @Test
+    void doesNothingWhenDisabled() {
+        RenderProfiler.configure(false, 1000);
+        assertNull(RenderProfiler.start("disabled"));
+        assertNull(RenderProfiler.current());
+        
+        // recording without a profile is a no-op
+        RenderProfiler.recordCacheLookup(true);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void countsQueriesAndCacheLookups() {
+        RenderProfiler.configure(true, 0);
+        
+        TypedQuery<String> query = mock(TypedQuery.class);
+        when(query.setParameter(1, "x")).thenReturn(query);
+        when(query.getResultList()).thenReturn(List.of("a", "b"));
+        
+        RenderProfiler profile = RenderProfiler.start("counting");
+        assertNotNull(profile);
+        assertNull(RenderProfiler.start("nested"));
+        
+        TypedQuery<String> profiled = RenderProfiler.profileQuery(query, TypedQuery.class);
+        assertEquals(List.of("a", "b"), profiled.setParameter(1, "x").getResultList());
+        profiled.getResultList();
+        
+        RenderProfiler.recordCacheLookup(true);
+        RenderProfiler.recordCacheLookup(true);
+        RenderProfiler.recordCacheExpired();
+        RenderProfiler.recordCacheLookup(false);
+        profile.recordTemplate("weblog.vm", 1000);
+        
+        assertEquals(2, profile.getQueryCount());
+        assertEquals(1, profile.getCacheHits());
+        assertEquals(2, profile.getCacheMisses());
+        
+        profile.finish();
+        assertNull(RenderProfiler.current());
+        
+        Map<String, Object> stats = RenderProfiler.getStats().get("counting");
+        assertEquals(1L, stats.get("renders"));
+        assertEquals(1L, stats.get("slowRenders"));
+        assertEquals(1L, stats.get("cacheHits"));
+        assertEquals(2L, stats.get("cacheMisses"));
+        assertEquals(2.0, stats.get("averageQueries"));
+    }
+
+}
@@ -0,0 +1,328 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.util.cache;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.weblogger.util.cache.InvalidationEvent.Kind;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Test relaying cache invalidations between cluster members.
+ */
+public class InvalidationBusTest {
+    
+    private static final Log log = LogFactory.getLog(InvalidationBusTest.class);
+    
+    private static final long NO_BATCHING = 60000;
+    
+    @TempDir
+    Path queueDir;
+    
+    
+    /**
+     * Events arrive in the order they were published, each once.
+     */
+    @Test
+    public void testLoopbackOrdering() throws Exception {
+        
+        List<InvalidationEvent> appliedA = new CopyOnWriteArrayList<>();
+        List<InvalidationEvent> appliedB = new CopyOnWriteArrayList<>();
+        InvalidationRelay a = new InvalidationRelay(new LoopbackInvalidationBus(), "a", appliedA::add, 10);
+        InvalidationRelay b = new InvalidationRelay(new LoopbackInvalidationBus(), "b", appliedB::add, 10);
+        a.start();
+        b.start();
+        try {
+            List<InvalidationEvent> expected = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                InvalidationEvent event = entry(i);
+                expected.add(event);
+                a.publish(event);
+                if (i % 7 == 0) {
+                    Thread.sleep(5);
+                }
+            }
+            
+            await(() -> appliedB.size() >= expected.size(), 5000);
+            assertEquals(expected, appliedB);
+            assertTrue(appliedA.isEmpty(), "a member doesn't apply its own events");
+        } finally {
+            a.shutdown();
+            b.shutdown();
+        }
+    }
+    
+    
+    /**
+     * Repeated invalidations within a batch are sent once.
+     */
+    @Test
+    public void testCoalescing() throws Exception {
+        
+        CapturingBus bus = new CapturingBus();
+        InvalidationRelay relay = new InvalidationRelay(bus, "a", event -> {}, NO_BATCHING);
+        relay.start();
+        try {
+            for (int i = 0; i < 50; i++) {
+                relay.publish(weblog("w1"));
+                relay.publish(entry(i % 5));
+            }
+            relay.flush();
+            
+            assertEquals(1, bus.batches.size());
+            List<InvalidationEvent> batch = bus.batches.get(0);
+            assertEquals(6, batch.size());
+            assertEquals(weblog("w1"), batch.get(0));
+            assertEquals(entry(0), batch.get(1));
+            
+            // sequence numbers keep going up
+            relay.publish(entry(0));
+            relay.flush();
+            assertEquals(7, bus.batches.get(1).get(0).getSequence());
+            assertEquals(7, relay.getPublishedCount());
+        } finally {
+            relay.shutdown();
+        }
+    }
+    
+    
+    /**
+     * Batches delivered again or out of order are dropped.
+     */
+    @Test
+    public void testDuplicateSuppression() throws Exception {
+        
+        CapturingBus bus = new CapturingBus();
+        InvalidationRelay sender = new InvalidationRelay(bus, "a", event -> {}, NO_BATCHING);
+        sender.start();
+        sender.publish(entry(1));
+        sender.publish(entry(2));
+        sender.flush();
+        sender.publish(entry(3));
+        sender.flush();
+        sender.shutdown();
+        List<InvalidationEvent> first = bus.batches.get(0);
+        List<InvalidationEvent> second = bus.batches.get(1);
+        
+        List<InvalidationEvent> applied = new ArrayList<>();
+        InvalidationRelay receiver = new InvalidationRelay(new CapturingBus(), "b", applied::add, NO_BATCHING);
+        receiver.receive(first);
+        receiver.receive(first);
+        receiver.receive(second);
+        receiver.receive(first);
+        receiver.receive(second);
+        
+        assertEquals(List.of(entry(1), entry(2), entry(3)), applied);
+        assertEquals(3, receiver.getAppliedCount());
+        assertEquals(5, receiver.getDroppedCount());
+        
+        // a restarted member has a new origin, so its events aren't dropped
+        InvalidationRelay restarted = new InvalidationRelay(bus, "a", event -> {}, NO_BATCHING);
+        Thread.sleep(2);
+        restarted.start();
+        restarted.publish(entry(1));
+        restarted.flush();
+        restarted.shutdown();
+        receiver.receive(bus.batches.get(2));
+        assertEquals(4, applied.size());
+    }
+    
+    
+    /**
+     * Members sharing a queue directory see each other's events in order,
+     * across rolled queue files, and a member which starts late only sees
+     * what was published after it started.
+     */
+    @Test
+    public void testFileQueue() throws Exception {
+        
+        List<InvalidationEvent> appliedA = new CopyOnWriteArrayList<>();
+        List<InvalidationEvent> appliedB = new CopyOnWriteArrayList<>();
+        List<InvalidationEvent> appliedC = new CopyOnWriteArrayList<>();
+        InvalidationRelay a = fileRelay("a", appliedA::add);
+        InvalidationRelay b = fileRelay("b", appliedB::add);
+        InvalidationRelay c = null;
+        a.start();
+        b.start();
+        try {
+            List<InvalidationEvent> expected = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                InvalidationEvent event = entry(i);
+                expected.add(event);
+                a.publish(event);
+                if (i % 10 == 9) {
+                    a.flush();
+                }
+            }
+            await(() -> appliedB.size() >= expected.size(), 10000);
+            assertEquals(expected, appliedB);
+            
+            b.publish(weblog("w1"));
+            await(() -> !appliedA.isEmpty(), 10000);
+            assertEquals(List.of(weblog("w1")), appliedA);
+            
+            c = fileRelay("c", appliedC::add);
+            c.start();
+            a.publish(weblog("w2"));
+            await(() -> appliedB.size() > expected.size(), 10000);
+            await(() -> !appliedC.isEmpty(), 10000);
+            assertEquals(List.of(weblog("w2")), appliedC);
+        } finally {
+            a.shutdown();
+            b.shutdown();
+            if (c != null) {
+                c.shutdown();
+            }
+        }
+    }
+    
+    
+    /**
+     * Comment events carry their entry through the text format, and lines
+     * from members which don't send the entry still parse.
+     */
+    @Test
+    public void testLineFormat() throws Exception {
+        
+        InvalidationEvent comment = new InvalidationEvent(Kind.COMMENT, "weblogid", "weblog",
+                "comment1", "entry1", "my-entry").withOrigin("a", 42);
+        InvalidationEvent parsed = InvalidationEvent.fromLine(comment.toLine());
+        assertEquals(comment, parsed);
+        assertEquals("entry1", parsed.getEntryId());
+        assertEquals("my-entry", parsed.getEntryAnchor());
+        assertEquals("a", parsed.getOrigin());
+        assertEquals(42, parsed.getSequence());
+        
+        parsed = InvalidationEvent.fromLine("a\t7\tENTRY\tweblogid\tweblog\tentry1");
+        assertEquals(new InvalidationEvent(Kind.ENTRY, "weblogid", "weblog", "entry1"), parsed);
+        assertNull(parsed.getEntryId());
+        
+        assertNull(InvalidationEvent.fromLine("a\t7\tENTRY\tweblogid"));
+    }
+    
+    
+    /**
+     * Time from publishing an invalidation to applying it on another member,
+     * run with -Droller.benchmark=true
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "roller.benchmark", matches = "true")
+    public void testLatency() throws Exception {
+        
+        List<InvalidationEvent> appliedB = new CopyOnWriteArrayList<>();
+        InvalidationRelay a = new InvalidationRelay(new LoopbackInvalidationBus(), "a", event -> {}, 10);
+        InvalidationRelay b = new InvalidationRelay(new LoopbackInvalidationBus(), "b", appliedB::add, 10);
+        a.start();
+        b.start();
+        try {
+            long median = medianLatency(a, appliedB);
+            log.info("Loopback invalidation latency " + median + " ms");
+        } finally {
+            a.shutdown();
+            b.shutdown();
+        }
+        
+        List<InvalidationEvent> appliedD = new CopyOnWriteArrayList<>();
+        InvalidationRelay c = fileRelay("c", event -> {});
+        InvalidationRelay d = fileRelay("d", appliedD::add);
+        c.start();
+        d.start();
+        try {
+            long median = medianLatency(c, appliedD);
+            log.info("File queue invalidation latency " + median + " ms");
+        } finally {
+            c.shutdown();
+            d.shutdown();
+        }
+    }
+    
+    
+    private long medianLatency(InvalidationRelay from, List<InvalidationEvent> applied) throws Exception {
+        List<Long> latencies = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            int count = applied.size();
+            long start = System.nanoTime();
+            from.publish(entry(i));
+            await(() -> applied.size() > count, 10000);
+            latencies.add((System.nanoTime() - start) / 1000000);
+        }
+        Collections.sort(latencies);
+        return latencies.get(latencies.size() / 2);
+    }
+    
+    
+    private InvalidationRelay fileRelay(String nodeId, Consumer<InvalidationEvent> applier) {
+        // small files, so that they roll during the tests
+        return new InvalidationRelay(new FileQueueInvalidationBus(queueDir, 20, 1024), nodeId, applier, 10);
+    }
+    
+    
+    private static InvalidationEvent entry(int i) {
+        return new InvalidationEvent(Kind.ENTRY, "weblogid", "weblog", "entry" + i);
+    }
+    
+    
+    private static InvalidationEvent weblog(String handle) {
+        return new InvalidationEvent(Kind.WEBLOG, handle + "id", handle, null);
+    }
+    
+    
+    private static void await(BooleanSupplier condition, long timeout) throws InterruptedException {
+        long end = System.currentTimeMillis() + timeout;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > end) {
+                fail("Timed out waiting for invalidations");
+            }
+            Thread.sleep(5);
+        }
+    }
+    
+    
+    private static class CapturingBus implements InvalidationBus {
+        
+        private final List<List<InvalidationEvent>> batches = new ArrayList<>();
+        
+        @Override
+        public void start(String nodeId, Consumer<List<InvalidationEvent>> receiver) {
+        }
+        
+        @Override
+        public void publish(List<InvalidationEvent> events) {
+            batches.add(events);
+        }
+        
+        @Override
+        public void shutdown() {
+        }
+    }
+    
+}